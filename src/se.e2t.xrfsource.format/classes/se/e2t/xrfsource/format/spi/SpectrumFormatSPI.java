@@ -43,4 +43,10 @@ public interface SpectrumFormatSPI {
     int getErrorCode();
     // Method returns an error description.
     String getErrorDescription();
+    // Returns true if the formatter marks the axis of the spectrum and
+    // writes positions in keV on the energy axis. Formatters that are not
+    // axis aware are only given spectra on the wavelength axis.
+    default boolean isAxisAware() {
+        return false;
+    }
 }
@@ -0,0 +1,334 @@
+/*
+ * SpectrumColumns.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xrfsource.spectrumclasses;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ * 
+ * Class stores a set of spectrum parts, tube lines or continuum slices, as
+ * parallel primitive arrays of wavelength, window and intensity. Compared to
+ * a list of SpectrumPart objects no object is allocated per part.
+ * The arrays returned by getWavelengths, getWindows and getIntensities are
+ * the backing arrays, only the first size() values are valid.
+ * On the energy axis of XraySpectrum the wavelength column holds energies in
+ * keV, code that handles both axes reads it by getPosition and getPositions
+ * together with XraySpectrum.getAxis.
+ */
+public class SpectrumColumns {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] _wavelength; // Center wavelengths
+    private double[] _window;     // Windows centered at _wavelength
+    private double[] _intensity;  // Intensities at center wavelength
+    private int _size;
+
+    public SpectrumColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SpectrumColumns(int capacity) {
+        _wavelength = new double[capacity];
+        _window = new double[capacity];
+        _intensity = new double[capacity];
+        _size = 0;
+    }
+
+    /**
+     * Creates columns from arrays of equal length, the arrays are used as
+     * backing arrays without copying.
+     * @param wavelength center wavelengths
+     * @param window windows centered at the wavelengths
+     * @param intensity intensities
+     */
+    public SpectrumColumns(double[] wavelength, double[] window, double[] intensity) {
+        if (wavelength.length != window.length || wavelength.length != intensity.length) {
+            throw new IllegalArgumentException("Column lengths differ");
+        }
+        _wavelength = wavelength;
+        _window = window;
+        _intensity = intensity;
+        _size = wavelength.length;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    public double getWavelength(int index) {
+        return _wavelength[Objects.checkIndex(index, _size)];
+    }
+
+    /**
+     * Method returns the center position of a part on the spectrum axis,
+     * wavelength in Angstrom or energy in keV.
+     * @param index part index.
+     * @return center position.
+     */
+    public double getPosition(int index) {
+        return _wavelength[Objects.checkIndex(index, _size)];
+    }
+
+    public double getWindow(int index) {
+        return _window[Objects.checkIndex(index, _size)];
+    }
+
+    public double getIntensity(int index) {
+        return _intensity[Objects.checkIndex(index, _size)];
+    }
+
+    public void setIntensity(int index, double intensity) {
+        _intensity[Objects.checkIndex(index, _size)] = intensity;
+    }
+
+    public double[] getWavelengths() {
+        return _wavelength;
+    }
+
+    /**
+     * Method returns the backing array of center positions on the spectrum
+     * axis, wavelengths in Angstrom or energies in keV.
+     * @return center positions.
+     */
+    public double[] getPositions() {
+        return _wavelength;
+    }
+
+    public double[] getWindows() {
+        return _window;
+    }
+
+    public double[] getIntensities() {
+        return _intensity;
+    }
+
+    /**
+     * Method adds a spectrum part at the end of the columns.
+     * @param wavelength center wavelength
+     * @param window window centered at wavelength
+     * @param intensity intensity
+     */
+    public void add(double wavelength, double window, double intensity) {
+        if (_size == _wavelength.length) {
+            grow(_size + 1);
+        }
+        _wavelength[_size] = wavelength;
+        _window[_size] = window;
+        _intensity[_size] = intensity;
+        _size++;
+    }
+
+    /**
+     * Method adds all parts of other columns at the end of these columns.
+     * @param other columns to add.
+     */
+    public void addAll(SpectrumColumns other) {
+        int otherSize = other._size;
+        if (_size + otherSize > _wavelength.length) {
+            grow(_size + otherSize);
+        }
+        System.arraycopy(other._wavelength, 0, _wavelength, _size, otherSize);
+        System.arraycopy(other._window, 0, _window, _size, otherSize);
+        System.arraycopy(other._intensity, 0, _intensity, _size, otherSize);
+        _size += otherSize;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, Math.max(DEFAULT_CAPACITY,
+                _wavelength.length + (_wavelength.length >> 1)));
+        _wavelength = Arrays.copyOf(_wavelength, capacity);
+        _window = Arrays.copyOf(_window, capacity);
+        _intensity = Arrays.copyOf(_intensity, capacity);
+    }
+
+    /**
+     * Method reduces the backing arrays to the number of stored parts.
+     */
+    public void trimToSize() {
+        if (_size < _wavelength.length) {
+            _wavelength = Arrays.copyOf(_wavelength, _size);
+            _window = Arrays.copyOf(_window, _size);
+            _intensity = Arrays.copyOf(_intensity, _size);
+        }
+    }
+
+    /**
+     * Method multiplies all intensities by a factor.
+     * @param factor the factor.
+     */
+    public void scaleIntensities(double factor) {
+        double[] intensity = _intensity;
+        for (int i = 0; i < _size; i++) {
+            intensity[i] = factor * intensity[i];
+        }
+    }
+
+    /**
+     * Method multiplies each intensity by its own factor.
+     * @param factors factors, at least size() values.
+     */
+    public void multiplyIntensities(double[] factors) {
+        if (factors.length < _size) {
+            throw new IllegalArgumentException("Too few factors");
+        }
+        double[] intensity = _intensity;
+        for (int i = 0; i < _size; i++) {
+            intensity[i] = intensity[i] * factors[i];
+        }
+    }
+
+    /**
+     * Method returns the maximum intensity.
+     * @return max intensity.
+     * @throws NoSuchElementException if there are no parts.
+     */
+    public double getMaxIntensity() {
+        if (_size == 0) {
+            throw new NoSuchElementException("No value present");
+        }
+        double max = _intensity[0];
+        for (int i = 1; i < _size; i++) {
+            max = Math.max(max, _intensity[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Method sorts the parts in wavelength order. The sort is stable.
+     */
+    public void sortByWavelength() {
+        Integer[] order = new Integer[_size];
+        for (int i = 0; i < _size; i++) {
+            order[i] = i;
+        }
+        double[] wavelength = _wavelength;
+        Arrays.sort(order, Comparator.comparingDouble(i -> wavelength[i]));
+        double[] sWavelength = new double[_wavelength.length];
+        double[] sWindow = new double[_window.length];
+        double[] sIntensity = new double[_intensity.length];
+        for (int i = 0; i < _size; i++) {
+            sWavelength[i] = _wavelength[order[i]];
+            sWindow[i] = _window[order[i]];
+            sIntensity[i] = _intensity[order[i]];
+        }
+        _wavelength = sWavelength;
+        _window = sWindow;
+        _intensity = sIntensity;
+    }
+
+    /**
+     * Method returns a copy of the columns.
+     * @return copy with backing arrays of length size().
+     */
+    public SpectrumColumns copy() {
+        return new SpectrumColumns(Arrays.copyOf(_wavelength, _size),
+                Arrays.copyOf(_window, _size), Arrays.copyOf(_intensity, _size));
+    }
+
+    /**
+     * Method returns a list view of the columns. The SpectrumPart objects of
+     * the view read and write the columns, setIntensity changes the
+     * intensity stored in the columns. Parts added to the list are added to
+     * the columns.
+     * @return list view.
+     */
+    public List<SpectrumPart> asList() {
+        return new PartList();
+    }
+
+    /**
+     * List view of the columns.
+     */
+    private class PartList extends AbstractList<SpectrumPart> {
+
+        @Override
+        public SpectrumPart get(int index) {
+            return new ColumnPart(Objects.checkIndex(index, _size));
+        }
+
+        @Override
+        public int size() {
+            return _size;
+        }
+
+        @Override
+        public void add(int index, SpectrumPart part) {
+            if (index != _size) {
+                throw new UnsupportedOperationException("Parts can only be added last");
+            }
+            SpectrumColumns.this.add(part.getWavelength(), part.getWindow(),
+                    part.getIntensity());
+            modCount++;
+        }
+    }
+
+    /**
+     * SpectrumPart reading and writing one index of the columns.
+     */
+    private class ColumnPart extends SpectrumPart {
+
+        private final int _index;
+
+        ColumnPart(int index) {
+            _index = index;
+        }
+
+        @Override
+        public double getWavelength() {
+            return _wavelength[_index];
+        }
+
+        @Override
+        public double getPosition() {
+            return _wavelength[_index];
+        }
+
+        @Override
+        public double getWindow() {
+            return _window[_index];
+        }
+
+        @Override
+        public double getIntensity() {
+            return _intensity[_index];
+        }
+
+        @Override
+        public void setIntensity(double intensity) {
+            _intensity[_index] = intensity;
+        }
+    }
+}
@@ -28,6 +28,8 @@ package se.e2t.xrfsource.spectrumclasses;
  * @author Kent Ericsson, e2t AB
  * 
  * Class stores info of a part of an x-ray spectrum
+ * The center of a part of a spectrum on the energy axis is an energy in keV,
+ * read by getPosition.
  */
 public class SpectrumPart {
 
@@ -41,10 +43,20 @@ public class SpectrumPart {
         _intensity = intensity;
     }
 
+    // Used by views of SpectrumColumns overriding the access methods
+    SpectrumPart() {
+        this(0.0d, 0.0d, 0.0d);
+    }
+
     public double getWavelength() {
         return _wavelength;
     }
 
+    // Center wavelength in Angstrom or energy in keV, see XraySpectrum.getAxis
+    public double getPosition() {
+        return _wavelength;
+    }
+
     public double getWindow() {
         return _window;
     }
@@ -23,7 +23,6 @@
  */
 package se.e2t.xrfsource.spectrumclasses;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,29 +30,83 @@ import java.util.List;
  * @author Kent Ericsson, e2t AB
  * 
  * Class stores results from x-ray spectrum calculations.
+ * Tube lines and continuum slices are stored in SpectrumColumns objects.
+ * The List methods return views of the columns for code using SpectrumPart
+ * objects, e.g. SpectrumFormatSPI providers.
+ * The axis of the spectrum tells how the columns are read: on the
+ * WAVELENGTH axis the wavelength column holds center wavelengths in
+ * Angstrom and the window column widths in Angstrom, parts in wavelength
+ * order. On the ENERGY axis the wavelength column holds center energies in
+ * keV and the window column widths in keV, parts in energy order.
+ * Intensities are integrated over the window on both axes.
  */
 public class XraySpectrum {
-    private final List<SpectrumPart> _tubeLines;
-    private final List<SpectrumPart> _continium;
+
+    /**
+     * Axis of the spectrum parts.
+     */
+    public static enum Axis {
+        WAVELENGTH, ENERGY
+    };
+
+    private final SpectrumColumns _tubeLines;
+    private final SpectrumColumns _continium;
+    private final List<SpectrumPart> _tubeLineList;
+    private final List<SpectrumPart> _continiumList;
+    private final Axis _axis;
     
     public XraySpectrum() {
-        _tubeLines = new ArrayList<>();
-        _continium = new ArrayList<>();
+        this(new SpectrumColumns(), new SpectrumColumns());
+    }
+
+    public XraySpectrum(SpectrumColumns tubeLines, SpectrumColumns continuum) {
+        this(tubeLines, continuum, Axis.WAVELENGTH);
+    }
+
+    public XraySpectrum(SpectrumColumns tubeLines, SpectrumColumns continuum,
+            Axis axis) {
+        _tubeLines = tubeLines;
+        _continium = continuum;
+        _tubeLineList = _tubeLines.asList();
+        _continiumList = _continium.asList();
+        _axis = axis;
+    }
+
+    public Axis getAxis() {
+        return _axis;
     }
 
     public List<SpectrumPart> getTubeLines() {
-        return _tubeLines;
+        return _tubeLineList;
     }
 
     public List<SpectrumPart> getContinuum() {
+        return _continiumList;
+    }
+
+    public SpectrumColumns getTubeLineColumns() {
+        return _tubeLines;
+    }
+
+    public SpectrumColumns getContinuumColumns() {
         return _continium;
     }
     
     public void addTubeLine(SpectrumPart lineInfo) {
-        _tubeLines.add(lineInfo);
+        _tubeLines.add(lineInfo.getWavelength(), lineInfo.getWindow(),
+                lineInfo.getIntensity());
     }
     
     public void addContiniumSlice(SpectrumPart contInfo) {
-        _continium.add(contInfo);
+        _continium.add(contInfo.getWavelength(), contInfo.getWindow(),
+                contInfo.getIntensity());
+    }
+
+    /**
+     * Method returns a copy of the spectrum.
+     * @return copy not sharing any data with this spectrum.
+     */
+    public XraySpectrum copy() {
+        return new XraySpectrum(_tubeLines.copy(), _continium.copy(), _axis);
     }
 }
@@ -16,6 +16,7 @@ module se.e2t.xrfsource {
     opens se.e2t.resources to javafx.fxml, javafx.graphics;
     exports se.e2t.xraygui;
     exports se.e2t.xraycalc;
+    exports se.e2t.abscoeffcalculate;
     uses se.e2t.xrfsource.format.spi.SpectrumFormatSPI;
     provides se.e2t.xrfsource.format.spi.SpectrumFormatSPI
             with se.e2t.formatters.XrfSourceCsvFormatter,
@@ -23,7 +23,9 @@
  */
 package se.e2t.abscoeffcalculate;
 
+import java.util.Objects;
 import se.e2t.abscoeffcalculate.Mucal.ErrorCode;
+import se.e2t.abscoeffcalculate.Mucal.Quantity;
 import se.e2t.xraycalc.AbsorptionEdges.AbsEdge;
 import se.e2t.xraycalc.Inparameters;
 
@@ -32,8 +34,197 @@ import se.e2t.xraycalc.Inparameters;
  * @author Kent Ericsson, e2t AB
  * 
  * Class handles x-ray absorption data. Methods in Mucal.java are used.
+ * Absorption coefficients are calculated by Mucal.getCrossSection, which
+ * does not create any Mucal object.
+ * With the CACHED backend absorption coefficients are looked up in an
+ * AbsCoefficientCache shared by all calculations.
+ * With the TABLE backend they are interpolated in per element tables of
+ * an AbsCoefficientTable, built when an element is first used.
  */
 public class AbsCoefficient {
+
+    /**
+     * How absorption coefficients are calculated.
+     */
+    public enum Backend {
+        DIRECT, /* Mucal.getCrossSection for each value */
+        CACHED, /* values cached in an AbsCoefficientCache */
+        TABLE /* values interpolated in an AbsCoefficientTable */
+    };
+
+    private static volatile Backend _backend = Backend.DIRECT;
+    private static volatile AbsCoefficientCache _cache = new AbsCoefficientCache();
+    private static volatile AbsCoefficientTable _table = new AbsCoefficientTable();
+
+    public static Backend getBackend() {
+        return _backend;
+    }
+
+    public static void setBackend(Backend backend) {
+        _backend = backend;
+    }
+
+    /**
+     * @return the cache used by the CACHED backend.
+     */
+    public static AbsCoefficientCache getCache() {
+        return _cache;
+    }
+
+    /**
+     * Method replaces the cache used by the CACHED backend, e.g. to change
+     * size or eviction.
+     * @param cache the new cache.
+     */
+    public static void setCache(AbsCoefficientCache cache) {
+        _cache = cache;
+    }
+
+    /**
+     * @return the tables used by the TABLE backend.
+     */
+    public static AbsCoefficientTable getTable() {
+        return _table;
+    }
+
+    /**
+     * Method replaces the tables used by the TABLE backend, e.g. to change
+     * grid density or tolerance.
+     * @param table the new tables.
+     */
+    public static void setTable(AbsCoefficientTable table) {
+        _table = table;
+    }
+
+    /**
+     * @return the active backend and the settings of its cache or tables.
+     */
+    public static Settings getSettings() {
+        Backend backend = _backend;
+        switch (backend) {
+            case CACHED:
+                return new Settings(backend, _cache.getEnergyQuantum(), 0, 0.0d);
+            case TABLE:
+                AbsCoefficientTable table = _table;
+                return new Settings(backend, 0.0d, table.getCellBits(),
+                        table.getTolerance());
+            default:
+                return new Settings(backend, 0.0d, 0, 0.0d);
+        }
+    }
+
+    /**
+     * The backend and the settings changing the coefficients it returns:
+     * the energy quantum of the CACHED backend, the cell bits and tolerance
+     * of the TABLE backend. Equal settings give equal coefficients, so a
+     * cache of values calculated from the coefficients has the settings in
+     * its key. A Settings is immutable.
+     */
+    public static final class Settings {
+
+        private final Backend _backend;
+        private final double _energyQuantum; // 0 if not CACHED
+        private final int _cellBits;         // 0 if not TABLE
+        private final double _tolerance;     // 0 if not TABLE
+
+        private Settings(Backend backend, double energyQuantum, int cellBits,
+                double tolerance) {
+            _backend = backend;
+            _energyQuantum = energyQuantum;
+            _cellBits = cellBits;
+            _tolerance = tolerance;
+        }
+
+        public Backend getBackend() {
+            return _backend;
+        }
+
+        public double getEnergyQuantum() {
+            return _energyQuantum;
+        }
+
+        public int getCellBits() {
+            return _cellBits;
+        }
+
+        public double getTolerance() {
+            return _tolerance;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) obj;
+            return _backend == other._backend
+                    && Double.compare(_energyQuantum, other._energyQuantum) == 0
+                    && _cellBits == other._cellBits
+                    && Double.compare(_tolerance, other._tolerance) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_backend, _energyQuantum, _cellBits, _tolerance);
+        }
+
+        /**
+         * @return e.g. "table 10 1e-05", the name of the backend and its
+         * settings.
+         */
+        @Override
+        public String toString() {
+            switch (_backend) {
+                case CACHED:
+                    return "cached " + _energyQuantum;
+                case TABLE:
+                    return "table " + _cellBits + " " + _tolerance;
+                default:
+                    return "direct";
+            }
+        }
+    }
+
+    private static double getCrossSection(int Z, double energy, Quantity quantity) {
+        switch (_backend) {
+            case CACHED:
+                return _cache.get(Z, energy, quantity);
+            case TABLE:
+                return _table.get(Z, energy, quantity);
+            default:
+                return Mucal.getCrossSection(Z, energy, quantity);
+        }
+    }
+
+    private static double[] getCrossSections(int Z, double[] wavelengths, Quantity quantity) {
+        return getCrossSectionsAtEnergies(Z, getEnergies(wavelengths), quantity);
+    }
+
+    private static double[] getCrossSectionsAtEnergies(int Z, double[] energies,
+            Quantity quantity) {
+        double[] result;
+        switch (_backend) {
+            case CACHED:
+                AbsCoefficientCache cache = _cache;
+                result = new double[energies.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = cache.get(Z, energies[i], quantity);
+                }
+                return result;
+            case TABLE:
+                AbsCoefficientTable table = _table;
+                result = new double[energies.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = table.get(Z, energies[i], quantity);
+                }
+                return result;
+            default:
+                return Mucal.getCrossSections(Z, energies).get(quantity);
+        }
+    }
     
     /**
      * Method returns the mass absorption coefficient in cm2/g.
@@ -43,20 +234,7 @@ public class AbsCoefficient {
      */
     public static double getMassAbsCoefficient(int Z, double wavelength) {
         double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
-        Mucal mc = new Mucal(null, Z, energy, 'C', true);
-        ErrorCode ec = mc.calculate();
-        if (ec == Mucal.ErrorCode.within_edge) {
-            // Decrease energy 3 eV if to close to absorption edge
-            energy = energy - 0.003d;
-            mc.setEphot(energy);
-        }
-        ec = mc.calculate();
-
-        if (ec == ErrorCode.no_error) {
-            return mc.getXsec()[3];
-        } else {
-            return Double.NaN;
-        }
+        return getCrossSection(Z, energy, Quantity.TOTAL);
     }
     
     /**
@@ -67,19 +245,7 @@ public class AbsCoefficient {
      */
     public static double getAttenuationCoefficient(int Z, double wavelength) {
         double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
-        Mucal mc = new Mucal(null, Z, energy, 'C', true);
-        ErrorCode ec = mc.calculate();
-        if (ec == Mucal.ErrorCode.within_edge) {
-            // Decrease energy 3 eV if to close to absorption edge
-            energy = energy - 0.003d;
-            mc.setEphot(energy);
-        }
-        ec = mc.calculate();
-        if (ec == ErrorCode.no_error) {
-            return mc.getXsec()[5];
-        } else {
-            return Double.NaN;
-        }
+        return getCrossSection(Z, energy, Quantity.ATTENUATION);
     }
     
     /**
@@ -91,20 +257,81 @@ public class AbsCoefficient {
      */
     public static double getTau(int Z, double wavelength) {
         double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
-        Mucal mc = new Mucal(null, Z, energy, 'C', true);
-        ErrorCode ec = mc.calculate();
-        if (ec == Mucal.ErrorCode.within_edge) {
-            // Decrease energy 3 eV if to close to absorption edge
-            energy = energy - 0.003d;
-            mc.setEphot(energy);
-        }
-        ec = mc.calculate();
+        return getCrossSection(Z, energy, Quantity.PHOTO);
+    }
+    
+    /**
+     * Method returns mass absorption coefficients in cm2/g at a set of
+     * wavelengths, equal to getMassAbsCoefficient for each wavelength.
+     * @param Z atomic number.
+     * @param wavelengths wavelengths in Angstrom.
+     * @return mass absorption coefficients, NaN if error.
+     */
+    public static double[] getMassAbsCoefficients(int Z, double[] wavelengths) {
+        return getCrossSections(Z, wavelengths, Quantity.TOTAL);
+    }
 
-        if (ec == ErrorCode.no_error) {
-            return mc.getXsec()[0];
-        } else {
-            return Double.NaN;
+    /**
+     * Method returns attenuation coefficients (unit /cm) at a set of
+     * wavelengths, equal to getAttenuationCoefficient for each wavelength.
+     * @param Z atomic number.
+     * @param wavelengths wavelengths in Angstrom.
+     * @return attenuation coefficients, NaN if error.
+     */
+    public static double[] getAttenuationCoefficients(int Z, double[] wavelengths) {
+        return getCrossSections(Z, wavelengths, Quantity.ATTENUATION);
+    }
+
+    /**
+     * Method returns photoelectric mass absorption coefficients at a set of
+     * wavelengths, equal to getTau for each wavelength.
+     * @param Z atomic number.
+     * @param wavelengths wavelengths in Angstrom.
+     * @return photoelectric mass absorption coefficients, NaN if error.
+     */
+    public static double[] getTau(int Z, double[] wavelengths) {
+        return getCrossSections(Z, wavelengths, Quantity.PHOTO);
+    }
+
+    /**
+     * Method returns mass absorption coefficients in cm2/g at a set of
+     * photon energies.
+     * @param Z atomic number.
+     * @param energies energies in keV.
+     * @return mass absorption coefficients, NaN if error.
+     */
+    public static double[] getMassAbsCoefficientsAtEnergies(int Z, double[] energies) {
+        return getCrossSectionsAtEnergies(Z, energies, Quantity.TOTAL);
+    }
+
+    /**
+     * Method returns attenuation coefficients (unit /cm) at a set of photon
+     * energies.
+     * @param Z atomic number.
+     * @param energies energies in keV.
+     * @return attenuation coefficients, NaN if error.
+     */
+    public static double[] getAttenuationCoefficientsAtEnergies(int Z, double[] energies) {
+        return getCrossSectionsAtEnergies(Z, energies, Quantity.ATTENUATION);
+    }
+
+    /**
+     * Method returns photoelectric mass absorption coefficients at a set of
+     * photon energies.
+     * @param Z atomic number.
+     * @param energies energies in keV.
+     * @return photoelectric mass absorption coefficients, NaN if error.
+     */
+    public static double[] getTauAtEnergies(int Z, double[] energies) {
+        return getCrossSectionsAtEnergies(Z, energies, Quantity.PHOTO);
+    }
+
+    private static double[] getEnergies(double[] wavelengths) {
+        double[] energies = new double[wavelengths.length];
+        for (int i = 0; i < energies.length; i++) {
+            energies[i] = Inparameters.CONV_KEV_ANGSTROM / wavelengths[i];
         }
+        return energies;
     }
     
     /**
@@ -113,7 +340,7 @@ public class AbsCoefficient {
      * @return density in g/cm3 or NaN if error.
      */
     public static double getDensity(int Z) {
-        Mucal mc = new Mucal(null, Z, 0.0d, 'C', true);
+        Mucal mc = new Mucal(null, Z, 0.0d, 'C', false);
         ErrorCode ec = mc.calculate();
         if (ec == ErrorCode.no_error) {
             return mc.getXsec()[7];
@@ -129,7 +356,7 @@ public class AbsCoefficient {
      * @return flourescent yield ofr NaN if error.
      */
     public static double getLFlourYield(int Z, AbsEdge lEdge) {
-        Mucal mc = new Mucal(null, Z, 0.0d, 'C', true);
+        Mucal mc = new Mucal(null, Z, 0.0d, 'C', false);
         ErrorCode ec = mc.calculate();
         double retval = Double.NaN;
         if (ec == ErrorCode.no_error) {
@@ -0,0 +1,245 @@
+/*
+ * File AbsCoefficientCache.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.abscoeffcalculate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import se.e2t.abscoeffcalculate.Mucal.Quantity;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class is a bounded, thread safe cache of Mucal cross sections keyed on
+ * atomic number, quantity and quantized photon energy.
+ * Energies are rounded to a multiple of the energy quantum and the cached
+ * value is calculated at the rounded energy, so a lookup returns the same
+ * value whichever energy of the quantum was looked up first.
+ * Energies closer to an absorption edge than 1 eV plus the quantum are not
+ * cached, they are calculated directly by Mucal.getCrossSection, which
+ * handles the within edge retry.
+ * Values for which Mucal reports an error, e.g. elements without data or
+ * energies with an M-edge warning, are NaN and are not cached, they are
+ * calculated and reported to Diagnostics at each lookup.
+ * The cache is split in segments with one lock each, so many calculation
+ * threads may use it at the same time.
+ */
+public class AbsCoefficientCache {
+
+    /**
+     * Order in which entries are removed when the cache is full.
+     */
+    public enum Eviction {
+        LRU, /* least recently used entry first */
+        FIFO /* oldest entry first */
+    };
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+    public static final double DEFAULT_ENERGY_QUANTUM = 1.0e-10d; // keV
+
+    private static final int SEGMENTS = 16;
+    private static final double EDGE_MARGIN = 0.001d; // keV, see Mucal
+    private static final long MAX_ENERGY_INDEX = (1L << 52) - 1L;
+
+    private final Segment[] _segments;
+    private final int _maxEntries;
+    private final Eviction _eviction;
+    private final double _energyQuantum;
+
+    // Statistics
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _bypasses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+
+    public AbsCoefficientCache() {
+        this(DEFAULT_MAX_ENTRIES, Eviction.LRU, DEFAULT_ENERGY_QUANTUM);
+    }
+
+    /**
+     * Creates a cache.
+     * @param maxEntries max number of cached values.
+     * @param eviction order in which values are removed when the cache is full.
+     * @param energyQuantum energies are rounded to a multiple of this (keV).
+     */
+    public AbsCoefficientCache(int maxEntries, Eviction eviction, double energyQuantum) {
+        if (maxEntries < SEGMENTS) {
+            throw new IllegalArgumentException("Max entries must be at least " + SEGMENTS);
+        }
+        if (!(energyQuantum > 0.0d)) {
+            throw new IllegalArgumentException("Energy quantum must be positive");
+        }
+        _maxEntries = maxEntries;
+        _eviction = eviction;
+        _energyQuantum = energyQuantum;
+        _segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            _segments[i] = new Segment(maxEntries / SEGMENTS, eviction == Eviction.LRU);
+        }
+    }
+
+    /**
+     * Method returns a cross section, from the cache if it has been
+     * calculated before.
+     * @param z atomic number.
+     * @param energy photon energy in keV.
+     * @param quantity the quantity.
+     * @return the quantity, see Mucal.getCrossSection.
+     */
+    public double get(int z, double energy, Quantity quantity) {
+        double index = Math.rint(energy / _energyQuantum);
+        if (z <= 0 || z > 127 || !(index > 0.0d) || index > MAX_ENERGY_INDEX
+                || Mucal.isNearEdge(z, energy, EDGE_MARGIN + _energyQuantum)) {
+            // Not cachable, calculate directly
+            _bypasses.increment();
+            return Mucal.getCrossSection(z, energy, quantity);
+        }
+        long key = ((long) z << 55) | ((long) quantity.ordinal() << 52) | (long) index;
+        Segment segment = _segments[segmentIndex(key)];
+        Double value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            _hits.increment();
+            return value;
+        }
+        _misses.increment();
+        double result = Mucal.getCrossSection(z, index * _energyQuantum, quantity);
+        if (Double.isNaN(result)) {
+            // Reported error, not cached so it is reported at each lookup
+            return result;
+        }
+        synchronized (segment) {
+            segment.put(key, result);
+        }
+        return result;
+    }
+
+    private static int segmentIndex(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 60) & (SEGMENTS - 1);
+    }
+
+    /**
+     * Method removes all cached values, statistics are kept.
+     */
+    public void clear() {
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Method resets the statistics.
+     */
+    public void resetStatistics() {
+        _hits.reset();
+        _misses.reset();
+        _bypasses.reset();
+        _evictions.reset();
+    }
+
+    /**
+     * @return number of cached values.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    /**
+     * @return number of lookups calculated directly, close to an edge or
+     * outside the range of the cache.
+     */
+    public long getBypasses() {
+        return _bypasses.sum();
+    }
+
+    public long getEvictions() {
+        return _evictions.sum();
+    }
+
+    public int getMaxEntries() {
+        return _maxEntries;
+    }
+
+    public Eviction getEviction() {
+        return _eviction;
+    }
+
+    public double getEnergyQuantum() {
+        return _energyQuantum;
+    }
+
+    /**
+     * @return statistics as a text, for logging.
+     */
+    public String getStatistics() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return String.format("hits %d, misses %d, bypasses %d, evictions %d, "
+                + "entries %d, hit rate %.1f%%",
+                hits, getMisses(), getBypasses(), getEvictions(), size(),
+                lookups == 0 ? 0.0d : 100.0d * hits / lookups);
+    }
+
+    /**
+     * One segment of the cache, accessed while holding its lock.
+     */
+    private class Segment extends LinkedHashMap<Long, Double> {
+
+        private final int _capacity;
+
+        Segment(int capacity, boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+            _capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+            if (size() > _capacity) {
+                _evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * File AbsCoefficientTable.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.abscoeffcalculate;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import se.e2t.abscoeffcalculate.Mucal.Quantity;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class stores precomputed tables of photoelectric and total mass absorption
+ * coefficients and attenuation coefficients, one table per element, built
+ * when the element is first used.
+ *
+ * The table nodes form a log-like energy grid: each octave (factor 2 in
+ * energy) is divided in 2^cellBits cells of equal width. The cell of an
+ * energy and the position within the cell are then taken directly from the
+ * bits of the double value, so a lookup is an array read and one
+ * multiply-add, no log, pow or exp.
+ *
+ * Absorption edges are breakpoints of the table: cells containing an edge,
+ * including the 1 eV within edge region, and cells where Mucal has no
+ * data are marked and calculated directly by Mucal.getCrossSection.
+ * Energies outside the table range are also calculated directly.
+ *
+ * When a table is built the interpolated values at all cell midpoints are
+ * compared with Mucal. If the max relative error is above the tolerance the
+ * table is rebuilt with twice as many cells, up to MAX_CELL_BITS.
+ */
+public class AbsCoefficientTable {
+
+    public static final int DEFAULT_CELL_BITS = 10;
+    public static final int MAX_CELL_BITS = 14;
+    public static final double DEFAULT_TOLERANCE = 1.0e-5d;
+    public static final double MIN_ENERGY = 0.125d; // keV
+    public static final double MAX_ENERGY = 256.0d; // keV
+
+    private static final int MAX_Z = 94;
+    private static final double EDGE_MARGIN = 0.001d; // keV, see Mucal
+
+    private final int _cellBits;
+    private final double _tolerance;
+    private final AtomicReferenceArray<ElementTable> _tables
+            = new AtomicReferenceArray<>(MAX_Z + 1);
+
+    public AbsCoefficientTable() {
+        this(DEFAULT_CELL_BITS, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Creates an empty set of tables.
+     * @param cellBits number of cells per octave is 2^cellBits, 4 to MAX_CELL_BITS.
+     * @param tolerance max relative error of interpolated values at cell
+     * midpoints, tables are refined until it is met or MAX_CELL_BITS is reached.
+     */
+    public AbsCoefficientTable(int cellBits, double tolerance) {
+        if (cellBits < 4 || cellBits > MAX_CELL_BITS) {
+            throw new IllegalArgumentException("Cell bits must be 4 to " + MAX_CELL_BITS);
+        }
+        _cellBits = cellBits;
+        _tolerance = tolerance;
+    }
+
+    /**
+     * Method returns a cross section, interpolated in the table of the
+     * element if the energy is within a table cell.
+     * @param z atomic number.
+     * @param energy photon energy in keV.
+     * @param quantity the quantity.
+     * @return the quantity, see Mucal.getCrossSection.
+     */
+    public double get(int z, double energy, Quantity quantity) {
+        if (z <= 0 || z > MAX_Z || !(energy >= MIN_ENERGY && energy < MAX_ENERGY)) {
+            return Mucal.getCrossSection(z, energy, quantity);
+        }
+        double[] values;
+        ElementTable table = getTable(z);
+        switch (quantity) {
+            case PHOTO:
+                values = table._photo;
+                break;
+            case TOTAL:
+                values = table._total;
+                break;
+            case ATTENUATION:
+                values = table._attenuation;
+                break;
+            default:
+                return Mucal.getCrossSection(z, energy, quantity);
+        }
+        long bits = Double.doubleToRawLongBits(energy);
+        int cell = (int) ((bits >>> table._shift) - table._firstKey);
+        if (table._direct[cell]) {
+            return Mucal.getCrossSection(z, energy, quantity);
+        }
+        double frac = (bits & table._fracMask) * table._fracScale;
+        double v0 = values[cell];
+        return v0 + frac * (values[cell + 1] - v0);
+    }
+
+    /**
+     * Method returns the max relative error found when the table of an
+     * element was built, the table is built if needed.
+     * @param z atomic number.
+     * @return max relative error at cell midpoints.
+     */
+    public double getMaxRelativeError(int z) {
+        return getTable(z)._maxError;
+    }
+
+    /**
+     * Method returns the number of cells per octave of the table of an
+     * element, the table is built if needed.
+     * @param z atomic number.
+     * @return cells per octave.
+     */
+    public int getCellsPerOctave(int z) {
+        return 1 << (52 - getTable(z)._shift);
+    }
+
+    /**
+     * @return number of cells per octave of a new table is 2^cellBits.
+     */
+    public int getCellBits() {
+        return _cellBits;
+    }
+
+    public double getTolerance() {
+        return _tolerance;
+    }
+
+    /**
+     * Method compares table values with Mucal at a number of energies
+     * evenly spread on a log scale over the table range.
+     * @param z atomic number.
+     * @param samples number of energies.
+     * @return max relative error of the three tabulated quantities, NaN
+     * values of Mucal excluded.
+     */
+    public double checkAccuracy(int z, int samples) {
+        double maxError = 0.0d;
+        double logRange = Math.log(MAX_ENERGY / MIN_ENERGY);
+        Quantity[] quantities = {Quantity.PHOTO, Quantity.TOTAL, Quantity.ATTENUATION};
+        for (int i = 0; i < samples; i++) {
+            double energy = MIN_ENERGY * Math.exp(logRange * (i + 0.5d) / samples);
+            for (Quantity quantity : quantities) {
+                maxError = Math.max(maxError, relativeError(
+                        get(z, energy, quantity),
+                        Mucal.getCrossSection(z, energy, quantity)));
+            }
+        }
+        return maxError;
+    }
+
+    private static double relativeError(double value, double reference) {
+        if (Double.isNaN(reference) || reference == 0.0d) {
+            return 0.0d;
+        }
+        return Math.abs(value - reference) / Math.abs(reference);
+    }
+
+    private ElementTable getTable(int z) {
+        ElementTable table = _tables.get(z);
+        if (table == null) {
+            // An element table may be built twice by concurrent threads,
+            // both are equal
+            table = buildTable(z);
+            if (!_tables.compareAndSet(z, null, table)) {
+                table = _tables.get(z);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Method builds the table of an element, refining until the tolerance
+     * is met.
+     */
+    private ElementTable buildTable(int z) {
+        // Nodes close to edges are not errors of the calculation
+        Diagnostics previous = Diagnostics.install(new Diagnostics(0, 1, false));
+        try {
+            int cellBits = _cellBits;
+            ElementTable table = new ElementTable(z, cellBits);
+            while (table._maxError > _tolerance && cellBits < MAX_CELL_BITS) {
+                cellBits++;
+                table = new ElementTable(z, cellBits);
+            }
+            return table;
+        } finally {
+            Diagnostics.restore(previous);
+        }
+    }
+
+    /**
+     * Table of one element.
+     */
+    private static class ElementTable {
+        private final int _shift;
+        private final long _firstKey;
+        private final long _fracMask;
+        private final double _fracScale;
+        private final double[] _photo;
+        private final double[] _total;
+        private final double[] _attenuation;
+        private final boolean[] _direct; // cell calculated directly
+        private final double _maxError;
+
+        ElementTable(int z, int cellBits) {
+            _shift = 52 - cellBits;
+            _firstKey = Double.doubleToRawLongBits(MIN_ENERGY) >>> _shift;
+            long lastKey = Double.doubleToRawLongBits(MAX_ENERGY) >>> _shift;
+            _fracMask = (1L << _shift) - 1L;
+            _fracScale = 1.0d / (double) (1L << _shift);
+            int cells = (int) (lastKey - _firstKey);
+
+            // Values at the nodes
+            double[] energies = new double[cells + 1];
+            for (int i = 0; i <= cells; i++) {
+                energies[i] = Double.longBitsToDouble((_firstKey + i) << _shift);
+            }
+            Mucal.CrossSections nodes = Mucal.getCrossSections(z, energies);
+            _photo = nodes.getPhoto();
+            _total = nodes.getTotal();
+            _attenuation = nodes.getAttenuation();
+
+            // Mark cells with edges, within edge nodes or missing data
+            _direct = new boolean[cells];
+            for (int i = 0; i < cells; i++) {
+                _direct[i] = Double.isNaN(_total[i]) || Double.isNaN(_total[i + 1])
+                        || Double.isNaN(_photo[i]) || Double.isNaN(_photo[i + 1])
+                        || hasEdge(z, energies[i], energies[i + 1]);
+            }
+
+            // Compare interpolated values at cell midpoints with Mucal
+            double[] midpoints = new double[cells];
+            for (int i = 0; i < cells; i++) {
+                midpoints[i] = 0.5d * (energies[i] + energies[i + 1]);
+            }
+            Mucal.CrossSections exact = Mucal.getCrossSections(z, midpoints);
+            double maxError = 0.0d;
+            for (int i = 0; i < cells; i++) {
+                if (!_direct[i]) {
+                    maxError = Math.max(maxError, Math.max(
+                            midpointError(_photo, i, exact.getPhoto()[i]),
+                            Math.max(midpointError(_total, i, exact.getTotal()[i]),
+                                    midpointError(_attenuation, i, exact.getAttenuation()[i]))));
+                }
+            }
+            _maxError = maxError;
+        }
+
+        private static double midpointError(double[] values, int cell, double exact) {
+            return relativeError(0.5d * (values[cell] + values[cell + 1]), exact);
+        }
+
+        /* true if an edge, or its within edge region, is in or close to a cell */
+        private static boolean hasEdge(int z, double lower, double upper) {
+            double center = 0.5d * (lower + upper);
+            double halfWidth = 0.5d * (upper - lower);
+            return Mucal.isNearEdge(z, center, halfWidth + 2.0d * EDGE_MARGIN);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * File Diagnostics.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.abscoeffcalculate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import se.e2t.abscoeffcalculate.Mucal.ErrorCode;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class collects warnings and errors of the calculations, e.g. photon
+ * energies within 1 eV of an absorption edge, instead of printing them.
+ * Each ErrorCode is counted. A sample of the reports may also be kept as
+ * details and, if selected, printed to the console.
+ *
+ * A Diagnostics object is installed for the current thread during a
+ * calculation, reports are then added to it by the static report method.
+ * Reports on threads without an installed Diagnostics go to the default
+ * Diagnostics, if one is set, otherwise they are ignored.
+ * No text is created when a report is added unless console output is on,
+ * and once the details are full a report only updates its counter.
+ */
+public class Diagnostics {
+
+    public static final int DEFAULT_MAX_DETAILS = 16;
+
+    private static final ThreadLocal<Diagnostics> CURRENT = new ThreadLocal<>();
+    private static volatile Diagnostics _default = null;
+
+    private final AtomicLongArray _counts;
+    private final int _maxDetails;
+    private final int _sampleInterval;
+    private final boolean _console;
+    private final List<Detail> _details = new ArrayList<>();
+    private volatile boolean _detailsFull;
+
+    public Diagnostics() {
+        this(DEFAULT_MAX_DETAILS, 1, false);
+    }
+
+    /**
+     * Creates an empty Diagnostics.
+     * @param maxDetails max number of kept details, 0 for counters only.
+     * @param sampleInterval every sampleInterval:th report of an ErrorCode is
+     * kept as a detail, starting with the first.
+     * @param console true if kept details are also printed to System.out.
+     */
+    public Diagnostics(int maxDetails, int sampleInterval, boolean console) {
+        if (maxDetails < 0 || sampleInterval < 1) {
+            throw new IllegalArgumentException("Bad max details or sample interval");
+        }
+        _maxDetails = maxDetails;
+        _sampleInterval = sampleInterval;
+        _console = console;
+        _counts = new AtomicLongArray(ErrorCode.values().length);
+        _detailsFull = maxDetails == 0;
+    }
+
+    /**
+     * Method installs a Diagnostics for the current thread.
+     * @param diagnostics the Diagnostics, null to remove.
+     * @return the Diagnostics installed before, to be given to restore.
+     */
+    public static Diagnostics install(Diagnostics diagnostics) {
+        Diagnostics previous = CURRENT.get();
+        if (diagnostics == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(diagnostics);
+        }
+        return previous;
+    }
+
+    /**
+     * Method restores the Diagnostics returned by install.
+     * @param previous the Diagnostics, may be null.
+     */
+    public static void restore(Diagnostics previous) {
+        install(previous);
+    }
+
+    /**
+     * @return the Diagnostics of the current thread, may be null.
+     */
+    public static Diagnostics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Method sets the Diagnostics used by threads without an installed
+     * Diagnostics.
+     * @param diagnostics the Diagnostics, null to ignore these reports.
+     */
+    public static void setDefault(Diagnostics diagnostics) {
+        _default = diagnostics;
+    }
+
+    public static Diagnostics getDefault() {
+        return _default;
+    }
+
+    /**
+     * Method reports a warning or an error to the Diagnostics of the current
+     * thread.
+     * @param code the error.
+     * @param z atomic number, 0 if unknown.
+     * @param energy photon energy in keV, NaN if unknown.
+     * @param source where the error was found, a constant text.
+     */
+    public static void report(ErrorCode code, int z, double energy, String source) {
+        Diagnostics diagnostics = CURRENT.get();
+        if (diagnostics == null) {
+            diagnostics = _default;
+            if (diagnostics == null) {
+                return;
+            }
+        }
+        diagnostics.add(code, z, energy, source);
+    }
+
+    /**
+     * Method reports the counts and details of another Diagnostics to the
+     * Diagnostics of the current thread, e.g. the warnings kept with a
+     * cached result when the result is used again.
+     * @param other the other Diagnostics.
+     */
+    public static void reportAll(Diagnostics other) {
+        Diagnostics diagnostics = CURRENT.get();
+        if (diagnostics == null) {
+            diagnostics = _default;
+            if (diagnostics == null) {
+                return;
+            }
+        }
+        diagnostics.addAll(other);
+    }
+
+    /**
+     * Method adds a report to this Diagnostics.
+     * @param code the error.
+     * @param z atomic number, 0 if unknown.
+     * @param energy photon energy in keV, NaN if unknown.
+     * @param source where the error was found, a constant text.
+     */
+    public void add(ErrorCode code, int z, double energy, String source) {
+        long count = _counts.incrementAndGet(code.ordinal());
+        if (_detailsFull || (count - 1L) % _sampleInterval != 0L) {
+            return;
+        }
+        Detail detail = new Detail(code, z, energy, source);
+        if (!keep(detail)) {
+            return;
+        }
+        if (_console) {
+            System.out.println(detail);
+        }
+    }
+
+    /**
+     * Method adds the counts and details of another Diagnostics, e.g. of a
+     * worker thread, to this.
+     * @param other the other Diagnostics.
+     */
+    public void addAll(Diagnostics other) {
+        for (int i = 0; i < _counts.length(); i++) {
+            long count = other._counts.get(i);
+            if (count != 0L) {
+                _counts.addAndGet(i, count);
+            }
+        }
+        for (Detail detail : other.getDetails()) {
+            if (_detailsFull || !keep(detail)) {
+                return;
+            }
+            if (_console) {
+                System.out.println(detail);
+            }
+        }
+    }
+
+    /**
+     * Method adds a detail if there is room for it.
+     * @return false if the details are full.
+     */
+    private boolean keep(Detail detail) {
+        synchronized (_details) {
+            if (_details.size() >= _maxDetails) {
+                _detailsFull = true;
+                return false;
+            }
+            _details.add(detail);
+            _detailsFull = _details.size() >= _maxDetails;
+            return true;
+        }
+    }
+
+    /**
+     * @param code the error.
+     * @return number of reports of an ErrorCode.
+     */
+    public long getCount(ErrorCode code) {
+        return _counts.get(code.ordinal());
+    }
+
+    /**
+     * @return number of reports of all ErrorCodes.
+     */
+    public long getTotalCount() {
+        long total = 0L;
+        for (int i = 0; i < _counts.length(); i++) {
+            total += _counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return copy of the kept details, oldest first.
+     */
+    public List<Detail> getDetails() {
+        synchronized (_details) {
+            return new ArrayList<>(_details);
+        }
+    }
+
+    /**
+     * Method removes all counts and details.
+     */
+    public void clear() {
+        for (int i = 0; i < _counts.length(); i++) {
+            _counts.set(i, 0L);
+        }
+        synchronized (_details) {
+            _details.clear();
+            _detailsFull = _maxDetails == 0;
+        }
+    }
+
+    /**
+     * @return the non zero counts as a text, e.g. "within_edge 3, no_data 1".
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (ErrorCode code : ErrorCode.values()) {
+            long count = getCount(code);
+            if (count > 0L) {
+                if (summary.length() > 0) {
+                    summary.append(", ");
+                }
+                summary.append(code).append(' ').append(count);
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * One kept report.
+     */
+    public static class Detail {
+        private final ErrorCode _code;
+        private final int _z;
+        private final double _energy;
+        private final String _source;
+
+        Detail(ErrorCode code, int z, double energy, String source) {
+            _code = code;
+            _z = z;
+            _energy = energy;
+            _source = source;
+        }
+
+        public ErrorCode getCode() {
+            return _code;
+        }
+
+        public int getZ() {
+            return _z;
+        }
+
+        public double getEnergy() {
+            return _energy;
+        }
+
+        public String getSource() {
+            return _source;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, Z = %d, energy = %.4f keV",
+                    _source, _code, _z, _energy);
+        }
+    }
+}
@@ -204,7 +204,7 @@ private static final int NELEM = 103;   /* number of elements */
 
 /* Element chemical symbols */
 
-private final String[] ELEMENT = {
+private static final String[] ELEMENT = {
   "H" , "He", "Li", "Be", "B" , "C" , "N" , "O" , "F" , "Ne", "Na",
   "Mg", "Al", "Si", "P" , "S" , "Cl", "Ar", "K" , "Ca", "Sc", "Ti",
   "V" , "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As",
@@ -1485,6 +1485,8 @@ private boolean _pflag;
   private double[] _energy;
   private double[] _xsec;
   private double[] _fl_yield;
+  private ErrorCode _error;
+  private int _errorZ;
   private String _errmsg;
   
 /************************************************************************
@@ -1521,18 +1523,21 @@ int name_z(String name)
  *
  * boyan boyanov 2/95
  *---------------------------------------------------------------*/ 
-double mcmaster(double ephot, double[] fit)
+static double mcmaster(double ephot, double[] fit)
 {
-  int i;
-  double xsec = 0.0d, log_e;
+  double log_e;
    
   /* ephot = 1 need special handling */
   /* no it doesn't really! CUS 11/02/2005 */
 /*  log_e = (ephot == 1.0) ? ephot : log(ephot); */
   log_e = Math.log(ephot);
-  for (i=0; i<4; i++) xsec += fit[i] * Math.pow(log_e, i);
-  xsec = Math.exp(xsec);
-  return xsec;  
+  return mcmaster_log(log_e, fit);
+}
+
+/* same as mcmaster with log(ephot) given, polynomial in Horner form */
+static double mcmaster_log(double log_e, double[] fit)
+{
+  return Math.exp(((fit[3] * log_e + fit[2]) * log_e + fit[1]) * log_e + fit[0]);
 }
 
 
@@ -1557,6 +1562,7 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
     _energy = new double[9];
     _xsec = new double[11];
     _fl_yield = new double[4];
+    _error = ErrorCode.no_error;
     _errmsg = null;
 }
     
@@ -1565,6 +1571,8 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
         ErrorCode err;
         double barn_photo, barn_coh, barn_ncoh, barn_tot;
 
+        _error = ErrorCode.no_error;
+        _errorZ = 0;
         _errmsg = null;
         /* no errors yet */
         err = ErrorCode.no_error;
@@ -1578,21 +1586,13 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
             namef = _name.length();
         }
         if ((namef == 0) && _zz == 0) {
-            _errmsg = "mucal: no shirt/name, no shoes/Z, no service";
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            return ErrorCode.no_input;
+            return setError(ErrorCode.no_input, _zz);
             /* this is a terminal error */
         }
 
         /* ZZ must be non-negative */
         if (_zz < 0) {
-            _errmsg = "mucal: Z must be non-negative";
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            return ErrorCode.bad_z;
+            return setError(ErrorCode.bad_z, _zz);
             /* this is a terminal error */
         }
 
@@ -1601,11 +1601,7 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
             z = name_z(_name);
             if (_zz > 0 && z != _zz) {
                 /* Z and name, if both given, must agree */
-                _errmsg = "mucal: Z and element name are not consistent";
-                if (_pflag) {
-                    System.out.printf("\n%s\n\n", _errmsg);
-                }
-                return ErrorCode.no_zmatch;
+                return setError(ErrorCode.no_zmatch, z);
                 /* this is a terminal error */
             }
         } else {
@@ -1613,32 +1609,20 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
         }
 
         /* make sure material is available */
-        if (z == 85 || z == 85 || z == 87 || z == 88 || z == 89 || z == 91 || z == 93) {
-            _errmsg = "mucal: no data is avaialble for Po, At, Fr, Ra, Ac, Pa, Np";
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            return ErrorCode.no_data;
+        if (isMissingData(z)) {
+            return setError(ErrorCode.no_data, z);
             /* this is a terminal error */
         }
 
         /* Z must be less than ZMAX */
         if (z > ZMAX) {
-            _errmsg = String.format("mucal: no data for Z>%d", ZMAX);
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            return ErrorCode.no_data;
+            return setError(ErrorCode.no_data, z);
             /* this is a terminal error */
         }
 
         /* name must be a valid element symbol */
         if (z == 0) {
-            _errmsg = String.format("mucal: invalid element name %s", _name);
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            return ErrorCode.bad_name;
+            return setError(ErrorCode.bad_name, z);
             /* this is a terminal error */
         }
 
@@ -1651,11 +1635,7 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
 
         /* cannot calculate at negative energies */
         if (_ephot < 0.0) {
-            _errmsg = "mucal: photon energy must be non-negative";
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            return ErrorCode.bad_energy;
+            return setError(ErrorCode.bad_energy, z + 1);
             /* this is a terminal error */
         }
 
@@ -1704,81 +1684,20 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
         }
 
         /* check for middle of edge input */
-        if ((Math.abs(K_EDGE[z] - _ephot) <= 0.001)
-                || /* data within K edge */ (Math.abs(L1_EDGE[z] - _ephot) <= 0.001)
-                || /* data within L1 edge */ (Math.abs(L2_EDGE[z] - _ephot) <= 0.001)
-                || /* data within L2 edge */ (Math.abs(L3_EDGE[z] - _ephot) <= 0.001)
-                || /* data within L3 edge */ (Math.abs(M_EDGE[z] - _ephot) <= 0.001)) {
-            /* data within M edge */
-            _errmsg = String.format("%s\n%s",
-                    "mucal:  photon energy  is within 1 eV of edge",
-                    "        fit results may be inaccurate");
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            err = ErrorCode.within_edge;
+        if (isWithinEdge(z, _ephot)) {
+            err = setError(ErrorCode.within_edge, z + 1);
             /* non-terminal error */
         }
 
         /* determine shell being ionized */
-        if (_ephot >= K_EDGE[z]) /* K shell */ {
-            shell = 1;
-        } else if (_ephot >= L3_EDGE[z]) /* L shell */ {
-            shell = 2;
-        } else if (_ephot >= M_EDGE[z]) /* M1 subshell */ {
-            shell = 3;
-        } else /* everything else */ {
-            shell = 4;
-        }
+        shell = getShell(z, _ephot);
 
         /* calculate photo-absorption barns/atom x-section */
-        switch (shell) {
-
-            case 1:
-                /* K shell */
-                barn_photo = mcmaster(_ephot, K_FIT[z]);
-                break;
-
-            case 2:
-                /* L shell */
-                barn_photo = mcmaster(_ephot, L_FIT[z]);
-                if (_ephot >= L1_EDGE[z]) /* above L1-no corrections */ {
-                    break;
-                } else if (_ephot >= L2_EDGE[z]) /* between L1 and L2 */ {
-                    barn_photo /= L1_JUMP;
-                } else if (_ephot >= L3_EDGE[z]) /* between L2 and L3 */ {
-                    barn_photo /= (L1_JUMP * L2_JUMP);
-                }
-                break;
-
-            case 3:
-                /* M1 subshell */
-                barn_photo = mcmaster(_ephot, M_FIT[z]);
-                break;
-
-            case 4:
-                /* all other shells  */
-                barn_photo = mcmaster(_ephot, N_FIT[z]);
-                break;
-
-            default:
-                /* this should never happen */
-                _errmsg = "mucal: congratualtions, you have just found a bug";
-                if (_pflag) {
-                    System.out.printf("\n%s\n\n", _errmsg);
-                }
-                return ErrorCode.satan_rules;
-        }
+        barn_photo = getPhotoBarns(z, _ephot, shell);
 
         /* M edges for Z<30 are unreliable */
-        if (shell > 2 && z + 1 < 30) {
-            _errmsg = String.format("%s\n%s",
-                    "mucal: McMaster et al. use L-edge fits for the M edges for Z<30",
-                    "WARNING: results may be inaccurate");
-            if (_pflag) {
-                System.out.printf("\n%s\n\n", _errmsg);
-            }
-            err = ErrorCode.m_edge_warn;
+        if (isMedgeWarning(z, shell)) {
+            err = setError(ErrorCode.m_edge_warn, z + 1);
         }
 
         /* calculate coherent, incoherent x-sections, and total */
@@ -1807,6 +1726,361 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
         return err;
     }
 
+    /**
+     * Quantities returned by getCrossSection. Cross sections are in cm2/g,
+     * the attenuation coefficient is in 1/cm.
+     */
+    public enum Quantity {
+        PHOTO, /* photoelectric x-section, xsec[0] */
+        COHERENT, /* coherent x-section, xsec[1] */
+        INCOHERENT, /* incoherent x-section, xsec[2] */
+        TOTAL, /* total x-section, xsec[3] */
+        ATTENUATION /* absorption coefficient, xsec[5] */
+    };
+
+    /**
+     * Method calculates one cross section without creating a Mucal object.
+     * If the energy is within 1 eV of an absorption edge the energy is
+     * decreased 3 eV before the calculation. Nothing is printed, warnings
+     * and errors are reported to Diagnostics.
+     * @param zz atomic number.
+     * @param ephot photon energy in keV.
+     * @param quantity the quantity to calculate.
+     * @return the quantity or NaN if Mucal would return an error code,
+     * i.e. no data for the element, negative energy, energy within 1 eV of an
+     * edge also after the 3 eV decrease, or M-edge data of a Z<30 element.
+     */
+    public static double getCrossSection(int zz, double ephot, Quantity quantity) {
+        if (zz <= 0 || zz > ZMAX || isMissingData(zz) || ephot < 0.0d) {
+            Diagnostics.report(getInputError(zz, ephot), zz, ephot,
+                    "Mucal.getCrossSection");
+            return Double.NaN;
+        }
+        int z = zz - 1;
+        if (ephot == 0.0d) {
+            /* x-sections are not calculated at zero energy */
+            return 0.0d;
+        }
+        if (isWithinEdge(z, ephot)) {
+            /* decrease energy 3 eV if too close to absorption edge */
+            Diagnostics.report(ErrorCode.within_edge, zz, ephot,
+                    "Mucal.getCrossSection");
+            ephot = ephot - 0.003d;
+            if (isWithinEdge(z, ephot)) {
+                return Double.NaN;
+            }
+        }
+        int shell = getShell(z, ephot);
+        if (isMedgeWarning(z, shell)) {
+            Diagnostics.report(ErrorCode.m_edge_warn, zz, ephot,
+                    "Mucal.getCrossSection");
+            return Double.NaN;
+        }
+        double log_e = Math.log(ephot);
+        switch (quantity) {
+            case PHOTO:
+                return getPhotoBarns(z, ephot, log_e, shell) / CONV_FAC[z];
+            case COHERENT:
+                return mcmaster_log(log_e, XSECT_COH[z]) / CONV_FAC[z];
+            case INCOHERENT:
+                return mcmaster_log(log_e, XSECT_NCOH[z]) / CONV_FAC[z];
+            default:
+                double barn_tot = getPhotoBarns(z, ephot, log_e, shell)
+                        + mcmaster_log(log_e, XSECT_COH[z])
+                        + mcmaster_log(log_e, XSECT_NCOH[z]);
+                if (quantity == Quantity.TOTAL) {
+                    return barn_tot / CONV_FAC[z];
+                }
+                return barn_tot * DENSITY[z] / CONV_FAC[z];
+        }
+    }
+
+    /**
+     * Method calculates the cross sections of one element at a set of
+     * energies in one pass. The result is equal to getCrossSection for each
+     * energy and quantity, log(energy) is calculated once per energy.
+     * @param zz atomic number.
+     * @param energies photon energies in keV.
+     * @return cross section columns, same length as energies.
+     */
+    public static CrossSections getCrossSections(int zz, double[] energies) {
+        int n = energies.length;
+        CrossSections result = new CrossSections(n);
+        if (zz <= 0 || zz > ZMAX || isMissingData(zz)) {
+            Diagnostics.report(getInputError(zz, 0.0d), zz, Double.NaN,
+                    "Mucal.getCrossSections");
+            result.fill(Double.NaN);
+            return result;
+        }
+        int z = zz - 1;
+        double[] fitCoh = XSECT_COH[z];
+        double[] fitNcoh = XSECT_NCOH[z];
+        double convFac = CONV_FAC[z];
+        double density = DENSITY[z];
+        for (int i = 0; i < n; i++) {
+            double ephot = energies[i];
+            if (ephot <= 0.0d) {
+                if (ephot < 0.0d) {
+                    Diagnostics.report(ErrorCode.bad_energy, zz, ephot,
+                            "Mucal.getCrossSections");
+                }
+                result.set(i, ephot == 0.0d ? 0.0d : Double.NaN);
+                continue;
+            }
+            if (isWithinEdge(z, ephot)) {
+                /* decrease energy 3 eV if too close to absorption edge */
+                Diagnostics.report(ErrorCode.within_edge, zz, ephot,
+                        "Mucal.getCrossSections");
+                ephot = ephot - 0.003d;
+                if (isWithinEdge(z, ephot)) {
+                    result.set(i, Double.NaN);
+                    continue;
+                }
+            }
+            int shell = getShell(z, ephot);
+            if (isMedgeWarning(z, shell)) {
+                Diagnostics.report(ErrorCode.m_edge_warn, zz, ephot,
+                        "Mucal.getCrossSections");
+                result.set(i, Double.NaN);
+                continue;
+            }
+            double log_e = Math.log(ephot);
+            double barn_photo = getPhotoBarns(z, ephot, log_e, shell);
+            double barn_coh = mcmaster_log(log_e, fitCoh);
+            double barn_ncoh = mcmaster_log(log_e, fitNcoh);
+            double barn_tot = barn_photo + barn_coh + barn_ncoh;
+            result._photo[i] = barn_photo / convFac;
+            result._coherent[i] = barn_coh / convFac;
+            result._incoherent[i] = barn_ncoh / convFac;
+            result._total[i] = barn_tot / convFac;
+            result._attenuation[i] = barn_tot * density / convFac;
+        }
+        return result;
+    }
+
+    /**
+     * Cross sections of one element at a set of energies, cm2/g, and the
+     * attenuation coefficient in 1/cm.
+     */
+    public static class CrossSections {
+        private final double[] _photo;
+        private final double[] _coherent;
+        private final double[] _incoherent;
+        private final double[] _total;
+        private final double[] _attenuation;
+
+        private CrossSections(int n) {
+            _photo = new double[n];
+            _coherent = new double[n];
+            _incoherent = new double[n];
+            _total = new double[n];
+            _attenuation = new double[n];
+        }
+
+        private void set(int i, double value) {
+            _photo[i] = value;
+            _coherent[i] = value;
+            _incoherent[i] = value;
+            _total[i] = value;
+            _attenuation[i] = value;
+        }
+
+        private void fill(double value) {
+            for (int i = 0; i < _photo.length; i++) {
+                set(i, value);
+            }
+        }
+
+        public double[] getPhoto() {
+            return _photo;
+        }
+
+        public double[] getCoherent() {
+            return _coherent;
+        }
+
+        public double[] getIncoherent() {
+            return _incoherent;
+        }
+
+        public double[] getTotal() {
+            return _total;
+        }
+
+        public double[] getAttenuation() {
+            return _attenuation;
+        }
+
+        /**
+         * @param quantity a quantity.
+         * @return the column of a quantity.
+         */
+        public double[] get(Quantity quantity) {
+            switch (quantity) {
+                case PHOTO:
+                    return _photo;
+                case COHERENT:
+                    return _coherent;
+                case INCOHERENT:
+                    return _incoherent;
+                case TOTAL:
+                    return _total;
+                default:
+                    return _attenuation;
+            }
+        }
+    }
+
+    /**
+     * Method checks if a photon energy is close to an absorption edge.
+     * @param zz atomic number.
+     * @param ephot photon energy in keV.
+     * @param margin max distance to edge in keV.
+     * @return true if the energy is within margin of the K, L1, L2, L3 or
+     * M edge, false also if there is no data for the element.
+     */
+    static boolean isNearEdge(int zz, double ephot, double margin) {
+        if (zz <= 0 || zz > ZMAX) {
+            return false;
+        }
+        int z = zz - 1;
+        return (Math.abs(K_EDGE[z] - ephot) <= margin)
+                || (Math.abs(L1_EDGE[z] - ephot) <= margin)
+                || (Math.abs(L2_EDGE[z] - ephot) <= margin)
+                || (Math.abs(L3_EDGE[z] - ephot) <= margin)
+                || (Math.abs(M_EDGE[z] - ephot) <= margin);
+    }
+
+    /**
+     * Method returns the absorption edge energies of an element without
+     * creating a Mucal object, same as getEnergy()[0..4] after calculate.
+     * @param zz atomic number.
+     * @return new array of K, L1, L2, L3 and M edge energies in keV, all 0
+     * if there is no data of the element.
+     */
+    public static double[] getEdgeEnergies(int zz) {
+        double[] edges = new double[5];
+        if (zz > 0 && zz <= ZMAX && !isMissingData(zz)) {
+            int z = zz - 1;
+            edges[0] = K_EDGE[z];
+            edges[1] = L1_EDGE[z];
+            edges[2] = L2_EDGE[z];
+            edges[3] = L3_EDGE[z];
+            edges[4] = M_EDGE[z];
+        }
+        return edges;
+    }
+
+    /**
+     * Method returns the flourescence yields of an element without creating
+     * a Mucal object, same as getFl_yield() after calculate.
+     * @param zz atomic number.
+     * @return new array of K, L1, L2 and L3 yields, all 0 if there is no
+     * data of the element.
+     */
+    public static double[] getFlourYields(int zz) {
+        double[] yields = new double[4];
+        if (zz > 0 && zz <= ZMAX && !isMissingData(zz)) {
+            int z = zz - 1;
+            yields[0] = K_YIELD[z];
+            yields[1] = L_YIELD[z][0];
+            yields[2] = L_YIELD[z][1];
+            yields[3] = L_YIELD[z][2];
+        }
+        return yields;
+    }
+
+    /**
+     * @param zz atomic number.
+     * @return true if there is data of the element, i.e. calculate does not
+     * return no_data.
+     */
+    public static boolean hasData(int zz) {
+        return zz <= ZMAX && !isMissingData(zz);
+    }
+
+    /* error code of calculate for bad Z or energy input */
+    private static ErrorCode getInputError(int zz, double ephot) {
+        if (zz == 0) {
+            return ErrorCode.no_input;
+        } else if (zz < 0) {
+            return ErrorCode.bad_z;
+        } else if (zz > ZMAX || isMissingData(zz)) {
+            return ErrorCode.no_data;
+        }
+        return ephot < 0.0d ? ErrorCode.bad_energy : ErrorCode.no_error;
+    }
+
+    /* McMaster did not have any data for Po, At, Fr, Ra, Ac, Pa and Np */
+    private static boolean isMissingData(int zz) {
+        return zz == 84 || zz == 85 || zz == 87 || zz == 88 || zz == 89
+                || zz == 91 || zz == 93;
+    }
+
+    /* check for photon energy within 1 eV of an edge, z numbered from 0 */
+    private static boolean isWithinEdge(int z, double ephot) {
+        return (Math.abs(K_EDGE[z] - ephot) <= 0.001)
+                || (Math.abs(L1_EDGE[z] - ephot) <= 0.001)
+                || (Math.abs(L2_EDGE[z] - ephot) <= 0.001)
+                || (Math.abs(L3_EDGE[z] - ephot) <= 0.001)
+                || (Math.abs(M_EDGE[z] - ephot) <= 0.001);
+    }
+
+    /* determine shell being ionized, z numbered from 0 */
+    private static int getShell(int z, double ephot) {
+        if (ephot >= K_EDGE[z]) /* K shell */ {
+            return 1;
+        } else if (ephot >= L3_EDGE[z]) /* L shell */ {
+            return 2;
+        } else if (ephot >= M_EDGE[z]) /* M1 subshell */ {
+            return 3;
+        }
+        return 4; /* everything else */
+    }
+
+    /* M edges for Z<30 are unreliable, z numbered from 0 */
+    private static boolean isMedgeWarning(int z, int shell) {
+        return shell > 2 && z + 1 < 30;
+    }
+
+    /* calculate photo-absorption barns/atom x-section, z numbered from 0 */
+    private static double getPhotoBarns(int z, double ephot, int shell) {
+        return getPhotoBarns(z, ephot, Math.log(ephot), shell);
+    }
+
+    private static double getPhotoBarns(int z, double ephot, double log_e, int shell) {
+        double barn_photo;
+        switch (shell) {
+
+            case 1:
+                /* K shell */
+                barn_photo = mcmaster_log(log_e, K_FIT[z]);
+                break;
+
+            case 2:
+                /* L shell */
+                barn_photo = mcmaster_log(log_e, L_FIT[z]);
+                if (ephot >= L1_EDGE[z]) /* above L1-no corrections */ {
+                    break;
+                } else if (ephot >= L2_EDGE[z]) /* between L1 and L2 */ {
+                    barn_photo /= L1_JUMP;
+                } else if (ephot >= L3_EDGE[z]) /* between L2 and L3 */ {
+                    barn_photo /= (L1_JUMP * L2_JUMP);
+                }
+                break;
+
+            case 3:
+                /* M1 subshell */
+                barn_photo = mcmaster_log(log_e, M_FIT[z]);
+                break;
+
+            default:
+                /* all other shells  */
+                barn_photo = mcmaster_log(log_e, N_FIT[z]);
+        }
+        return barn_photo;
+    }
+
     public double[] getEnergy() {
         return _energy;
     }
@@ -1819,10 +2093,59 @@ public Mucal(String name, int zz, double ephot, char unit, boolean pflag)
         return _fl_yield;
     }
 
+    /**
+     * @return text of the last error of calculate, null if no error. The
+     * text is created when first asked for.
+     */
     public String getErrmsg() {
+        if (_errmsg == null && _error != ErrorCode.no_error) {
+            _errmsg = getErrorText();
+        }
         return _errmsg;
     }
 
+    /* store an error of calculate and report it to the diagnostics */
+    private ErrorCode setError(ErrorCode code, int zz) {
+        _error = code;
+        _errorZ = zz;
+        _errmsg = null;
+        Diagnostics.report(code, zz, _ephot, "Mucal.calculate");
+        if (_pflag) {
+            System.out.printf("\n%s\n\n", getErrmsg());
+        }
+        return code;
+    }
+
+    private String getErrorText() {
+        switch (_error) {
+            case no_input:
+                return "mucal: no shirt/name, no shoes/Z, no service";
+            case bad_z:
+                return "mucal: Z must be non-negative";
+            case no_zmatch:
+                return "mucal: Z and element name are not consistent";
+            case no_data:
+                if (_errorZ > ZMAX) {
+                    return String.format("mucal: no data for Z>%d", ZMAX);
+                }
+                return "mucal: no data is avaialble for Po, At, Fr, Ra, Ac, Pa, Np";
+            case bad_name:
+                return String.format("mucal: invalid element name %s", _name);
+            case bad_energy:
+                return "mucal: photon energy must be non-negative";
+            case within_edge:
+                return String.format("%s\n%s",
+                        "mucal:  photon energy  is within 1 eV of edge",
+                        "        fit results may be inaccurate");
+            case m_edge_warn:
+                return String.format("%s\n%s",
+                        "mucal: McMaster et al. use L-edge fits for the M edges for Z<30",
+                        "WARNING: results may be inaccurate");
+            default:
+                return null;
+        }
+    }
+
     public void setEphot(double _ephot) {
         this._ephot = _ephot;
     }
@@ -24,19 +24,25 @@
 package se.e2t.formatters;
 
 import java.io.StringWriter;
-import se.e2t.xrfsource.spectrumclasses.SpectrumPart;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
 import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
 import se.e2t.xrfsource.format.spi.SpectrumFormatSPI;
 
 /**
  * Class formats spectrum data according to an xrfSource csv format.
  * Class implements the interface of the SpectrumFormatSPI.
+ * The first row marks the axis, "# axis = WAVELENGTH" or "# axis = ENERGY".
+ * Each following row is position, intensity, width and L or C for tube line
+ * or continuum slice. The position and the width are in Angstrom on the
+ * wavelength axis and in keV on the energy axis, see XraySpectrum.
  * 
  * @author Kent Ericsson, e2t AB
  */
 public class XrfSourceCsvFormatter implements SpectrumFormatSPI {
     private static final String DESCRIPTION = "xrfSource csv format";
     private static final String EXTENSION = "*.csv";
+    private static final String AXIS_MARKER = "# axis = ";
     private int _errorCode;
     private String _errorDescription;
     
@@ -62,20 +68,17 @@ public class XrfSourceCsvFormatter implements SpectrumFormatSPI {
         StringWriter strW;
         strW = new StringWriter();
 
+        // Mark the axis and the unit of positions and widths
+        Axis axis = spectrum.getAxis();
+        strW.write(String.format("%s%s, %s\n", AXIS_MARKER, axis.name(),
+                axis == Axis.ENERGY ? "keV" : "Angstrom"));
+
         // Print spectrum data
         // First the tube lines
-        for (SpectrumPart sp : spectrum.getTubeLines()) {
-            strW.write(String.format("%.3f, ", sp.getWavelength()));
-            strW.write(String.format("%.2e, ", sp.getIntensity()));
-            strW.write(String.format("%.2e, L\n", sp.getWindow()));
-        }
+        writeColumns(strW, spectrum.getTubeLineColumns(), "L");
 
         // Then the continum slices
-        for (SpectrumPart sp : spectrum.getContinuum()) {
-            strW.write(String.format("%.3f, ", sp.getWavelength()));
-            strW.write(String.format("%.2e, ", sp.getIntensity()));
-            strW.write(String.format("%.2e, C\n", sp.getWindow()));
-        }
+        writeColumns(strW, spectrum.getContinuumColumns(), "C");
 
         // Copy output to byte array
         strW.flush();
@@ -83,6 +86,23 @@ public class XrfSourceCsvFormatter implements SpectrumFormatSPI {
         return output.getBytes();
     }
 
+    private static void writeColumns(StringWriter strW, SpectrumColumns columns,
+            String partType) {
+        double[] position = columns.getPositions();
+        double[] intensity = columns.getIntensities();
+        double[] window = columns.getWindows();
+        for (int i = 0; i < columns.size(); i++) {
+            strW.write(String.format("%.3f, ", position[i]));
+            strW.write(String.format("%.2e, ", intensity[i]));
+            strW.write(String.format("%.2e, %s\n", window[i], partType));
+        }
+    }
+
+    @Override
+    public boolean isAxisAware() {
+        return true;
+    }
+
     @Override
     public int getErrorCode() {
         return _errorCode;
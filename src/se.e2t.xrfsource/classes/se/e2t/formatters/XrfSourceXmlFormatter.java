@@ -26,8 +26,9 @@ import java.io.StringWriter;
 import java.util.Date;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import se.e2t.xrfsource.spectrumclasses.SpectrumPart;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
 import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
 import se.e2t.xrfsource.format.spi.SpectrumFormatSPI;
 import javax.xml.transform.Transformer;
 import org.w3c.dom.Document;
@@ -44,16 +45,21 @@ import javax.xml.transform.stream.StreamResult;
 /**
  * Class formats spectrum data according to an xrfSource xml format.
  * Class implements the interface of the SpectrumFormatSPI.
+ * Spectra on the energy axis have the root attribute axis="ENERGY" and the
+ * parts have an energy attribute in keV instead of the wavelength, the
+ * width is in keV.
 
  *
  * @author Kent Ericsson, e2t AB
  */
 public class XrfSourceXmlFormatter implements SpectrumFormatSPI {
     private static final String ROOT_TAG = "XrfSourceSpectrum";
+    private static final String ATTR_AXIS = "axis";
     
     private static final String TUBE_LINES_ELEMENT_TAG = "TubeLines";
     private static final String TUBE_LINE_ELEMENT_TAG = "TubeLine";
     private static final String ATTR_WAVELENGTH = "wavelength";
+    private static final String ATTR_ENERGY = "energy";
     private static final String ATTR_WIDTH = "width";
     private static final String ATTR_INTENSITY = "intensity";
     
@@ -108,37 +114,26 @@ public class XrfSourceXmlFormatter implements SpectrumFormatSPI {
 
             // Add the root element
             Element root = doc.createElement(ROOT_TAG);
+            String positionTag = ATTR_WAVELENGTH;
+            if (spectrum.getAxis() == Axis.ENERGY) {
+                root.setAttribute(ATTR_AXIS, Axis.ENERGY.name());
+                positionTag = ATTR_ENERGY;
+            }
             doc.appendChild(root);
             
             // Add TubeLines element tag
             Element tubelinesElement = doc.createElement(TUBE_LINES_ELEMENT_TAG);
             root.appendChild(tubelinesElement);
             // Add child elements for each tube line
-            for (SpectrumPart tubeLine : spectrum.getTubeLines()) {
-                Element tElement = doc.createElement(TUBE_LINE_ELEMENT_TAG);
-                tElement.setAttribute(ATTR_WAVELENGTH, String.format("%.3f",
-                        tubeLine.getWavelength()));
-                tElement.setAttribute(ATTR_WIDTH, String.format("%.2e",
-                        tubeLine.getWindow()));
-                 tElement.setAttribute(ATTR_INTENSITY, String.format("%.2e",
-                        tubeLine.getIntensity()));
-                tubelinesElement.appendChild(tElement);
-            }
+            addPartElements(doc, tubelinesElement, TUBE_LINE_ELEMENT_TAG,
+                    positionTag, spectrum.getTubeLineColumns());
             
             // Continuum TubeLines element tag
             Element continuumElement = doc.createElement(CONTINUUM_ELEMENT_TAG);
             root.appendChild(continuumElement);
             // Add child elements for each continuum slice
-            for (SpectrumPart cSlice : spectrum.getContinuum()) {
-                Element csElement = doc.createElement(CONTINUUMSLICE_ELEMENT_TAG);
-                csElement.setAttribute(ATTR_WAVELENGTH, String.format("%.3f",
-                        cSlice.getWavelength()));
-                csElement.setAttribute(ATTR_WIDTH, String.format("%.2e",
-                        cSlice.getWindow()));
-                csElement.setAttribute(ATTR_INTENSITY, String.format("%.2e",
-                        cSlice.getIntensity()));
-                continuumElement.appendChild(csElement);
-            }  
+            addPartElements(doc, continuumElement, CONTINUUMSLICE_ELEMENT_TAG,
+                    positionTag, spectrum.getContinuumColumns());
             
             // Output the DOM object to a string and feed this string
             // through a transformer to adjust output
@@ -185,6 +180,33 @@ public class XrfSourceXmlFormatter implements SpectrumFormatSPI {
         }
     }
 
+    /**
+     * Method adds one child element for each part of a set of columns.
+     * The position is stored in the attribute positionTag, wavelength or
+     * energy.
+     */
+    private static void addPartElements(Document doc, Element parent,
+            String partTag, String positionTag, SpectrumColumns columns) {
+        double[] position = columns.getPositions();
+        double[] window = columns.getWindows();
+        double[] intensity = columns.getIntensities();
+        for (int i = 0; i < columns.size(); i++) {
+            Element pElement = doc.createElement(partTag);
+            pElement.setAttribute(positionTag, String.format("%.3f",
+                    position[i]));
+            pElement.setAttribute(ATTR_WIDTH, String.format("%.2e",
+                    window[i]));
+            pElement.setAttribute(ATTR_INTENSITY, String.format("%.2e",
+                    intensity[i]));
+            parent.appendChild(pElement);
+        }
+    }
+
+    @Override
+    public boolean isAxisAware() {
+        return true;
+    }
+
     @Override
     public int getErrorCode() {
         return _errorCode;
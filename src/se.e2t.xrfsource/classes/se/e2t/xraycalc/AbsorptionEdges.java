@@ -86,29 +86,28 @@ public class AbsorptionEdges {
      */
      public static Optional<Double> getEdgeEnergy(int atomZ, AbsEdge edge) {
         
-        // Create Mucal object for the calculations
+        // Get edge energies from the Mucal tables, no Mucal object is created
        
-        Mucal mc = new Mucal(null, atomZ, 0.0d, 'C', true);
-        Mucal.ErrorCode ec = mc.calculate();
-        if (ec != Mucal.ErrorCode.no_error) {
+        if (atomZ <= 0 || !Mucal.hasData(atomZ)) {
             return Optional.empty();
         }
+        double[] energies = Mucal.getEdgeEnergies(atomZ);
         
         // Return correct Edge energy
         
         Optional<Double> retval = Optional.empty();
         switch (edge) {
             case K_EDGE:
-                retval = Optional.of(mc.getEnergy()[0]); //K edge
+                retval = Optional.of(energies[0]); //K edge
                 break;
             case L1_EDGE:
-                retval = Optional.of(mc.getEnergy()[1]); //L1 edge
+                retval = Optional.of(energies[1]); //L1 edge
                 break;
             case L2_EDGE:
-                retval = Optional.of(mc.getEnergy()[2]); //L2 edge
+                retval = Optional.of(energies[2]); //L2 edge
                 break;
             case L3_EDGE:
-                retval = Optional.of(mc.getEnergy()[3]); //L3 edge
+                retval = Optional.of(energies[3]); //L3 edge
                 break;
             case M5_EDGE:
                 if (atomZ == 74) {
@@ -0,0 +1,301 @@
+/*
+ * File AdaptiveIntegration.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Arrays;
+import java.util.stream.DoubleStream;
+import se.e2t.abscoeffcalculate.Mucal;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class integrates the continuum with slices refined where needed. The
+ * slices of the SliceGrid are the largest slices, a slice containing an
+ * absorption edge, K, L1-L3 or M, of the anode or of an element of the
+ * window, filter or other attenuation layers is first split 2 eV above and
+ * below the edge, as Mucal places the step within 1 eV of the edge, so no
+ * slice holds a step of the integrand. Each slice is then compared with
+ * its two halves: the error of the halves is taken as the difference
+ * between the slice and the sum of the halves. This is larger than the
+ * asymptotic estimate, the difference divided by 2^p - 1 for a rule of
+ * order p, which falls below the real error of slices where the two values
+ * agree by chance. For the same reason the grid slices are always halved
+ * at least once. A slice is kept, with the sum of the halves as intensity,
+ * if the error is within the tolerance times the larger of its own
+ * intensity and its share by width of the total intensity, else both
+ * halves are refined the same way. The share by
+ * width keeps weak slices, e.g. at the short wavelength limit, from being
+ * refined to the max depth.
+ * All slices of one refinement level are calculated in one call of the
+ * SliceIntegrator.
+ */
+public class AdaptiveIntegration {
+
+    // Max number of times a grid slice is halved
+    public static final int MAX_DEPTH = 20;
+
+    private final double _tolerance;
+    private double[] _centers;
+    private double[] _widths;
+    private double[] _intensities;
+    private double _error = 0.0d;     // Estimated absolute error
+    private double _total = 0.0d;
+    private int _evaluations = 0;
+    private int _unresolved = 0;      // Slices stopped by MAX_DEPTH
+
+    /**
+     * Creates an integration and integrates the continuum.
+     * @param integrator calculates the intensities of a set of slices.
+     * @param context values fixed during the calculation.
+     * @param chain attenuation of the integrated intensities, its absorption
+     * edges are slice limits.
+     * @param grid the largest slices.
+     * @param tolerance relative tolerance, above 0.
+     */
+    AdaptiveIntegration(SliceIntegrator integrator, CalculationContext context,
+            AttenuationChain chain, SliceGrid grid, double tolerance) {
+        _tolerance = tolerance;
+        integrate(integrator, getEdgeWavelengths(context, chain), grid);
+    }
+
+    private void integrate(SliceIntegrator integrator, double[] edges,
+            SliceGrid grid) {
+
+        // Grid slices split at absorption edges
+        Slices pending = new Slices(grid.size() + edges.length);
+        for (int i = 0; i < grid.size(); i++) {
+            double lower = grid.getCenter(i) - grid.getWidth(i) / 2.0d;
+            double upper = grid.getCenter(i) + grid.getWidth(i) / 2.0d;
+            for (double edge : edges) {
+                if (edge > lower && edge < upper) {
+                    pending.add(lower, edge - lower, 0.0d);
+                    lower = edge;
+                }
+            }
+            pending.add(lower, upper - lower, 0.0d);
+        }
+        double[] intensities = new double[pending._size];
+        integrator.integrate(pending.getCenters(),
+                Arrays.copyOf(pending._widths, pending._size), intensities);
+        System.arraycopy(intensities, 0, pending._intensities, 0, intensities.length);
+        _evaluations += intensities.length;
+        _total = Math.abs(Arrays.stream(intensities).sum());
+        double totalWidth = Arrays.stream(pending._widths, 0, pending._size).sum();
+
+        // Refine one level at a time
+        Slices accepted = new Slices(pending._size);
+        Slices current = pending;
+        for (int depth = 1; current._size > 0; depth++) {
+            int n = current._size;
+            double[] halfCenters = new double[2 * n];
+            double[] halfWidths = new double[2 * n];
+            double[] halfIntensities = new double[2 * n];
+            for (int i = 0; i < n; i++) {
+                double half = current._widths[i] / 2.0d;
+                halfCenters[2 * i] = current._lowers[i] + half / 2.0d;
+                halfCenters[2 * i + 1] = current._lowers[i] + 1.5d * half;
+                halfWidths[2 * i] = half;
+                halfWidths[2 * i + 1] = half;
+            }
+            integrator.integrate(halfCenters, halfWidths, halfIntensities);
+            _evaluations += 2 * n;
+
+            Slices next = new Slices(2 * n);
+            for (int i = 0; i < n; i++) {
+                double fine = halfIntensities[2 * i] + halfIntensities[2 * i + 1];
+                double error = Math.abs(fine - current._intensities[i]);
+                double limit = _tolerance * Math.max(Math.abs(fine),
+                        _total * current._widths[i] / totalWidth);
+                // Slices without a value, e.g. Mucal errors, are not refined
+                if ((error <= limit && depth > 1) || depth == MAX_DEPTH
+                        || Double.isNaN(error)) {
+                    accepted.add(current._lowers[i], current._widths[i], fine);
+                    _error += error;
+                    if (error > limit) {
+                        _unresolved++;
+                    }
+                } else {
+                    next.add(current._lowers[i], halfWidths[2 * i],
+                            halfIntensities[2 * i]);
+                    next.add(current._lowers[i] + halfWidths[2 * i],
+                            halfWidths[2 * i + 1], halfIntensities[2 * i + 1]);
+                }
+            }
+            current = next;
+        }
+
+        // Slices in wavelength order
+        Integer[] order = new Integer[accepted._size];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Double.compare(accepted._lowers[a], accepted._lowers[b]));
+        _centers = new double[order.length];
+        _widths = new double[order.length];
+        _intensities = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            _widths[i] = accepted._widths[order[i]];
+            _centers[i] = accepted._lowers[order[i]] + _widths[i] / 2.0d;
+            _intensities[i] = accepted._intensities[order[i]];
+        }
+        _total = Math.abs(Arrays.stream(_intensities).sum());
+    }
+
+    /**
+     * Method returns the wavelengths 2 eV above and below the K, L1, L2, L3
+     * and M absorption edges of the anode and of the elements of the
+     * attenuation layers, edges without data are left out.
+     */
+    private static double[] getEdgeWavelengths(CalculationContext context,
+            AttenuationChain chain) {
+        DoubleStream.Builder energies = DoubleStream.builder();
+        for (int edge = 0; edge < 5; edge++) {
+            energies.add(context.getAnodeModel().getEdgeEnergy(edge));
+        }
+        chain.getLayers().stream()
+                .flatMapToInt(layer -> Arrays.stream(layer.getAtomicNumbers()))
+                .distinct()
+                .forEach(z -> Arrays.stream(Mucal.getEdgeEnergies(z))
+                        .forEach(energies::add));
+        return energies.build()
+                .filter(energy -> energy > SliceGrid.EDGE_MARGIN)
+                .distinct()
+                .flatMap(energy -> DoubleStream.of(energy + SliceGrid.EDGE_MARGIN,
+                        energy - SliceGrid.EDGE_MARGIN))
+                .map(energy -> Inparameters.CONV_KEV_ANGSTROM / energy)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * @return a copy of the slice center wavelengths.
+     */
+    public double[] getCenters() {
+        return _centers.clone();
+    }
+
+    /**
+     * @return a copy of the slice widths.
+     */
+    public double[] getWidths() {
+        return _widths.clone();
+    }
+
+    /**
+     * @return a copy of the slice intensities.
+     */
+    public double[] getIntensities() {
+        return _intensities.clone();
+    }
+
+    public double getTolerance() {
+        return _tolerance;
+    }
+
+    /**
+     * @return number of slices.
+     */
+    public int size() {
+        return _centers.length;
+    }
+
+    /**
+     * @return number of slice intensities calculated.
+     */
+    public int getEvaluations() {
+        return _evaluations;
+    }
+
+    /**
+     * @return estimated error of the total continuum intensity relative to
+     * the total, sum of the estimated errors of the slices.
+     */
+    public double getEstimatedError() {
+        return _total == 0.0d ? 0.0d : _error / _total;
+    }
+
+    /**
+     * @return number of slices halved MAX_DEPTH times without meeting the
+     * tolerance.
+     */
+    public int getUnresolvedCount() {
+        return _unresolved;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d slices, %d evaluations, estimated error %.3g"
+                + " (tolerance %.3g)%s", size(), _evaluations, getEstimatedError(),
+                _tolerance, _unresolved > 0 ? ", " + _unresolved + " unresolved" : "");
+    }
+
+    /**
+     * Calculates the intensities of a set of slices.
+     */
+    interface SliceIntegrator {
+
+        /**
+         * @param centers center wavelengths in Angstrom.
+         * @param widths slice widths in Angstrom.
+         * @param intensities calculated intensities, same length as centers.
+         */
+        void integrate(double[] centers, double[] widths, double[] intensities);
+    }
+
+    /**
+     * Growing arrays of slices: lower wavelength, width and intensity.
+     */
+    private static class Slices {
+        private double[] _lowers;
+        private double[] _widths;
+        private double[] _intensities;
+        private int _size = 0;
+
+        Slices(int capacity) {
+            capacity = Math.max(capacity, 16);
+            _lowers = new double[capacity];
+            _widths = new double[capacity];
+            _intensities = new double[capacity];
+        }
+
+        void add(double lower, double width, double intensity) {
+            if (_size == _lowers.length) {
+                _lowers = Arrays.copyOf(_lowers, 2 * _size);
+                _widths = Arrays.copyOf(_widths, 2 * _size);
+                _intensities = Arrays.copyOf(_intensities, 2 * _size);
+            }
+            _lowers[_size] = lower;
+            _widths[_size] = width;
+            _intensities[_size] = intensity;
+            _size++;
+        }
+
+        double[] getCenters() {
+            double[] centers = new double[_size];
+            for (int i = 0; i < _size; i++) {
+                centers[i] = _lowers[i] + _widths[i] / 2.0d;
+            }
+            return centers;
+        }
+    }
+}
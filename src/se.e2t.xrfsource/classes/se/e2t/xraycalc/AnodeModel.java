@@ -0,0 +1,226 @@
+/*
+ * File AnodeModel.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import se.e2t.abscoeffcalculate.Mucal;
+import se.e2t.xraycalc.AbsorptionEdges.AbsEdge;
+import se.e2t.xraycalc.TubeLines.LineInfo;
+import se.e2t.xraycalc.TubeLines.XrfLine;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class stores the tube line data of one anode element in flat arrays:
+ * energy, natural width, absorption edge, edge energy, flourescence yield
+ * and transition probability of each line, in XrfLine order. The data is
+ * collected from TubeLines, AbsorptionEdges, FlourYield and
+ * TransProbabilities once per element, the line calculations are then
+ * straight loops over the arrays.
+ * A model is immutable and shared by all calculations.
+ */
+public class AnodeModel {
+
+    private static final Map<Integer, AnodeModel> MODELS = new ConcurrentHashMap<>();
+
+    private final int _atomicNumber;
+    private final LineSet _majorLines;
+    private final LineSet _lLines;
+    private final double[] _edgeEnergies; // K, L1, L2, L3, M from Mucal
+    private final double[] _flourYields;  // K, L1, L2, L3 from Mucal
+
+    private AnodeModel(int atomicNumber) {
+        _atomicNumber = atomicNumber;
+        _majorLines = new LineSet(atomicNumber, TubeLines.getMajorLineInfo());
+        _lLines = new LineSet(atomicNumber, TubeLines.getLlineInfo());
+        _edgeEnergies = Mucal.getEdgeEnergies(atomicNumber);
+        _flourYields = Mucal.getFlourYields(atomicNumber);
+    }
+
+    /**
+     * Method returns the model of an anode element, it is created the first
+     * time it is asked for.
+     * @param atomicNumber atomic number of the anode.
+     * @return the model.
+     */
+    public static AnodeModel getModel(int atomicNumber) {
+        return MODELS.computeIfAbsent(atomicNumber, AnodeModel::new);
+    }
+
+    public int getAtomicNumber() {
+        return _atomicNumber;
+    }
+
+    /**
+     * @return the K lines and the major L and M lines, see
+     * TubeLines.getMajorLineInfo.
+     */
+    public LineSet getMajorLines() {
+        return _majorLines;
+    }
+
+    /**
+     * @return the L lines, see TubeLines.getLlineInfo.
+     */
+    public LineSet getLlines() {
+        return _lLines;
+    }
+
+    /**
+     * @param index 0 K, 1 L1, 2 L2, 3 L3, 4 M.
+     * @return edge energy in keV from Mucal, 0 if no data.
+     */
+    public double getEdgeEnergy(int index) {
+        return _edgeEnergies[index];
+    }
+
+    /**
+     * @param index 0 K, 1 L1, 2 L2, 3 L3.
+     * @return flourescence yield from Mucal, 0 if no data.
+     */
+    public double getFlourYield(int index) {
+        return _flourYields[index];
+    }
+
+    /**
+     * Data of a set of tube lines of one element, index 0 to size() - 1.
+     */
+    public static class LineSet {
+        private final XrfLine[] _lines;
+        private final int[] _indexOf; // Index of each XrfLine ordinal, -1 if missing
+        private final LineInfo[] _lineInfo;
+        private final double[] _energies;      // keV
+        private final double[] _wavelengths;   // Angstrom
+        private final double[] _lineWidths;    // eV
+        private final AbsEdge[] _edges;
+        private final double[] _edgeEnergies;  // keV
+        private final double[] _yields;        // NaN if missing
+        private final double[] _transProbs;    // NaN if missing
+
+        private LineSet(int z, Map<XrfLine, Map<Integer, LineInfo>> lineInfo) {
+            List<XrfLine> lines = new ArrayList<>();
+            for (XrfLine xrfLine : XrfLine.values()) {
+                Map<Integer, LineInfo> elementInfo = lineInfo.get(xrfLine);
+                if (elementInfo != null && elementInfo.get(z) != null) {
+                    lines.add(xrfLine);
+                }
+            }
+            int n = lines.size();
+            _lines = lines.toArray(new XrfLine[n]);
+            _indexOf = new int[XrfLine.values().length];
+            Arrays.fill(_indexOf, -1);
+            _lineInfo = new LineInfo[n];
+            _energies = new double[n];
+            _wavelengths = new double[n];
+            _lineWidths = new double[n];
+            _edges = new AbsEdge[n];
+            _edgeEnergies = new double[n];
+            _yields = new double[n];
+            _transProbs = new double[n];
+            for (int i = 0; i < n; i++) {
+                XrfLine xrfLine = _lines[i];
+                LineInfo info = lineInfo.get(xrfLine).get(z);
+                _indexOf[xrfLine.ordinal()] = i;
+                _lineInfo[i] = info;
+                _energies[i] = info.getEnergy();
+                _wavelengths[i] = Inparameters.CONV_KEV_ANGSTROM / info.getEnergy();
+                _lineWidths[i] = info.getLineWidth();
+                _edgeEnergies[i] = info.getAbsorptionEdge();
+                _edges[i] = AbsorptionEdges.getEdge(xrfLine).orElse(null);
+                _yields[i] = _edges[i] == null ? Double.NaN
+                        : FlourYield.getYield(z, _edges[i]).orElse(Double.NaN);
+                _transProbs[i] = TransProbabilities.getTransProb(z, xrfLine)
+                        .orElse(Double.NaN);
+            }
+        }
+
+        public int size() {
+            return _lines.length;
+        }
+
+        public XrfLine getLine(int index) {
+            return _lines[index];
+        }
+
+        /**
+         * @param xrfLine the line.
+         * @return index of the line, -1 if the element has no such line.
+         */
+        public int indexOf(XrfLine xrfLine) {
+            return _indexOf[xrfLine.ordinal()];
+        }
+
+        /**
+         * @param xrfLine the line.
+         * @return data of the line, null if the element has no such line.
+         */
+        public LineInfo getLineInfo(XrfLine xrfLine) {
+            int index = _indexOf[xrfLine.ordinal()];
+            return index < 0 ? null : _lineInfo[index];
+        }
+
+        public double getEnergy(int index) {
+            return _energies[index];
+        }
+
+        public double getWavelength(int index) {
+            return _wavelengths[index];
+        }
+
+        public double getLineWidth(int index) {
+            return _lineWidths[index];
+        }
+
+        public AbsEdge getEdge(int index) {
+            return _edges[index];
+        }
+
+        public double getEdgeEnergy(int index) {
+            return _edgeEnergies[index];
+        }
+
+        public double getYield(int index) {
+            return _yields[index];
+        }
+
+        public double getTransProb(int index) {
+            return _transProbs[index];
+        }
+
+        /**
+         * @param index line index.
+         * @return true if absorption edge, flourescence yield and transition
+         * probability of the line are known.
+         */
+        public boolean hasIntensityData(int index) {
+            return _edges[index] != null && !Double.isNaN(_yields[index])
+                    && !Double.isNaN(_transProbs[index]);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * File AttenuationChain.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.abscoeffcalculate.AbsCoefficient.Settings;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+
+/**
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class is an ordered set of layers attenuating the tube spectrum: the tube
+ * window, the filter and optionally e.g. a gas path and a detector window.
+ * The combined transmission of all layers at a set of wavelengths, e.g. the
+ * slices of a SliceGrid, is calculated once and cached, so calculations
+ * with the same window and filter but other voltages or algorithms share
+ * the transmission curve of the continuum. Curves of photon energies, used
+ * by spectra on the energy axis, are cached the same way. The cache is keyed
+ * on the absorption coefficient backend and its settings, see
+ * AbsCoefficient.getSettings, and bounded by the number of cached values.
+ * Values used once, e.g. the nodes of a slice quadrature, are calculated by
+ * calculateCurve without the cache.
+ * A chain is immutable.
+ */
+public class AttenuationChain {
+
+    // Max number of curve values in the cache, keys not counted
+    private static final int MAX_CACHED_VALUES = 1 << 20;
+
+    // Cached transmission curves, least recently used curve removed first
+    private static final Map<CurveKey, double[]> CURVE_CACHE
+            = new LinkedHashMap<>(16, 0.75f, true);
+    private static int _cachedValues = 0;    // Guarded by CURVE_CACHE
+
+    private final List<AttenuationLayer> _layers;
+
+    /**
+     * Creates a chain.
+     * @param layers the layers in the order the radiation passes them.
+     */
+    public AttenuationChain(List<AttenuationLayer> layers) {
+        _layers = Collections.unmodifiableList(new ArrayList<>(layers));
+    }
+
+    /**
+     * Method returns the chain of the tube window and, if the filter has
+     * components and a thickness, the filter.
+     * @param inParameters calculation parameters.
+     * @return the chain.
+     */
+    public static AttenuationChain getChain(Inparameters inParameters) {
+        List<AttenuationLayer> layers = new ArrayList<>();
+        layers.add(AttenuationLayer.getElementLayer("Window",
+                inParameters.getWindowElement().getAtomicNumber(),
+                inParameters.getWindowThickness()));
+        List<FilterElement> filterElems = inParameters.getFilterElements();
+        double filterThickness = inParameters.getFilterThickness();
+        if (!filterElems.isEmpty() && filterThickness != 0.0d) {
+            layers.add(AttenuationLayer.getFilterLayer(filterElems, filterThickness));
+        }
+        return new AttenuationChain(layers);
+    }
+
+    /**
+     * Method returns a new chain with a layer added last.
+     * @param layer the layer.
+     * @return the new chain.
+     */
+    public AttenuationChain with(AttenuationLayer layer) {
+        List<AttenuationLayer> layers = new ArrayList<>(_layers);
+        layers.add(layer);
+        return new AttenuationChain(layers);
+    }
+
+    public List<AttenuationLayer> getLayers() {
+        return _layers;
+    }
+
+    /**
+     * Method returns the combined transmission of all layers, from the cache
+     * if it has been calculated before.
+     * @param wavelengths wavelengths in Angstrom.
+     * @return transmitted fraction of each wavelength.
+     */
+    public double[] getTransmission(double[] wavelengths) {
+        return getCurve(wavelengths.clone(), false).clone();
+    }
+
+    /**
+     * Method returns the combined transmission of all layers at a set of
+     * photon energies, from the cache if it has been calculated before.
+     * @param energies energies in keV.
+     * @return transmitted fraction of each energy.
+     */
+    public double[] getTransmissionAtEnergies(double[] energies) {
+        return getCurve(energies.clone(), true).clone();
+    }
+
+    /**
+     * Method multiplies the intensities of a set of columns with the
+     * combined transmission of all layers.
+     * @param columns the columns.
+     */
+    public void apply(SpectrumColumns columns) {
+        columns.multiplyIntensities(getCurve(
+                Arrays.copyOf(columns.getWavelengths(), columns.size()), false));
+    }
+
+    /**
+     * Method multiplies the intensities of a set of columns on the energy
+     * axis with the combined transmission of all layers.
+     * @param columns the columns, energies in keV.
+     */
+    public void applyAtEnergies(SpectrumColumns columns) {
+        columns.multiplyIntensities(getCurve(
+                Arrays.copyOf(columns.getWavelengths(), columns.size()), true));
+    }
+
+    private double[] getCurve(double[] values, boolean energies) {
+        CurveKey key = new CurveKey(this, AbsCoefficient.getSettings(), values,
+                energies);
+        double[] curve;
+        synchronized (CURVE_CACHE) {
+            curve = CURVE_CACHE.get(key);
+        }
+        if (curve == null) {
+            // Curves are calculated outside the lock, an equal curve may be
+            // calculated twice by concurrent calculations
+            curve = calculateCurve(values, energies);
+            if (curve.length <= MAX_CACHED_VALUES) {
+                putCurve(key, curve);
+            }
+        }
+        return curve;
+    }
+
+    /**
+     * Method caches a curve, least recently used curves are removed until
+     * the cached values are within MAX_CACHED_VALUES.
+     */
+    private static void putCurve(CurveKey key, double[] curve) {
+        synchronized (CURVE_CACHE) {
+            double[] previous = CURVE_CACHE.put(key, curve);
+            _cachedValues += curve.length
+                    - (previous == null ? 0 : previous.length);
+            Iterator<double[]> eldest = CURVE_CACHE.values().iterator();
+            while (_cachedValues > MAX_CACHED_VALUES) {
+                _cachedValues -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Method calculates the combined transmission of all layers without
+     * using the cache, for wavelengths that are not used again.
+     * @param wavelengths wavelengths in Angstrom.
+     * @return transmitted fraction of each wavelength.
+     */
+    double[] calculateCurve(double[] wavelengths) {
+        return calculateCurve(wavelengths, false);
+    }
+
+    /**
+     * Method calculates the combined transmission of all layers at a set of
+     * photon energies without using the cache.
+     * @param energies energies in keV.
+     * @return transmitted fraction of each energy.
+     */
+    double[] calculateCurveAtEnergies(double[] energies) {
+        return calculateCurve(energies, true);
+    }
+
+    /**
+     * Method calculates the combined transmission of all layers, in chunks of
+     * values if the calculation has a slice pool, see
+     * SourceCalculation.setSlicePool.
+     */
+    private double[] calculateCurve(double[] values, boolean energies) {
+        double[] curve = new double[values.length];
+        SliceChunks.evaluate(0, values.length, (from, to) -> {
+            double[] part = from == 0 && to == values.length
+                    ? values : Arrays.copyOfRange(values, from, to);
+            Arrays.fill(curve, from, to, 1.0d);
+            for (AttenuationLayer layer : _layers) {
+                double[] transmission = energies
+                        ? layer.getTransmissionAtEnergies(part)
+                        : layer.getTransmission(part);
+                for (int i = from; i < to; i++) {
+                    curve[i] *= transmission[i - from];
+                }
+            }
+        });
+        return curve;
+    }
+
+    /**
+     * Method removes all cached transmission curves.
+     */
+    public static void clearCache() {
+        synchronized (CURVE_CACHE) {
+            CURVE_CACHE.clear();
+            _cachedValues = 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AttenuationChain)) {
+            return false;
+        }
+        return _layers.equals(((AttenuationChain) obj)._layers);
+    }
+
+    @Override
+    public int hashCode() {
+        return _layers.hashCode();
+    }
+
+    /**
+     * Key of a cached curve, the wavelengths or energies array is owned by
+     * the key.
+     */
+    private static class CurveKey {
+        private final AttenuationChain _chain;
+        private final Settings _settings;
+        private final double[] _wavelengths;
+        private final boolean _energies;
+        private final int _hash;
+
+        CurveKey(AttenuationChain chain, Settings settings, double[] wavelengths,
+                boolean energies) {
+            _chain = chain;
+            _settings = settings;
+            _wavelengths = wavelengths;
+            _energies = energies;
+            _hash = Objects.hash(chain, settings, energies) * 31
+                    + Arrays.hashCode(wavelengths);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CurveKey)) {
+                return false;
+            }
+            CurveKey other = (CurveKey) obj;
+            return _hash == other._hash
+                    && _settings.equals(other._settings)
+                    && _energies == other._energies
+                    && _chain.equals(other._chain)
+                    && Arrays.equals(_wavelengths, other._wavelengths);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * File AttenuationLayer.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Arrays;
+import java.util.List;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class describes one layer attenuating the tube spectrum, e.g. the tube
+ * window, a filter, a gas path or a detector window. A layer has one or more
+ * elements with mass fractions and a thickness in micrometer.
+ * If no density is given the attenuation coefficient of each element at its
+ * own density is used, as for the tube window and filter. If a density is
+ * given the mass absorption coefficients are used with that density, e.g.
+ * for a gas.
+ * A layer is immutable.
+ */
+public class AttenuationLayer {
+
+    private final String _name;
+    private final int[] _atomicNumbers;
+    private final double[] _fractions;
+    private final double _thickness; // micrometer
+    private final double _density;   // g/cm3, NaN for element densities
+
+    /**
+     * Creates a layer using the densities of the elements.
+     * @param name name of the layer, e.g. "Window".
+     * @param atomicNumbers atomic numbers of the elements.
+     * @param fractions mass fractions of the elements.
+     * @param thickness thickness in micrometer.
+     */
+    public AttenuationLayer(String name, int[] atomicNumbers, double[] fractions,
+            double thickness) {
+        this(name, atomicNumbers, fractions, thickness, Double.NaN);
+    }
+
+    /**
+     * Creates a layer.
+     * @param name name of the layer, e.g. "Gas path".
+     * @param atomicNumbers atomic numbers of the elements.
+     * @param fractions mass fractions of the elements.
+     * @param thickness thickness in micrometer.
+     * @param density density in g/cm3, NaN to use the element densities.
+     */
+    public AttenuationLayer(String name, int[] atomicNumbers, double[] fractions,
+            double thickness, double density) {
+        if (atomicNumbers.length != fractions.length) {
+            throw new IllegalArgumentException("One fraction per element is needed");
+        }
+        _name = name;
+        _atomicNumbers = atomicNumbers.clone();
+        _fractions = fractions.clone();
+        _thickness = thickness;
+        _density = density;
+    }
+
+    /**
+     * Method creates a layer of one element, e.g. a tube or detector window.
+     * @param name name of the layer.
+     * @param atomicNumber atomic number.
+     * @param thickness thickness in micrometer.
+     * @return the layer.
+     */
+    public static AttenuationLayer getElementLayer(String name, int atomicNumber,
+            double thickness) {
+        return new AttenuationLayer(name, new int[]{atomicNumber},
+                new double[]{1.0d}, thickness);
+    }
+
+    /**
+     * Method creates a filter layer.
+     * @param filterElements the filter components.
+     * @param thickness thickness in micrometer.
+     * @return the layer.
+     */
+    public static AttenuationLayer getFilterLayer(List<FilterElement> filterElements,
+            double thickness) {
+        int[] atomicNumbers = new int[filterElements.size()];
+        double[] fractions = new double[filterElements.size()];
+        for (int i = 0; i < atomicNumbers.length; i++) {
+            atomicNumbers[i] = filterElements.get(i).getSelectedElement().getAtomicNumber();
+            fractions[i] = filterElements.get(i).getConc();
+        }
+        return new AttenuationLayer("Filter", atomicNumbers, fractions, thickness);
+    }
+
+    /**
+     * Method creates a gas path layer.
+     * @param atomicNumbers atomic numbers of the gas elements.
+     * @param fractions mass fractions of the gas elements.
+     * @param density gas density in g/cm3.
+     * @param length path length in mm.
+     * @return the layer.
+     */
+    public static AttenuationLayer getGasPath(int[] atomicNumbers, double[] fractions,
+            double density, double length) {
+        return new AttenuationLayer("Gas path", atomicNumbers, fractions,
+                1000.0d * length, density);
+    }
+
+    /**
+     * Method calculates the transmission of the layer.
+     * @param wavelengths wavelengths in Angstrom.
+     * @return transmitted fraction of each wavelength.
+     */
+    public double[] getTransmission(double[] wavelengths) {
+        return getTransmission(wavelengths, false);
+    }
+
+    /**
+     * Method calculates the transmission of the layer at a set of photon
+     * energies.
+     * @param energies energies in keV.
+     * @return transmitted fraction of each energy.
+     */
+    public double[] getTransmissionAtEnergies(double[] energies) {
+        return getTransmission(energies, true);
+    }
+
+    private double[] getTransmission(double[] values, boolean energies) {
+        // Calculate attenuation coefficients, sum of element coefficients
+        // times concentration
+        double[] factors = new double[values.length];
+        for (int j = 0; j < _atomicNumbers.length; j++) {
+            double conc = _fractions[j];
+            int z = _atomicNumbers[j];
+            double[] attC;
+            if (energies) {
+                attC = Double.isNaN(_density)
+                        ? AbsCoefficient.getAttenuationCoefficientsAtEnergies(z, values)
+                        : AbsCoefficient.getMassAbsCoefficientsAtEnergies(z, values);
+            } else {
+                attC = Double.isNaN(_density)
+                        ? AbsCoefficient.getAttenuationCoefficients(z, values)
+                        : AbsCoefficient.getMassAbsCoefficients(z, values);
+            }
+            for (int i = 0; i < factors.length; i++) {
+                factors[i] += attC[i] * conc;
+            }
+        }
+        double cmThickness = 0.0001d * _thickness;
+        if (!Double.isNaN(_density)) {
+            cmThickness *= _density;
+        }
+        for (int i = 0; i < factors.length; i++) {
+            factors[i] = Math.exp(-factors[i] * cmThickness);
+        }
+        return factors;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public int[] getAtomicNumbers() {
+        return _atomicNumbers.clone();
+    }
+
+    public double[] getFractions() {
+        return _fractions.clone();
+    }
+
+    public double getThickness() {
+        return _thickness;
+    }
+
+    public double getDensity() {
+        return _density;
+    }
+
+    /**
+     * Layers are equal if composition, thickness and density are equal, the
+     * name is not compared.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AttenuationLayer)) {
+            return false;
+        }
+        AttenuationLayer other = (AttenuationLayer) obj;
+        return Arrays.equals(_atomicNumbers, other._atomicNumbers)
+                && Arrays.equals(_fractions, other._fractions)
+                && Double.compare(_thickness, other._thickness) == 0
+                && Double.compare(_density, other._density) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Arrays.hashCode(_atomicNumbers);
+        hash = 31 * hash + Arrays.hashCode(_fractions);
+        hash = 31 * hash + Double.hashCode(_thickness);
+        return 31 * hash + Double.hashCode(_density);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * File CalculationContext.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class holds the values that are fixed during one spectrum calculation:
+ * the parameters, the anode element and its line model, tube voltage,
+ * short wavelength limit, the sines of the electron incident and photon
+ * exiting angles and the math functions of the math mode. The context is
+ * created once by SourceCalculation.calculate and passed to the continuum
+ * and tube line calculations.
+ * The calculation classes extend this class with the invariants of their
+ * own algorithm, see SourceCalculation.createContext.
+ */
+public class CalculationContext {
+
+    private final Inparameters _parameters;
+    private final int _anodeZ;
+    private final double _anodeZd;
+    private final AnodeModel _anodeModel;
+    private final double _tubeVoltage;   // keV
+    private final double _minWavelength; // Angstrom
+    private final double _takeOffAngle;  // radians
+    private final double _sinInAngle;
+    private final double _sinOutAngle;
+    private final MathFunctions _math;
+
+    public CalculationContext(Inparameters inParameters) {
+        _parameters = inParameters;
+        _anodeZ = inParameters.getAnodeElement().getAtomicNumber();
+        _anodeZd = (double) _anodeZ;
+        _anodeModel = AnodeModel.getModel(_anodeZ);
+        _tubeVoltage = inParameters.getTubeVoltage();
+        _minWavelength = Inparameters.CONV_KEV_ANGSTROM / _tubeVoltage;
+        _takeOffAngle = inParameters.getOutAngle() * Inparameters.ANGLE_CONV;
+        _sinInAngle = Math.sin(inParameters.getInAngle() * Inparameters.ANGLE_CONV);
+        _sinOutAngle = Math.sin(_takeOffAngle);
+        _math = MathFunctions.getFunctions(inParameters);
+    }
+
+    public Inparameters getParameters() {
+        return _parameters;
+    }
+
+    /**
+     * @return atomic number of the anode.
+     */
+    public int getAnodeZ() {
+        return _anodeZ;
+    }
+
+    /**
+     * @return atomic number of the anode as a double.
+     */
+    public double getAnodeZd() {
+        return _anodeZd;
+    }
+
+    public AnodeModel getAnodeModel() {
+        return _anodeModel;
+    }
+
+    /**
+     * @return tube voltage, also the max photon energy in keV.
+     */
+    public double getTubeVoltage() {
+        return _tubeVoltage;
+    }
+
+    /**
+     * @return short wavelength limit of the continuum in Angstrom.
+     */
+    public double getMinWavelength() {
+        return _minWavelength;
+    }
+
+    /**
+     * @return photon exiting angle in radians.
+     */
+    public double getTakeOffAngle() {
+        return _takeOffAngle;
+    }
+
+    /**
+     * @return sine of the electron incident angle.
+     */
+    public double getSinInAngle() {
+        return _sinInAngle;
+    }
+
+    /**
+     * @return sine of the photon exiting angle.
+     */
+    public double getSinOutAngle() {
+        return _sinOutAngle;
+    }
+
+    /**
+     * @return exp, log and pow of the math mode of the parameters, used by
+     * the continuum formulas.
+     */
+    public MathFunctions getMath() {
+        return _math;
+    }
+}
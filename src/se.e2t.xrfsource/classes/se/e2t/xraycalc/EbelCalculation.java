@@ -23,15 +23,8 @@
  */
 package se.e2t.xraycalc;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import se.e2t.abscoeffcalculate.AbsCoefficient;
-import se.e2t.xraycalc.AbsorptionEdges.AbsEdge;
-import se.e2t.xraycalc.TubeLines.LineInfo;
-import se.e2t.xrfsource.spectrumclasses.SpectrumPart;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
 import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
 
 /**
@@ -55,36 +48,41 @@ public class EbelCalculation extends SourceCalculation {
     }
 
     /**
-     * Method produces an intensity per Angstrom value for a certain wavelength.
+     * Method creates the values of the Ebel algorithm fixed during one
+     * calculation.
      * @param inParameters reference to parameters input via GUI.
+     * @return an EbelContext.
+     */
+    @Override
+    protected CalculationContext createContext(Inparameters inParameters) {
+        return new EbelContext(inParameters);
+    }
+
+    /**
+     * Method produces an intensity per Angstrom value for a certain wavelength.
+     * @param context values fixed during the calculation, an EbelContext.
      * @param wavelength wavelength in Angstrom.
      * @param wavelengthWidth width of the wavelegth slice to be calculated (Angstrom).
      * @return total calculated intensity within wavelenth interval.
      */
     @Override
-    protected double getContiniumIntensity(Inparameters inParameters,
+    protected double getContiniumIntensity(CalculationContext context,
             double wavelength, double wavelengthWidth) {
+        EbelContext ebel = (EbelContext) context;
+        MathFunctions math = ebel.getMath();
 
-        // Get tube anode atomic number
-        int z = inParameters.getAnodeElement().getAtomicNumber();
-        double zD = (double) z;
-
-        // Calculate the x exponent
-        double energy0 = inParameters.getTubeVoltage();
+        double energy0 = ebel.getTubeVoltage();
         double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
-        double xExponent = 1.109d - 0.00435d * zD + 0.00175d * energy0;
         // Calculate variables of long expression including photelectric mass absorption
-        double tauEj = AbsCoefficient.getTau(z, wavelength);
-        double sinPhi = Math.sin(inParameters.getInAngle() * Inparameters.ANGLE_CONV);
-        double sinEpsilon = Math.sin(inParameters.getOutAngle() * Inparameters.ANGLE_CONV);
-        double rouZ = getRouZ(inParameters.getTubeVoltage(), wavelength, z);
-        double longExpression = tauEj * 2.0d * rouZ
-                * (sinPhi / sinEpsilon);
+        double tauEj = AbsCoefficient.getTau(ebel.getAnodeZ(), wavelength);
+        double rouZ = ebel.getRouZ(wavelength);
+        double longExpression = tauEj * 2.0d * rouZ * ebel._angleRatio;
+        // 1 - e^-x cancels for small x, so e^-x is always the exact Math.exp
         double fFactor = (1.0d - Math.exp(-longExpression)) / longExpression;
         double deltaE = Inparameters.CONV_KEV_ANGSTROM / (wavelength - (wavelengthWidth / 2.0d)) -
                 Inparameters.CONV_KEV_ANGSTROM / (wavelength + (wavelengthWidth / 2.0d));
-        double integratedIntensity = 1.35e9d * zD
-                * Math.pow(((energy0 / energy) - 1.0d), xExponent)
+        double integratedIntensity = ebel._constFactor
+                * math.pow(((energy0 / energy) - 1.0d), ebel._xExponent)
                 * fFactor * deltaE;
 
         // Return a per Angstrom value
@@ -92,169 +90,309 @@ public class EbelCalculation extends SourceCalculation {
     }
 
     /**
-     * Method calculates the rouz variable as described in Ebels paper
-     *
-     * @param tubeVoltage = X-ray tube voltage in keV.
-     * @param wavelength = When method is called during calculation of continuum
-     * intensity this is the wavelength of the continuum slice. When method is
-     * called during calculation of tube line intensity then this is the
-     * wavelength of the absorption edge associated with the line.
-     * @param atomZ = atomic number of x-reay tube target material.
-     * @return = value of rouz variable.
+     * Method looks up the photoelectric mass absorption of the anode at the
+     * slice wavelengths.
+     * @param context values fixed during the calculation.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @return tau of each wavelength.
      */
-    private double getRouZ(double tubeVoltage, double wavelength, int atomZ) {
+    @Override
+    protected double[] getSliceCoefficients(CalculationContext context,
+            double[] wavelengths) {
+        return AbsCoefficient.getTau(context.getAnodeZ(), wavelengths.clone());
+    }
 
-        double zD = (double) atomZ;
-        double j = 0.0135d * zD;
-        double rouZm = (AtomicWeights.getRelAtomicWeight(atomZ) / zD)
-                * (0.787e-5d * Math.sqrt(j) * Math.pow(tubeVoltage, 1.5d)
-                + 0.735e-6d * tubeVoltage * tubeVoltage);
-        double lnZ = Math.log(zD);
-        double m = 0.1382d - (0.9211d / Math.sqrt(zD));
-        double eta = Math.pow(tubeVoltage, m) * (0.1904d - 0.2236d * lnZ
-                + 0.1292d * lnZ * lnZ - 0.0149d + lnZ * lnZ * lnZ);
-        double lnU0 = Math.log((tubeVoltage / (Inparameters.CONV_KEV_ANGSTROM / wavelength)));
-        double rouZ = rouZm * lnU0 * ((0.49269d - 1.0987d * eta + 0.78557d * eta * eta)
-                / (0.70256d - 1.09865d * eta + 1.0046d * eta * eta + lnU0));
-        return rouZ;
+    /**
+     * Method produces intensities of a set of wavelength slices, equal to
+     * those of getContiniumIntensity.
+     * @param context values fixed during the calculation, an EbelContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @param wavelengthWidths widths of the wavelength slices (Angstrom).
+     * @param tauEj photoelectric mass absorption of the slices, see
+     * getSliceCoefficients.
+     * @param intensities total calculated intensities within the wavelength intervals.
+     */
+    @Override
+    protected void getContiniumIntensities(CalculationContext context,
+            double[] wavelengths, double[] wavelengthWidths, double[] tauEj,
+            double[] intensities) {
+        EbelContext ebel = (EbelContext) context;
+        MathFunctions math = ebel.getMath();
+        int n = intensities.length;
+        double energy0 = ebel.getTubeVoltage();
+
+        for (int i = 0; i < n; i++) {
+            double wavelength = wavelengths[i];
+            double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
+            double rouZ = ebel.getRouZ(wavelength);
+            double longExpression = tauEj[i] * 2.0d * rouZ * ebel._angleRatio;
+            double fFactor = (1.0d - Math.exp(-longExpression)) / longExpression;
+            double halfWidth = wavelengthWidths[i] / 2.0d;
+            double deltaE = Inparameters.CONV_KEV_ANGSTROM / (wavelength - halfWidth)
+                    - Inparameters.CONV_KEV_ANGSTROM / (wavelength + halfWidth);
+            intensities[i] = ebel._constFactor
+                    * math.pow(((energy0 / energy) - 1.0d), ebel._xExponent)
+                    * fFactor * deltaE;
+        }
+    }
+
+    /**
+     * Method looks up the photoelectric mass absorption of the anode at the
+     * slice energies.
+     * @param context values fixed during the calculation.
+     * @param energies center energies in keV.
+     * @return tau of each energy.
+     */
+    @Override
+    protected double[] getSliceCoefficientsAtEnergies(CalculationContext context,
+            double[] energies) {
+        return AbsCoefficient.getTauAtEnergies(context.getAnodeZ(), energies);
+    }
+
+    /**
+     * Method produces intensities of a set of energy slices. The algorithm
+     * gives the intensity per keV, it is multiplied by the energy width.
+     * @param context values fixed during the calculation, an EbelContext.
+     * @param energies center energies in keV.
+     * @param energyWidths widths of the energy slices (keV).
+     * @param tauEj photoelectric mass absorption of the slices, see
+     * getSliceCoefficientsAtEnergies.
+     * @param intensities total calculated intensities within the energy intervals.
+     */
+    @Override
+    protected void getContiniumEnergyIntensities(CalculationContext context,
+            double[] energies, double[] energyWidths, double[] tauEj,
+            double[] intensities) {
+        EbelContext ebel = (EbelContext) context;
+        MathFunctions math = ebel.getMath();
+        int n = intensities.length;
+        double energy0 = ebel.getTubeVoltage();
+
+        for (int i = 0; i < n; i++) {
+            double energy = energies[i];
+            double rouZ = ebel.getRouZAtEnergy(energy);
+            double longExpression = tauEj[i] * 2.0d * rouZ * ebel._angleRatio;
+            double fFactor = (1.0d - Math.exp(-longExpression)) / longExpression;
+            intensities[i] = ebel._constFactor
+                    * math.pow(((energy0 / energy) - 1.0d), ebel._xExponent)
+                    * fFactor * energyWidths[i];
+        }
+    }
+
+    /**
+     * Method produces intensities per Angstrom at a set of wavelengths. The
+     * intensity of a slice is calculated per keV and multiplied by the energy
+     * width of the slice, so the density is the intensity per keV times
+     * dE/dwavelength.
+     * @param context values fixed during the calculation, an EbelContext.
+     * @param wavelengths wavelengths in Angstrom.
+     * @param tauEj photoelectric mass absorption at the wavelengths, see
+     * getSliceCoefficients.
+     * @param densities calculated intensities per Angstrom.
+     */
+    @Override
+    protected void getContiniumDensities(CalculationContext context,
+            double[] wavelengths, double[] tauEj, double[] densities) {
+        EbelContext ebel = (EbelContext) context;
+        MathFunctions math = ebel.getMath();
+        int n = densities.length;
+        double energy0 = ebel.getTubeVoltage();
+
+        for (int i = 0; i < n; i++) {
+            double wavelength = wavelengths[i];
+            double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
+            double rouZ = ebel.getRouZ(wavelength);
+            double longExpression = tauEj[i] * 2.0d * rouZ * ebel._angleRatio;
+            // Nodes at the short wavelength limit have no depth, the limit of
+            // fFactor is 1
+            double fFactor = longExpression > 0.0d
+                    ? (1.0d - Math.exp(-longExpression)) / longExpression : 1.0d;
+            double dEdWavelength = energy / wavelength;
+            // Nodes at the short wavelength limit may round above energy0
+            densities[i] = ebel._constFactor
+                    * math.pow(Math.max(0.0d, (energy0 / energy) - 1.0d), ebel._xExponent)
+                    * fFactor * dEdWavelength;
+        }
     }
 
     /**
      * Method calculates intensities of the characteristic lines of the x-ray tube.
      * spectrum. Intensity is stored as the total intensity of the line together
      * with a width which is the natural width of the line.
-     * @param inParameters reference to parameters input via GUI.
+     * @param context values fixed during the calculation, an EbelContext.
      * @param outputData an XraySpectrum object containing the calculated values.
      */
     @Override
-    protected void calculateTubeLineIntensities(Inparameters inParameters,
+    protected void calculateTubeLineIntensities(CalculationContext context,
             XraySpectrum outputData) {
+        EbelContext ebel = (EbelContext) context;
 
         // Create a temporary storage for the lines
-        List<SpectrumPart> allLines = new ArrayList<>();
+        SpectrumColumns allLines = new SpectrumColumns();
 
         // Get tube target atomic number
-        int z = inParameters.getAnodeElement().getAtomicNumber();
-        double zD = (double) z;
+        int z = ebel.getAnodeZ();
+        double zD = ebel.getAnodeZd();
 
         // Calculate K line intensities according to Ebels first paper
-        final Map<TubeLines.XrfLine, Map<Integer, TubeLines.LineInfo>> majorLineInfo
-                = TubeLines.getMajorLineInfo();
+        AnodeModel.LineSet majorLines = ebel.getAnodeModel().getMajorLines();
         final double zK = 2.0d;
         final double bK = 0.35d;
         final double constK = 5.0e13d;
 
-        double energy0 = inParameters.getTubeVoltage();
+        double energy0 = ebel.getTubeVoltage();
 
-        majorLineInfo.keySet().stream()
-                .filter(xrfLine -> TubeLines.isKline(xrfLine)) // Major lines includes some L and a M line
-                .filter(xrfLine -> Optional.ofNullable(majorLineInfo.get(xrfLine).get(z)).isPresent())                .filter(xrfLine -> AbsorptionEdges.getEdge(xrfLine).isPresent())
-                .filter(xrfLine -> FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).isPresent())
-                .filter(xrfLine -> TransProbabilities.getTransProb(z, xrfLine).isPresent())
-                .forEach(xrfLine -> {
-                    LineInfo lineInfo = majorLineInfo.get(xrfLine).get(z);
-                    double wavelength = Inparameters.CONV_KEV_ANGSTROM
-                            / lineInfo.getEnergy();
-                    double edgeEnergy = lineInfo.getAbsorptionEdge();
-                    // Calculate U0, the overvoltage ratio
-                    double u0 = energy0 / edgeEnergy;
-                    // Line exists if tube voltage is above absorption edge
-                    if (u0 > 1) {
-                        // Calculate components of stopping power factor
-                        double firstParantesis = u0 * Math.log(u0) + 1.0d - u0;
-                        double bigRoot = Math.sqrt(0.0135d * zD / edgeEnergy);
-                        double nominator = Math.sqrt(u0) * Math.log(u0) + 2.0d * (1.0d - Math.sqrt(u0));
-                        double squareBracket = 1.0d + 16.05d * bigRoot * (nominator / firstParantesis);
-                        double sPowFactor = ((zK * bK) / zD) * firstParantesis * squareBracket;
-                        // Calculate the f function
-                        double tau = AbsCoefficient.getTau(z, wavelength);
-                        double sinPhi = Math.sin(inParameters.getInAngle() * Inparameters.ANGLE_CONV);
-                        double sinEpsilon = Math.sin(inParameters.getOutAngle() * Inparameters.ANGLE_CONV);
-                        double rouZ = getRouZ(inParameters.getTubeVoltage(),
-                                Inparameters.CONV_KEV_ANGSTROM / edgeEnergy, z);
-                        double longExpression = tau * 2.0d * rouZ
-                                * (sinPhi / sinEpsilon);
-                        double fFunction = (1.0d - Math.exp(-longExpression)) / longExpression;
-                        // Calculate r
-                        double r = 1.0d - 0.0081517d * zD + 3.613e-5d * zD * zD
-                                + 0.009583d * zD * Math.exp(-u0) + 0.001141d * energy0;
-                        double omegaJK = FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).get();
-                        double pJKL = TransProbabilities.getTransProb(z, xrfLine).get();
-                        double evwidth = lineInfo.getLineWidth();
-                        // Calculate line width in Angstrom
-                        double lineWidth = getLineWidth(lineInfo.getEnergy(), evwidth);
-                        // Calculate according to formula
-                        double intensity = constK * sPowFactor * r * omegaJK * pJKL * fFunction;
+        for (int i = 0; i < majorLines.size(); i++) {
+            // Major lines includes some L and a M line
+            if (!TubeLines.isKline(majorLines.getLine(i))
+                    || !majorLines.hasIntensityData(i)) {
+                continue;
+            }
+            double wavelength = majorLines.getWavelength(i);
+            double edgeEnergy = majorLines.getEdgeEnergy(i);
+            // Calculate U0, the overvoltage ratio
+            double u0 = energy0 / edgeEnergy;
+            // Line exists if tube voltage is above absorption edge
+            if (u0 > 1) {
+                // Calculate components of stopping power factor
+                double firstParantesis = u0 * Math.log(u0) + 1.0d - u0;
+                double bigRoot = Math.sqrt(0.0135d * zD / edgeEnergy);
+                double nominator = Math.sqrt(u0) * Math.log(u0) + 2.0d * (1.0d - Math.sqrt(u0));
+                double squareBracket = 1.0d + 16.05d * bigRoot * (nominator / firstParantesis);
+                double sPowFactor = ((zK * bK) / zD) * firstParantesis * squareBracket;
+                // Calculate the f function
+                double tau = AbsCoefficient.getTau(z, wavelength);
+                double rouZ = ebel.getRouZ(Inparameters.CONV_KEV_ANGSTROM / edgeEnergy);
+                double longExpression = tau * 2.0d * rouZ * ebel._angleRatio;
+                double fFunction = (1.0d - Math.exp(-longExpression)) / longExpression;
+                // Calculate r
+                double r = 1.0d - 0.0081517d * zD + 3.613e-5d * zD * zD
+                        + 0.009583d * zD * Math.exp(-u0) + 0.001141d * energy0;
+                double omegaJK = majorLines.getYield(i);
+                double pJKL = majorLines.getTransProb(i);
+                double evwidth = majorLines.getLineWidth(i);
+                // Calculate line width in Angstrom
+                double lineWidth = getLineWidth(majorLines.getEnergy(i), evwidth);
+                // Calculate according to formula
+                double intensity = constK * sPowFactor * r * omegaJK * pJKL * fFunction;
 
-                        // Store calculated value
-                        allLines.add(new SpectrumPart(wavelength, lineWidth, intensity));
-                    }
-                });
+                // Store calculated value
+                allLines.add(wavelength, lineWidth, intensity);
+            }
+        }
 
         // Calculate L line intensities according to Ebels second paper
-        final Map<TubeLines.XrfLine, Map<Integer, TubeLines.LineInfo>> lLineInfo
-                = TubeLines.getLlineInfo();
+        AnodeModel.LineSet lLines = ebel.getAnodeModel().getLlines();
         final double zL = 8.0d;
         final double bL = 0.25d;
         final double fCorr = -0.4814d + 0.03781 * zD - 2.413e-4d * zD * zD;
 
-        lLineInfo.keySet().stream()
-                .filter(xrfLine -> AbsorptionEdges.getEdge(xrfLine).isPresent())
-                .filter(xrfLine -> Optional.ofNullable(lLineInfo.get(xrfLine).get(z)).isPresent()) 
-                .filter(xrfLine -> FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).isPresent())
-                .filter(xrfLine -> TransProbabilities.getTransProb(z, xrfLine).isPresent())
-                .forEach(xrfLine -> {
-                    LineInfo lineInfo = lLineInfo.get(xrfLine).get(z);
-                    double wavelength = Inparameters.CONV_KEV_ANGSTROM
-                            / lineInfo.getEnergy();
-                    double edgeEnergy = lineInfo.getAbsorptionEdge();
-                    // Calculate U0, the overvoltage ratio
-                    double u0 = energy0 / edgeEnergy;
-                    // Line exists if tube voltage is above absorption edge
-                    if (u0 > 1) {
-                        // Calculate components of stopping power factor
-                        double firstParantesis = u0 * Math.log(u0) + 1.0d - u0;
-                        double bigRoot = Math.sqrt(0.0135d * zD / edgeEnergy);
-                        double nominator = Math.sqrt(u0) * Math.log(u0) + 2.0d * (1.0d - Math.sqrt(u0));
-                        double squareBracket = 1.0d + 16.05d * bigRoot * (nominator / firstParantesis);
-                        double sPowFactor = ((zL * bL) / zD) * firstParantesis * squareBracket;
-                        // Calculate the f function
-                        double tau = AbsCoefficient.getTau(z, wavelength);
-                        double sinPhi = Math.sin(inParameters.getInAngle() * Inparameters.ANGLE_CONV);
-                        double sinEpsilon = Math.sin(inParameters.getOutAngle() * Inparameters.ANGLE_CONV);
-                        double rouZ = getRouZ(inParameters.getTubeVoltage(),
-                                Inparameters.CONV_KEV_ANGSTROM / edgeEnergy, z);
-                        double longExpression = tau * 2.0d * rouZ
-                                * (sinPhi / sinEpsilon);
-                        double fFunction = (1.0d - Math.exp(-longExpression)) / longExpression;
-                        // Calculate r
-                        double r = 1.0d - 0.0081517d * zD + 3.613e-5d * zD * zD
-                                + 0.009583d * zD * Math.exp(-u0) + 0.001141 * energy0;
-                        double omegaJK = FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).get();
-                        double pJKL = TransProbabilities.getTransProb(z, xrfLine).get();
-                        double evwidth = lineInfo.getLineWidth();
-                        // Calculate line width in Angstrom
-                        double lineWidth = getLineWidth(lineInfo.getEnergy(), evwidth);
-                        // Calculate the Const factor
-                        double constX = 4.94e13d;
-                        AbsEdge absEdgeType = AbsorptionEdges.getEdge(xrfLine).get();
-                        switch (absEdgeType) {
-                            case L1_EDGE:
-                                constX = fCorr * 0.71e13d;
-                                break;
-                            case L2_EDGE:
-                                constX = fCorr * 2.70e13d;
-                        }
-                        // Calculate line intensity
-                        double intensity = constX * sPowFactor * r * omegaJK * pJKL * fFunction;
-                        
-                        // Store calculated intensity
-                        allLines.add(new SpectrumPart(wavelength, lineWidth, intensity));
-                    }
-                });
+        for (int i = 0; i < lLines.size(); i++) {
+            if (!lLines.hasIntensityData(i)) {
+                continue;
+            }
+            double wavelength = lLines.getWavelength(i);
+            double edgeEnergy = lLines.getEdgeEnergy(i);
+            // Calculate U0, the overvoltage ratio
+            double u0 = energy0 / edgeEnergy;
+            // Line exists if tube voltage is above absorption edge
+            if (u0 > 1) {
+                // Calculate components of stopping power factor
+                double firstParantesis = u0 * Math.log(u0) + 1.0d - u0;
+                double bigRoot = Math.sqrt(0.0135d * zD / edgeEnergy);
+                double nominator = Math.sqrt(u0) * Math.log(u0) + 2.0d * (1.0d - Math.sqrt(u0));
+                double squareBracket = 1.0d + 16.05d * bigRoot * (nominator / firstParantesis);
+                double sPowFactor = ((zL * bL) / zD) * firstParantesis * squareBracket;
+                // Calculate the f function
+                double tau = AbsCoefficient.getTau(z, wavelength);
+                double rouZ = ebel.getRouZ(Inparameters.CONV_KEV_ANGSTROM / edgeEnergy);
+                double longExpression = tau * 2.0d * rouZ * ebel._angleRatio;
+                double fFunction = (1.0d - Math.exp(-longExpression)) / longExpression;
+                // Calculate r
+                double r = 1.0d - 0.0081517d * zD + 3.613e-5d * zD * zD
+                        + 0.009583d * zD * Math.exp(-u0) + 0.001141 * energy0;
+                double omegaJK = lLines.getYield(i);
+                double pJKL = lLines.getTransProb(i);
+                double evwidth = lLines.getLineWidth(i);
+                // Calculate line width in Angstrom
+                double lineWidth = getLineWidth(lLines.getEnergy(i), evwidth);
+                // Calculate the Const factor
+                double constX = 4.94e13d;
+                switch (lLines.getEdge(i)) {
+                    case L1_EDGE:
+                        constX = fCorr * 0.71e13d;
+                        break;
+                    case L2_EDGE:
+                        constX = fCorr * 2.70e13d;
+                }
+                // Calculate line intensity
+                double intensity = constX * sPowFactor * r * omegaJK * pJKL * fFunction;
+
+                // Store calculated intensity
+                allLines.add(wavelength, lineWidth, intensity);
+            }
+        }
         // Sort lines in wavelength order and add to output data
-        allLines.stream()
-                .sorted(Comparator.comparing(SpectrumPart::getWavelength))
-                .forEach(specPart -> outputData.getTubeLines().add(specPart));
+        allLines.sortByWavelength();
+        outputData.getTubeLineColumns().addAll(allLines);
+    }
+
+    /**
+     * Values of the Ebel algorithm fixed during one calculation: the x
+     * exponent, the angle ratio and the tube voltage dependent parts of
+     * the rouz variable.
+     */
+    private static class EbelContext extends CalculationContext {
+
+        private final double _xExponent;
+        private final double _angleRatio;  // sin(phi) / sin(epsilon)
+        private final double _constFactor;
+        private final double _rouZm;
+        private final double _rouZnum;
+        private final double _rouZden;
+
+        EbelContext(Inparameters inParameters) {
+            super(inParameters);
+            double zD = getAnodeZd();
+            double energy0 = getTubeVoltage();
+            _xExponent = 1.109d - 0.00435d * zD + 0.00175d * energy0;
+            _angleRatio = getSinInAngle() / getSinOutAngle();
+            _constFactor = 1.35e9d * zD;
+            double j = 0.0135d * zD;
+            _rouZm = (AtomicWeights.getRelAtomicWeight(getAnodeZ()) / zD)
+                    * (0.787e-5d * Math.sqrt(j) * Math.pow(energy0, 1.5d)
+                    + 0.735e-6d * energy0 * energy0);
+            double lnZ = Math.log(zD);
+            double m = 0.1382d - (0.9211d / Math.sqrt(zD));
+            double eta = Math.pow(energy0, m) * (0.1904d - 0.2236d * lnZ
+                    + 0.1292d * lnZ * lnZ - 0.0149d + lnZ * lnZ * lnZ);
+            _rouZnum = 0.49269d - 1.0987d * eta + 0.78557d * eta * eta;
+            _rouZden = 0.70256d - 1.09865d * eta + 1.0046d * eta * eta;
+        }
+
+        /**
+         * Method calculates the rouz variable as described in Ebels paper
+         *
+         * @param wavelength = When method is called during calculation of
+         * continuum intensity this is the wavelength of the continuum slice.
+         * When method is called during calculation of tube line intensity
+         * then this is the wavelength of the absorption edge associated with
+         * the line.
+         * @return = value of rouz variable.
+         */
+        double getRouZ(double wavelength) {
+            return getRouZAtEnergy(Inparameters.CONV_KEV_ANGSTROM / wavelength);
+        }
+
+        /**
+         * Method calculates the rouz variable at a photon energy, see getRouZ.
+         *
+         * @param energy photon energy in keV.
+         * @return = value of rouz variable.
+         */
+        double getRouZAtEnergy(double energy) {
+            double lnU0 = getMath().log(getTubeVoltage() / energy);
+            return _rouZm * lnU0 * (_rouZnum / (_rouZden + lnU0));
+        }
     }
 }
@@ -0,0 +1,476 @@
+/*
+ * File FilterOptimizer.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.xraycalc.Inparameters.TubeElement;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class searches filter compositions and thicknesses for the filter giving
+ * the highest figure of merit, e.g. peak to background of an analyte.
+ * The filter transmission is exp(-sum(c_i * mu_i) * t), where c_i is the
+ * mass fraction and mu_i the attenuation coefficient of component i and t
+ * the thickness. The unfiltered spectrum and the attenuation coefficient of
+ * each filter element at the continuum slices and tube lines are calculated
+ * once, each candidate is then a few vector operations. The candidates are
+ * evaluated in parallel.
+ * The candidates are all compositions of up to a max number of the filter
+ * elements with fractions in steps of 1 / fraction steps, times thicknesses
+ * logarithmically spaced between a min and a max thickness.
+ */
+public class FilterOptimizer {
+
+    public static final int DEFAULT_MAX_COMPONENTS = 2;
+    public static final int DEFAULT_FRACTION_STEPS = 10;
+    public static final int DEFAULT_THICKNESS_STEPS = 100;
+    public static final double DEFAULT_MIN_THICKNESS = 1.0d;    // micrometer
+    public static final double DEFAULT_MAX_THICKNESS = 1000.0d; // micrometer
+    public static final double DEFAULT_MIN_SIGNAL = 0.1d;
+
+    private final double[] _wavelengths; // Continuum slices, then tube lines
+    private final double[] _widths;      // Slice widths, 0 for tube lines
+    private final double[] _intensities; // Unfiltered intensities
+    private final TubeElement[] _elements;
+    private final double[][] _coefficients; // /cm, per element and wavelength
+    private int _maxComponents = DEFAULT_MAX_COMPONENTS;
+    private int _fractionSteps = DEFAULT_FRACTION_STEPS;
+    private int _thicknessSteps = DEFAULT_THICKNESS_STEPS;
+    private double _minThickness = DEFAULT_MIN_THICKNESS;
+    private double _maxThickness = DEFAULT_MAX_THICKNESS;
+    private double _minSignal = DEFAULT_MIN_SIGNAL;
+
+    /**
+     * Creates an optimizer of filters of the filter alternatives, see
+     * Inparameters.getFilterAlternatives.
+     * @param inParameters calculation parameters, the filter is not used.
+     */
+    public FilterOptimizer(Inparameters inParameters) {
+        this(inParameters, Inparameters.getFilterAlternatives());
+    }
+
+    /**
+     * Creates an optimizer of filters of a set of elements. The unfiltered
+     * spectrum is calculated by the constructor, on the wavelength axis
+     * whatever the spectrum axis of the parameters.
+     * @param inParameters calculation parameters, the filter is not used.
+     * @param elements elements the filters may contain.
+     */
+    public FilterOptimizer(Inparameters inParameters, List<TubeElement> elements) {
+        Inparameters unfiltered = new ParameterSnapshot(inParameters).toInparameters();
+        unfiltered.getFilterElements().clear();
+        unfiltered.setFilterThickness(0.0d);
+        // Coefficients and analyte windows are calculated at wavelengths
+        unfiltered.setSpectrumAxis(Axis.WAVELENGTH);
+        XraySpectrum spectrum = SpectrumEngine.calculate(unfiltered);
+        SpectrumColumns continuum = spectrum.getContinuumColumns();
+        SpectrumColumns tubeLines = spectrum.getTubeLineColumns();
+        int n = continuum.size() + tubeLines.size();
+        _wavelengths = new double[n];
+        _widths = new double[n];
+        _intensities = new double[n];
+        for (int i = 0; i < continuum.size(); i++) {
+            _wavelengths[i] = continuum.getWavelength(i);
+            _widths[i] = continuum.getWindow(i);
+            _intensities[i] = continuum.getIntensity(i);
+        }
+        for (int i = 0; i < tubeLines.size(); i++) {
+            _wavelengths[continuum.size() + i] = tubeLines.getWavelength(i);
+            _intensities[continuum.size() + i] = tubeLines.getIntensity(i);
+        }
+
+        // Attenuation coefficients of the elements, as in AttenuationLayer
+        _elements = elements.toArray(new TubeElement[0]);
+        _coefficients = new double[_elements.length][];
+        for (int e = 0; e < _elements.length; e++) {
+            _coefficients[e] = AbsCoefficient.getAttenuationCoefficients(
+                    _elements[e].getAtomicNumber(), _wavelengths.clone());
+        }
+    }
+
+    /**
+     * @param maxComponents max number of elements of a filter, 1 or more.
+     */
+    public void setMaxComponents(int maxComponents) {
+        _maxComponents = Math.max(1, maxComponents);
+    }
+
+    public int getMaxComponents() {
+        return _maxComponents;
+    }
+
+    /**
+     * @param fractionSteps number of mass fraction steps between 0 and 1 of
+     * filters with more than one element.
+     */
+    public void setFractionSteps(int fractionSteps) {
+        _fractionSteps = Math.max(1, fractionSteps);
+    }
+
+    public int getFractionSteps() {
+        return _fractionSteps;
+    }
+
+    /**
+     * Method sets the thicknesses tried, logarithmically spaced.
+     * @param minThickness min thickness in micrometer, above 0.
+     * @param maxThickness max thickness in micrometer.
+     * @param steps number of thicknesses.
+     */
+    public void setThicknessRange(double minThickness, double maxThickness, int steps) {
+        if (!(minThickness > 0.0d) || maxThickness < minThickness || steps < 1) {
+            throw new IllegalArgumentException("Invalid thickness range");
+        }
+        _minThickness = minThickness;
+        _maxThickness = maxThickness;
+        _thicknessSteps = steps;
+    }
+
+    /**
+     * @param minSignal min signal of a filter relative to the unfiltered
+     * signal, filters absorbing more are left out. A signal is always
+     * reduced by a filter so the highest merit of e.g. peak to background
+     * is often a very thick filter.
+     */
+    public void setMinSignal(double minSignal) {
+        _minSignal = minSignal;
+    }
+
+    public double getMinSignal() {
+        return _minSignal;
+    }
+
+    /**
+     * @return continuum slice and tube line wavelengths the filters are
+     * evaluated at.
+     */
+    public double[] getWavelengths() {
+        return _wavelengths.clone();
+    }
+
+    /**
+     * Method evaluates all candidates.
+     * @param merit the figure of merit.
+     * @param count max number of candidates returned.
+     * @return the candidates with the highest merit, highest first.
+     */
+    public List<Candidate> optimize(Merit merit, int count) {
+        double[] signalWeights = merit.getSignalWeights(_wavelengths.clone(),
+                _widths.clone());
+        double[] backgroundWeights = merit.getBackgroundWeights(_wavelengths.clone(),
+                _widths.clone());
+        double[] signalIntensities = new double[_wavelengths.length];
+        double[] backgroundIntensities = new double[_wavelengths.length];
+        double signalSum = 0.0d;
+        for (int i = 0; i < _wavelengths.length; i++) {
+            signalIntensities[i] = signalWeights[i] * _intensities[i];
+            backgroundIntensities[i] = backgroundWeights[i] * _intensities[i];
+            signalSum += signalIntensities[i];
+        }
+        double unfilteredSignal = signalSum;
+        double minSignal = _minSignal * unfilteredSignal;
+
+        List<double[]> compositions = getCompositions();
+        double[] thicknesses = getThicknesses();
+        return IntStream.range(0, compositions.size()).parallel()
+                .mapToObj(c -> evaluate(compositions.get(c), thicknesses,
+                        signalIntensities, backgroundIntensities, unfilteredSignal,
+                        minSignal))
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingDouble(Candidate::getMerit).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Method evaluates all thicknesses of one composition.
+     */
+    private List<Candidate> evaluate(double[] fractions, double[] thicknesses,
+            double[] signalIntensities, double[] backgroundIntensities,
+            double unfilteredSignal, double minSignal) {
+
+        // Attenuation coefficients of the composition
+        double[] mu = new double[_wavelengths.length];
+        for (int e = 0; e < _elements.length; e++) {
+            if (fractions[e] != 0.0d) {
+                double[] elementMu = _coefficients[e];
+                for (int i = 0; i < mu.length; i++) {
+                    mu[i] += elementMu[i] * fractions[e];
+                }
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (double thickness : thicknesses) {
+            double cmThickness = 0.0001d * thickness;
+            double signal = 0.0d;
+            double background = 0.0d;
+            for (int i = 0; i < mu.length; i++) {
+                double transmission = Math.exp(-mu[i] * cmThickness);
+                signal += signalIntensities[i] * transmission;
+                background += backgroundIntensities[i] * transmission;
+            }
+            double merit = signal / background;
+            if (signal >= minSignal && signal > 0.0d && background > 0.0d
+                    && !Double.isNaN(merit)) {
+                candidates.add(new Candidate(_elements, fractions, thickness,
+                        merit, signal / unfilteredSignal));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Method returns the mass fractions of all compositions, one value per
+     * element.
+     */
+    private List<double[]> getCompositions() {
+        List<double[]> compositions = new ArrayList<>();
+        addCompositions(compositions, new double[_elements.length], 0, 0, _fractionSteps);
+        return compositions;
+    }
+
+    private void addCompositions(List<double[]> compositions, double[] fractions,
+            int element, int components, int stepsLeft) {
+        if (stepsLeft == 0) {
+            compositions.add(fractions.clone());
+            return;
+        }
+        if (element == _elements.length || components == _maxComponents) {
+            return;
+        }
+
+        // The last possible component takes the remaining fraction
+        int minSteps = components == _maxComponents - 1
+                || element == _elements.length - 1 ? stepsLeft : 1;
+        for (int steps = stepsLeft; steps >= minSteps; steps--) {
+            fractions[element] = (double) steps / _fractionSteps;
+            addCompositions(compositions, fractions, element + 1, components + 1,
+                    stepsLeft - steps);
+        }
+        fractions[element] = 0.0d;
+        addCompositions(compositions, fractions, element + 1, components, stepsLeft);
+    }
+
+    private double[] getThicknesses() {
+        double[] thicknesses = new double[_thicknessSteps];
+        double ratio = _thicknessSteps == 1 ? 1.0d
+                : Math.pow(_maxThickness / _minThickness, 1.0d / (_thicknessSteps - 1));
+        for (int i = 0; i < thicknesses.length; i++) {
+            thicknesses[i] = _minThickness * Math.pow(ratio, i);
+        }
+        return thicknesses;
+    }
+
+    /**
+     * Method returns a merit that is the signal of an analyte divided by the
+     * intensity in an energy window, e.g. the analyte peak. The signal is
+     * the photoelectric absorption of the analyte of intensities above its
+     * absorption edge, the background is the intensity scattered into the
+     * window, slices partly inside the window are weighted by the part
+     * inside.
+     * @param analyteZ atomic number of the analyte.
+     * @param edgeEnergy absorption edge of the analyte in keV.
+     * @param lowEnergy low limit of the window in keV.
+     * @param highEnergy high limit of the window in keV.
+     * @return the merit.
+     */
+    public static Merit getPeakToBackground(int analyteZ, double edgeEnergy,
+            double lowEnergy, double highEnergy) {
+        return new AnalyteMerit(analyteZ, edgeEnergy, lowEnergy, highEnergy);
+    }
+
+    /**
+     * Method returns a merit that is the signal of an analyte divided by the
+     * total intensity, i.e. how large part of the tube radiation excites the
+     * analyte edge. The signal is as in getPeakToBackground.
+     * @param analyteZ atomic number of the analyte.
+     * @param edgeEnergy absorption edge of the analyte in keV.
+     * @return the merit.
+     */
+    public static Merit getEdgeExcitation(int analyteZ, double edgeEnergy) {
+        return new AnalyteMerit(analyteZ, edgeEnergy, 0.0d, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * A figure of merit, sum of signal weight times filtered intensity
+     * divided by sum of background weight times filtered intensity of the
+     * continuum slices and tube lines.
+     */
+    public interface Merit {
+
+        /**
+         * @param wavelengths wavelengths in Angstrom.
+         * @param widths slice widths in Angstrom, 0 for tube lines.
+         * @return signal weight of each wavelength.
+         */
+        double[] getSignalWeights(double[] wavelengths, double[] widths);
+
+        /**
+         * @param wavelengths wavelengths in Angstrom.
+         * @param widths slice widths in Angstrom, 0 for tube lines.
+         * @return background weight of each wavelength.
+         */
+        double[] getBackgroundWeights(double[] wavelengths, double[] widths);
+    }
+
+    /**
+     * Merit of an analyte edge and an energy window.
+     */
+    private static class AnalyteMerit implements Merit {
+        private final int _analyteZ;
+        private final double _edgeEnergy;
+        private final double _lowEnergy;
+        private final double _highEnergy;
+
+        AnalyteMerit(int analyteZ, double edgeEnergy, double lowEnergy,
+                double highEnergy) {
+            _analyteZ = analyteZ;
+            _edgeEnergy = edgeEnergy;
+            _lowEnergy = lowEnergy;
+            _highEnergy = highEnergy;
+        }
+
+        @Override
+        public double[] getSignalWeights(double[] wavelengths, double[] widths) {
+            double[] weights = AbsCoefficient.getTau(_analyteZ, wavelengths.clone());
+            for (int i = 0; i < weights.length; i++) {
+                if (Inparameters.CONV_KEV_ANGSTROM / wavelengths[i] < _edgeEnergy) {
+                    weights[i] = 0.0d;
+                }
+            }
+            return weights;
+        }
+
+        @Override
+        public double[] getBackgroundWeights(double[] wavelengths, double[] widths) {
+            double minWavelength = Inparameters.CONV_KEV_ANGSTROM / _highEnergy;
+            double maxWavelength = Inparameters.CONV_KEV_ANGSTROM / _lowEnergy;
+            double[] weights = new double[wavelengths.length];
+            for (int i = 0; i < weights.length; i++) {
+                if (widths[i] == 0.0d) {
+                    weights[i] = wavelengths[i] >= minWavelength
+                            && wavelengths[i] <= maxWavelength ? 1.0d : 0.0d;
+                } else {
+                    // Part of the slice inside the window
+                    double low = Math.max(wavelengths[i] - widths[i] / 2.0d, minWavelength);
+                    double high = Math.min(wavelengths[i] + widths[i] / 2.0d, maxWavelength);
+                    weights[i] = Math.max(0.0d, high - low) / widths[i];
+                }
+            }
+            return weights;
+        }
+    }
+
+    /**
+     * An evaluated filter.
+     */
+    public static class Candidate {
+        private final TubeElement[] _elements;
+        private final double[] _fractions;
+        private final double _thickness;
+        private final double _merit;
+        private final double _signal;
+
+        Candidate(TubeElement[] elements, double[] fractions, double thickness,
+                double merit, double signal) {
+            int n = 0;
+            for (double fraction : fractions) {
+                n += fraction != 0.0d ? 1 : 0;
+            }
+            _elements = new TubeElement[n];
+            _fractions = new double[n];
+            for (int e = 0, i = 0; e < elements.length; e++) {
+                if (fractions[e] != 0.0d) {
+                    _elements[i] = elements[e];
+                    _fractions[i++] = fractions[e];
+                }
+            }
+            _thickness = thickness;
+            _merit = merit;
+            _signal = signal;
+        }
+
+        /**
+         * @return the filter components.
+         */
+        public List<FilterElement> getFilterElements() {
+            List<FilterElement> filterElements = new ArrayList<>();
+            for (int i = 0; i < _elements.length; i++) {
+                filterElements.add(new FilterElement(_elements[i].getSymbol(),
+                        _elements[i].getAtomicNumber(), _fractions[i]));
+            }
+            return filterElements;
+        }
+
+        /**
+         * Method sets the filter of a set of parameters to the candidate.
+         * @param inParameters the parameters.
+         */
+        public void applyTo(Inparameters inParameters) {
+            inParameters.getFilterElements().clear();
+            inParameters.getFilterElements().addAll(getFilterElements());
+            inParameters.setFilterThickness(_thickness);
+        }
+
+        /**
+         * @return thickness in micrometer.
+         */
+        public double getThickness() {
+            return _thickness;
+        }
+
+        public double getMerit() {
+            return _merit;
+        }
+
+        /**
+         * @return signal relative to the unfiltered signal.
+         */
+        public double getSignal() {
+            return _signal;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder filter = new StringBuilder();
+            for (int i = 0; i < _elements.length; i++) {
+                filter.append(i == 0 ? "" : " ").append(_elements[i].getSymbol())
+                        .append(' ').append(_fractions[i]);
+            }
+            return String.format("[%s] %.4g um, merit %.6g, signal %.4g",
+                    filter, _thickness, _merit, _signal);
+        }
+    }
+}
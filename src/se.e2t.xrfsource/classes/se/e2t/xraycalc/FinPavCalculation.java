@@ -23,16 +23,15 @@
  */
 package se.e2t.xraycalc;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.abscoeffcalculate.Mucal.ErrorCode;
 import se.e2t.xraycalc.AbsorptionEdges.AbsEdge;
 import static se.e2t.xraycalc.SourceCalculation.getLineWidth;
-import se.e2t.xrfsource.spectrumclasses.SpectrumPart;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
 import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
 
 /**
@@ -65,62 +64,196 @@ public class FinPavCalculation extends SourceCalculation {
     }
     
     /**
-     * Method produces an intensity per Angstrom value for a certain wavelength.
+     * Method creates the values of the Finkelshtein and Pavlova algorithm
+     * fixed during one calculation.
      * @param inParameters reference to parameters input via GUI.
+     * @return a FinPavContext.
+     */
+    @Override
+    protected CalculationContext createContext(Inparameters inParameters) {
+        return new FinPavContext(inParameters);
+    }
+
+    /**
+     * Method produces an intensity per Angstrom value for a certain wavelength.
+     * @param context values fixed during the calculation, a FinPavContext.
      * @param wavelength wavelength in Angstrom.
      * @param wavelengthWidth width of the wavelegth slice to be calculated (Angstrom).
      * @return total calculated intensity within wavelength interval.
      */
     @Override
-    protected double getContiniumIntensity(Inparameters inParameters,
+    protected double getContiniumIntensity(CalculationContext context,
             double wavelength, double wavelengthWidth) {
+        FinPavContext finPav = (FinPavContext) context;
+        MathFunctions math = finPav.getMath();
         
-        double energy0 = inParameters.getTubeVoltage();
+        double energy0 = finPav.getTubeVoltage();
         double energy = Inparameters.CONV_KEV_ANGSTROM /wavelength;
-        double wavelength0 = Inparameters.CONV_KEV_ANGSTROM / energy0;
-        int z = inParameters.getAnodeElement().getAtomicNumber();
-        double zD = (double) z;
-        var aExponent = Optional.ofNullable(A_EXPONENT.get(z));
-        if (aExponent.isEmpty()) {
-            System.out.println("In FinPavCalculation, no a exponent found for element " + z);
+        int z = finPav.getAnodeZ();
+        if (Double.isNaN(finPav._aExponent)) {
+            Diagnostics.report(ErrorCode.no_data, z, energy,
+                    "FinPavCalculation, no a exponent");
             return 0.0d;
         }
-        double b = Math.pow(wavelength / (2.0d * wavelength0), aExponent.get());
-        double t = Math.PI / Math.sqrt(3.0d);
-        double j = 11.5d * zD;
-        double lBracket = (1166.0d / j) * ((2.0d * energy0 + energy) / 3.0d);
-        double lCont = Math.log(lBracket);
-        double sigma = 4.0e5d / (Math.pow(energy0, 1.65d) - Math.pow(energy, 1.65d));
-        double fFactor = getFfactor(z, inParameters.getOutAngle(), energy0,
-                energy, sigma);
+        double b = math.pow(wavelength / (2.0d * finPav._wavelength0), finPav._aExponent);
+        double lBracket = finPav._lFactor * ((2.0d * energy0 + energy) / 3.0d);
+        double lCont = math.log(lBracket);
+        double sigma = 4.0e5d / (finPav._energy0Pow - math.pow(energy, 1.65d));
+        double fFactor = getFfactor(finPav, energy, sigma);
         double rFactor = getRfactor(z, energy0, energy);
         // Calculate according to the formula of the paper
-        double nPhotonsPerAngstrom = 7.52e-5d * zD *(1.0d / wavelength0 - 1.0d / wavelength) *
-                (1.0d / wavelength) * b * (t / lCont) * fFactor * rFactor * (1.0d / (4.0d * Math.PI));
+        double invWavelength = 1.0d / wavelength;
+        double nPhotonsPerAngstrom = finPav._constFactor * (finPav._invWavelength0 - invWavelength) *
+                invWavelength * b * (finPav._t / lCont) * fFactor * rFactor * finPav._inv4Pi;
         double integratedIntensity = nPhotonsPerAngstrom * wavelengthWidth;
         return integratedIntensity;
     }
     
+    /**
+     * Method looks up the mass absorption of the anode at the slice
+     * wavelengths, at the wavelength of the photon energy as in getFfactor.
+     * @param context values fixed during the calculation, a FinPavContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @return mass absorption of each wavelength, null if the anode has no
+     * a exponent.
+     */
+    @Override
+    protected double[] getSliceCoefficients(CalculationContext context,
+            double[] wavelengths) {
+        if (Double.isNaN(((FinPavContext) context)._aExponent)) {
+            return null;
+        }
+        double[] absWavelengths = new double[wavelengths.length];
+        for (int i = 0; i < wavelengths.length; i++) {
+            absWavelengths[i] = Inparameters.CONV_KEV_ANGSTROM
+                    / (Inparameters.CONV_KEV_ANGSTROM / wavelengths[i]);
+        }
+        return AbsCoefficient.getMassAbsCoefficients(context.getAnodeZ(), absWavelengths);
+    }
+
+    /**
+     * Method produces intensities of a set of wavelength slices, equal to
+     * those of getContiniumIntensity.
+     * @param context values fixed during the calculation, a FinPavContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @param wavelengthWidths widths of the wavelength slices (Angstrom).
+     * @param massAbs mass absorption of the slices, see getSliceCoefficients.
+     * @param intensities total calculated intensities within the wavelength intervals.
+     */
+    @Override
+    protected void getContiniumIntensities(CalculationContext context,
+            double[] wavelengths, double[] wavelengthWidths, double[] massAbs,
+            double[] intensities) {
+        FinPavContext finPav = (FinPavContext) context;
+        MathFunctions math = finPav.getMath();
+        int n = intensities.length;
+
+        int z = finPav.getAnodeZ();
+        if (Double.isNaN(finPav._aExponent)) {
+            for (int i = 0; i < n; i++) {
+                Diagnostics.report(ErrorCode.no_data, z,
+                        Inparameters.CONV_KEV_ANGSTROM / wavelengths[i],
+                        "FinPavCalculation, no a exponent");
+            }
+            Arrays.fill(intensities, 0.0d);
+            return;
+        }
+        double energy0 = finPav.getTubeVoltage();
+
+        for (int i = 0; i < n; i++) {
+            double wavelength = wavelengths[i];
+            double energy = Inparameters.CONV_KEV_ANGSTROM / wavelength;
+            double b = math.pow(wavelength / (2.0d * finPav._wavelength0), finPav._aExponent);
+            double lCont = math.log(finPav._lFactor * ((2.0d * energy0 + energy) / 3.0d));
+            double sigma = 4.0e5d / (finPav._energy0Pow - math.pow(energy, 1.65d));
+            double chiSigma = (massAbs[i] / finPav.getSinOutAngle()) / sigma;
+            double fFactor = 1.0d / ((1.0d + chiSigma) * (1.0d + (finPav._hRatio * chiSigma)));
+            double rFactor = getRfactor(z, energy0, energy);
+            double invWavelength = 1.0d / wavelength;
+            double nPhotonsPerAngstrom = finPav._constFactor * (finPav._invWavelength0 - invWavelength)
+                    * invWavelength * b * (finPav._t / lCont) * fFactor * rFactor * finPav._inv4Pi;
+            intensities[i] = nPhotonsPerAngstrom * wavelengthWidths[i];
+        }
+    }
+
+    /**
+     * Method looks up the mass absorption of the anode at the slice energies.
+     * @param context values fixed during the calculation, a FinPavContext.
+     * @param energies center energies in keV.
+     * @return mass absorption of each energy, null if the anode has no
+     * a exponent.
+     */
+    @Override
+    protected double[] getSliceCoefficientsAtEnergies(CalculationContext context,
+            double[] energies) {
+        if (Double.isNaN(((FinPavContext) context)._aExponent)) {
+            return null;
+        }
+        return AbsCoefficient.getMassAbsCoefficientsAtEnergies(context.getAnodeZ(),
+                energies);
+    }
+
+    /**
+     * Method produces intensities of a set of energy slices. The number of
+     * photons per keV is the number per Angstrom times
+     * dwavelength/dE = C / E^2: (1 / wavelength0 - 1 / wavelength) / wavelength
+     * becomes (E0 - E) / (C * E) and b becomes (E0 / 2E) ^ a.
+     * @param context values fixed during the calculation, a FinPavContext.
+     * @param energies center energies in keV.
+     * @param energyWidths widths of the energy slices (keV).
+     * @param massAbs mass absorption of the slices, see
+     * getSliceCoefficientsAtEnergies.
+     * @param intensities total calculated intensities within the energy intervals.
+     */
+    @Override
+    protected void getContiniumEnergyIntensities(CalculationContext context,
+            double[] energies, double[] energyWidths, double[] massAbs,
+            double[] intensities) {
+        FinPavContext finPav = (FinPavContext) context;
+        MathFunctions math = finPav.getMath();
+        int n = intensities.length;
+
+        int z = finPav.getAnodeZ();
+        if (Double.isNaN(finPav._aExponent)) {
+            for (int i = 0; i < n; i++) {
+                Diagnostics.report(ErrorCode.no_data, z, energies[i],
+                        "FinPavCalculation, no a exponent");
+            }
+            Arrays.fill(intensities, 0.0d);
+            return;
+        }
+        double energy0 = finPav.getTubeVoltage();
+
+        for (int i = 0; i < n; i++) {
+            double energy = energies[i];
+            double b = math.pow(energy0 / (2.0d * energy), finPav._aExponent);
+            double lCont = math.log(finPav._lFactor * ((2.0d * energy0 + energy) / 3.0d));
+            double sigma = 4.0e5d / (finPav._energy0Pow - math.pow(energy, 1.65d));
+            double chiSigma = (massAbs[i] / finPav.getSinOutAngle()) / sigma;
+            double fFactor = 1.0d / ((1.0d + chiSigma) * (1.0d + (finPav._hRatio * chiSigma)));
+            double rFactor = getRfactor(z, energy0, energy);
+            double nPhotonsPerKev = finPav._constFactor
+                    * ((energy0 - energy) * finPav._invConv / energy)
+                    * b * (finPav._t / lCont) * fFactor * rFactor * finPav._inv4Pi;
+            intensities[i] = nPhotonsPerKev * energyWidths[i];
+        }
+    }
+
     /**
      * Method calculates the f factor or function according to page 28 in the paper.
      * 
-     * @param z atomic number
-     * @param outAngle angle of photons existing the anode, relative to anode
-     *        surface (degrees). 
-     * @param energy0 Incoming electron energy (keV)
+     * @param finPav values fixed during the calculation.
      * @param energy  energy of outgoing photon (KeV).
      * @param sigma sigma calculated according to formulas on papge 28 in
      *        the paper (different for continuum and lines).
      * @return factor value.
      */
-    private double getFfactor(int z, double outAngle, double energy0,
-            double energy, double sigma) {
-        double h = 1.2d * AtomicWeights.getRelAtomicWeight(z) / (double) (z * z);
-        double chi = AbsCoefficient.getMassAbsCoefficient(z, Inparameters.CONV_KEV_ANGSTROM / energy) /
-                Math.sin(outAngle * Inparameters.ANGLE_CONV);
+    private double getFfactor(FinPavContext finPav, double energy, double sigma) {
+        double chi = AbsCoefficient.getMassAbsCoefficient(finPav.getAnodeZ(),
+                Inparameters.CONV_KEV_ANGSTROM / energy) / finPav.getSinOutAngle();
         double fFactor = 1.0d / (
                 (1.0d + chi / sigma) * 
-                (1.0d + ((h / (1.0d + h)) * (chi / sigma)))
+                (1.0d + (finPav._hRatio * (chi / sigma)))
                 );
         return fFactor;
     }
@@ -154,119 +287,142 @@ public class FinPavCalculation extends SourceCalculation {
      * Method calculates intensities of the characteristic lines of the x-ray tube.
      * Intensity is returned as the total intensity of the line together with
      * a width which is the natural width of the line.
-     * @param inParameters reference to parameters input via GUI.
+     * @param context values fixed during the calculation, a FinPavContext.
      * @param outputData an XraySpectrum object containing the calculated values.
      */
     @Override
-    protected void calculateTubeLineIntensities(Inparameters inParameters, XraySpectrum outputData) {
+    protected void calculateTubeLineIntensities(CalculationContext context, XraySpectrum outputData) {
+        FinPavContext finPav = (FinPavContext) context;
         
         // Create a temporary storage for the lines
-        List<SpectrumPart> allLines = new ArrayList<>();
+        SpectrumColumns allLines = new SpectrumColumns();
 
         // Get tube target atomic number
-        int z = inParameters.getAnodeElement().getAtomicNumber();
-        double zD = (double) z;
+        int z = finPav.getAnodeZ();
+        double zD = finPav.getAnodeZd();
 
         // First calculate K line intensities
-        final Map<TubeLines.XrfLine, Map<Integer, TubeLines.LineInfo>> majorLineInfo
-                = TubeLines.getMajorLineInfo();
+        AnodeModel.LineSet majorLines = finPav.getAnodeModel().getMajorLines();
         final double neK = 2.0d;
         final double bK = 0.35d * 1.73d;
-        double energy0 = inParameters.getTubeVoltage();
+        double energy0 = finPav.getTubeVoltage();
 
-        majorLineInfo.keySet().stream()
-                .filter(xrfLine -> TubeLines.isKline(xrfLine)) // Major lines includes some L and a M line
-                .filter(xrfLine -> Optional.ofNullable(majorLineInfo.get(xrfLine).get(z)).isPresent())                .filter(xrfLine -> AbsorptionEdges.getEdge(xrfLine).isPresent())
-                .filter(xrfLine -> FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).isPresent())
-                .filter(xrfLine -> TransProbabilities.getTransProb(z, xrfLine).isPresent())
-                .forEach(xrfLine -> {
-                    TubeLines.LineInfo lineInfo = majorLineInfo.get(xrfLine).get(z);
-                    double energy = lineInfo.getEnergy();
-                    double wavelength = Inparameters.CONV_KEV_ANGSTROM
-                            / energy;
-                    double edgeEnergy = lineInfo.getAbsorptionEdge();
-                    // Calculate U0, the overvoltage ratio
-                    double u = energy0 / edgeEnergy;
-                    // Line exists if tube voltage is above absorption edge
-                    if (u > 1) {
-                        double firstParantesis = u * Math.log(u) + 1.0d - u;
-                        double j = 11.5d * zD;
-                        double lnArgument = (1166.0d / j) * ((2.0d * energy0 + edgeEnergy) / 3.0d);
-                        double lChar = Math.log(lnArgument);
-                        // delta K calculation
-                        double rK = 0.88d;
-                        double lFunction = 0.75d;
-                        double deltaK = 1.098e-5d * zD * zD * rK *
-                                (edgeEnergy / ( neK * bK)) * lFunction;
-                        // Start calculating final expression
-                        double omegaK = FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).get();
-                        double pKL = TransProbabilities.getTransProb(z, xrfLine).get();
-                        double sigma = 4.5e5d / (Math.pow(energy0, 1.65d) - Math.pow(edgeEnergy, 1.65d));
-                        double fFactor = getFfactor(z, inParameters.getOutAngle(),
-                                energy0, energy, sigma);
-                        double rFactor = getRfactor(z, energy0, edgeEnergy);
-                        double nPhotons = omegaK * pKL * ((neK * bK) / (2.0d * zD)) *
-                                firstParantesis * (1.0d / lChar) * fFactor * rFactor *
-                                (1.0d / (4.0d * Math.PI)) * (1.0d + deltaK);
-                        double evwidth = lineInfo.getLineWidth();
-                        // Calculate line width in Angstrom
-                        double lineWidth = getLineWidth(lineInfo.getEnergy(), evwidth);
-                        
-                        // store calculated intensity
-                        allLines.add(new SpectrumPart(wavelength, lineWidth, nPhotons));
-                    }
-                });
+        for (int i = 0; i < majorLines.size(); i++) {
+            // Major lines includes some L and a M line
+            if (!TubeLines.isKline(majorLines.getLine(i))
+                    || !majorLines.hasIntensityData(i)) {
+                continue;
+            }
+            double energy = majorLines.getEnergy(i);
+            double wavelength = majorLines.getWavelength(i);
+            double edgeEnergy = majorLines.getEdgeEnergy(i);
+            // Calculate U0, the overvoltage ratio
+            double u = energy0 / edgeEnergy;
+            // Line exists if tube voltage is above absorption edge
+            if (u > 1) {
+                double firstParantesis = u * Math.log(u) + 1.0d - u;
+                double lnArgument = finPav._lFactor * ((2.0d * energy0 + edgeEnergy) / 3.0d);
+                double lChar = Math.log(lnArgument);
+                // delta K calculation
+                double rK = 0.88d;
+                double lFunction = 0.75d;
+                double deltaK = 1.098e-5d * zD * zD * rK *
+                        (edgeEnergy / ( neK * bK)) * lFunction;
+                // Start calculating final expression
+                double omegaK = majorLines.getYield(i);
+                double pKL = majorLines.getTransProb(i);
+                double sigma = 4.5e5d / (finPav._energy0Pow - Math.pow(edgeEnergy, 1.65d));
+                double fFactor = getFfactor(finPav, energy, sigma);
+                double rFactor = getRfactor(z, energy0, edgeEnergy);
+                double nPhotons = omegaK * pKL * ((neK * bK) / (2.0d * zD)) *
+                        firstParantesis * (1.0d / lChar) * fFactor * rFactor *
+                        finPav._inv4Pi * (1.0d + deltaK);
+                double evwidth = majorLines.getLineWidth(i);
+                // Calculate line width in Angstrom
+                double lineWidth = getLineWidth(energy, evwidth);
+
+                // store calculated intensity
+                allLines.add(wavelength, lineWidth, nPhotons);
+            }
+        }
 
         // Calculate L line intensities
-        final Map<TubeLines.XrfLine, Map<Integer, TubeLines.LineInfo>> lLineInfo
-                = TubeLines.getLlineInfo();
+        AnodeModel.LineSet lLines = finPav.getAnodeModel().getLlines();
         final double bL = (2.519d / (zD - 26.6)) - 0.0968d + 0.0103d * zD;
 
-        lLineInfo.keySet().stream()
-                .filter(xrfLine -> AbsorptionEdges.getEdge(xrfLine).isPresent())
-                .filter(xrfLine -> Optional.ofNullable(lLineInfo.get(xrfLine).get(z)).isPresent())
-                .filter(xrfLine -> FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).isPresent())
-                .filter(xrfLine -> TransProbabilities.getTransProb(z, xrfLine).isPresent())
-                .forEach(xrfLine -> {
-                    TubeLines.LineInfo lineInfo = lLineInfo.get(xrfLine).get(z);
-                    double energy = lineInfo.getEnergy();
-                    double wavelength = Inparameters.CONV_KEV_ANGSTROM
-                            / energy;
-                    double edgeEnergy = lineInfo.getAbsorptionEdge();
-                    double omegaK = FlourYield.getYield(z, AbsorptionEdges.getEdge(xrfLine).get()).get();
-                    AbsEdge lEdge = AbsorptionEdges.getEdge(xrfLine).get();
-                    double neL = 2.0d;
-                    if (lEdge == AbsEdge.L3_EDGE) {
-                        neL = 4.0d;
-                    }
-                    // Calculate U0, the overvoltage ratio
-                    double u = energy0 / edgeEnergy;
-                    // Line exists if tube voltage is above absorption edge
-                    if (u > 1) {
-                        double firstParantesis = u * Math.log(u) + 1.0d - u;
-                        double j = 11.5d * zD;
-                        double lnArgument = (1166.0d / j) * ((2.0d * energy0 + edgeEnergy) / 3.0d);
-                        double l = Math.log(lnArgument);
-                        // Start calculating final expression
-                        double pKL = TransProbabilities.getTransProb(z, xrfLine).get();
-                         double sigma = 4.5e5d / (Math.pow(energy0, 1.65d) - Math.pow(edgeEnergy, 1.65d));
-                        double fFactor = getFfactor(z, inParameters.getOutAngle(),
-                                energy0, energy, sigma);
-                        double rFactor = getRfactor(z, energy0, edgeEnergy);
-                        double nPhotons = omegaK * pKL * ((neL * bL) / (2.0d * zD)) *
-                                firstParantesis * (1.0d / l) * fFactor * rFactor *
-                                (1.0d / (4.0d * Math.PI)) ;
-                        double evwidth = lineInfo.getLineWidth();
-                        // Calculate line width in Angstrom
-                        double lineWidth = getLineWidth(lineInfo.getEnergy(), evwidth);
-                        
-                        // Store calculated intensity
-                        allLines.add(new SpectrumPart(wavelength, lineWidth, nPhotons));
-                    }
-                });
+        for (int i = 0; i < lLines.size(); i++) {
+            if (!lLines.hasIntensityData(i)) {
+                continue;
+            }
+            double energy = lLines.getEnergy(i);
+            double wavelength = lLines.getWavelength(i);
+            double edgeEnergy = lLines.getEdgeEnergy(i);
+            double omegaK = lLines.getYield(i);
+            double neL = 2.0d;
+            if (lLines.getEdge(i) == AbsEdge.L3_EDGE) {
+                neL = 4.0d;
+            }
+            // Calculate U0, the overvoltage ratio
+            double u = energy0 / edgeEnergy;
+            // Line exists if tube voltage is above absorption edge
+            if (u > 1) {
+                double firstParantesis = u * Math.log(u) + 1.0d - u;
+                double lnArgument = finPav._lFactor * ((2.0d * energy0 + edgeEnergy) / 3.0d);
+                double l = Math.log(lnArgument);
+                // Start calculating final expression
+                double pKL = lLines.getTransProb(i);
+                double sigma = 4.5e5d / (finPav._energy0Pow - Math.pow(edgeEnergy, 1.65d));
+                double fFactor = getFfactor(finPav, energy, sigma);
+                double rFactor = getRfactor(z, energy0, edgeEnergy);
+                double nPhotons = omegaK * pKL * ((neL * bL) / (2.0d * zD)) *
+                        firstParantesis * (1.0d / l) * fFactor * rFactor *
+                        finPav._inv4Pi;
+                double evwidth = lLines.getLineWidth(i);
+                // Calculate line width in Angstrom
+                double lineWidth = getLineWidth(energy, evwidth);
+
+                // Store calculated intensity
+                allLines.add(wavelength, lineWidth, nPhotons);
+            }
+        }
         // Sort lines in wavelength order and add to output data
-        allLines.stream()
-                .sorted(Comparator.comparing(SpectrumPart::getWavelength))
-                .forEach(specPart -> outputData.getTubeLines().add(specPart));  
+        allLines.sortByWavelength();
+        outputData.getTubeLineColumns().addAll(allLines);
+    }
+
+    /**
+     * Values of the Finkelshtein and Pavlova algorithm fixed during one
+     * calculation.
+     */
+    private static class FinPavContext extends CalculationContext {
+
+        private final double _aExponent;   // NaN if not known for the anode
+        private final double _wavelength0;
+        private final double _invWavelength0;
+        private final double _invConv;     // 1 / C
+        private final double _t;
+        private final double _lFactor;     // 1166 / j
+        private final double _energy0Pow;  // energy0 ^ 1.65
+        private final double _hRatio;      // h / (1 + h)
+        private final double _constFactor;
+        private final double _inv4Pi;
+
+        FinPavContext(Inparameters inParameters) {
+            super(inParameters);
+            int z = getAnodeZ();
+            double zD = getAnodeZd();
+            _aExponent = A_EXPONENT.getOrDefault(z, Double.NaN);
+            _wavelength0 = getMinWavelength();
+            _invWavelength0 = 1.0d / _wavelength0;
+            _invConv = 1.0d / Inparameters.CONV_KEV_ANGSTROM;
+            _t = Math.PI / Math.sqrt(3.0d);
+            double j = 11.5d * zD;
+            _lFactor = 1166.0d / j;
+            _energy0Pow = Math.pow(getTubeVoltage(), 1.65d);
+            double h = 1.2d * AtomicWeights.getRelAtomicWeight(z) / (double) (z * z);
+            _hRatio = h / (1.0d + h);
+            _constFactor = 7.52e-5d * zD;
+            _inv4Pi = 1.0d / (4.0d * Math.PI);
+        }
     }
 }
@@ -28,6 +28,7 @@ import java.util.List;
 import static se.e2t.xraycalc.Inparameters.CalcModel.EBEL;
 import static se.e2t.xraycalc.Inparameters.CalcModel.FINPAV;
 import static se.e2t.xraycalc.Inparameters.CalcModel.NIST;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
 
 /**
  *
@@ -55,6 +56,12 @@ public class Inparameters {
     private double _maxWavelength;
     private Algorithm _algorithm;
     private boolean _splitAtAbsEdge;
+    private SliceSpacing _sliceSpacing;
+    private double _integrationTolerance;
+    private Quadrature _quadrature;
+    private Axis _spectrumAxis;
+    private MathMode _mathMode;
+    private double _mathTolerance;
     
     private static final List<TubeElement> ANODE_ELEMENTS;
     static {
@@ -72,6 +79,31 @@ public class Inparameters {
      public static enum CalcModel {
         NIST, EBEL, FINPAV
     };
+
+    /**
+     * Spacing of the continuum slices, see SliceGrid.
+     */
+    public static enum SliceSpacing {
+        WAVELENGTH_UNIFORM, ENERGY_UNIFORM, LOG_UNIFORM
+    };
+
+    /**
+     * Rule integrating the continuum and its attenuation within each slice,
+     * see SliceQuadrature.
+     */
+    public static enum Quadrature {
+        MIDPOINT, SIMPSON, GAUSS_LEGENDRE_2, GAUSS_LEGENDRE_3, GAUSS_LEGENDRE_4,
+        GAUSS_LEGENDRE_5
+    };
+
+    /**
+     * Evaluation of exp, log and pow in the continuum formulas: the exact
+     * values of Math or approximations within the math tolerance, see
+     * MathFunctions.
+     */
+    public static enum MathMode {
+        STRICT, FAST
+    };
     
     private static final List<Algorithm> ALG_ALTERNATIVES;
     static {
@@ -115,6 +147,12 @@ public class Inparameters {
         _maxWavelength = 12.0d;
         _algorithm = getAlgorithms().get(0);
         _splitAtAbsEdge = true;
+        _sliceSpacing = SliceSpacing.WAVELENGTH_UNIFORM;
+        _integrationTolerance = 0.0d;
+        _quadrature = Quadrature.MIDPOINT;
+        _spectrumAxis = Axis.WAVELENGTH;
+        _mathMode = MathMode.STRICT;
+        _mathTolerance = MathFunctions.DEFAULT_TOLERANCE;
     }
 
     public static List<TubeElement> getAnodeElements() {
@@ -242,6 +280,66 @@ public class Inparameters {
     public void setSplitAtAbsEdge(boolean _splitAtAbsEdge) {
         this._splitAtAbsEdge = _splitAtAbsEdge;
     }
+
+    public SliceSpacing getSliceSpacing() {
+        return _sliceSpacing;
+    }
+
+    public void setSliceSpacing(SliceSpacing sliceSpacing) {
+        this._sliceSpacing = sliceSpacing;
+    }
+
+    /**
+     * @return relative tolerance of the adaptive continuum integration, 0 if
+     * the continuum slices are not refined, see AdaptiveIntegration.
+     */
+    public double getIntegrationTolerance() {
+        return _integrationTolerance;
+    }
+
+    public void setIntegrationTolerance(double integrationTolerance) {
+        this._integrationTolerance = integrationTolerance;
+    }
+
+    public Quadrature getQuadrature() {
+        return _quadrature;
+    }
+
+    public void setQuadrature(Quadrature quadrature) {
+        this._quadrature = quadrature;
+    }
+
+    /**
+     * @return axis of the calculated spectrum, wavelength in Angstrom or
+     * energy in keV.
+     */
+    public Axis getSpectrumAxis() {
+        return _spectrumAxis;
+    }
+
+    public void setSpectrumAxis(Axis spectrumAxis) {
+        this._spectrumAxis = spectrumAxis;
+    }
+
+    public MathMode getMathMode() {
+        return _mathMode;
+    }
+
+    public void setMathMode(MathMode mathMode) {
+        this._mathMode = mathMode;
+    }
+
+    /**
+     * @return max relative error of exp, log and pow with the FAST math
+     * mode, not used with STRICT.
+     */
+    public double getMathTolerance() {
+        return _mathTolerance;
+    }
+
+    public void setMathTolerance(double mathTolerance) {
+        this._mathTolerance = mathTolerance;
+    }
    
     /**
      * Class stoes tube element data
@@ -0,0 +1,279 @@
+/*
+ * File MathFunctions.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import se.e2t.xraycalc.Inparameters.MathMode;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class evaluates the exp, log and pow functions of the continuum formulas
+ * of the calculation classes, see CalculationContext.getMath.
+ * STRICT - the values of java.lang.Math, spectra are reproduced bit by bit.
+ * FAST - approximations with a relative error below the math tolerance of
+ * the parameters, see Inparameters.getMathTolerance:
+ * exp(x) - x = (64q + j) ln(2) / 64 + r, |r| <= ln(2) / 128, e^x is
+ * 2^q * 2^(j / 64) from a table * the Taylor polynomial of e^r.
+ * log(x) - x = m 2^e, 1 <= m < 2, c the center of the m bin of 128 bins,
+ * ln(x) = e ln(2) + ln(c) from a table + ln(1 + r), r = (m - c) / c,
+ * |r| < 1/256, by the Taylor polynomial of ln(1 + r). Within 1/128 of 1
+ * the polynomial of ln(1 + (x - 1)) is used, so the error is relative
+ * also where ln(x) is close to 0.
+ * pow(x, y) - exp(y log(x)), the log with an absolute error below the
+ * tolerance divided by 2 MAX_FAST_EXPONENT.
+ * The degrees of the polynomials are the lowest keeping the truncation
+ * error below half the tolerance, rounding adds a few ulps, for pow a few
+ * ulps of y log(x). Arguments outside the ranges of the approximations,
+ * e.g. zero, negative, subnormal, infinite or NaN values, and exponents of
+ * pow above MAX_FAST_EXPONENT are passed to Math. Formulas cancelling the
+ * value of a function, e.g. 1 - e^-x of Ebel, use Math, as the cancellation
+ * would multiply the error of the approximation.
+ */
+public final class MathFunctions {
+
+    // Max absolute exponent of pow using the approximation
+    public static final double MAX_FAST_EXPONENT = 16.0d;
+    public static final double DEFAULT_TOLERANCE = 1.0e-7d;
+    public static final double MIN_TOLERANCE = 1.0e-13d;
+    public static final double MAX_TOLERANCE = 1.0e-3d;
+
+    private static final MathFunctions STRICT = new MathFunctions(false, 0.0d);
+
+    // ln(2) split as in fdlibm, k * LN2_HI / 64 is exact for |k| < 2^21
+    private static final double LN2_HI = 6.93147180369123816490e-01d;
+    private static final double LN2_LO = 1.90821492927058770002e-10d;
+    private static final int EXP_BITS = 6;
+    private static final int EXP_SIZE = 1 << EXP_BITS;
+    private static final double EXP_SCALE = EXP_SIZE / Math.log(2.0d);
+    private static final double EXP_MAX_R = 0.5d * LN2_HI / EXP_SIZE;
+    private static final double MAX_EXP_ARGUMENT = 700.0d;
+    private static final int LOG_BITS = 7;
+    private static final int LOG_SIZE = 1 << LOG_BITS;
+    private static final double LOG_MAX_R = 0.5d / LOG_SIZE;
+    private static final double NEAR_ONE = 1.0d / LOG_SIZE;
+    private static final long MANTISSA_BITS = 0x000fffffffffffffL;
+    private static final long ONE_BITS = 0x3ff0000000000000L;
+
+    // 2^(j / 64), bin centers c, ln(c) and 1 / c
+    private static final double[] EXP_TABLE = new double[EXP_SIZE];
+    private static final double[] LOG_CENTERS = new double[LOG_SIZE];
+    private static final double[] LOG_TABLE = new double[LOG_SIZE];
+    private static final double[] LOG_INVERSES = new double[LOG_SIZE];
+
+    static {
+        for (int j = 0; j < EXP_SIZE; j++) {
+            EXP_TABLE[j] = Math.pow(2.0d, (double) j / EXP_SIZE);
+        }
+        for (int j = 0; j < LOG_SIZE; j++) {
+            LOG_CENTERS[j] = 1.0d + (j + 0.5d) / LOG_SIZE;
+            LOG_TABLE[j] = Math.log(LOG_CENTERS[j]);
+            LOG_INVERSES[j] = 1.0d / LOG_CENTERS[j];
+        }
+    }
+
+    private final boolean _fast;
+    private final double _tolerance;
+    private final double[] _expCoefficients;    // 1 / i!
+    private final double[] _logCoefficients;    // (-1)^i / (i + 1)
+    private final double[] _nearOneCoefficients;
+    private final double[] _powLogCoefficients;
+
+    private MathFunctions(boolean fast, double tolerance) {
+        _fast = fast;
+        _tolerance = tolerance;
+        if (fast) {
+            double error = 0.5d * tolerance;
+            _expCoefficients = getExpCoefficients(error);
+            // Outside NEAR_ONE |ln(x)| is above ln(1 + NEAR_ONE)
+            _logCoefficients = getLogCoefficients(LOG_MAX_R,
+                    error * Math.log1p(NEAR_ONE), false);
+            _nearOneCoefficients = getLogCoefficients(NEAR_ONE, error, true);
+            _powLogCoefficients = getLogCoefficients(LOG_MAX_R,
+                    error / MAX_FAST_EXPONENT, false);
+        } else {
+            _expCoefficients = null;
+            _logCoefficients = null;
+            _nearOneCoefficients = null;
+            _powLogCoefficients = null;
+        }
+    }
+
+    /**
+     * @param inParameters calculation parameters.
+     * @return the functions of the math mode and tolerance of the parameters.
+     */
+    public static MathFunctions getFunctions(Inparameters inParameters) {
+        return getFunctions(inParameters.getMathMode(), inParameters.getMathTolerance());
+    }
+
+    /**
+     * @param mode the math mode.
+     * @param tolerance relative error of the FAST functions, MIN_TOLERANCE to
+     * MAX_TOLERANCE, not used by STRICT.
+     * @return the functions.
+     */
+    public static MathFunctions getFunctions(MathMode mode, double tolerance) {
+        if (mode == MathMode.STRICT) {
+            return STRICT;
+        }
+        if (!(tolerance >= MIN_TOLERANCE && tolerance <= MAX_TOLERANCE)) {
+            throw new IllegalArgumentException("Math tolerance " + tolerance);
+        }
+        return new MathFunctions(true, tolerance);
+    }
+
+    /**
+     * Method finds the Taylor polynomial of e^r, |r| <= EXP_MAX_R, with a
+     * relative truncation error below error. The remainder of degree n is
+     * below r^(n + 1) / (n + 1)! e^|r| and e^r is above e^-|r|.
+     */
+    private static double[] getExpCoefficients(double error) {
+        double r = EXP_MAX_R;
+        double bound = Math.exp(2.0d * r) * r; // degree 0
+        int n = 0;
+        while (bound > error) {
+            n++;
+            bound *= r / (n + 1);
+        }
+        double[] coefficients = new double[n + 1];
+        coefficients[0] = 1.0d;
+        for (int i = 1; i <= n; i++) {
+            coefficients[i] = coefficients[i - 1] / i;
+        }
+        return coefficients;
+    }
+
+    /**
+     * Method finds the Taylor polynomial r * p(r) of ln(1 + r), |r| <= maxR,
+     * with a truncation error below error. The tail after degree d is below
+     * r^(d + 1) / ((d + 1)(1 - r)), relative to |ln(1 + r)| >= |r|(1 - r) it
+     * is below r^d / ((d + 1)(1 - r)^2).
+     * @param relative true for a relative, false for an absolute error.
+     * @return the coefficients of p.
+     */
+    private static double[] getLogCoefficients(double maxR, double error,
+            boolean relative) {
+        double scale = relative ? 1.0d / ((1.0d - maxR) * (1.0d - maxR))
+                : maxR / (1.0d - maxR);
+        int d = 1;
+        double power = maxR; // maxR^d
+        while (scale * power / (d + 1) > error) {
+            d++;
+            power *= maxR;
+        }
+        double[] coefficients = new double[d];
+        for (int i = 0; i < d; i++) {
+            coefficients[i] = (i % 2 == 0 ? 1.0d : -1.0d) / (i + 1);
+        }
+        return coefficients;
+    }
+
+    /**
+     * @return true if the functions are approximations.
+     */
+    public boolean isFast() {
+        return _fast;
+    }
+
+    /**
+     * @return relative error of the approximations, 0 if STRICT.
+     */
+    public double getTolerance() {
+        return _tolerance;
+    }
+
+    /**
+     * @return e^x.
+     */
+    public double exp(double x) {
+        return _fast ? fastExp(x, _expCoefficients) : Math.exp(x);
+    }
+
+    /**
+     * @return natural logarithm of x.
+     */
+    public double log(double x) {
+        if (!_fast) {
+            return Math.log(x);
+        }
+        if (Math.abs(x - 1.0d) < NEAR_ONE) {
+            double r = x - 1.0d;
+            return r * polynomial(_nearOneCoefficients, r);
+        }
+        return fastLog(x, _logCoefficients);
+    }
+
+    /**
+     * @return x raised to y.
+     */
+    public double pow(double x, double y) {
+        if (!_fast || !(Math.abs(y) <= MAX_FAST_EXPONENT)) {
+            return Math.pow(x, y);
+        }
+        if (!(x >= Double.MIN_NORMAL && x <= Double.MAX_VALUE)) {
+            return Math.pow(x, y);
+        }
+        return fastExp(y * fastLog(x, _powLogCoefficients), _expCoefficients);
+    }
+
+    private static double fastExp(double x, double[] coefficients) {
+        if (!(Math.abs(x) <= MAX_EXP_ARGUMENT)) {
+            return Math.exp(x);
+        }
+        double kd = Math.rint(x * EXP_SCALE);
+        double r = (x - kd * (LN2_HI / EXP_SIZE)) - kd * (LN2_LO / EXP_SIZE);
+        long k = (long) kd;
+        long q = k >> EXP_BITS;
+        return polynomial(coefficients, r) * EXP_TABLE[(int) k & (EXP_SIZE - 1)]
+                * Double.longBitsToDouble((q + 1023L) << 52);
+    }
+
+    private static double fastLog(double x, double[] coefficients) {
+        if (!(x >= Double.MIN_NORMAL && x <= Double.MAX_VALUE)) {
+            return Math.log(x);
+        }
+        long bits = Double.doubleToRawLongBits(x);
+        int e = (int) (bits >>> 52) - 1023;
+        int j = (int) (bits >>> (52 - LOG_BITS)) & (LOG_SIZE - 1);
+        double m = Double.longBitsToDouble((bits & MANTISSA_BITS) | ONE_BITS);
+        // m - c is exact, both are in [1, 2)
+        double r = (m - LOG_CENTERS[j]) * LOG_INVERSES[j];
+        return e * LN2_HI + (LOG_TABLE[j] + (e * LN2_LO + r * polynomial(coefficients, r)));
+    }
+
+    private static double polynomial(double[] coefficients, double x) {
+        int n = coefficients.length - 1;
+        double p = coefficients[n];
+        for (int i = n - 1; i >= 0; i--) {
+            p = p * x + coefficients[i];
+        }
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return _fast ? "FAST " + _tolerance : "STRICT";
+    }
+}
@@ -25,13 +25,11 @@
 package se.e2t.xraycalc;
 
 import se.e2t.abscoeffcalculate.AbsCoefficient;
-import se.e2t.abscoeffcalculate.Mucal;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
 import se.e2t.xraycalc.TubeLines.LineInfo;
 import se.e2t.xraycalc.TubeLines.XrfLine;
@@ -68,6 +66,23 @@ public class NistCalculation extends SourceCalculation {
         NIST_PAR.put(XrfLine.M_ALPHA_12, new NistInfo(1.76e8d, 1.02e6d, 0.0d));
     }
 
+    // From this argument getPellaEi uses the asymptotic expansion
+    private static final double PELLA_ASYMPTOTIC_LIMIT = 40.0d;
+    private static final double EULER_GAMMA = 0.5772156649015329d;
+
+    // PELLA_PRODUCTS[n] is the product of i / (1 + i)^2, i = 1 to n, the
+    // coefficient of x^(n + 1) in the series of getPellaEi. The series of
+    // arguments below PELLA_ASYMPTOTIC_LIMIT ends before the last value.
+    private static final double[] PELLA_PRODUCTS = new double[128];
+
+    static {
+        PELLA_PRODUCTS[0] = 1.0d;
+        for (int i = 1; i < PELLA_PRODUCTS.length; i++) {
+            PELLA_PRODUCTS[i] = PELLA_PRODUCTS[i - 1]
+                    * ((double) i / (double) ((1 + i) * (1 + i)));
+        }
+    }
+
     public NistCalculation() {
         super();
     }
@@ -102,62 +117,153 @@ public class NistCalculation extends SourceCalculation {
     }
 
     /**
-     * Method produces an intensity per Angstrom value for a certain wavelength.
+     * Method creates the values of the NIST algorithm fixed during one
+     * calculation.
      * @param inParameters reference to parameters input via GUI.
+     * @return a NistContext.
+     */
+    @Override
+    protected CalculationContext createContext(Inparameters inParameters) {
+        return new NistContext(inParameters);
+    }
+
+    /**
+     * Method produces an intensity per Angstrom value for a certain wavelength.
+     * @param context values fixed during the calculation, a NistContext.
      * @param wavelength wavelength in Angstrom.
      * @param wavelengthWidth width of the wavelegth slice to be calculated (Angstrom).
      * @return total calculated intensity within the wavelength interval.
      */
     @Override
-    protected double getContiniumIntensity(Inparameters inParameters,
+    protected double getContiniumIntensity(CalculationContext context,
             double wavelength, double wavelengthWidth) {
-        // Get tube anode atomic number
-        int z = inParameters.getAnodeElement().getAtomicNumber();
+        NistContext nist = (NistContext) context;
 
         // Calculate f
-        double takeOffAngle = inParameters.getOutAngle() * Inparameters.ANGLE_CONV;
-        double minWl = Inparameters.CONV_KEV_ANGSTROM / inParameters.getTubeVoltage();
-        double f = getPellaF(z, wavelength, takeOffAngle, minWl);
+        double minWl = nist.getMinWavelength();
+        double f = nist.getPellaF(wavelength);
 
         // Calculate intensity
-        double intensity = f * 2.72e-6d * (double) z * ((wavelength / minWl - 1.0d) / (wavelength * wavelength));
+        double intensity = f * 2.72e-6d * nist.getAnodeZd() * ((wavelength / minWl - 1.0d) / (wavelength * wavelength));
         double integratedIntensity = intensity * wavelengthWidth;
         return integratedIntensity;
     }
 
-    private static double getPellaXi(int z, double wavelength, double takeOffAngle,
-            double minWl) {
-        return (AbsCoefficient.getTau(z, wavelength) / Math.sin(takeOffAngle))
-                * ((1.0d / Math.pow(minWl, 1.65d)) - (1.0d / Math.pow(wavelength, 1.65d)));
+    /**
+     * Method looks up the photoelectric mass absorption of the anode at the
+     * slice wavelengths.
+     * @param context values fixed during the calculation.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @return tau of each wavelength.
+     */
+    @Override
+    protected double[] getSliceCoefficients(CalculationContext context,
+            double[] wavelengths) {
+        return AbsCoefficient.getTau(context.getAnodeZ(), wavelengths.clone());
     }
 
-    private static double getPellaC(double minWl, int z, double xi) {
-        return (1.0d + (1.0d / (1.0d + 2.56e-3d * (double) (z * z))))
-                / ((1.0d + ((2.56e3d * minWl) / (double) (z * z)))
-                * (0.25d * xi + 1.0e4d));
+    /**
+     * Method produces intensities of a set of wavelength slices, equal to
+     * those of getContiniumIntensity.
+     * @param context values fixed during the calculation, a NistContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @param wavelengthWidths widths of the wavelength slices (Angstrom).
+     * @param tau photoelectric mass absorption of the slices, see
+     * getSliceCoefficients.
+     * @param intensities total calculated intensities within the wavelength intervals.
+     */
+    @Override
+    protected void getContiniumIntensities(CalculationContext context,
+            double[] wavelengths, double[] wavelengthWidths, double[] tau,
+            double[] intensities) {
+        NistContext nist = (NistContext) context;
+        int n = intensities.length;
+        double zD = nist.getAnodeZd();
+        double minWl = nist.getMinWavelength();
+
+        for (int i = 0; i < n; i++) {
+            double wavelength = wavelengths[i];
+            double f = nist.getPellaF(wavelength, tau[i]);
+            double intensity = f * 2.72e-6d * zD
+                    * ((wavelength / minWl - 1.0d) / (wavelength * wavelength));
+            intensities[i] = intensity * wavelengthWidths[i];
+        }
     }
 
-    private static double getPellaF(int z, double wavelength,
-            double takeOffAngle, double minWl) {
-        double xi = getPellaXi(z, wavelength, takeOffAngle, minWl);
-        double c = getPellaC(minWl, z, xi);
-        return 1.0d / ((1.0d + c * xi) * (1.0d + c * xi));
+    /**
+     * Method looks up the photoelectric mass absorption of the anode at the
+     * slice energies.
+     * @param context values fixed during the calculation.
+     * @param energies center energies in keV.
+     * @return tau of each energy.
+     */
+    @Override
+    protected double[] getSliceCoefficientsAtEnergies(CalculationContext context,
+            double[] energies) {
+        return AbsCoefficient.getTauAtEnergies(context.getAnodeZ(), energies);
     }
 
-    private static double getPellaNproduct(int n) {
-        double product = 1.0d;
-        for (int i = 1; i <= n; i++) {
-            product *= (double) i / (double) ((1 + i) * (1 + i));
+    /**
+     * Method produces intensities of a set of energy slices. The intensity
+     * per keV is the intensity per Angstrom times dwavelength/dE = C / E^2,
+     * which reduces the wavelength terms to f * 2.72e-6 * Z * (E0 / E - 1) / C.
+     * @param context values fixed during the calculation, a NistContext.
+     * @param energies center energies in keV.
+     * @param energyWidths widths of the energy slices (keV).
+     * @param tau photoelectric mass absorption of the slices, see
+     * getSliceCoefficientsAtEnergies.
+     * @param intensities total calculated intensities within the energy intervals.
+     */
+    @Override
+    protected void getContiniumEnergyIntensities(CalculationContext context,
+            double[] energies, double[] energyWidths, double[] tau,
+            double[] intensities) {
+        NistContext nist = (NistContext) context;
+        int n = intensities.length;
+        double factor = 2.72e-6d * nist.getAnodeZd() / Inparameters.CONV_KEV_ANGSTROM;
+        double energy0 = nist.getTubeVoltage();
+
+        for (int i = 0; i < n; i++) {
+            double energy = energies[i];
+            double f = nist.getPellaFAtEnergy(energy, tau[i]);
+            intensities[i] = f * factor * ((energy0 / energy) - 1.0d) * energyWidths[i];
         }
-        return product;
     }
 
-    private static double getPellaEi(double x) {
+    /**
+     * Method returns the exponential integral Ei(x) less Euler's constant,
+     * the constant cancels in getPellaUshell. x shall be above 0.
+     * Below PELLA_ASYMPTOTIC_LIMIT the series x + ln(x) + sum of
+     * x^(n + 1) * PELLA_PRODUCTS[n] is summed, each power from the one
+     * before, until n is above 2x and the term is below 1e-6. The terms
+     * after it decrease by more than half each, so the truncation error is
+     * below 1e-6, the rounding error is a few ulps per term. From the limit
+     * the asymptotic expansion e^x / x * sum of k! / x^k is summed until
+     * the terms no longer decrease, the truncation error is below 1e-17
+     * relative, the rounding error a few ulps.
+     * The arguments ln(U0 * Ez) of the L shells are far below the limit.
+     */
+    static double getPellaEi(double x) {
+        if (x >= PELLA_ASYMPTOTIC_LIMIT) {
+            double sum = 1.0d;
+            double term = 1.0d;
+            for (int k = 1; k < x; k++) {
+                double next = term * k / x;
+                if (next >= term || next < 1.0e-17d * sum) {
+                    break;
+                }
+                term = next;
+                sum += term;
+            }
+            return Math.exp(x) / x * sum - EULER_GAMMA;
+        }
         double result = x + Math.log(x);
+        double power = x;
         int n = 1;
         double tN;
         do {
-            tN = Math.pow(x, (double) (n + 1)) * getPellaNproduct(n);
+            power *= x;
+            tN = power * PELLA_PRODUCTS[n];
             result += tN;
             n++;
         } while (((double) n <= 2.0d * x) || tN >= 1.0e-6d);
@@ -177,85 +283,90 @@ public class NistCalculation extends SourceCalculation {
 
     }
     
+    /**
+     * Lines above the max wavelength are left out, and the L lines of Pella
+     * are added only if L_A12 is within it.
+     * @return true.
+     */
+    @Override
+    protected boolean isLinesLimitedByMaxWavelength() {
+        return true;
+    }
+
     /**
      * Method calculates intensities of the characteristic lines of the x-ray tube.
      * Intensity is returned as a per Angstrom. The natural width of the line is
      * used to get this per Angstrom value.
-     * @param inParameters reference to parameters input via GUI.
+     * @param context values fixed during the calculation, a NistContext.
      * @param outputData an XarySpectrum object containing the calculated values.
      */
     @Override
     protected void calculateTubeLineIntensities(
-            Inparameters inParameters, XraySpectrum outputData) {
+            CalculationContext context, XraySpectrum outputData) {
+        NistContext nist = (NistContext) context;
+        Inparameters inParameters = nist.getParameters();
         
-        Map<TubeLines.XrfLine, Map<Integer, TubeLines.LineInfo>> tubeLineInfo = TubeLines.getMajorLineInfo();
-
         Map<TubeLines.XrfLine, NistInfo> nistPar = getNIST_PAR();
 
         // Get tube target atomic number
-        int z = inParameters.getAnodeElement().getAtomicNumber();
+        int z = nist.getAnodeZ();
+        AnodeModel.LineSet majorLines = nist.getAnodeModel().getMajorLines();
 
         // Get tube anode voltage
-        double tubeVoltage = inParameters.getTubeVoltage();
+        double tubeVoltage = nist.getTubeVoltage();
 
         // Process all tube lines
         List<SpectrumPart> tempOut = new ArrayList<>(); // Temporary storage
-        nistPar.keySet().stream()
-                .filter(xrfLine -> tubeLineInfo.get(xrfLine).get(z) != null) // No such line?
-                .filter(xrfLine -> xrfLine != XrfLine.L_BETA_1) // L_B1 added later
-                .filter(xrfLine -> Inparameters.CONV_KEV_ANGSTROM
-                / tubeLineInfo.get(xrfLine).get(z).getEnergy()
-                <= inParameters.getMaxWavelength()) // Wavelength too high?
-                .forEach(xrfLine -> {
-                    // Get NIST parameter record of this line
-                    NistInfo nistInfo = nistPar.get(xrfLine);
-                    // Get Lineinfo of this line
-                    LineInfo lineInfo = tubeLineInfo.get(xrfLine).get(z);
-                    // Get line wavelength
-                    double wavelength = Inparameters.CONV_KEV_ANGSTROM
-                            / lineInfo.getEnergy();
-                    // Calculate U0, the overvoltage ratio
-                    double u0 = tubeVoltage / lineInfo.getAbsorptionEdge();
-                    // Line exists if tube voltage is above absorption edge
-                    if (u0 > 1) {
-                        // Calculate the NIST expression factors
-                        double fac1 = (nistInfo.getA() / (nistInfo.getB() + (double) (z * z * z * z)))
-                                + nistInfo.getD();
-                        double exponent = -0.5d * ((u0 - 1.0d) / (1.17d * u0 + 3.2d))
-                                * ((u0 - 1.0d) / (1.17d * u0 + 3.2d));
-                        double fac2 = Math.exp(exponent);
-                        double fac3 = ((u0 * Math.log(u0)) / (u0 - 1.0d)) - 1.0d;
-                        // Calculate ratio Nline / Ncontinium
-                        double ratio = fac1 * fac2 * fac3;
-                         // Get line energy
-                        double lineEnergy = lineInfo.getEnergy();
-                        // get line width in eV
-                        double evwidth = lineInfo.getLineWidth();
-                        // Calculate line width in Angstrom
-                        double lineWidth = getLineWidth(lineEnergy, evwidth);
-                        // Get line integrated intensity
-                        double lineIntegralInt = ratio
-                                * getContiniumIntensity(inParameters, wavelength, lineWidth) /
-                                lineWidth;
-                       
-                        // Store line intensity
-                        tempOut.add(new SpectrumPart(wavelength, lineWidth, lineIntegralInt));
-                    }
-                });
+        for (int i = 0; i < majorLines.size(); i++) {
+            XrfLine xrfLine = majorLines.getLine(i);
+            // Get NIST parameter record of this line
+            NistInfo nistInfo = nistPar.get(xrfLine);
+            if (nistInfo == null // No NIST parameters
+                    || xrfLine == XrfLine.L_BETA_1 // L_B1 added later
+                    || majorLines.getWavelength(i) > inParameters.getMaxWavelength()) {
+                continue;
+            }
+            // Get line wavelength
+            double wavelength = majorLines.getWavelength(i);
+            // Calculate U0, the overvoltage ratio
+            double u0 = tubeVoltage / majorLines.getEdgeEnergy(i);
+            // Line exists if tube voltage is above absorption edge
+            if (u0 > 1) {
+                // Calculate the NIST expression factors
+                double fac1 = (nistInfo.getA() / (nistInfo.getB() + (double) (z * z * z * z)))
+                        + nistInfo.getD();
+                double exponent = -0.5d * ((u0 - 1.0d) / (1.17d * u0 + 3.2d))
+                        * ((u0 - 1.0d) / (1.17d * u0 + 3.2d));
+                double fac2 = Math.exp(exponent);
+                double fac3 = ((u0 * Math.log(u0)) / (u0 - 1.0d)) - 1.0d;
+                // Calculate ratio Nline / Ncontinium
+                double ratio = fac1 * fac2 * fac3;
+                // Get line energy
+                double lineEnergy = majorLines.getEnergy(i);
+                // get line width in eV
+                double evwidth = majorLines.getLineWidth(i);
+                // Calculate line width in Angstrom
+                double lineWidth = getLineWidth(lineEnergy, evwidth);
+                // Get line integrated intensity
+                double lineIntegralInt = ratio
+                        * getContiniumIntensity(nist, wavelength, lineWidth) /
+                        lineWidth;
+
+                // Store line intensity
+                tempOut.add(new SpectrumPart(wavelength, lineWidth, lineIntegralInt));
+            }
+        }
 
         // If L_A12 intensity has been generated then additional  L lines will be
         // added according to the second Pella et al. reference (no. 2)
         // Check if L_A12 line was generated
         List<SpectrumPart> allLines = tempOut;
         // Assume no L_A12 line
-        Map<Integer, LineInfo> lineInfoMap = tubeLineInfo.get(XrfLine.L_ALPHA_12);
-        Optional<LineInfo> optLineInfo
-                = Optional.ofNullable(lineInfoMap.get(z));
-        if (optLineInfo.isPresent()) {
+        int lA12Index = majorLines.indexOf(XrfLine.L_ALPHA_12);
+        if (lA12Index >= 0) {
 
             // Check if La12 wavelength is less than max wavelength
-            double lA12wavelength = Inparameters.CONV_KEV_ANGSTROM
-                    / optLineInfo.get().getEnergy();
+            double lA12wavelength = majorLines.getWavelength(lA12Index);
             if (lA12wavelength <= inParameters.getMaxWavelength()) {
 
                 // Add L lines according to Pella's second paper
@@ -265,8 +376,8 @@ public class NistCalculation extends SourceCalculation {
                 List<SpectrumPart> kmLines = tempOut.stream()
                         .filter(sPart -> !sPart.equals(lA12Info))
                         .collect(Collectors.toList()); // L_A12 removed
-                List<SpectrumPart> lLines = getLlines(inParameters,
-                        lA12Info.getIntensity(), z);
+                List<SpectrumPart> lLines = getLlines(nist,
+                        lA12Info.getIntensity());
 
                 // Add lines
                 allLines.clear();
@@ -283,126 +394,180 @@ public class NistCalculation extends SourceCalculation {
 
     /**
      * Method calculates the intensities of the L lines according to the second paper
-     * @param inParameters parameters input by the operator
+     * @param nist values fixed during the calculation
      * @param lA12Intensity total intensity of L-alpha12 used as a reference
-     * @param z atomic number
      * @return List of SpectrumPart objects describinbg the line intensities.
      */
     private static List<SpectrumPart> getLlines(
-            Inparameters inParameters,
-            Double lA12Intensity,
-            int z) {
+            NistContext nist,
+            Double lA12Intensity) {
         List<SpectrumPart> result = new ArrayList<>();
 
         // Some often used parameters
-        double takeOffAngle = inParameters.getOutAngle()
-                * Inparameters.ANGLE_CONV; // in radians
-        double minWl = Inparameters.CONV_KEV_ANGSTROM / inParameters.getTubeVoltage();
-        Mucal mc = new Mucal(null, z, 0.0d, 'C', true);
-        mc.calculate();
-        double tubeVoltage = inParameters.getTubeVoltage();
-        double meanYield = (mc.getFl_yield()[1] + mc.getFl_yield()[2]
-                + mc.getFl_yield()[3]) / 3.0d;
+        int z = nist.getAnodeZ();
+        AnodeModel model = nist.getAnodeModel();
+        AnodeModel.LineSet lLines = model.getLlines();
+        double tubeVoltage = nist.getTubeVoltage();
+        double meanYield = (model.getFlourYield(1) + model.getFlourYield(2)
+                + model.getFlourYield(3)) / 3.0d;
 
         // Calculate L_A12 f factor
         double lA12wavelength = Inparameters.CONV_KEV_ANGSTROM
-                / ((TubeLines.getLlineData(XrfLine.L_ALPHA_1, z).getEnergy()
-                + TubeLines.getLlineData(XrfLine.L_ALPHA_2, z).getEnergy()) / 2.0d);
+                / ((lLines.getLineInfo(XrfLine.L_ALPHA_1).getEnergy()
+                + lLines.getLineInfo(XrfLine.L_ALPHA_2).getEnergy()) / 2.0d);
 
-        double fA12 = getPellaF(z, lA12wavelength, takeOffAngle, minWl);
+        double fA12 = nist.getPellaF(lA12wavelength);
 
         // Calculate L subshells ionization cross-sections
         //L1
-        double l1Edge = mc.getEnergy()[1];
+        double l1Edge = model.getEdgeEnergy(1);
         double u0L1 = tubeVoltage / l1Edge;
         double ezL1 = getPellaEz(l1Edge, z);
         double uL1 = getPellaUshell(2, u0L1, ezL1, meanYield);
         //L2
-        double l2Edge = mc.getEnergy()[2];
+        double l2Edge = model.getEdgeEnergy(2);
         double u0L2 = tubeVoltage / l2Edge;
         double ezL2 = getPellaEz(l2Edge, z);
         double uL2 = getPellaUshell(2, u0L2, ezL2, meanYield);
         //L3
-        double l3Edge = mc.getEnergy()[3];
+        double l3Edge = model.getEdgeEnergy(3);
         double u0L3 = tubeVoltage / l3Edge;
         double ezL3 = getPellaEz(l3Edge, z);
         double uL3 = getPellaUshell(4, u0L3, ezL3, meanYield);
 
         // Calculate and store L line data
         //L_A1
-        LineInfo lInfo = TubeLines.getLlineData(XrfLine.L_ALPHA_1, z);
+        LineInfo lInfo = lLines.getLineInfo(XrfLine.L_ALPHA_1);
         double wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         double lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
         double intLa1Int = lA12Intensity / 1.1d; // This is the reference intensity 
         result.add(new SpectrumPart(wavelength, lineWidth, intLa1Int));
         //L_A2
-        lInfo = TubeLines.getLlineData(XrfLine.L_ALPHA_2, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_ALPHA_2);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
         double lA2int = 0.1d * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lA2int));
         // L_B2
-        lInfo = TubeLines.getLlineData(XrfLine.L_BETA_2, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_BETA_2);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        double fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        double fT = nist.getPellaF(wavelength) / fA12;
         double relP = 0.2575d * Math.log((double) z) - 0.8845d;
         double lB2int = relP * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lB2int * fT));
         // L_L
-        lInfo = TubeLines.getLlineData(XrfLine.L_IOTA, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_IOTA);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         double lLint = 0.044d * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lLint * fT));
         // L_B1
-        lInfo = TubeLines.getLlineData(XrfLine.L_BETA_1, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_BETA_1);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         relP = (0.565d * Math.log((double) z) - 0.9445d) * (uL2 / uL3);
         double lB1int = relP * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lB1int * fT));
         // L_B3
-        lInfo = TubeLines.getLlineData(XrfLine.L_BETA_3, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_BETA_3);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         relP = (0.5632d * Math.log((double) z) - 1.9501d) * (uL1 / uL3);
         double lB3int = relP * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lB3int * fT));
         // L_B4
-        lInfo = TubeLines.getLlineData(XrfLine.L_BETA_4, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_BETA_4);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         double lB4int = 0.626d * lB3int;
         result.add(new SpectrumPart(wavelength, lineWidth, lB4int * fT));
         // L_E
-        lInfo = TubeLines.getLlineData(XrfLine.L_ETA, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_ETA);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         double lEint = 0.024d * lB1int;
         result.add(new SpectrumPart(wavelength, lineWidth, lEint * fT));
         // L_G1
-        lInfo = TubeLines.getLlineData(XrfLine.L_GAMMA_1, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_GAMMA_1);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         relP = (0.3749d * Math.log((double) z) - 1.2873d) * (uL2 / uL3);
         double lG1int = relP * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lG1int * fT));
         // L_G3
-        lInfo = TubeLines.getLlineData(XrfLine.L_GAMMA_3, z);
+        lInfo = lLines.getLineInfo(XrfLine.L_GAMMA_3);
         wavelength = Inparameters.CONV_KEV_ANGSTROM / lInfo.getEnergy();
         lineWidth = getLineWidth(lInfo.getEnergy(), lInfo.getLineWidth());
-        fT = getPellaF(z, wavelength, takeOffAngle, minWl) / fA12;
+        fT = nist.getPellaF(wavelength) / fA12;
         relP = 0.068d * (uL1 / uL3);
         double lG3int = relP * intLa1Int;
         result.add(new SpectrumPart(wavelength, lineWidth, lG3int * fT));
         // Done
         return result;
     }
+
+    /**
+     * Values of the NIST algorithm fixed during one calculation, the
+     * wavelength independent parts of the Pella xi and c variables.
+     */
+    private static class NistContext extends CalculationContext {
+
+        private final double _minWlPow;     // 1 / minWl ^ 1.65
+        private final double _convPow;      // 1 / C ^ 1.65
+        private final double _cNumerator;
+        private final double _cDenominator;
+
+        NistContext(Inparameters inParameters) {
+            super(inParameters);
+            int z = getAnodeZ();
+            double minWl = getMinWavelength();
+            _minWlPow = 1.0d / Math.pow(minWl, 1.65d);
+            _convPow = 1.0d / Math.pow(Inparameters.CONV_KEV_ANGSTROM, 1.65d);
+            _cNumerator = 1.0d + (1.0d / (1.0d + 2.56e-3d * (double) (z * z)));
+            _cDenominator = 1.0d + ((2.56e3d * minWl) / (double) (z * z));
+        }
+
+        /**
+         * @param wavelength wavelength in Angstrom.
+         * @return the Pella f factor, absorption of the anode.
+         */
+        double getPellaF(double wavelength) {
+            return getPellaF(wavelength, AbsCoefficient.getTau(getAnodeZ(), wavelength));
+        }
+
+        /**
+         * @param wavelength wavelength in Angstrom.
+         * @param tau photoelectric mass absorption of the anode at wavelength.
+         * @return the Pella f factor, absorption of the anode.
+         */
+        double getPellaF(double wavelength, double tau) {
+            double xi = (tau / getSinOutAngle())
+                    * (_minWlPow - (1.0d / getMath().pow(wavelength, 1.65d)));
+            return getPellaFofXi(xi);
+        }
+
+        /**
+         * @param energy photon energy in keV.
+         * @param tau photoelectric mass absorption of the anode at energy.
+         * @return the Pella f factor, absorption of the anode.
+         */
+        double getPellaFAtEnergy(double energy, double tau) {
+            // 1 / wavelength ^ 1.65 = (E / C) ^ 1.65
+            double xi = (tau / getSinOutAngle())
+                    * (_minWlPow - (getMath().pow(energy, 1.65d) * _convPow));
+            return getPellaFofXi(xi);
+        }
+
+        private double getPellaFofXi(double xi) {
+            double c = _cNumerator / (_cDenominator * (0.25d * xi + 1.0e4d));
+            return 1.0d / ((1.0d + c * xi) * (1.0d + c * xi));
+        }
+    }
 }
@@ -0,0 +1,422 @@
+/*
+ * File ParameterSnapshot.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import se.e2t.xraycalc.Inparameters.Algorithm;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+import se.e2t.xraycalc.Inparameters.SliceSpacing;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class is an immutable copy of the calculation parameters of an
+ * Inparameters object. A snapshot may be handed to other threads and used
+ * as a key of cached results while the GUI continues to edit the
+ * Inparameters.
+ * Two snapshots are equal if all values used by the calculations are equal:
+ * anode, angles, window, filter composition and thickness, voltage, slice
+ * size, max wavelength, split flag, slice spacing, integration tolerance,
+ * quadrature, spectrum axis, math mode and algorithm, the math tolerance
+ * only with the FAST math mode. Element symbols and program version are
+ * not compared and the filter components are stored in atomic number
+ * order.
+ * The content hash is a 64 bit FNV-1a hash of the same values, it is equal
+ * in all program runs and may be used as a key of stored results. Stored
+ * results also keep the values themselves, see getCanonicalBytes, since
+ * different values may have the same hash.
+ */
+public final class ParameterSnapshot {
+
+    // Increase if the values or their order in the content hash are changed
+    private static final int HASH_VERSION = 5;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int _anodeZ;
+    private final String _anodeSymbol;
+    private final double _inAngle;
+    private final double _outAngle;
+    private final int _windowZ;
+    private final String _windowSymbol;
+    private final double _windowThickness;
+    private final int[] _filterZ;
+    private final String[] _filterSymbols;
+    private final double[] _filterFractions;
+    private final double _filterThickness;
+    private final double _tubeVoltage;
+    private final double _continuumIntervalSize;
+    private final double _maxWavelength;
+    private final boolean _splitAtAbsEdge;
+    private final SliceSpacing _sliceSpacing;
+    private final double _integrationTolerance;
+    private final Quadrature _quadrature;
+    private final Axis _spectrumAxis;
+    private final MathMode _mathMode;
+    private final double _mathTolerance; // 0 if STRICT
+    private final CalcModel _calcModel;
+    private final long _contentHash;
+
+    /**
+     * Creates a snapshot of the current values of a set of parameters.
+     * @param inParameters the parameters.
+     */
+    public ParameterSnapshot(Inparameters inParameters) {
+        _anodeZ = inParameters.getAnodeElement().getAtomicNumber();
+        _anodeSymbol = inParameters.getAnodeElement().getSymbol();
+        _inAngle = canonical(inParameters.getInAngle());
+        _outAngle = canonical(inParameters.getOutAngle());
+        _windowZ = inParameters.getWindowElement().getAtomicNumber();
+        _windowSymbol = inParameters.getWindowElement().getSymbol();
+        _windowThickness = canonical(inParameters.getWindowThickness());
+
+        // Filter components in atomic number order
+        FilterElement[] filter = inParameters.getFilterElements()
+                .toArray(new FilterElement[0]);
+        Arrays.sort(filter, Comparator.comparingInt(
+                fElement -> fElement.getSelectedElement().getAtomicNumber()));
+        _filterZ = new int[filter.length];
+        _filterSymbols = new String[filter.length];
+        _filterFractions = new double[filter.length];
+        for (int i = 0; i < filter.length; i++) {
+            _filterZ[i] = filter[i].getSelectedElement().getAtomicNumber();
+            _filterSymbols[i] = filter[i].getSelectedElement().getSymbol();
+            _filterFractions[i] = canonical(filter[i].getConc());
+        }
+        _filterThickness = canonical(inParameters.getFilterThickness());
+
+        _tubeVoltage = canonical(inParameters.getTubeVoltage());
+        _continuumIntervalSize = canonical(inParameters.getContinuumIntervalSize());
+        _maxWavelength = canonical(inParameters.getMaxWavelength());
+        _splitAtAbsEdge = inParameters.isSplitAtAbsEdge();
+        _sliceSpacing = inParameters.getSliceSpacing();
+        _integrationTolerance = canonical(inParameters.getIntegrationTolerance());
+        _quadrature = inParameters.getQuadrature();
+        _spectrumAxis = inParameters.getSpectrumAxis();
+        _mathMode = inParameters.getMathMode();
+        _mathTolerance = _mathMode == MathMode.FAST
+                ? canonical(inParameters.getMathTolerance()) : 0.0d;
+        _calcModel = inParameters.getAlgorithm().getCalcModel();
+        _contentHash = calculateContentHash();
+    }
+
+    /**
+     * Method creates a new Inparameters object with the values of the
+     * snapshot. The object is not shared, the caller may modify it.
+     * @return the parameters.
+     */
+    public Inparameters toInparameters() {
+        Inparameters inParameters = new Inparameters();
+        inParameters.getAnodeElement().setAtomicNumber(_anodeZ);
+        inParameters.getAnodeElement().setSymbol(_anodeSymbol);
+        inParameters.setInAngle(_inAngle);
+        inParameters.setOutAngle(_outAngle);
+        inParameters.getWindowElement().setAtomicNumber(_windowZ);
+        inParameters.getWindowElement().setSymbol(_windowSymbol);
+        inParameters.setWindowThickness(_windowThickness);
+        List<FilterElement> filterElements = inParameters.getFilterElements();
+        for (int i = 0; i < _filterZ.length; i++) {
+            filterElements.add(new FilterElement(_filterSymbols[i], _filterZ[i],
+                    _filterFractions[i]));
+        }
+        inParameters.setFilterThickness(_filterThickness);
+        inParameters.setTubeVoltage(_tubeVoltage);
+        inParameters.setContiniumIntervalSize(_continuumIntervalSize);
+        inParameters.setMaxWavelength(_maxWavelength);
+        inParameters.setSplitAtAbsEdge(_splitAtAbsEdge);
+        inParameters.setSliceSpacing(_sliceSpacing);
+        inParameters.setIntegrationTolerance(_integrationTolerance);
+        inParameters.setQuadrature(_quadrature);
+        inParameters.setSpectrumAxis(_spectrumAxis);
+        inParameters.setMathMode(_mathMode);
+        if (_mathMode == MathMode.FAST) {
+            inParameters.setMathTolerance(_mathTolerance);
+        }
+        for (Algorithm algorithm : Inparameters.getAlgorithms()) {
+            if (algorithm.getCalcModel() == _calcModel) {
+                inParameters.setAlgorithm(algorithm);
+            }
+        }
+        return inParameters;
+    }
+
+    public int getAnodeZ() {
+        return _anodeZ;
+    }
+
+    public String getAnodeSymbol() {
+        return _anodeSymbol;
+    }
+
+    public double getInAngle() {
+        return _inAngle;
+    }
+
+    public double getOutAngle() {
+        return _outAngle;
+    }
+
+    public int getWindowZ() {
+        return _windowZ;
+    }
+
+    public String getWindowSymbol() {
+        return _windowSymbol;
+    }
+
+    public double getWindowThickness() {
+        return _windowThickness;
+    }
+
+    /**
+     * @return atomic numbers of the filter components, ascending.
+     */
+    public int[] getFilterAtomicNumbers() {
+        return _filterZ.clone();
+    }
+
+    /**
+     * @return mass fractions of the filter components, same order as
+     * getFilterAtomicNumbers.
+     */
+    public double[] getFilterFractions() {
+        return _filterFractions.clone();
+    }
+
+    public double getFilterThickness() {
+        return _filterThickness;
+    }
+
+    public double getTubeVoltage() {
+        return _tubeVoltage;
+    }
+
+    public double getContinuumIntervalSize() {
+        return _continuumIntervalSize;
+    }
+
+    public double getMaxWavelength() {
+        return _maxWavelength;
+    }
+
+    public boolean isSplitAtAbsEdge() {
+        return _splitAtAbsEdge;
+    }
+
+    public SliceSpacing getSliceSpacing() {
+        return _sliceSpacing;
+    }
+
+    public double getIntegrationTolerance() {
+        return _integrationTolerance;
+    }
+
+    public Quadrature getQuadrature() {
+        return _quadrature;
+    }
+
+    public Axis getSpectrumAxis() {
+        return _spectrumAxis;
+    }
+
+    public MathMode getMathMode() {
+        return _mathMode;
+    }
+
+    /**
+     * @return max relative error of the FAST math mode, 0 if STRICT.
+     */
+    public double getMathTolerance() {
+        return _mathTolerance;
+    }
+
+    public CalcModel getCalcModel() {
+        return _calcModel;
+    }
+
+    /**
+     * @return 64 bit hash of the values compared by equals, equal in all
+     * program runs.
+     */
+    public long getContentHash() {
+        return _contentHash;
+    }
+
+    /**
+     * Method writes the values compared by equals, in the order of the
+     * content hash, to a byte array. Two snapshots are equal if and only if
+     * their arrays are equal, in all program runs.
+     * @return the values.
+     */
+    byte[] getCanonicalBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(HASH_VERSION);
+            out.writeInt(_anodeZ);
+            out.writeDouble(_inAngle);
+            out.writeDouble(_outAngle);
+            out.writeInt(_windowZ);
+            out.writeDouble(_windowThickness);
+            out.writeInt(_filterZ.length);
+            for (int i = 0; i < _filterZ.length; i++) {
+                out.writeInt(_filterZ[i]);
+                out.writeDouble(_filterFractions[i]);
+            }
+            out.writeDouble(_filterThickness);
+            out.writeDouble(_tubeVoltage);
+            out.writeDouble(_continuumIntervalSize);
+            out.writeDouble(_maxWavelength);
+            out.writeBoolean(_splitAtAbsEdge);
+            out.writeDouble(_integrationTolerance);
+            out.writeUTF(_sliceSpacing.name());
+            out.writeUTF(_quadrature.name());
+            out.writeUTF(_spectrumAxis.name());
+            out.writeUTF(_mathMode.name());
+            out.writeDouble(_mathTolerance);
+            out.writeUTF(_calcModel.name());
+        } catch (IOException ex) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    // -0.0 is stored as 0.0 so equal values have equal bits
+    private static double canonical(double value) {
+        return value == 0.0d ? 0.0d : value;
+    }
+
+    private long calculateContentHash() {
+        long hash = FNV_OFFSET;
+        hash = hashLong(hash, HASH_VERSION);
+        hash = hashLong(hash, _anodeZ);
+        hash = hashDouble(hash, _inAngle);
+        hash = hashDouble(hash, _outAngle);
+        hash = hashLong(hash, _windowZ);
+        hash = hashDouble(hash, _windowThickness);
+        hash = hashLong(hash, _filterZ.length);
+        for (int i = 0; i < _filterZ.length; i++) {
+            hash = hashLong(hash, _filterZ[i]);
+            hash = hashDouble(hash, _filterFractions[i]);
+        }
+        hash = hashDouble(hash, _filterThickness);
+        hash = hashDouble(hash, _tubeVoltage);
+        hash = hashDouble(hash, _continuumIntervalSize);
+        hash = hashDouble(hash, _maxWavelength);
+        hash = hashLong(hash, _splitAtAbsEdge ? 1L : 0L);
+        hash = hashDouble(hash, _integrationTolerance);
+        // Enum names, not ordinals, so reordering an enum keeps the hash
+        hash = hashString(hash, _sliceSpacing.name());
+        hash = hashString(hash, _quadrature.name());
+        hash = hashString(hash, _spectrumAxis.name());
+        hash = hashString(hash, _mathMode.name());
+        hash = hashDouble(hash, _mathTolerance);
+        return hashString(hash, _calcModel.name());
+    }
+
+    private static long hashLong(long hash, long value) {
+        for (int i = 0; i < 64; i += 8) {
+            hash ^= (value >>> i) & 0xffL;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hashDouble(long hash, double value) {
+        return hashLong(hash, Double.doubleToLongBits(value));
+    }
+
+    private static long hashString(long hash, String value) {
+        hash = hashLong(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = hashLong(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ParameterSnapshot)) {
+            return false;
+        }
+        ParameterSnapshot other = (ParameterSnapshot) obj;
+        return _contentHash == other._contentHash
+                && _anodeZ == other._anodeZ
+                && Double.compare(_inAngle, other._inAngle) == 0
+                && Double.compare(_outAngle, other._outAngle) == 0
+                && _windowZ == other._windowZ
+                && Double.compare(_windowThickness, other._windowThickness) == 0
+                && Arrays.equals(_filterZ, other._filterZ)
+                && Arrays.equals(_filterFractions, other._filterFractions)
+                && Double.compare(_filterThickness, other._filterThickness) == 0
+                && Double.compare(_tubeVoltage, other._tubeVoltage) == 0
+                && Double.compare(_continuumIntervalSize, other._continuumIntervalSize) == 0
+                && Double.compare(_maxWavelength, other._maxWavelength) == 0
+                && _splitAtAbsEdge == other._splitAtAbsEdge
+                && _sliceSpacing == other._sliceSpacing
+                && Double.compare(_integrationTolerance, other._integrationTolerance) == 0
+                && _quadrature == other._quadrature
+                && _spectrumAxis == other._spectrumAxis
+                && _mathMode == other._mathMode
+                && Double.compare(_mathTolerance, other._mathTolerance) == 0
+                && _calcModel == other._calcModel;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(_contentHash);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder filter = new StringBuilder();
+        for (int i = 0; i < _filterZ.length; i++) {
+            filter.append(i == 0 ? "" : " ").append(_filterSymbols[i])
+                    .append(' ').append(_filterFractions[i]);
+        }
+        return String.format("%s anode %s %.1f kV, angles %s/%s, window %s %s um, "
+                + "filter [%s] %s um, slice %s A to %s A%s %s %s%s, hash %016x",
+                _calcModel, _anodeSymbol, _tubeVoltage, _inAngle, _outAngle,
+                _windowSymbol, _windowThickness, filter, _filterThickness,
+                _continuumIntervalSize, _maxWavelength,
+                _splitAtAbsEdge ? " split" : "", _sliceSpacing, _quadrature,
+                (_integrationTolerance > 0.0d ? " tolerance " + _integrationTolerance : "")
+                + (_spectrumAxis == Axis.ENERGY ? " energy axis" : "")
+                + (_mathMode == MathMode.FAST ? " fast math " + _mathTolerance : ""),
+                _contentHash);
+    }
+}
@@ -0,0 +1,738 @@
+/*
+ * File ParameterSweep.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.Inparameters.Algorithm;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+import se.e2t.xraycalc.Inparameters.SliceSpacing;
+import se.e2t.xraycalc.Inparameters.TubeElement;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class calculates spectra over a set of parameter points, e.g. tube voltage
+ * times take-off angle times filter thickness. Each dimension varies one
+ * parameter of a base Inparameters object. The points are the full grid of
+ * the dimension values or a Latin hypercube or Sobol design with a given
+ * number of samples.
+ * The points are calculated on a ForkJoinPool and each result is handed to
+ * a sink as soon as it is calculated.
+ */
+public class ParameterSweep {
+
+    /**
+     * Parameters that may be varied. Discrete parameters are given as
+     * values: ANODE atomic number, ALGORITHM, SLICE_SPACING, QUADRATURE and
+     * MATH_MODE ordinal of CalcModel, SliceSpacing, Quadrature and MathMode,
+     * SPLIT_AT_ABS_EDGE 0 or 1. Discrete parameters only take listed
+     * values, not ranges.
+     */
+    public enum Parameter {
+        TUBE_VOLTAGE {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setTubeVoltage(value);
+            }
+        },
+        IN_ANGLE {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setInAngle(value);
+            }
+        },
+        OUT_ANGLE {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setOutAngle(value);
+            }
+        },
+        WINDOW_THICKNESS {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setWindowThickness(value);
+            }
+        },
+        FILTER_THICKNESS {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setFilterThickness(value);
+            }
+        },
+        CONTINUUM_INTERVAL_SIZE {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setContiniumIntervalSize(value);
+            }
+        },
+        MAX_WAVELENGTH {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setMaxWavelength(value);
+            }
+        },
+        INTEGRATION_TOLERANCE {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setIntegrationTolerance(value);
+            }
+        },
+        ANODE(true) {
+            @Override
+            void checkValue(double value) {
+                if (value != Math.rint(value)) {
+                    throw new IllegalArgumentException("Invalid " + this + " value " + value);
+                }
+                getAnodeElement((int) value);
+            }
+
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                TubeElement anode = getAnodeElement((int) value);
+                inParameters.getAnodeElement().setAtomicNumber(anode.getAtomicNumber());
+                inParameters.getAnodeElement().setSymbol(anode.getSymbol());
+            }
+
+            @Override
+            public double parseValue(String text) {
+                for (TubeElement anode : Inparameters.getAnodeElements()) {
+                    if (anode.getSymbol().equalsIgnoreCase(text)) {
+                        return anode.getAtomicNumber();
+                    }
+                }
+                try {
+                    return getAnodeElement(Integer.parseInt(text)).getAtomicNumber();
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("No anode element " + text);
+                }
+            }
+        },
+        ALGORITHM(CalcModel.values().length) {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                CalcModel calcModel = CalcModel.values()[(int) value];
+                for (Algorithm algorithm : Inparameters.getAlgorithms()) {
+                    if (algorithm.getCalcModel() == calcModel) {
+                        inParameters.setAlgorithm(algorithm);
+                    }
+                }
+            }
+
+            @Override
+            public double parseValue(String text) {
+                return CalcModel.valueOf(text.toUpperCase()).ordinal();
+            }
+        },
+        SPLIT_AT_ABS_EDGE(2) {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setSplitAtAbsEdge(value != 0.0d);
+            }
+
+            @Override
+            public double parseValue(String text) {
+                if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                    return Boolean.parseBoolean(text) ? 1.0d : 0.0d;
+                }
+                return super.parseValue(text);
+            }
+        },
+        SLICE_SPACING(SliceSpacing.values().length) {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setSliceSpacing(SliceSpacing.values()[(int) value]);
+            }
+
+            @Override
+            public double parseValue(String text) {
+                return SliceSpacing.valueOf(text.toUpperCase()).ordinal();
+            }
+        },
+        QUADRATURE(Quadrature.values().length) {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setQuadrature(Quadrature.values()[(int) value]);
+            }
+
+            @Override
+            public double parseValue(String text) {
+                return Quadrature.valueOf(text.toUpperCase()).ordinal();
+            }
+        },
+        MATH_MODE(MathMode.values().length) {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setMathMode(MathMode.values()[(int) value]);
+            }
+
+            @Override
+            public double parseValue(String text) {
+                return MathMode.valueOf(text.toUpperCase()).ordinal();
+            }
+        },
+        MATH_TOLERANCE {
+            @Override
+            void apply(Inparameters inParameters, double value) {
+                inParameters.setMathTolerance(value);
+            }
+        };
+
+        private final boolean _discrete;
+        private final int _valueCount; // Values 0 to count - 1, 0 if not checked
+
+        Parameter() {
+            this(false, 0);
+        }
+
+        Parameter(boolean discrete) {
+            this(discrete, 0);
+        }
+
+        Parameter(int valueCount) {
+            this(true, valueCount);
+        }
+
+        Parameter(boolean discrete, int valueCount) {
+            _discrete = discrete;
+            _valueCount = valueCount;
+        }
+
+        /**
+         * @return true if only the listed values of the parameter may be used.
+         */
+        public boolean isDiscrete() {
+            return _discrete;
+        }
+
+        /**
+         * Method converts a value given as text, e.g. on the command line.
+         * Discrete parameters also accept names: anode symbol, CalcModel,
+         * SliceSpacing, Quadrature, MathMode and true or false.
+         * @param text the value.
+         * @return the value as used by the sweep.
+         */
+        public double parseValue(String text) {
+            return Double.parseDouble(text);
+        }
+
+        /**
+         * Method checks that a value may be given to apply: a number, for
+         * discrete parameters one of the values of the parameter.
+         * @param value the value.
+         * @throws IllegalArgumentException if not.
+         */
+        void checkValue(double value) {
+            if (!Double.isFinite(value) || (_valueCount > 0
+                    && (value != Math.rint(value) || value < 0.0d || value >= _valueCount))) {
+                throw new IllegalArgumentException("Invalid " + this + " value " + value);
+            }
+        }
+
+        abstract void apply(Inparameters inParameters, double value);
+
+        private static TubeElement getAnodeElement(int atomicNumber) {
+            for (TubeElement anode : Inparameters.getAnodeElements()) {
+                if (anode.getAtomicNumber() == atomicNumber) {
+                    return anode;
+                }
+            }
+            throw new IllegalArgumentException("No anode element with atomic number "
+                    + atomicNumber);
+        }
+    };
+
+    /**
+     * How the points are selected from the dimensions.
+     */
+    public enum Design {
+        GRID, /* all combinations of the dimension values */
+        LATIN_HYPERCUBE, /* random samples, one in each stratum of each dimension */
+        SOBOL /* samples of a Sobol low discrepancy sequence */
+    };
+
+    private final ParameterSnapshot _base;
+    private final List<Dimension> _dimensions = new ArrayList<>();
+    private Design _design = Design.GRID;
+    private int _samples;
+    private long _seed;
+    private int _parallelism = ForkJoinPool.getCommonPoolParallelism();
+    private SpectrumCache _cache;
+
+    /**
+     * Creates a sweep.
+     * @param inParameters base parameters, values of parameters not varied
+     * by a dimension. A snapshot is taken, later changes are not seen.
+     */
+    public ParameterSweep(Inparameters inParameters) {
+        _base = new ParameterSnapshot(inParameters);
+    }
+
+    /**
+     * Method adds a dimension of the sweep.
+     * @param dimension the dimension.
+     */
+    public void addDimension(Dimension dimension) {
+        for (Dimension other : _dimensions) {
+            if (other.getParameter() == dimension.getParameter()) {
+                throw new IllegalArgumentException("Parameter " + dimension.getParameter()
+                        + " is already swept");
+            }
+        }
+        _dimensions.add(dimension);
+    }
+
+    public List<Dimension> getDimensions() {
+        return Collections.unmodifiableList(_dimensions);
+    }
+
+    /**
+     * Method selects how the points are selected.
+     * @param design the design.
+     * @param samples number of points of LATIN_HYPERCUBE and SOBOL designs,
+     * not used by GRID.
+     * @param seed seed of the random numbers of LATIN_HYPERCUBE.
+     */
+    public void setDesign(Design design, int samples, long seed) {
+        if (design != Design.GRID && samples < 1) {
+            throw new IllegalArgumentException("At least one sample is needed");
+        }
+        _design = design;
+        _samples = samples;
+        _seed = seed;
+    }
+
+    public Design getDesign() {
+        return _design;
+    }
+
+    /**
+     * @return number of points of LATIN_HYPERCUBE and SOBOL designs.
+     */
+    public int getSamples() {
+        return _samples;
+    }
+
+    public long getSeed() {
+        return _seed;
+    }
+
+    /**
+     * @param parallelism number of calculation threads.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        _parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * @param cache cache used for the calculations, null to calculate all
+     * points.
+     */
+    public void setCache(SpectrumCache cache) {
+        _cache = cache;
+    }
+
+    /**
+     * Method returns the parameters of all points of the sweep.
+     * @return the points, in index order of the results.
+     */
+    public List<ParameterSnapshot> getPoints() {
+        double[][] values;
+        switch (_design) {
+            case LATIN_HYPERCUBE:
+                values = getDesignValues(getLatinHypercube());
+                break;
+            case SOBOL:
+                values = getDesignValues(Sobol.getPoints(_samples, _dimensions.size()));
+                break;
+            default:
+                values = getGridValues();
+        }
+        List<ParameterSnapshot> points = new ArrayList<>(values.length);
+        for (double[] point : values) {
+            Inparameters inParameters = _base.toInparameters();
+            for (int d = 0; d < point.length; d++) {
+                _dimensions.get(d).getParameter().apply(inParameters, point[d]);
+            }
+            points.add(new ParameterSnapshot(inParameters));
+        }
+        return points;
+    }
+
+    private double[][] getGridValues() {
+        int count = 1;
+        for (Dimension dimension : _dimensions) {
+            count = Math.multiplyExact(count, dimension.size());
+        }
+        double[][] values = new double[count][_dimensions.size()];
+        for (int i = 0; i < count; i++) {
+            // Last dimension varies fastest
+            int rest = i;
+            for (int d = _dimensions.size() - 1; d >= 0; d--) {
+                Dimension dimension = _dimensions.get(d);
+                values[i][d] = dimension.getValue(rest % dimension.size());
+                rest /= dimension.size();
+            }
+        }
+        return values;
+    }
+
+    private double[][] getLatinHypercube() {
+        Random random = new Random(_seed);
+        double[][] units = new double[_samples][_dimensions.size()];
+        int[] strata = new int[_samples];
+        for (int d = 0; d < _dimensions.size(); d++) {
+            for (int i = 0; i < _samples; i++) {
+                strata[i] = i;
+            }
+            // Fisher-Yates shuffle of the strata
+            for (int i = _samples - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int stratum = strata[i];
+                strata[i] = strata[j];
+                strata[j] = stratum;
+            }
+            for (int i = 0; i < _samples; i++) {
+                units[i][d] = (strata[i] + random.nextDouble()) / _samples;
+            }
+        }
+        return units;
+    }
+
+    private double[][] getDesignValues(double[][] units) {
+        double[][] values = new double[units.length][_dimensions.size()];
+        for (int i = 0; i < units.length; i++) {
+            for (int d = 0; d < _dimensions.size(); d++) {
+                values[i][d] = _dimensions.get(d).getUnitValue(units[i][d]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Method calculates the spectra of all points. The sink is called from
+     * the calculation threads, one call at a time, in the order the points
+     * are completed.
+     * @param sink receiver of the results.
+     * @return number of points where the calculation failed.
+     */
+    public int run(Sink sink) {
+        List<ParameterSnapshot> points = getPoints();
+        AtomicInteger failures = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        try {
+            pool.invoke(new SweepTask(points, 0, points.size(), sink, failures));
+        } finally {
+            pool.shutdown();
+        }
+        return failures.get();
+    }
+
+    private Result calculatePoint(int index, ParameterSnapshot snapshot) {
+        Diagnostics diagnostics = new Diagnostics();
+        try {
+            XraySpectrum spectrum = _cache != null
+                    ? _cache.get(snapshot, diagnostics)
+                    : SpectrumEngine.calculate(snapshot, diagnostics);
+            return new Result(index, snapshot, spectrum, diagnostics, null);
+        } catch (RuntimeException ex) {
+            return new Result(index, snapshot, null, diagnostics, ex);
+        }
+    }
+
+    /**
+     * Task calculating a range of points, split in halves until one point
+     * remains so idle threads may steal work.
+     */
+    private class SweepTask extends RecursiveAction {
+
+        private final List<ParameterSnapshot> _points;
+        private final int _from;
+        private final int _to;
+        private final Sink _sink;
+        private final AtomicInteger _failures;
+
+        SweepTask(List<ParameterSnapshot> points, int from, int to, Sink sink,
+                AtomicInteger failures) {
+            _points = points;
+            _from = from;
+            _to = to;
+            _sink = sink;
+            _failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > 1) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new SweepTask(_points, _from, middle, _sink, _failures),
+                        new SweepTask(_points, middle, _to, _sink, _failures));
+            } else if (_to > _from) {
+                Result result = calculatePoint(_from, _points.get(_from));
+                if (!result.isOk()) {
+                    _failures.incrementAndGet();
+                }
+                synchronized (_sink) {
+                    _sink.accept(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receiver of the results of a sweep.
+     */
+    public interface Sink {
+
+        /**
+         * Method is called when the spectrum of a point has been calculated.
+         * @param result the result.
+         */
+        void accept(Result result);
+    }
+
+    /**
+     * Result of one point of a sweep.
+     */
+    public static class Result {
+
+        private final int _index;
+        private final ParameterSnapshot _parameters;
+        private final XraySpectrum _spectrum;
+        private final Diagnostics _diagnostics;
+        private final RuntimeException _error;
+
+        Result(int index, ParameterSnapshot parameters, XraySpectrum spectrum,
+                Diagnostics diagnostics, RuntimeException error) {
+            _index = index;
+            _parameters = parameters;
+            _spectrum = spectrum;
+            _diagnostics = diagnostics;
+            _error = error;
+        }
+
+        /**
+         * @return index of the point, see getPoints.
+         */
+        public int getIndex() {
+            return _index;
+        }
+
+        public ParameterSnapshot getParameters() {
+            return _parameters;
+        }
+
+        /**
+         * @return the spectrum, null if the calculation failed.
+         */
+        public XraySpectrum getSpectrum() {
+            return _spectrum;
+        }
+
+        /**
+         * @return warnings and errors of the calculation, empty if the
+         * spectrum was found in the cache.
+         */
+        public Diagnostics getDiagnostics() {
+            return _diagnostics;
+        }
+
+        /**
+         * @return exception thrown by the calculation, null if OK.
+         */
+        public RuntimeException getError() {
+            return _error;
+        }
+
+        public boolean isOk() {
+            return _error == null;
+        }
+    }
+
+    /**
+     * One varied parameter and its values.
+     */
+    public static class Dimension {
+
+        private final Parameter _parameter;
+        private final double[] _values;
+        private final boolean _range;
+
+        private Dimension(Parameter parameter, double[] values, boolean range) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("A dimension needs at least one value");
+            }
+            for (double value : values) {
+                parameter.checkValue(value);
+            }
+            _parameter = parameter;
+            _values = values;
+            _range = range;
+        }
+
+        /**
+         * Method creates a dimension of listed values.
+         * @param parameter the parameter.
+         * @param values the values.
+         * @return the dimension.
+         * @throws IllegalArgumentException if a value is not valid for the
+         * parameter.
+         */
+        public static Dimension getValues(Parameter parameter, double... values) {
+            return new Dimension(parameter, values.clone(), false);
+        }
+
+        /**
+         * Method creates a dimension of equally spaced values from min to max.
+         * LATIN_HYPERCUBE and SOBOL designs use any value between min and max.
+         * @param parameter the parameter, not discrete.
+         * @param min first value.
+         * @param max last value.
+         * @param steps number of values of a GRID design.
+         * @return the dimension.
+         * @throws IllegalArgumentException if the parameter is discrete or
+         * there are no steps.
+         */
+        public static Dimension getRange(Parameter parameter, double min, double max,
+                int steps) {
+            if (parameter.isDiscrete()) {
+                throw new IllegalArgumentException("Parameter " + parameter
+                        + " is discrete, list its values");
+            }
+            if (steps < 1) {
+                throw new IllegalArgumentException("At least one step is needed");
+            }
+            double[] values = new double[steps];
+            for (int i = 0; i < steps; i++) {
+                values[i] = steps == 1 ? min : min + (max - min) * i / (steps - 1);
+            }
+            return new Dimension(parameter, values, true);
+        }
+
+        public Parameter getParameter() {
+            return _parameter;
+        }
+
+        public int size() {
+            return _values.length;
+        }
+
+        public double getValue(int index) {
+            return _values[index];
+        }
+
+        /**
+         * Method maps a value in [0, 1) of a design to a parameter value.
+         */
+        double getUnitValue(double unit) {
+            if (_range) {
+                return _values[0] + (_values[_values.length - 1] - _values[0]) * unit;
+            }
+            int index = Math.min((int) (unit * _values.length), _values.length - 1);
+            return _values[index];
+        }
+    }
+
+    /**
+     * Sobol sequence, direction numbers of S. Joe and F.Y. Kuo for up to 12
+     * dimensions.
+     */
+    private static class Sobol {
+
+        private static final int BITS = 32;
+        // Degree, polynomial coefficients and initial direction numbers of
+        // dimensions 2 and up
+        private static final int[] DEGREE = {1, 2, 3, 3, 4, 4, 5, 5, 5, 5, 5};
+        private static final int[] POLYNOMIAL = {0, 1, 1, 2, 1, 4, 2, 4, 7, 11, 13};
+        private static final int[][] INITIAL = {
+            {1}, {1, 3}, {1, 3, 1}, {1, 1, 1}, {1, 1, 3, 3}, {1, 3, 5, 13},
+            {1, 1, 5, 5, 17}, {1, 1, 5, 5, 5}, {1, 1, 7, 11, 19}, {1, 1, 5, 1, 1},
+            {1, 1, 1, 3, 11}
+        };
+
+        static double[][] getPoints(int count, int dimensions) {
+            if (dimensions > DEGREE.length + 1) {
+                throw new IllegalArgumentException("Sobol design has max "
+                        + (DEGREE.length + 1) + " dimensions");
+            }
+            long[][] direction = new long[dimensions][];
+            for (int d = 0; d < dimensions; d++) {
+                direction[d] = getDirectionNumbers(d);
+            }
+            double[][] points = new double[count][dimensions];
+            long[] x = new long[dimensions];
+            for (int i = 1; i < count; i++) {
+                // Gray code order, change the bit of the lowest zero bit of i - 1
+                int bit = Long.numberOfTrailingZeros(~(long) (i - 1));
+                for (int d = 0; d < dimensions; d++) {
+                    x[d] ^= direction[d][bit];
+                    points[i][d] = (double) x[d] / (double) (1L << BITS);
+                }
+            }
+            return points;
+        }
+
+        private static long[] getDirectionNumbers(int dimension) {
+            long[] v = new long[BITS];
+            if (dimension == 0) {
+                for (int k = 0; k < BITS; k++) {
+                    v[k] = 1L << (BITS - 1 - k);
+                }
+                return v;
+            }
+            int s = DEGREE[dimension - 1];
+            int a = POLYNOMIAL[dimension - 1];
+            int[] m = INITIAL[dimension - 1];
+            for (int k = 0; k < s; k++) {
+                v[k] = (long) m[k] << (BITS - 1 - k);
+            }
+            for (int k = s; k < BITS; k++) {
+                v[k] = v[k - s] ^ (v[k - s] >>> s);
+                for (int j = 1; j < s; j++) {
+                    if (((a >>> (s - 1 - j)) & 1) != 0) {
+                        v[k] ^= v[k - j];
+                    }
+                }
+            }
+            return v;
+        }
+    }
+}
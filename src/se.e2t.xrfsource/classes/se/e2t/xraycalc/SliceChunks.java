@@ -0,0 +1,165 @@
+/*
+ * File SliceChunks.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.AdaptiveIntegration.SliceIntegrator;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class evaluates a range of slices in chunks on a ForkJoinPool, used when
+ * one calculation has many slices, e.g. a fine grid. The range is halved
+ * until a part has at most CHUNK_SIZE slices, each part is evaluated by
+ * one thread. A chunk only writes the values of its own slices and each
+ * value is calculated the same way as by one call for all slices, so the
+ * results are equal to those of the sequential evaluation. Warnings of the
+ * pool threads are collected in the Diagnostics of the calling thread.
+ * The pool is selected per calculation and installed for the calculating
+ * thread like a Diagnostics, see install and SourceCalculation.setSlicePool.
+ * Without a pool all slices are evaluated in the calling thread.
+ */
+final class SliceChunks {
+
+    // Max number of slices of one chunk
+    static final int CHUNK_SIZE = 2048;
+
+    // Pool of the calculation made by the thread
+    private static final ThreadLocal<ForkJoinPool> CURRENT = new ThreadLocal<>();
+
+    private SliceChunks() {
+    }
+
+    /**
+     * Method installs the pool evaluating the chunks of the calculation made
+     * by the current thread.
+     * @param pool the pool, null to evaluate slices in the calling thread.
+     * @return the pool installed before, to be given to restore.
+     */
+    static ForkJoinPool install(ForkJoinPool pool) {
+        ForkJoinPool previous = CURRENT.get();
+        if (pool == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(pool);
+        }
+        return previous;
+    }
+
+    /**
+     * Method restores the pool returned by install.
+     * @param previous the pool, may be null.
+     */
+    static void restore(ForkJoinPool previous) {
+        install(previous);
+    }
+
+    /**
+     * Method evaluates slices from, inclusive, to to, exclusive. Exceptions
+     * of a chunk are thrown by this method.
+     * @param from first slice.
+     * @param to slice after the last slice.
+     * @param chunk evaluates a part of the range.
+     */
+    static void evaluate(int from, int to, Chunk chunk) {
+        ForkJoinPool pool = CURRENT.get();
+        if (pool == null || to - from <= CHUNK_SIZE) {
+            chunk.evaluate(from, to);
+        } else {
+            pool.invoke(new ChunkTask(from, to, chunk, Diagnostics.current()));
+        }
+    }
+
+    /**
+     * Method calculates the intensities of a set of slices in chunks, each
+     * chunk with its own call of the integrator.
+     * @param integrator calculates the intensities of a set of slices.
+     * @param centers center wavelengths or energies.
+     * @param widths slice widths.
+     * @param intensities calculated intensities, same length as centers.
+     */
+    static void integrate(SliceIntegrator integrator, double[] centers,
+            double[] widths, double[] intensities) {
+        evaluate(0, centers.length, (from, to) -> {
+            if (from == 0 && to == centers.length) {
+                integrator.integrate(centers, widths, intensities);
+            } else {
+                double[] part = new double[to - from];
+                integrator.integrate(Arrays.copyOfRange(centers, from, to),
+                        Arrays.copyOfRange(widths, from, to), part);
+                System.arraycopy(part, 0, intensities, from, part.length);
+            }
+        });
+    }
+
+    /**
+     * Evaluates a part of a range of slices.
+     */
+    interface Chunk {
+
+        /**
+         * @param from first slice.
+         * @param to slice after the last slice.
+         */
+        void evaluate(int from, int to);
+    }
+
+    /**
+     * Task halving its range until a part is small enough.
+     */
+    private static class ChunkTask extends RecursiveAction {
+
+        private final int _from;
+        private final int _to;
+        private final Chunk _chunk;
+        private final Diagnostics _diagnostics;
+
+        ChunkTask(int from, int to, Chunk chunk, Diagnostics diagnostics) {
+            _from = from;
+            _to = to;
+            _chunk = chunk;
+            _diagnostics = diagnostics;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > CHUNK_SIZE) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new ChunkTask(_from, middle, _chunk, _diagnostics),
+                        new ChunkTask(middle, _to, _chunk, _diagnostics));
+            } else {
+                Diagnostics previous = Diagnostics.install(_diagnostics);
+                try {
+                    _chunk.evaluate(_from, _to);
+                } finally {
+                    Diagnostics.restore(previous);
+                }
+            }
+        }
+    }
+}
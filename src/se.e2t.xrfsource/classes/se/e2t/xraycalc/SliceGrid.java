@@ -0,0 +1,410 @@
+/*
+ * File SliceGrid.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import se.e2t.abscoeffcalculate.Mucal;
+import se.e2t.xraycalc.Inparameters.SliceSpacing;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class stores the continuum slices of a tube spectrum calculation, the center
+ * wavelength and the width of each slice in wavelength order.
+ * A grid depends on anode element, tube voltage, interval size, max wavelength,
+ * split at edge flag and slice spacing only, so grids are cached and shared
+ * between calculations. A grid is immutable.
+ *
+ * The continuum starts at the short wavelength limit of the tube voltage.
+ * Slices are added until the lower limit of a slice reaches the max
+ * wavelength, i.e. the last slice passes the max wavelength.
+ * If split at edge is selected the slices are split at the K, L1, L2 and L3
+ * absorption edges of the anode element, a region of plus/minus 2 eV around
+ * each edge is left out. Slice widths depend on the spacing:
+ * WAVELENGTH_UNIFORM - the width is the interval size.
+ * ENERGY_UNIFORM - the energy width is constant, equal to the energy width of
+ * an interval size slice at 1 Angstrom.
+ * LOG_UNIFORM - the width is proportional to the wavelength, equal to the
+ * interval size at 1 Angstrom.
+ * The grid also holds the slices in keV, center energy and energy width of
+ * each slice in energy order, used by calculations on the energy axis.
+ */
+public class SliceGrid {
+
+    private static final double MINIMUM_SLICE = SourceCalculation.MINIMUM_SLICE;
+    static final double EDGE_MARGIN = 0.002d; // keV
+    private static final int MAX_CACHED_GRIDS = 64;
+
+    // Cached grids, least recently used grid removed first
+    private static final Map<GridKey, SliceGrid> GRID_CACHE
+            = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<GridKey, SliceGrid> eldest) {
+            return size() > MAX_CACHED_GRIDS;
+        }
+    };
+
+    private final double[] _centers;       // Center wavelengths
+    private final double[] _widths;        // Slice widths
+    private final double[] _energyCenters; // Center energies, energy order
+    private final double[] _energyWidths;  // Energy widths, energy order
+    private final double[] _edgeWavelengths; // Edges the slices are split at
+    private final int[] _edgeIndices;      // Index of first slice above each edge
+
+    private SliceGrid(double[] centers, double[] widths, double[] energyCenters,
+            double[] energyWidths, double[] edgeWavelengths, int[] edgeIndices) {
+        _centers = centers;
+        _widths = widths;
+        _energyCenters = energyCenters;
+        _energyWidths = energyWidths;
+        _edgeWavelengths = edgeWavelengths;
+        _edgeIndices = edgeIndices;
+    }
+
+    /**
+     * Method returns the grid of a set of parameters. The grid is taken from
+     * the cache if it has been created before.
+     * @param inParameters calculation parameters.
+     * @return the grid.
+     */
+    public static SliceGrid getGrid(Inparameters inParameters) {
+        return getGrid(inParameters.getAnodeElement().getAtomicNumber(),
+                inParameters.getTubeVoltage(),
+                inParameters.getContinuumIntervalSize(),
+                inParameters.getMaxWavelength(),
+                inParameters.isSplitAtAbsEdge(),
+                inParameters.getSliceSpacing());
+    }
+
+    /**
+     * Method returns a grid. The grid is taken from the cache if it has been
+     * created before.
+     * @param anodeZ anode atomic number.
+     * @param tubeVoltage tube voltage in kV.
+     * @param intervalSize interval size in Angstrom.
+     * @param maxWavelength max wavelength in Angstrom.
+     * @param splitAtEdge true if slices are split at anode absorption edges.
+     * @param spacing slice spacing.
+     * @return the grid.
+     */
+    public static SliceGrid getGrid(int anodeZ, double tubeVoltage,
+            double intervalSize, double maxWavelength, boolean splitAtEdge,
+            SliceSpacing spacing) {
+        GridKey key = new GridKey(anodeZ, tubeVoltage, intervalSize,
+                maxWavelength, splitAtEdge, spacing);
+        SliceGrid grid;
+        synchronized (GRID_CACHE) {
+            grid = GRID_CACHE.get(key);
+        }
+        if (grid == null) {
+            // Grids are created outside the lock, an equal grid may be
+            // created twice by concurrent calculations
+            grid = createGrid(anodeZ, tubeVoltage, intervalSize, maxWavelength,
+                    splitAtEdge, spacing);
+            synchronized (GRID_CACHE) {
+                GRID_CACHE.put(key, grid);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Method creates a new grid.
+     */
+    private static SliceGrid createGrid(int anodeZ, double tubeVoltage,
+            double intervalSize, double maxWavelength, boolean splitAtEdge,
+            SliceSpacing spacing) {
+
+        // Wavelengths of plus/minus 2 eV from absorption edges
+        double[] below = new double[0];
+        double[] above = new double[0];
+        if (splitAtEdge) {
+            double[] edgeEnergies = Arrays.copyOf(
+                    Mucal.getEdgeEnergies(anodeZ), 4); // K, L1, L2, L3
+            below = new double[edgeEnergies.length];
+            above = new double[edgeEnergies.length];
+            for (int i = 0; i < edgeEnergies.length; i++) {
+                below[i] = Inparameters.CONV_KEV_ANGSTROM / (edgeEnergies[i] + EDGE_MARGIN);
+                above[i] = Inparameters.CONV_KEV_ANGSTROM / (edgeEnergies[i] - EDGE_MARGIN);
+            }
+        }
+
+        Builder builder = new Builder();
+        double segmentStart = Inparameters.CONV_KEV_ANGSTROM / tubeVoltage;
+        double lower = segmentStart;
+        int k = 0;
+        for (int edge = 0; edge < below.length; edge++) {
+            // Edges at energies above the tube voltage are not split at
+            if ((edgeEnergyMissing(below[edge])) || (below[edge] <= segmentStart)) {
+                continue;
+            }
+            // Add full slices up to the edge
+            double upper = getBoundary(spacing, segmentStart, k + 1, intervalSize);
+            while ((lower < maxWavelength) && (upper < below[edge])) {
+                builder.add(lower, upper);
+                lower = upper;
+                k++;
+                upper = getBoundary(spacing, segmentStart, k + 1, intervalSize);
+            }
+            if (lower >= maxWavelength) {
+                break;
+            }
+            // Go up to the edge
+            if (below[edge] - lower > MINIMUM_SLICE) {
+                builder.add(lower, below[edge]);
+            }
+            // Restart above the edge
+            builder.markEdge(0.5d * (below[edge] + above[edge]));
+            segmentStart = above[edge];
+            lower = segmentStart;
+            k = 0;
+        }
+        // Add slices until max wavelength is passed
+        while (lower < maxWavelength) {
+            double upper = getBoundary(spacing, segmentStart, k + 1, intervalSize);
+            if (Double.isInfinite(upper) || Double.isNaN(upper)) {
+                // Energy uniform slices may reach zero energy
+                upper = maxWavelength;
+            }
+            builder.add(lower, upper);
+            lower = upper;
+            k++;
+        }
+        return builder.build();
+    }
+
+    private static boolean edgeEnergyMissing(double wavelength) {
+        return Double.isNaN(wavelength) || (wavelength <= 0.0d)
+                || Double.isInfinite(wavelength);
+    }
+
+    /**
+     * Method returns the upper wavelength of slice number k - 1 of a segment
+     * starting at a wavelength. Boundaries are calculated from the segment
+     * start to avoid accumulated rounding errors.
+     * @param spacing slice spacing.
+     * @param segmentStart segment start wavelength in Angstrom.
+     * @param k boundary number, 0 is segment start.
+     * @param intervalSize interval size in Angstrom.
+     * @return boundary wavelength in Angstrom.
+     */
+    private static double getBoundary(SliceSpacing spacing, double segmentStart,
+            int k, double intervalSize) {
+        switch (spacing) {
+            case ENERGY_UNIFORM:
+                double energyStep = Inparameters.CONV_KEV_ANGSTROM * intervalSize;
+                double energy = (Inparameters.CONV_KEV_ANGSTROM / segmentStart)
+                        - k * energyStep;
+                return energy > 0.0d ? Inparameters.CONV_KEV_ANGSTROM / energy
+                        : Double.POSITIVE_INFINITY;
+            case LOG_UNIFORM:
+                return segmentStart * Math.pow(1.0d + intervalSize, k);
+            default:
+                return segmentStart + k * intervalSize;
+        }
+    }
+
+    /**
+     * @return number of slices.
+     */
+    public int size() {
+        return _centers.length;
+    }
+
+    public double getCenter(int index) {
+        return _centers[index];
+    }
+
+    public double getWidth(int index) {
+        return _widths[index];
+    }
+
+    /**
+     * @param index slice index in energy order.
+     * @return center energy of the slice in keV.
+     */
+    public double getEnergyCenter(int index) {
+        return _energyCenters[index];
+    }
+
+    /**
+     * @param index slice index in energy order.
+     * @return energy width of the slice in keV.
+     */
+    public double getEnergyWidth(int index) {
+        return _energyWidths[index];
+    }
+
+    /**
+     * @return a copy of the slice center wavelengths.
+     */
+    public double[] getCenters() {
+        return _centers.clone();
+    }
+
+    /**
+     * @return a copy of the slice widths.
+     */
+    public double[] getWidths() {
+        return _widths.clone();
+    }
+
+    /**
+     * @return a copy of the slice center energies in keV, in energy order,
+     * i.e. the reverse order of the wavelengths.
+     */
+    public double[] getEnergyCenters() {
+        return _energyCenters.clone();
+    }
+
+    /**
+     * @return a copy of the slice energy widths in keV, in energy order.
+     */
+    public double[] getEnergyWidths() {
+        return _energyWidths.clone();
+    }
+
+    /**
+     * @return the number of absorption edges the grid is split at.
+     */
+    public int getEdgeCount() {
+        return _edgeWavelengths.length;
+    }
+
+    /**
+     * @param edge edge number, 0 is the edge at the shortest wavelength.
+     * @return the wavelength of an edge the grid is split at.
+     */
+    public double getEdgeWavelength(int edge) {
+        return _edgeWavelengths[edge];
+    }
+
+    /**
+     * @param edge edge number, 0 is the edge at the shortest wavelength.
+     * @return index of the first slice above an edge, equal to size() if
+     * there is no slice above the edge.
+     */
+    public int getEdgeIndex(int edge) {
+        return _edgeIndices[edge];
+    }
+
+    /**
+     * Builder of the grid arrays.
+     */
+    private static class Builder {
+        private double[] _centers = new double[64];
+        private double[] _widths = new double[64];
+        private double[] _energyCenters = new double[64];
+        private double[] _energyWidths = new double[64];
+        private int _size = 0;
+        private double[] _edgeWavelengths = new double[0];
+        private int[] _edgeIndices = new int[0];
+
+        void add(double lower, double upper) {
+            if (_size == _centers.length) {
+                _centers = Arrays.copyOf(_centers, 2 * _size);
+                _widths = Arrays.copyOf(_widths, 2 * _size);
+                _energyCenters = Arrays.copyOf(_energyCenters, 2 * _size);
+                _energyWidths = Arrays.copyOf(_energyWidths, 2 * _size);
+            }
+            double width = upper - lower;
+            _centers[_size] = lower + (width / 2.0d);
+            _widths[_size] = width;
+            double lowerEnergy = Inparameters.CONV_KEV_ANGSTROM / upper;
+            double energyWidth = (Inparameters.CONV_KEV_ANGSTROM / lower) - lowerEnergy;
+            _energyCenters[_size] = lowerEnergy + (energyWidth / 2.0d);
+            _energyWidths[_size] = energyWidth;
+            _size++;
+        }
+
+        void markEdge(double wavelength) {
+            int n = _edgeWavelengths.length;
+            _edgeWavelengths = Arrays.copyOf(_edgeWavelengths, n + 1);
+            _edgeIndices = Arrays.copyOf(_edgeIndices, n + 1);
+            _edgeWavelengths[n] = wavelength;
+            _edgeIndices[n] = _size;
+        }
+
+        SliceGrid build() {
+            double[] energyCenters = new double[_size];
+            double[] energyWidths = new double[_size];
+            for (int i = 0; i < _size; i++) {
+                energyCenters[i] = _energyCenters[_size - 1 - i];
+                energyWidths[i] = _energyWidths[_size - 1 - i];
+            }
+            return new SliceGrid(Arrays.copyOf(_centers, _size),
+                    Arrays.copyOf(_widths, _size), energyCenters, energyWidths,
+                    _edgeWavelengths, _edgeIndices);
+        }
+    }
+
+    /**
+     * Key of the grid cache.
+     */
+    private static class GridKey {
+        private final int _anodeZ;
+        private final double _tubeVoltage;
+        private final double _intervalSize;
+        private final double _maxWavelength;
+        private final boolean _splitAtEdge;
+        private final SliceSpacing _spacing;
+
+        GridKey(int anodeZ, double tubeVoltage, double intervalSize,
+                double maxWavelength, boolean splitAtEdge, SliceSpacing spacing) {
+            _anodeZ = anodeZ;
+            _tubeVoltage = tubeVoltage;
+            _intervalSize = intervalSize;
+            _maxWavelength = maxWavelength;
+            _splitAtEdge = splitAtEdge;
+            _spacing = spacing;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof GridKey)) {
+                return false;
+            }
+            GridKey other = (GridKey) obj;
+            return _anodeZ == other._anodeZ
+                    && Double.compare(_tubeVoltage, other._tubeVoltage) == 0
+                    && Double.compare(_intervalSize, other._intervalSize) == 0
+                    && Double.compare(_maxWavelength, other._maxWavelength) == 0
+                    && _splitAtEdge == other._splitAtEdge
+                    && _spacing == other._spacing;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_anodeZ, _tubeVoltage, _intervalSize,
+                    _maxWavelength, _splitAtEdge, _spacing);
+        }
+    }
+}
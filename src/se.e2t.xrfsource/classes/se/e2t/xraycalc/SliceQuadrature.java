@@ -0,0 +1,141 @@
+/*
+ * File SliceQuadrature.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.EnumMap;
+import java.util.Map;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class stores the nodes and weights of a rule integrating within one
+ * continuum slice. Nodes are offsets from the slice center as fractions of
+ * the slice width, -0.5 to 0.5, and the weights sum to 1, so the integral
+ * of a slice is width times the weighted sum of the values at the nodes.
+ * MIDPOINT - one node at the center, the rule of the fixed slices.
+ * SIMPSON - nodes at the limits and the center, weights 1/6, 4/6, 1/6.
+ * GAUSS_LEGENDRE_n - n Gauss-Legendre nodes, exact for polynomials of
+ * degree 2n - 1.
+ * The rules are created once and shared.
+ */
+public class SliceQuadrature {
+
+    private static final Map<Quadrature, SliceQuadrature> RULES
+            = new EnumMap<>(Quadrature.class);
+    static {
+        RULES.put(Quadrature.MIDPOINT, new SliceQuadrature(
+                new double[]{0.0d}, new double[]{1.0d}, 2));
+        RULES.put(Quadrature.SIMPSON, new SliceQuadrature(
+                new double[]{-0.5d, 0.0d, 0.5d},
+                new double[]{1.0d / 6.0d, 4.0d / 6.0d, 1.0d / 6.0d}, 4));
+        RULES.put(Quadrature.GAUSS_LEGENDRE_2, getGaussLegendre(2));
+        RULES.put(Quadrature.GAUSS_LEGENDRE_3, getGaussLegendre(3));
+        RULES.put(Quadrature.GAUSS_LEGENDRE_4, getGaussLegendre(4));
+        RULES.put(Quadrature.GAUSS_LEGENDRE_5, getGaussLegendre(5));
+    }
+
+    private final double[] _nodes;
+    private final double[] _weights;
+    private final int _order;
+
+    private SliceQuadrature(double[] nodes, double[] weights, int order) {
+        _nodes = nodes;
+        _weights = weights;
+        _order = order;
+    }
+
+    /**
+     * @param quadrature the rule.
+     * @return nodes and weights of the rule.
+     */
+    public static SliceQuadrature getRule(Quadrature quadrature) {
+        return RULES.get(quadrature);
+    }
+
+    /**
+     * Method calculates the n point Gauss-Legendre rule, the nodes are the
+     * roots of the Legendre polynomial P_n found by Newton iteration.
+     */
+    private static SliceQuadrature getGaussLegendre(int n) {
+        double[] nodes = new double[n];
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            double x = -Math.cos(Math.PI * (i + 0.75d) / (n + 0.5d));
+            double derivative = 0.0d;
+            for (int iteration = 0; iteration < 100; iteration++) {
+                // P_n(x) and its derivative by the recurrence
+                double p0 = 1.0d;
+                double p1 = x;
+                for (int k = 2; k <= n; k++) {
+                    double p2 = ((2 * k - 1) * x * p1 - (k - 1) * p0) / k;
+                    p0 = p1;
+                    p1 = p2;
+                }
+                derivative = n * (x * p1 - p0) / (x * x - 1.0d);
+                double step = p1 / derivative;
+                x -= step;
+                if (Math.abs(step) < 1.0e-16d) {
+                    break;
+                }
+            }
+            // Scale from [-1, 1] to [-0.5, 0.5], weights sum to 1
+            nodes[i] = 0.5d * x;
+            weights[i] = 1.0d / ((1.0d - x * x) * derivative * derivative);
+        }
+        return new SliceQuadrature(nodes, weights, 2 * n);
+    }
+
+    /**
+     * @return number of nodes.
+     */
+    public int size() {
+        return _nodes.length;
+    }
+
+    /**
+     * @param index node index.
+     * @return offset from the slice center as a fraction of the width.
+     */
+    public double getNode(int index) {
+        return _nodes[index];
+    }
+
+    /**
+     * @param index node index.
+     * @return weight of the node, the weights sum to 1.
+     */
+    public double getWeight(int index) {
+        return _weights[index];
+    }
+
+    /**
+     * @return order of the rule, the error of the integral over a fixed
+     * range is proportional to the slice width raised to the order.
+     */
+    public int getOrder() {
+        return _order;
+    }
+}
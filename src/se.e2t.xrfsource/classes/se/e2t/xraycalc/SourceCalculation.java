@@ -23,11 +23,26 @@
  */
 package se.e2t.xraycalc;
 
-import se.e2t.abscoeffcalculate.AbsCoefficient;
-import se.e2t.abscoeffcalculate.Mucal;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import se.e2t.xrfsource.spectrumclasses.SpectrumPart;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.abscoeffcalculate.AbsCoefficient.Settings;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+import se.e2t.xraycalc.Inparameters.SliceSpacing;
+import se.e2t.xraycalc.SpectrumPublisher.ChunkSource;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
 import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
 
 /**
  *
@@ -35,170 +50,577 @@ import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
  * 
  * This is the super class for calculation of tube spectrum intensities.
  * This class is extended by the classes that actually calculate the intensities.
+ * Warnings and errors of the calculations, e.g. of Mucal, are collected in
+ * the Diagnostics of the object, nothing is printed.
+ * With the fixed slices and the midpoint rule the unattenuated emission of
+ * the anode is cached between calculations, so changing the window, the
+ * filter or the max wavelength does not repeat the anode calculation, see
+ * calculateStaged.
+ * Spectra on the energy axis are calculated in keV: the continuum slices
+ * of the grid are calculated at their center energies by
+ * getContiniumEnergyIntensities and attenuated at the same energies, the
+ * tube lines are calculated at their wavelengths and converted. With an
+ * integration tolerance or a quadrature other than the midpoint rule the
+ * spectrum is calculated on the wavelength axis and converted, see
+ * toEnergyAxis.
+ * If a slice pool is set the continuum slices and their attenuation are
+ * calculated in chunks on the pool, see setSlicePool. Like the Diagnostics
+ * the pool belongs to the object, it is used by its calculations only.
+ * A spectrum may also be published in chunks of continuum slices, e.g. to a
+ * consumer writing a spectrum of millions of slices, see publish.
  */
 public abstract class SourceCalculation {
 
     protected static final double MINIMUM_SLICE = 0.001d;
+    // Slices of a voltage scan starting this close to the short wavelength
+    // limit are not shortened
+    private static final double SCAN_TOLERANCE = 1.0e-9d; // Angstrom
+    private static final int MAX_CACHED_EMISSIONS = 16;
+
+    // Cached unattenuated emission, least recently used removed first
+    private static final Map<EmissionKey, Emission> EMISSION_CACHE
+            = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<EmissionKey, Emission> eldest) {
+            return size() > MAX_CACHED_EMISSIONS;
+        }
+    };
+
+    private Diagnostics _diagnostics = new Diagnostics();
+    private ForkJoinPool _slicePool = null;
+    private final List<AttenuationLayer> _extraLayers = new ArrayList<>();
 
     public SourceCalculation() {
     }
 
+    /**
+     * @return warnings and errors of the calculations made by this object.
+     */
+    public Diagnostics getDiagnostics() {
+        return _diagnostics;
+    }
+
+    /**
+     * Method selects where warnings and errors of the calculations made by
+     * this object are collected, e.g. to keep more details or print them.
+     * @param diagnostics the Diagnostics.
+     */
+    public void setDiagnostics(Diagnostics diagnostics) {
+        _diagnostics = diagnostics;
+    }
+
+    /**
+     * Method selects a pool evaluating the continuum slices of each
+     * calculation in chunks, e.g. for fine grids of hundreds of thousands of
+     * slices. The emission, the attenuation and the slice quadratures are
+     * calculated in chunks, the tube lines and the normalization in the
+     * calling thread. The normalization factor is the max of the tube lines,
+     * which does not depend on the order of the values, so the spectra are
+     * equal to those calculated without a pool. The pool is used by the
+     * calculations made by this object, see SliceChunks.
+     * @param pool the pool, e.g. ForkJoinPool.commonPool(), null to calculate
+     * all slices in the calling thread, the default.
+     */
+    public void setSlicePool(ForkJoinPool pool) {
+        _slicePool = pool;
+    }
+
+    /**
+     * @return the pool evaluating the continuum slices, null if none.
+     */
+    public ForkJoinPool getSlicePool() {
+        return _slicePool;
+    }
+
+    /**
+     * Method calculates a tube spectrum.
+     * @param inParameters calculation parameters, they shall not be modified
+     * during the calculation.
+     * @return calculated spectrum.
+     */
     public XraySpectrum calculate(Inparameters inParameters) {
+        return calculateWithIntegration(inParameters).getSpectrum();
+    }
 
-        XraySpectrum outputData = new XraySpectrum();
+    /**
+     * Method calculates a tube spectrum and returns it with the adaptive
+     * integration of its continuum, see Result.
+     * @param inParameters calculation parameters, they shall not be modified
+     * during the calculation.
+     * @return calculated spectrum and its integration.
+     */
+    public Result calculateWithIntegration(Inparameters inParameters) {
+        Diagnostics previous = Diagnostics.install(_diagnostics);
+        ForkJoinPool previousPool = SliceChunks.install(_slicePool);
+        try {
+            return calculateSpectrum(inParameters);
+        } finally {
+            SliceChunks.restore(previousPool);
+            Diagnostics.restore(previous);
+        }
+    }
 
-        // Find continium start wavelength
-        double startWavelength = Inparameters.CONV_KEV_ANGSTROM / inParameters.getTubeVoltage();
+    /**
+     * Method calculates a tube spectrum from a snapshot of the parameters.
+     * The calculation uses its own copy of the parameters.
+     * @param snapshot calculation parameters.
+     * @return calculated spectrum.
+     */
+    public XraySpectrum calculate(ParameterSnapshot snapshot) {
+        return calculate(snapshot.toInparameters());
+    }
 
-        // Find center wavelength of first full spectrum slice
-        double normalSlice = inParameters.getContinuumIntervalSize();
-        double centerWavelength = startWavelength + (normalSlice / 2.0d);
-        double sliceUpper = centerWavelength + (normalSlice / 2.0d);
+    /**
+     * Method publishes a tube spectrum in chunks calculated on the common
+     * pool, see publish(Inparameters, Executor).
+     * @param inParameters calculation parameters, they are copied.
+     * @return the publisher.
+     */
+    public SpectrumPublisher publish(Inparameters inParameters) {
+        return publish(inParameters, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method publishes a tube spectrum in chunks: the continuum slices in
+     * axis order, SliceChunks.CHUNK_SIZE slices per chunk, then a last chunk
+     * with the tube lines and the normalization factor, see SpectrumChunk.
+     * Each subscriber gets its own calculation. The tube lines are
+     * calculated at the first request, they give the normalization factor,
+     * then each chunk of slices is calculated, attenuated and normalized
+     * when it is requested. The intensities are equal to those of calculate.
+     * Chunks are calculated without the emission cache and the transmission
+     * curve cache, so only the grid and one chunk are held whatever the
+     * number of slices. With an integration tolerance, which refines all
+     * slices level by level, or a quadrature other than the midpoint rule
+     * on the energy axis, which converts the whole spectrum, the spectrum is
+     * calculated at the first request and then published in chunks.
+     * @param inParameters calculation parameters, they are copied so they
+     * may be modified after the call.
+     * @param executor executor calculating the chunks.
+     * @return the publisher.
+     */
+    public SpectrumPublisher publish(Inparameters inParameters,
+            Executor executor) {
+        ParameterSnapshot snapshot = new ParameterSnapshot(inParameters);
+        return new SpectrumPublisher(() -> new ContinuumStream(
+                snapshot.toInparameters()), executor, _diagnostics, _slicePool);
+    }
+
+    /**
+     * Method calculates the spectra of a set of tube voltages, all other
+     * parameters equal. The slices of all voltages are taken from the grid of
+     * the highest voltage: slices below the short wavelength limit of a
+     * voltage are left out and the slice containing the limit is shortened.
+     * The absorption of the anode and the window and filter transmission of
+     * the slices are calculated once, then the voltages are calculated in
+     * parallel.
+     * The spectrum of the highest voltage is equal to that of calculate, the
+     * spectra of lower voltages differ from those of calculate by the slice
+     * boundaries below the first absorption edge.
+     * The scan always uses the fixed slices and the midpoint rule, the
+     * integration tolerance and quadrature are not used. Spectra on the
+     * energy axis are calculated on the wavelength axis and converted.
+     * @param inParameters calculation parameters, the tube voltage is not used.
+     * @param voltages tube voltages in kV.
+     * @return the spectrum of each voltage.
+     */
+    public XraySpectrum[] calculateVoltageScan(Inparameters inParameters,
+            double[] voltages) {
+        XraySpectrum[] spectra = new XraySpectrum[voltages.length];
+        if (voltages.length == 0) {
+            return spectra;
+        }
+        ParameterSnapshot snapshot = new ParameterSnapshot(inParameters);
+        Inparameters scanParameters = snapshot.toInparameters();
+        scanParameters.setTubeVoltage(Arrays.stream(voltages).max().getAsDouble());
+        Diagnostics previous = Diagnostics.install(_diagnostics);
+        ForkJoinPool previousPool = SliceChunks.install(_slicePool);
+        VoltageScan scan;
+        try {
+            scan = new VoltageScan(scanParameters);
+        } finally {
+            SliceChunks.restore(previousPool);
+            Diagnostics.restore(previous);
+        }
+        IntStream.range(0, voltages.length).parallel().forEach(i -> {
+            Inparameters voltageParameters = snapshot.toInparameters();
+            voltageParameters.setTubeVoltage(voltages[i]);
+            Diagnostics threadPrevious = Diagnostics.install(_diagnostics);
+            ForkJoinPool threadPreviousPool = SliceChunks.install(_slicePool);
+            try {
+                spectra[i] = voltageParameters.getSpectrumAxis() == Axis.ENERGY
+                        ? toEnergyAxis(scan.calculate(voltageParameters))
+                        : scan.calculate(voltageParameters);
+            } finally {
+                SliceChunks.restore(threadPreviousPool);
+                Diagnostics.restore(threadPrevious);
+            }
+        });
+        return spectra;
+    }
+
+    private Result calculateSpectrum(Inparameters inParameters) {
+        boolean energyAxis = inParameters.getSpectrumAxis() == Axis.ENERGY;
+        if (inParameters.getIntegrationTolerance() <= 0.0d
+                && inParameters.getQuadrature() == Quadrature.MIDPOINT) {
+            return new Result(calculateStaged(inParameters, energyAxis), null);
+        }
+
+        // Values fixed during the calculation
+        CalculationContext context = createContext(inParameters);
+
+        // Get the continuum slices, split at anode absorption edges if selected
+        SliceGrid grid = SliceGrid.getGrid(inParameters);
+
+        // Rules other than the midpoint rule integrate the attenuation within
+        // the slices, the midpoint rule attenuates at the slice centers below
+        AttenuationChain chain = getAttenuationChain(inParameters);
+        Quadrature quadrature = inParameters.getQuadrature();
+        SliceQuadrature rule = SliceQuadrature.getRule(quadrature);
+        boolean midpoint = quadrature == Quadrature.MIDPOINT;
+
+        // Calculate continuum intensities of all slices, refined until the
+        // tolerance is met if one is given. The refined intensities are
+        // attenuated, so the error estimate includes the transmission.
+        double[] centers;
+        double[] widths;
+        double[] intensities;
+        AdaptiveIntegration integration = null;
+        boolean adaptive = inParameters.getIntegrationTolerance() > 0.0d;
+        if (adaptive) {
+            integration = new AdaptiveIntegration(midpoint
+                    ? (sliceCenters, sliceWidths, sliceIntensities) -> {
+                        SliceChunks.integrate(
+                                (chunkCenters, chunkWidths, chunkIntensities) -> getContiniumIntensities(
+                                        context, chunkCenters, chunkWidths, chunkIntensities),
+                                sliceCenters, sliceWidths, sliceIntensities);
+                        double[] transmitted = chain.calculateCurve(sliceCenters);
+                        for (int i = 0; i < sliceIntensities.length; i++) {
+                            sliceIntensities[i] *= transmitted[i];
+                        }
+                    }
+                    : (sliceCenters, sliceWidths, sliceIntensities) -> integrateSlices(
+                            context, rule, chain::calculateCurve, sliceCenters,
+                            sliceWidths, sliceIntensities),
+                    context, chain, grid, inParameters.getIntegrationTolerance());
+            centers = integration.getCenters();
+            widths = integration.getWidths();
+            intensities = integration.getIntensities();
+        } else {
+            centers = grid.getCenters();
+            widths = grid.getWidths();
+            intensities = new double[grid.size()];
+            integrateSlices(context, rule, chain::calculateCurve, centers,
+                    widths, intensities);
+        }
+        XraySpectrum outputData = new XraySpectrum(new SpectrumColumns(),
+                new SpectrumColumns(centers, widths, intensities));
+
+        // Calculate tube line intensities
+        calculateTubeLineIntensities(context, outputData);
+
+        // Adjust intensities depending on window and filter attenuation
+        windowFilterAdjustment(chain, outputData, midpoint && !adaptive);
+
+        // Normalize calculated intensities
+        normalizeIntensities(outputData, 1.0d);
+
+        return new Result(energyAxis ? toEnergyAxis(outputData) : outputData,
+                integration);
+    }
+
+    /**
+     * Method calculates a tube spectrum with the fixed slices and the
+     * midpoint rule, on the energy axis the midpoint rule in energy. The
+     * calculation is made in stages:
+     * 1. the slices, see SliceGrid.getGrid.
+     * 2. the unattenuated continuum and tube lines, see getEmission.
+     * 3. window and filter attenuation of a copy of the emission.
+     * 4. normalization.
+     * The grid, the emission and the transmission curve of the attenuation
+     * are cached, so e.g. a new filter or window only repeats stage 3 and 4.
+     */
+    private XraySpectrum calculateStaged(Inparameters inParameters,
+            boolean energyAxis) {
+
+        // Values fixed during the calculation
+        CalculationContext context = createContext(inParameters);
+
+        // Stage 1 and 2, the slices and their unattenuated intensities
+        SliceGrid grid = SliceGrid.getGrid(inParameters);
+        Emission emission = getEmission(context, grid, energyAxis);
+        SpectrumColumns continuum = new SpectrumColumns(emission._centers.clone(),
+                emission._widths.clone(), emission._intensities.clone());
+        SpectrumColumns lines = emission._lines.copy();
+
+        // Stage 3, adjust intensities depending on window and filter
+        // attenuation, tube lines at their wavelengths on both axes
+        AttenuationChain chain = getAttenuationChain(inParameters);
+        chain.apply(lines);
+        XraySpectrum outputData;
+        if (energyAxis) {
+            chain.applyAtEnergies(continuum);
+            outputData = new XraySpectrum(getLinesAtEnergies(lines), continuum,
+                    Axis.ENERGY);
+        } else {
+            chain.apply(continuum);
+            outputData = new XraySpectrum(lines, continuum);
+        }
+
+        // Stage 4, normalize calculated intensities
+        normalizeIntensities(outputData, 1.0d);
+
+        return outputData;
+    }
+
+    /**
+     * Method returns the unattenuated continuum of the grid slices and the
+     * unattenuated tube lines. The emission is taken from the cache if it has
+     * been calculated for the same calculation class, absorption backend
+     * settings, anode, voltage, angles, slicing and math mode. If only the
+     * max wavelength differs the slices common to the cached grid and the
+     * new grid are reused, so a higher max wavelength only calculates the
+     * added slices and a lower one, e.g. a max wavelength at a slice limit,
+     * calculates none. The tube lines are reused unless they depend on the
+     * max wavelength, see isLinesLimitedByMaxWavelength. An emission of a
+     * lower max wavelength does not replace the cached one, so switching
+     * between two max wavelengths calculates nothing.
+     * The warnings of the emission are kept with it and are reported again
+     * each time it is used, those of a reused part of the slices from the
+     * warnings of each slice, see findSliceDiagnostics.
+     * @param context values fixed during the calculation.
+     * @param grid the slices.
+     * @param energyAxis true for slices in keV in energy order.
+     * @return the emission, shared with the cache and not to be modified.
+     */
+    private Emission getEmission(CalculationContext context, SliceGrid grid,
+            boolean energyAxis) {
+        Inparameters inParameters = context.getParameters();
+        EmissionKey key = new EmissionKey(getClass(), inParameters, energyAxis);
+        Emission cached;
+        synchronized (EMISSION_CACHE) {
+            cached = EMISSION_CACHE.get(key);
+        }
         double maxWavelength = inParameters.getMaxWavelength();
+        if (cached != null && Double.compare(cached._maxWavelength, maxWavelength) == 0) {
+            Diagnostics.reportAll(cached._continuumDiagnostics);
+            Diagnostics.reportAll(cached._lineDiagnostics);
+            return cached;
+        }
 
-        if (inParameters.isSplitAtAbsEdge()) {
-            // Continuum intervals to be split at anode element absorption edges
-            // Calculate wavelengths of plus/minus 2 eV from absorption edges
-            int z = inParameters.getAnodeElement().getAtomicNumber();
-            Mucal mc = new Mucal(null, z, 0.0d, 'C', true);
-            mc.calculate();
-            double wlBelowKedge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[0] + 0.002d);
-            double wlAboveKedge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[0] - 0.002d);
-            double wlBelowL1edge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[1] + 0.002d);
-            double wlAboveL1edge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[1] - 0.002d);
-            double wlBelowL2edge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[2] + 0.002d);
-            double wlAboveL2edge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[2] - 0.002d);
-            double wlBelowL3edge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[3] + 0.002d);
-            double wlAboveL3edge = Inparameters.CONV_KEV_ANGSTROM / (mc.getEnergy()[3] - 0.002d);
-
-            if ((sliceUpper < maxWavelength) && (sliceUpper < wlBelowKedge)) {
-                // Add continium slices until slice upper wavelength is above K edge
-                // or max ordered wavelength
-                do {
-                    outputData.addContiniumSlice(
-                            new SpectrumPart(centerWavelength, normalSlice,
-                                    getContiniumIntensity(inParameters,
-                                            centerWavelength, normalSlice)));
-                    centerWavelength += normalSlice;
-                    sliceUpper += normalSlice;
-                } while ((sliceUpper < maxWavelength) && (sliceUpper < wlBelowKedge));
-
-                if (sliceUpper < maxWavelength) {
-                    // Go up to K edge
-                    double slice = wlBelowKedge - (centerWavelength - (normalSlice / 2.0d));
-                    centerWavelength = wlBelowKedge - (slice / 2.0d);
-                    if (slice > MINIMUM_SLICE) {
-                        outputData.addContiniumSlice(
-                                new SpectrumPart(centerWavelength, slice,
-                                        getContiniumIntensity(inParameters,
-                                                centerWavelength, slice)));
+        // The grid of a lower max wavelength is the first part of the grid
+        // of a higher one in wavelength order, the last part in energy order
+        double[] centers = energyAxis ? grid.getEnergyCenters() : grid.getCenters();
+        double[] widths = energyAxis ? grid.getEnergyWidths() : grid.getWidths();
+        int n = centers.length;
+        int common = cached == null ? 0 : cached.countCommon(centers, widths, energyAxis);
+        double[] intensities = new double[n];
+        Diagnostics[] sliceDiagnostics = new Diagnostics[n];
+        Diagnostics continuumDiagnostics = new Diagnostics();
+        if (common > 0) {
+            int cachedFrom = energyAxis ? cached._centers.length - common : 0;
+            int newFrom = energyAxis ? n - common : 0;
+            System.arraycopy(cached._intensities, cachedFrom, intensities,
+                    newFrom, common);
+            System.arraycopy(cached._sliceDiagnostics, cachedFrom, sliceDiagnostics,
+                    newFrom, common);
+            if (common == cached._centers.length) {
+                continuumDiagnostics.addAll(cached._continuumDiagnostics);
+            } else {
+                for (int i = newFrom; i < newFrom + common; i++) {
+                    if (sliceDiagnostics[i] != null) {
+                        continuumDiagnostics.addAll(sliceDiagnostics[i]);
                     }
-                    // Restart at K edge
-                    centerWavelength = wlAboveKedge + (normalSlice / 2.0d);
-                    sliceUpper = centerWavelength + (normalSlice / 2.0d);
                 }
             }
-            if (sliceUpper < maxWavelength) {
-                // Add continium slices until slice upper wavelength is above L1 edge
-                // or max ordered wavelength
-                do {
-                    outputData.addContiniumSlice(
-                            new SpectrumPart(centerWavelength, normalSlice,
-                                    getContiniumIntensity(inParameters,
-                                            centerWavelength, normalSlice)));
-                    centerWavelength += normalSlice;
-                    sliceUpper += normalSlice;
-                } while ((sliceUpper < maxWavelength) && (sliceUpper < wlBelowL1edge));
+        }
+        int from = energyAxis ? 0 : common;
+        int to = energyAxis ? n - common : n;
+        Diagnostics rangeDiagnostics = new Diagnostics();
+        Diagnostics previous = Diagnostics.install(rangeDiagnostics);
+        try {
+            calculateEmission(context, centers, widths, from, to, intensities,
+                    energyAxis);
+        } finally {
+            Diagnostics.restore(previous);
+        }
+        if (rangeDiagnostics.getTotalCount() > 0L) {
+            continuumDiagnostics.addAll(rangeDiagnostics);
+            findSliceDiagnostics(context, centers, widths, from, to, energyAxis,
+                    new double[n], sliceDiagnostics);
+        }
+
+        SpectrumColumns lines;
+        Diagnostics lineDiagnostics;
+        if (cached != null && !isLinesLimitedByMaxWavelength()) {
+            lines = cached._lines;
+            lineDiagnostics = cached._lineDiagnostics;
+        } else {
+            XraySpectrum lineSpectrum = new XraySpectrum();
+            lineDiagnostics = new Diagnostics();
+            previous = Diagnostics.install(lineDiagnostics);
+            try {
+                calculateTubeLineIntensities(context, lineSpectrum);
+            } finally {
+                Diagnostics.restore(previous);
+            }
+            lines = lineSpectrum.getTubeLineColumns();
+        }
+        Emission emission = new Emission(centers, widths, intensities, lines,
+                maxWavelength, continuumDiagnostics, sliceDiagnostics,
+                lineDiagnostics);
+        if (cached == null || common == 0 || maxWavelength > cached._maxWavelength) {
+            synchronized (EMISSION_CACHE) {
+                EMISSION_CACHE.put(key, emission);
             }
-            if (sliceUpper < maxWavelength) {
-                // Go up to L1 edge
-                double slice = wlBelowL1edge - (centerWavelength - (normalSlice / 2.0d));
-                centerWavelength = wlBelowL1edge - (slice / 2.0d);
-                if (slice > MINIMUM_SLICE) {
-                    outputData.addContiniumSlice(
-                            new SpectrumPart(centerWavelength, slice,
-                                    getContiniumIntensity(inParameters,
-                                            centerWavelength, slice)));
-                }
-                // Restart at L1 edge
-                centerWavelength = wlAboveL1edge + (normalSlice / 2.0d);
-                sliceUpper = centerWavelength + (normalSlice / 2.0d);
-                // Add continium slices until slice upper wavelength is above L2 edge
-                // or max ordered wavelength
-                if (sliceUpper < wlBelowL2edge) {
-                    do {
-                        outputData.addContiniumSlice(
-                                new SpectrumPart(centerWavelength, normalSlice,
-                                        getContiniumIntensity(inParameters,
-                                                centerWavelength, normalSlice)));
-                        centerWavelength += normalSlice;
-                        sliceUpper += normalSlice;
-                    } while ((sliceUpper < maxWavelength) && (sliceUpper < wlBelowL2edge));
-                }
+        }
+        Diagnostics.reportAll(continuumDiagnostics);
+        Diagnostics.reportAll(lineDiagnostics);
+        return emission;
+    }
+
+    /**
+     * Method finds the warnings of each slice of a range of slices whose
+     * calculation reported warnings: the halves of the range are calculated
+     * again and the halves with warnings are split until single slices.
+     * Only the warnings are kept, the intensities are those of the range.
+     * @param context values fixed during the calculation.
+     * @param centers center wavelengths, or energies in keV, of all slices.
+     * @param widths widths of all slices.
+     * @param from first slice of the range.
+     * @param to slice after the last slice of the range.
+     * @param energyAxis true for slices in keV in energy order.
+     * @param scratch intensities of all slices, not used.
+     * @param sliceDiagnostics warnings of all slices, set for the slices of
+     * the range with warnings.
+     */
+    private void findSliceDiagnostics(CalculationContext context,
+            double[] centers, double[] widths, int from, int to,
+            boolean energyAxis, double[] scratch, Diagnostics[] sliceDiagnostics) {
+        int middle = (from + to) >>> 1;
+        for (int[] half : new int[][]{{from, middle}, {middle, to}}) {
+            Diagnostics halfDiagnostics = new Diagnostics();
+            Diagnostics previous = Diagnostics.install(halfDiagnostics);
+            try {
+                calculateEmission(context, centers, widths, half[0], half[1],
+                        scratch, energyAxis);
+            } finally {
+                Diagnostics.restore(previous);
             }
-            if (sliceUpper < maxWavelength) {
-                // Go up to L2 edge
-                double slice = wlBelowL2edge - (centerWavelength - (normalSlice / 2.0d));
-                centerWavelength = wlBelowL2edge - (slice / 2.0d);
-                if (slice > MINIMUM_SLICE) {
-                    outputData.addContiniumSlice(
-                            new SpectrumPart(centerWavelength, slice,
-                                    getContiniumIntensity(inParameters,
-                                            centerWavelength, slice)));
-                }
-                // Restart at L2 edge
-                centerWavelength = wlAboveL2edge + (normalSlice / 2.0d);
-                sliceUpper = centerWavelength + (normalSlice / 2.0d);
-                // Add continium slices until slice upper wavelength is above L3 edge
-                // or max ordered wavelength
-                if (sliceUpper < wlBelowL3edge) {
-                    do {
-                        outputData.addContiniumSlice(
-                                new SpectrumPart(centerWavelength, normalSlice,
-                                        getContiniumIntensity(inParameters,
-                                                centerWavelength, normalSlice)));
-                        centerWavelength += normalSlice;
-                        sliceUpper += normalSlice;
-                    } while ((sliceUpper < maxWavelength) && (sliceUpper < wlBelowL3edge));
-                }
+            if (halfDiagnostics.getTotalCount() == 0L) {
+                continue;
             }
-            if (sliceUpper < maxWavelength) {
-                // Go up to L3 edge
-                double slice = wlBelowL3edge - (centerWavelength - (normalSlice / 2.0d));
-                centerWavelength = wlBelowL3edge - (slice / 2.0d);
-                if (slice > MINIMUM_SLICE) {
-                    outputData.addContiniumSlice(
-                            new SpectrumPart(centerWavelength, slice,
-                                    getContiniumIntensity(inParameters,
-                                            centerWavelength, slice)));
-                }
-                // Restart at L3 edge
-                centerWavelength = wlAboveL3edge + (normalSlice / 2.0d);
-                sliceUpper = centerWavelength + (normalSlice / 2.0d);
+            if (half[1] - half[0] == 1) {
+                sliceDiagnostics[half[0]] = halfDiagnostics;
+            } else {
+                findSliceDiagnostics(context, centers, widths, half[0], half[1],
+                        energyAxis, scratch, sliceDiagnostics);
             }
         }
-        if (sliceUpper < maxWavelength) {
-            // Add continium slices until slice upper wavelength reaches max ordered wavelength
-            do {
-                outputData.addContiniumSlice(
-                        new SpectrumPart(centerWavelength, normalSlice,
-                                getContiniumIntensity(inParameters,
-                                        centerWavelength, normalSlice)));
-                centerWavelength += normalSlice;
-                sliceUpper += normalSlice;
-            } while (sliceUpper < maxWavelength + normalSlice); // to pass max
+    }
+
+    /**
+     * Method calculates the unattenuated continuum of a range of slices.
+     * @param context values fixed during the calculation.
+     * @param centers center wavelengths, or energies in keV, of all slices.
+     * @param widths widths of all slices.
+     * @param from first slice calculated.
+     * @param to slice after the last slice calculated.
+     * @param intensities intensities of all slices, the range is set.
+     * @param energyAxis true for slices in keV in energy order.
+     */
+    private void calculateEmission(CalculationContext context, double[] centers,
+            double[] widths, int from, int to, double[] intensities,
+            boolean energyAxis) {
+        if (to > from) {
+            double[] newCenters = Arrays.copyOfRange(centers, from, to);
+            double[] newWidths = Arrays.copyOfRange(widths, from, to);
+            double[] newIntensities = new double[to - from];
+            if (energyAxis) {
+                SliceChunks.integrate((chunkCenters, chunkWidths, chunkIntensities)
+                        -> getContiniumEnergyIntensities(context, chunkCenters,
+                                chunkWidths, getSliceCoefficientsAtEnergies(context,
+                                        chunkCenters), chunkIntensities),
+                        newCenters, newWidths, newIntensities);
+            } else {
+                SliceChunks.integrate((chunkCenters, chunkWidths, chunkIntensities)
+                        -> getContiniumIntensities(context, chunkCenters,
+                                chunkWidths, chunkIntensities),
+                        newCenters, newWidths, newIntensities);
+            }
+            System.arraycopy(newIntensities, 0, intensities, from, to - from);
         }
+    }
 
-        // Calculate tube line intensities
-        calculateTubeLineIntensities(inParameters, outputData);
+    /**
+     * Method removes all cached emission, e.g. after the absorption
+     * coefficient cache or tables have been replaced.
+     */
+    public static void clearEmissionCache() {
+        synchronized (EMISSION_CACHE) {
+            EMISSION_CACHE.clear();
+        }
+    }
 
-        // Adjust intensities depending on window and filter attenuation
-        windowFilterAdjustment(inParameters, outputData);
+    /**
+     * Method converts a spectrum on the wavelength axis to the energy axis.
+     * A continuum slice keeps its limits, the center energy is the middle of
+     * the energies of the limits. A tube line is placed at its energy with
+     * the width in keV of its natural width, see getLineWidth. Intensities
+     * are not changed.
+     * @param spectrum the spectrum, it is not changed.
+     * @return a spectrum on the energy axis, a copy if the spectrum is on the
+     * energy axis.
+     */
+    public static XraySpectrum toEnergyAxis(XraySpectrum spectrum) {
+        if (spectrum.getAxis() == Axis.ENERGY) {
+            return spectrum.copy();
+        }
+        SpectrumColumns slices = spectrum.getContinuumColumns();
+        int n = slices.size();
+        SpectrumColumns continuum = new SpectrumColumns(n);
+        for (int i = n - 1; i >= 0; i--) {
+            double halfWidth = slices.getWindow(i) / 2.0d;
+            double lowerEnergy = Inparameters.CONV_KEV_ANGSTROM
+                    / (slices.getWavelength(i) + halfWidth);
+            double energyWidth = (Inparameters.CONV_KEV_ANGSTROM
+                    / (slices.getWavelength(i) - halfWidth)) - lowerEnergy;
+            continuum.add(lowerEnergy + (energyWidth / 2.0d), energyWidth,
+                    slices.getIntensity(i));
+        }
+        return new XraySpectrum(getLinesAtEnergies(spectrum.getTubeLineColumns()),
+                continuum, Axis.ENERGY);
+    }
 
-        // Normalize calculated intensities
-        normalizeIntensities(outputData, 1.0d);
+    /**
+     * Method converts tube lines in wavelength order to lines in energy
+     * order. The width in keV is found by solving getLineWidth for the half
+     * width: w = 2Ch / (E^2 - h^2) gives h = wE^2 / (C + sqrt(C^2 + w^2E^2)).
+     */
+    private static SpectrumColumns getLinesAtEnergies(SpectrumColumns lines) {
+        int n = lines.size();
+        SpectrumColumns result = new SpectrumColumns(n);
+        double conv = Inparameters.CONV_KEV_ANGSTROM;
+        for (int i = n - 1; i >= 0; i--) {
+            double energy = conv / lines.getWavelength(i);
+            double width = lines.getWindow(i);
+            double halfWidth = width * energy * energy
+                    / (conv + Math.sqrt(conv * conv + width * width * energy * energy));
+            result.add(energy, 2.0d * halfWidth, lines.getIntensity(i));
+        }
+        return result;
+    }
 
-        return outputData;
+    /**
+     * This method creates the values fixed during one calculation. Classes
+     * extending this class override it to return a CalculationContext
+     * subclass holding the invariants of their algorithm.
+     *
+     * @param inParameters reference to parameters input via GUI.
+     * @return the context passed to the continuum and tube line calculations.
+     */
+    protected CalculationContext createContext(Inparameters inParameters) {
+        return new CalculationContext(inParameters);
     }
     
     // This method is implemented by the classes extending this class
@@ -206,14 +628,183 @@ public abstract class SourceCalculation {
      * This method which is implemented by the classes extending this class
      * calculates continuum intensities.
      * 
-     * @param inParameters reference to parameters input via GUI.
+     * @param context values fixed during the calculation, see createContext.
      * @param wavelength center wavelength in Angstrom.
      * @param wavelengthWidth width of the wavelegth slice to be calculated (Angstrom).
      * @return total calculated intensity within the wavelength interval.
      */
-    protected abstract double getContiniumIntensity(Inparameters inParameters,
+    protected abstract double getContiniumIntensity(CalculationContext context,
             double wavelength, double wavelengthWidth);
 
+    /**
+     * This method calculates continuum intensities of a set of slices.
+     * 
+     * @param context values fixed during the calculation, see createContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @param wavelengthWidths widths of the wavelength slices (Angstrom).
+     * @param intensities total calculated intensities within the wavelength
+     * intervals, same length as wavelengths.
+     */
+    protected void getContiniumIntensities(CalculationContext context,
+            double[] wavelengths, double[] wavelengthWidths, double[] intensities) {
+        getContiniumIntensities(context, wavelengths, wavelengthWidths,
+                getSliceCoefficients(context, wavelengths), intensities);
+    }
+
+    /**
+     * This method looks up the values of the slices that depend on the anode
+     * and the wavelength only, not on the tube voltage, e.g. the absorption
+     * of the anode. The values are passed to getContiniumIntensities, a
+     * voltage scan looks them up once for all voltages.
+     * Classes extending this class override it, this method returns null.
+     * 
+     * @param context values fixed during the calculation, see createContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @return a value of each wavelength, null if not used.
+     */
+    protected double[] getSliceCoefficients(CalculationContext context,
+            double[] wavelengths) {
+        return null;
+    }
+
+    /**
+     * This method calculates continuum intensities of a set of slices.
+     * It calls getContiniumIntensity for each slice. Classes extending this
+     * class override it with a loop where values common to all slices are
+     * calculated once, the results shall be equal to those of
+     * getContiniumIntensity.
+     * 
+     * @param context values fixed during the calculation, see createContext.
+     * @param wavelengths center wavelengths in Angstrom.
+     * @param wavelengthWidths widths of the wavelength slices (Angstrom).
+     * @param coefficients values of getSliceCoefficients at the wavelengths.
+     * @param intensities total calculated intensities within the wavelength
+     * intervals, same length as wavelengths.
+     */
+    protected void getContiniumIntensities(CalculationContext context,
+            double[] wavelengths, double[] wavelengthWidths, double[] coefficients,
+            double[] intensities) {
+        for (int i = 0; i < intensities.length; i++) {
+            intensities[i] = getContiniumIntensity(context,
+                    wavelengths[i], wavelengthWidths[i]);
+        }
+    }
+
+    /**
+     * This method looks up the slice coefficients, see getSliceCoefficients,
+     * at a set of photon energies. It calls getSliceCoefficients at the
+     * wavelengths of the energies, classes extending this class override it
+     * to look the values up by energy.
+     * 
+     * @param context values fixed during the calculation, see createContext.
+     * @param energies center energies in keV.
+     * @return a value of each energy, null if not used.
+     */
+    protected double[] getSliceCoefficientsAtEnergies(CalculationContext context,
+            double[] energies) {
+        double[] wavelengths = new double[energies.length];
+        for (int i = 0; i < energies.length; i++) {
+            wavelengths[i] = Inparameters.CONV_KEV_ANGSTROM / energies[i];
+        }
+        return getSliceCoefficients(context, wavelengths);
+    }
+
+    /**
+     * This method calculates continuum intensities of a set of slices on the
+     * energy axis. It converts the slices to wavelength slices with the same
+     * limits and calls getContiniumIntensities. Classes extending this class
+     * override it with the intensity per keV of their algorithm times the
+     * energy width, without converting to wavelengths.
+     * 
+     * @param context values fixed during the calculation, see createContext.
+     * @param energies center energies in keV.
+     * @param energyWidths widths of the energy slices (keV).
+     * @param coefficients values of getSliceCoefficientsAtEnergies.
+     * @param intensities total calculated intensities within the energy
+     * intervals, same length as energies.
+     */
+    protected void getContiniumEnergyIntensities(CalculationContext context,
+            double[] energies, double[] energyWidths, double[] coefficients,
+            double[] intensities) {
+        double[] wavelengths = new double[energies.length];
+        double[] wavelengthWidths = new double[energies.length];
+        for (int i = 0; i < energies.length; i++) {
+            double halfWidth = energyWidths[i] / 2.0d;
+            wavelengths[i] = Inparameters.CONV_KEV_ANGSTROM / energies[i];
+            wavelengthWidths[i] = Inparameters.CONV_KEV_ANGSTROM / (energies[i] - halfWidth)
+                    - Inparameters.CONV_KEV_ANGSTROM / (energies[i] + halfWidth);
+        }
+        getContiniumIntensities(context, wavelengths, wavelengthWidths,
+                coefficients, intensities);
+    }
+
+    /**
+     * This method calculates the continuum intensity per Angstrom at a set of
+     * wavelengths, used by the slice quadratures other than the midpoint
+     * rule. It calls getContiniumIntensities with unit widths, which is
+     * right for algorithms where the intensity of a slice is proportional to
+     * its width. Classes where it is not override it.
+     * 
+     * @param context values fixed during the calculation, see createContext.
+     * @param wavelengths wavelengths in Angstrom.
+     * @param coefficients values of getSliceCoefficients at the wavelengths.
+     * @param densities calculated intensities per Angstrom, same length as
+     * wavelengths.
+     */
+    protected void getContiniumDensities(CalculationContext context,
+            double[] wavelengths, double[] coefficients, double[] densities) {
+        double[] unitWidths = new double[wavelengths.length];
+        Arrays.fill(unitWidths, 1.0d);
+        getContiniumIntensities(context, wavelengths, unitWidths, coefficients,
+                densities);
+    }
+
+    /**
+     * Method integrates the attenuated continuum within each slice with a
+     * quadrature rule. The transmissions of the nodes of all slices are
+     * calculated in one call, the densities in one call for each chunk of
+     * slices, see SliceChunks.
+     * @param context values fixed during the calculation.
+     * @param rule the quadrature rule.
+     * @param transmission transmission of the attenuation chain at a set of
+     * wavelengths.
+     * @param centers center wavelengths in Angstrom.
+     * @param widths slice widths in Angstrom.
+     * @param intensities calculated attenuated intensities, same length as
+     * centers.
+     */
+    private void integrateSlices(CalculationContext context, SliceQuadrature rule,
+            UnaryOperator<double[]> transmission, double[] centers,
+            double[] widths, double[] intensities) {
+        int m = rule.size();
+        double[] nodes = new double[centers.length * m];
+        for (int i = 0; i < centers.length; i++) {
+            for (int k = 0; k < m; k++) {
+                // Nodes at a slice limit may round below the short
+                // wavelength limit
+                nodes[i * m + k] = Math.max(context.getMinWavelength(),
+                        centers[i] + rule.getNode(k) * widths[i]);
+            }
+        }
+        double[] densities = new double[nodes.length];
+        SliceChunks.evaluate(0, centers.length, (from, to) -> {
+            double[] part = from == 0 && to == centers.length
+                    ? nodes : Arrays.copyOfRange(nodes, from * m, to * m);
+            double[] partDensities = new double[part.length];
+            getContiniumDensities(context, part, getSliceCoefficients(context, part),
+                    partDensities);
+            System.arraycopy(partDensities, 0, densities, from * m, part.length);
+        });
+        double[] transmitted = transmission.apply(nodes);
+        for (int i = 0; i < centers.length; i++) {
+            double sum = 0.0d;
+            for (int k = 0; k < m; k++) {
+                sum += rule.getWeight(k) * densities[i * m + k] * transmitted[i * m + k];
+            }
+            intensities[i] = sum * widths[i];
+        }
+    }
+
     // This method is implemented by the classes extending this class
     /**
      * This method which is implemented by the classes extending this class
@@ -222,12 +813,23 @@ public abstract class SourceCalculation {
      * interval. The interval width of each calculated intensity is equal to
      * the natural width of the line.
      * 
-     * @param inParameters reference to parameters input via GUI.
+     * @param context values fixed during the calculation, see createContext.
      * @param outputData an Xraypectrum object containing the calculated values.
      */
     protected abstract void calculateTubeLineIntensities(
-            Inparameters inParameters,
+            CalculationContext context,
             XraySpectrum outputData);
+
+    /**
+     * This method tells if calculateTubeLineIntensities leaves out lines
+     * above the max wavelength, the cached tube lines of another max
+     * wavelength are then not reused. This class returns false.
+     *
+     * @return true if the tube lines depend on the max wavelength.
+     */
+    protected boolean isLinesLimitedByMaxWavelength() {
+        return false;
+    }
     
     /**
      * Method converts a width in eV to a width in Angstrom.
@@ -245,88 +847,45 @@ public abstract class SourceCalculation {
                 / (lineEnergy + halfEwidth)));
     }
     
-   /**
-    * Method transfer a transfer factor for the tube window.
-    * @param atomicNumber atomic number
-    * @param wavelength wavelength in Angstrom
-    * @param thickness window thickness in micrometeter
-    * @return transfer factor to multiply intensity
-    */
-    private static double getWindowTransferFactor(
-            int atomicNumber,
-            double wavelength, //Angstrom
-            double thickness) {  // micrometer
-        // Get thickness in cm
-        double cmThickness = 0.0001d * thickness;
-        double attCoeff = AbsCoefficient
-                .getAttenuationCoefficient(atomicNumber, wavelength);
-        return Math.exp(-attCoeff * cmThickness);
+    /**
+     * Method returns the layers attenuating the spectrum: tube window, filter
+     * and the layers added by addAttenuationLayer.
+     * @param inParameters parameters of tube window and filter input by operator.
+     * @return the attenuation chain.
+     */
+    public AttenuationChain getAttenuationChain(Inparameters inParameters) {
+        AttenuationChain chain = AttenuationChain.getChain(inParameters);
+        for (AttenuationLayer layer : _extraLayers) {
+            chain = chain.with(layer);
+        }
+        return chain;
     }
-    
+
     /**
-     * Method calculates a transfer factor for a tube primary filter.
-     * 
-     * @param filterElements List of FilterElements describing the filter components.
-     * @param wavelength wavelength
-     * @param thickness filter thickness in micrometer.
-     * @return transfer factor to multiply intensity
-     */
-    private static double getFilterTransferFactor(
-            List<FilterElement> filterElements,
-            double wavelength,
-            double thickness) {  // micrometer
-        // Calculate attenuation coefficient
-        double attCoeff = filterElements.stream()
-                .map(fElement -> {
-                    int atomicNumber = fElement.getSelectedElement().getAtomicNumber();
-                    double conc = fElement.getConc();
-                    double attC = AbsCoefficient.getAttenuationCoefficient(atomicNumber, wavelength);
-                    return attC * conc;
-                })
-                .reduce(0.0d, (a, b) -> a + b);
-        double cmThickness = 0.0001d * thickness;
-        return Math.exp(-attCoeff * cmThickness);
+     * Method adds a layer attenuating the spectrum after the tube window and
+     * filter, e.g. a gas path or a detector window.
+     * @param layer the layer.
+     */
+    public void addAttenuationLayer(AttenuationLayer layer) {
+        _extraLayers.add(layer);
     }
-    
+
    /**
     * Method adjusts intensities depending on tube window and tube filter attenuation.
-    * @param inParameters parameters of tube window and filter input by operatior.
+    * @param chain the tube window, filter and added layers.
     * @param outputData adjusted tube spectrum intensities in XraySpectrum object.
+    * @param continuum false if the slice quadrature has integrated the
+    * attenuation of the continuum, only the tube lines are adjusted.
     */
-    private static void windowFilterAdjustment(
-            Inparameters inParameters,
-            XraySpectrum outputData) {
-        // Find out if there is a filter
-        boolean isFilter = true;
-        List<FilterElement> filterElems = inParameters.getFilterElements();
-        double filterThickness = inParameters.getFilterThickness();
-        if (filterElems.isEmpty() || (filterThickness == 0)) isFilter = false;
-        final boolean isFilt = isFilter;
-        // Get tube window atomic number and thickness
-        int windowZ = inParameters.getWindowElement().getAtomicNumber();
-        double windowThickness = inParameters.getWindowThickness();
-        // First adjust the tube lines
-        outputData.getTubeLines().stream()
-                .forEach(sPart ->{
-                    double waveLength = sPart.getWavelength();
-                    double wTrans = getWindowTransferFactor(windowZ, waveLength, windowThickness);
-                    double fTrans = 1.0d;
-                    if (isFilt) {
-                        fTrans = getFilterTransferFactor(filterElems, waveLength, filterThickness);
-                    }
-                    sPart.setIntensity(sPart.getIntensity() * wTrans * fTrans);
-                });
-        // Adjust continium slices
-         outputData.getContinuum().stream()
-                .forEach(sPart ->{
-                    double waveLength = sPart.getWavelength();
-                    double wTrans = getWindowTransferFactor(windowZ, waveLength, windowThickness);
-                    double fTrans = 1.0d;
-                    if (isFilt) {
-                        fTrans = getFilterTransferFactor(filterElems, waveLength, filterThickness);
-                    }
-                    sPart.setIntensity(sPart.getIntensity() * wTrans * fTrans);
-                });
+    private void windowFilterAdjustment(
+            AttenuationChain chain,
+            XraySpectrum outputData,
+            boolean continuum) {
+        // First adjust the tube lines, then the continium slices
+        chain.apply(outputData.getTubeLineColumns());
+        if (continuum) {
+            chain.apply(outputData.getContinuumColumns());
+        }
     }
     
     /**
@@ -339,20 +898,361 @@ public abstract class SourceCalculation {
     private static void normalizeIntensities(XraySpectrum outputData, double maxPeak) {
         
         // Get max integrated tube line intensity
-        double mPeak = outputData.getTubeLines().stream()
-                .map(sPart -> sPart.getIntensity())
-                .max(Double::compare)
-                .get();
+        double mPeak = outputData.getTubeLineColumns().getMaxIntensity();
         
         // Get factor for normalizing
         double normFac = maxPeak / mPeak;
      
         // Normalize peaks
-        outputData.getTubeLines().stream()
-                .forEach(sPart -> sPart.setIntensity(normFac * sPart.getIntensity()));
+        outputData.getTubeLineColumns().scaleIntensities(normFac);
         
         // Normalize continium slices
-         outputData.getContinuum().stream()
-                .forEach(sPart -> sPart.setIntensity(normFac * sPart.getIntensity()));
+        outputData.getContinuumColumns().scaleIntensities(normFac);
+    }
+
+    /**
+     * A calculated spectrum with the adaptive integration of its continuum.
+     * Each calculation returns its own Result, so calculations made in
+     * parallel by one object each get the integration they made.
+     */
+    public static class Result {
+
+        private final XraySpectrum _spectrum;
+        private final AdaptiveIntegration _integration;
+
+        Result(XraySpectrum spectrum, AdaptiveIntegration integration) {
+            _spectrum = spectrum;
+            _integration = integration;
+        }
+
+        public XraySpectrum getSpectrum() {
+            return _spectrum;
+        }
+
+        /**
+         * @return the adaptive integration with its estimated error, null if
+         * the fixed slices were used, see Inparameters.getIntegrationTolerance.
+         */
+        public AdaptiveIntegration getIntegration() {
+            return _integration;
+        }
+    }
+
+    /**
+     * Unattenuated emission of the anode: continuum intensities of a grid
+     * and the tube lines of a max wavelength, with the warnings reported
+     * when they were calculated, in total and of each slice. An emission is
+     * not modified once cached.
+     */
+    private static class Emission {
+
+        private final double[] _centers;      // Wavelengths or energies
+        private final double[] _widths;
+        private final double[] _intensities;
+        private final SpectrumColumns _lines; // In wavelength order
+        private final double _maxWavelength;
+        private final Diagnostics _continuumDiagnostics;
+        private final Diagnostics[] _sliceDiagnostics; // Null without warnings
+        private final Diagnostics _lineDiagnostics;
+
+        Emission(double[] centers, double[] widths, double[] intensities,
+                SpectrumColumns lines, double maxWavelength,
+                Diagnostics continuumDiagnostics, Diagnostics[] sliceDiagnostics,
+                Diagnostics lineDiagnostics) {
+            _centers = centers;
+            _widths = widths;
+            _intensities = intensities;
+            _lines = lines;
+            _maxWavelength = maxWavelength;
+            _continuumDiagnostics = continuumDiagnostics;
+            _sliceDiagnostics = sliceDiagnostics;
+            _lineDiagnostics = lineDiagnostics;
+        }
+
+        /**
+         * Method counts the slices equal to slices of this emission, from
+         * the first slice in wavelength order.
+         * @param centers center wavelengths or energies of a grid.
+         * @param widths slice widths of the grid.
+         * @param energyOrder true if the slices are in energy order, they
+         * are compared from the last slice.
+         * @return number of equal slices.
+         */
+        int countCommon(double[] centers, double[] widths, boolean energyOrder) {
+            int n = Math.min(centers.length, _centers.length);
+            int common = 0;
+            while (common < n) {
+                int i = energyOrder ? centers.length - 1 - common : common;
+                int j = energyOrder ? _centers.length - 1 - common : common;
+                if (Double.compare(centers[i], _centers[j]) != 0
+                        || Double.compare(widths[i], _widths[j]) != 0) {
+                    break;
+                }
+                common++;
+            }
+            return common;
+        }
+    }
+
+    /**
+     * Key of the emission cache, the parameters the unattenuated emission
+     * depends on. Window, filter, max wavelength, tolerance and quadrature
+     * are not part of the key.
+     */
+    private static class EmissionKey {
+        private final Class<?> _calculation;
+        private final Settings _settings;
+        private final int _anodeZ;
+        private final double _tubeVoltage;
+        private final double _inAngle;
+        private final double _outAngle;
+        private final double _intervalSize;
+        private final boolean _splitAtEdge;
+        private final SliceSpacing _spacing;
+        private final boolean _energyAxis;
+        private final MathMode _mathMode;
+        private final double _mathTolerance; // 0 if STRICT
+
+        EmissionKey(Class<?> calculation, Inparameters inParameters,
+                boolean energyAxis) {
+            _calculation = calculation;
+            _settings = AbsCoefficient.getSettings();
+            _anodeZ = inParameters.getAnodeElement().getAtomicNumber();
+            _tubeVoltage = inParameters.getTubeVoltage();
+            _inAngle = inParameters.getInAngle();
+            _outAngle = inParameters.getOutAngle();
+            _intervalSize = inParameters.getContinuumIntervalSize();
+            _splitAtEdge = inParameters.isSplitAtAbsEdge();
+            _spacing = inParameters.getSliceSpacing();
+            _energyAxis = energyAxis;
+            _mathMode = inParameters.getMathMode();
+            _mathTolerance = _mathMode == MathMode.FAST
+                    ? inParameters.getMathTolerance() : 0.0d;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EmissionKey)) {
+                return false;
+            }
+            EmissionKey other = (EmissionKey) obj;
+            return _calculation == other._calculation
+                    && _settings.equals(other._settings)
+                    && _anodeZ == other._anodeZ
+                    && Double.compare(_tubeVoltage, other._tubeVoltage) == 0
+                    && Double.compare(_inAngle, other._inAngle) == 0
+                    && Double.compare(_outAngle, other._outAngle) == 0
+                    && Double.compare(_intervalSize, other._intervalSize) == 0
+                    && _splitAtEdge == other._splitAtEdge
+                    && _spacing == other._spacing
+                    && _energyAxis == other._energyAxis
+                    && _mathMode == other._mathMode
+                    && Double.compare(_mathTolerance, other._mathTolerance) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_calculation, _settings, _anodeZ, _tubeVoltage,
+                    _inAngle, _outAngle, _intervalSize, _splitAtEdge, _spacing,
+                    _energyAxis, _mathMode, _mathTolerance);
+        }
+    }
+
+    /**
+     * Chunks of a published spectrum, see publish. The tube lines are
+     * calculated by the constructor, the continuum slices one chunk per call
+     * of next.
+     */
+    private class ContinuumStream implements ChunkSource {
+
+        private final Axis _axis;
+        private final CalculationContext _context;
+        private final AttenuationChain _chain;
+        private final SliceGrid _grid;              // Null if calculated whole
+        private final SliceQuadrature _rule;        // Null for the midpoint rule
+        private final SpectrumColumns _calculated;  // Null if calculated by chunk
+        private final AdaptiveIntegration _integration; // Null for fixed slices
+        private final int _size;
+        private final SpectrumColumns _lines;       // Normalized, in axis order
+        private final double _normalization;
+        private int _next = 0;
+        private boolean _linesPublished = false;
+
+        ContinuumStream(Inparameters inParameters) {
+            _axis = inParameters.getSpectrumAxis();
+            _context = createContext(inParameters);
+            _chain = getAttenuationChain(inParameters);
+
+            // The attenuated tube lines give the normalization factor
+            XraySpectrum lines = new XraySpectrum();
+            calculateTubeLineIntensities(_context, lines);
+            SpectrumColumns lineColumns = lines.getTubeLineColumns();
+            _chain.apply(lineColumns);
+            _normalization = 1.0d / lineColumns.getMaxIntensity();
+            lineColumns.scaleIntensities(_normalization);
+            _lines = _axis == Axis.ENERGY ? getLinesAtEnergies(lineColumns)
+                    : lineColumns;
+
+            Quadrature quadrature = inParameters.getQuadrature();
+            if (inParameters.getIntegrationTolerance() > 0.0d
+                    || (_axis == Axis.ENERGY && quadrature != Quadrature.MIDPOINT)) {
+                Result result = calculateSpectrum(inParameters);
+                _calculated = result.getSpectrum().getContinuumColumns();
+                _integration = result.getIntegration();
+                _grid = null;
+                _rule = null;
+                _size = _calculated.size();
+            } else {
+                _calculated = null;
+                _grid = SliceGrid.getGrid(inParameters);
+                _rule = quadrature == Quadrature.MIDPOINT ? null
+                        : SliceQuadrature.getRule(quadrature);
+                _size = _grid.size();
+                _integration = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !_linesPublished;
+        }
+
+        @Override
+        public SpectrumChunk next() {
+            if (_next == _size) {
+                _linesPublished = true;
+                return new SpectrumChunk(_axis, _size, _lines, _normalization,
+                        _integration);
+            }
+            int from = _next;
+            int to = Math.min(from + SliceChunks.CHUNK_SIZE, _size);
+            _next = to;
+            SpectrumColumns continuum;
+            if (_calculated != null) {
+                continuum = new SpectrumColumns(to - from);
+                for (int i = from; i < to; i++) {
+                    continuum.add(_calculated.getWavelength(i),
+                            _calculated.getWindow(i), _calculated.getIntensity(i));
+                }
+            } else {
+                continuum = calculateChunk(from, to);
+            }
+            return new SpectrumChunk(_axis, from, continuum);
+        }
+
+        /**
+         * Method calculates the attenuated and normalized intensities of the
+         * grid slices from, inclusive, to to, exclusive, in axis order.
+         */
+        private SpectrumColumns calculateChunk(int from, int to) {
+            boolean energyAxis = _axis == Axis.ENERGY;
+            double[] centers = new double[to - from];
+            double[] widths = new double[to - from];
+            for (int i = from; i < to; i++) {
+                centers[i - from] = energyAxis ? _grid.getEnergyCenter(i)
+                        : _grid.getCenter(i);
+                widths[i - from] = energyAxis ? _grid.getEnergyWidth(i)
+                        : _grid.getWidth(i);
+            }
+            double[] intensities = new double[centers.length];
+            if (_rule != null) {
+                // The quadrature integrates the attenuation within the slices
+                integrateSlices(_context, _rule, _chain::calculateCurve, centers,
+                        widths, intensities);
+            } else if (energyAxis) {
+                getContiniumEnergyIntensities(_context, centers, widths,
+                        getSliceCoefficientsAtEnergies(_context, centers),
+                        intensities);
+            } else {
+                getContiniumIntensities(_context, centers, widths, intensities);
+            }
+            SpectrumColumns continuum = new SpectrumColumns(centers, widths,
+                    intensities);
+            if (_rule == null) {
+                continuum.multiplyIntensities(energyAxis
+                        ? _chain.calculateCurveAtEnergies(centers)
+                        : _chain.calculateCurve(centers));
+            }
+            continuum.scaleIntensities(_normalization);
+            return continuum;
+        }
+    }
+
+    /**
+     * Values of a voltage scan that do not depend on the voltage: the slices
+     * of the highest voltage, their slice coefficients and their window and
+     * filter transmission.
+     */
+    private class VoltageScan {
+
+        private final double[] _centers;
+        private final double[] _widths;
+        private final double[] _coefficients;
+        private final double[] _transmission;
+        private final AttenuationChain _chain;
+
+        VoltageScan(Inparameters scanParameters) {
+            SliceGrid grid = SliceGrid.getGrid(scanParameters);
+            _centers = grid.getCenters();
+            _widths = grid.getWidths();
+            _coefficients = getSliceCoefficients(createContext(scanParameters), _centers);
+            _chain = getAttenuationChain(scanParameters);
+            _transmission = _chain.getTransmission(_centers);
+        }
+
+        /**
+         * Method calculates the spectrum of one voltage of the scan.
+         * @param inParameters parameters of the voltage.
+         * @return calculated spectrum.
+         */
+        XraySpectrum calculate(Inparameters inParameters) {
+            CalculationContext context = createContext(inParameters);
+            double minWavelength = context.getMinWavelength();
+
+            // Leave out slices below the short wavelength limit
+            int first = 0;
+            while (first < _centers.length
+                    && _centers[first] + _widths[first] / 2.0d <= minWavelength) {
+                first++;
+            }
+            double[] centers = Arrays.copyOfRange(_centers, first, _centers.length);
+            double[] widths = Arrays.copyOfRange(_widths, first, _widths.length);
+            double[] transmission = Arrays.copyOfRange(_transmission, first,
+                    _transmission.length);
+            double[] coefficients = _coefficients == null ? null
+                    : Arrays.copyOfRange(_coefficients, first, _coefficients.length);
+
+            // Shorten the slice containing the limit
+            if (centers.length > 0
+                    && centers[0] - widths[0] / 2.0d < minWavelength - SCAN_TOLERANCE) {
+                double upper = centers[0] + widths[0] / 2.0d;
+                widths[0] = upper - minWavelength;
+                centers[0] = minWavelength + widths[0] / 2.0d;
+                double[] wavelength = {centers[0]};
+                if (coefficients != null) {
+                    coefficients[0] = getSliceCoefficients(context, wavelength)[0];
+                }
+                transmission[0] = _chain.calculateCurve(wavelength)[0];
+            }
+
+            // Calculate continuum and tube line intensities
+            double[] intensities = new double[centers.length];
+            getContiniumIntensities(context, centers, widths, coefficients, intensities);
+            XraySpectrum outputData = new XraySpectrum(new SpectrumColumns(),
+                    new SpectrumColumns(centers, widths, intensities));
+            calculateTubeLineIntensities(context, outputData);
+
+            // Adjust intensities depending on window and filter attenuation
+            _chain.apply(outputData.getTubeLineColumns());
+            outputData.getContinuumColumns().multiplyIntensities(transmission);
+
+            // Normalize calculated intensities
+            normalizeIntensities(outputData, 1.0d);
+
+            return outputData;
+        }
     }
 }
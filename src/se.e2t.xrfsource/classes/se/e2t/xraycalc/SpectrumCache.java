@@ -0,0 +1,465 @@
+/*
+ * File SpectrumCache.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.abscoeffcalculate.AbsCoefficient.Settings;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class is a thread safe cache of calculated spectra keyed on a
+ * ParameterSnapshot and the absorption coefficient backend settings, see
+ * AbsCoefficient.getSettings.
+ * Spectra are kept in memory, least recently used spectrum removed first,
+ * and optionally in a directory where they are found also by later program
+ * runs. A stored file is named by the content hash of the snapshot and
+ * holds all values of the snapshot and the backend settings, it is only
+ * used if they are all equal to those of the key.
+ * If several threads ask for the same spectrum at the same time it is
+ * calculated once, the other threads wait for the result.
+ * Each call returns a copy of the cached spectrum, which the caller may
+ * modify.
+ */
+public class SpectrumCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final String FILE_EXTENSION = ".xsc";
+
+    private static final int FILE_MAGIC = 0x58534331; // "XSC1"
+    private static final int FILE_VERSION = 2;
+
+    private final int _maxEntries;
+    private final Path _directory;
+    private final Map<Key, XraySpectrum> _memory;
+    private final Map<Key, CompletableFuture<XraySpectrum>> _loading
+            = new ConcurrentHashMap<>();
+    private volatile ForkJoinPool _slicePool = null;
+
+    // Statistics
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _diskHits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _sharedLoads = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _diskErrors = new LongAdder();
+
+    public SpectrumCache() {
+        this(DEFAULT_MAX_ENTRIES, null);
+    }
+
+    /**
+     * Creates a cache.
+     * @param maxEntries max number of spectra kept in memory.
+     * @param directory directory where spectra are stored, null to keep
+     * spectra in memory only. The directory is created if missing.
+     */
+    public SpectrumCache(int maxEntries, Path directory) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries must be at least 1");
+        }
+        _maxEntries = maxEntries;
+        _directory = directory;
+        _memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, XraySpectrum> eldest) {
+                if (size() > _maxEntries) {
+                    _evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Method selects the pool evaluating the continuum slices of the spectra
+     * calculated by the cache, see SourceCalculation.setSlicePool.
+     * @param pool the pool, null to calculate the slices in the calling
+     * thread, the default.
+     */
+    public void setSlicePool(ForkJoinPool pool) {
+        _slicePool = pool;
+    }
+
+    public ForkJoinPool getSlicePool() {
+        return _slicePool;
+    }
+
+    /**
+     * Method returns the spectrum of a set of parameters, from the cache if
+     * it has been calculated before, else it is calculated with
+     * SpectrumEngine.calculate.
+     * @param snapshot calculation parameters.
+     * @return copy of the spectrum.
+     */
+    public XraySpectrum get(ParameterSnapshot snapshot) {
+        return get(snapshot, null);
+    }
+
+    /**
+     * Method returns the spectrum of a set of parameters, from the cache if
+     * it has been calculated before, else it is calculated with
+     * SpectrumEngine.calculate.
+     * @param snapshot calculation parameters.
+     * @param diagnostics where warnings and errors are added if the spectrum
+     * is calculated by this call, null for a new Diagnostics.
+     * @return copy of the spectrum.
+     */
+    public XraySpectrum get(ParameterSnapshot snapshot, Diagnostics diagnostics) {
+        Key key = new Key(snapshot, AbsCoefficient.getSettings());
+        XraySpectrum spectrum = getFromMemory(key);
+        if (spectrum != null) {
+            _hits.increment();
+            return spectrum.copy();
+        }
+
+        // Wait if another thread is loading the same spectrum
+        CompletableFuture<XraySpectrum> future = new CompletableFuture<>();
+        CompletableFuture<XraySpectrum> loading = _loading.putIfAbsent(key, future);
+        if (loading != null) {
+            _sharedLoads.increment();
+            return await(loading).copy();
+        }
+        try {
+            spectrum = load(key, diagnostics);
+            future.complete(spectrum);
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            _loading.remove(key, future);
+        }
+        return spectrum.copy();
+    }
+
+    private XraySpectrum load(Key key, Diagnostics diagnostics) {
+        // Another thread may have finished loading after the first lookup
+        XraySpectrum spectrum = getFromMemory(key);
+        if (spectrum != null) {
+            _hits.increment();
+            return spectrum;
+        }
+        spectrum = readFile(key);
+        if (spectrum != null) {
+            _diskHits.increment();
+        } else {
+            _misses.increment();
+            spectrum = SpectrumEngine.calculate(key._snapshot, diagnostics == null
+                    ? new Diagnostics() : diagnostics, _slicePool);
+            writeFile(key, spectrum);
+        }
+        synchronized (_memory) {
+            _memory.put(key, spectrum);
+        }
+        return spectrum;
+    }
+
+    private XraySpectrum getFromMemory(Key key) {
+        synchronized (_memory) {
+            return _memory.get(key);
+        }
+    }
+
+    private static XraySpectrum await(CompletableFuture<XraySpectrum> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @param snapshot calculation parameters.
+     * @param settings absorption coefficient backend settings.
+     * @return file of a stored spectrum, null if the cache has no directory.
+     */
+    public Path getFile(ParameterSnapshot snapshot, Settings settings) {
+        return _directory == null ? null : getFile(new Key(snapshot, settings));
+    }
+
+    private Path getFile(Key key) {
+        return _directory.resolve(String.format("%016x-%s%s",
+                key._snapshot.getContentHash(),
+                key._settings.getBackend().name().toLowerCase(), FILE_EXTENSION));
+    }
+
+    /**
+     * Method reads a stored spectrum.
+     * @return the spectrum, null if not stored, stored for other values
+     * with the same content hash or the file is not valid.
+     */
+    private XraySpectrum readFile(Key key) {
+        if (_directory == null) {
+            return null;
+        }
+        Path file = getFile(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION
+                    || in.readLong() != key._snapshot.getContentHash()) {
+                _diskErrors.increment();
+                return null;
+            }
+            Settings settings = key._settings;
+            byte[] values = key._snapshot.getCanonicalBytes();
+            if (!in.readUTF().equals(settings.getBackend().name())
+                    || Double.compare(in.readDouble(), settings.getEnergyQuantum()) != 0
+                    || in.readInt() != settings.getCellBits()
+                    || Double.compare(in.readDouble(), settings.getTolerance()) != 0
+                    || in.readInt() != values.length
+                    || !Arrays.equals(in.readNBytes(values.length), values)) {
+                // Other settings or a hash collision, not an error
+                return null;
+            }
+            SpectrumColumns tubeLines = readColumns(in);
+            SpectrumColumns continuum = readColumns(in);
+            // The axis is part of the content hash
+            return new XraySpectrum(tubeLines, continuum,
+                    key._snapshot.getSpectrumAxis());
+        } catch (IOException | RuntimeException ex) {
+            _diskErrors.increment();
+            return null;
+        }
+    }
+
+    private static SpectrumColumns readColumns(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Negative column size");
+        }
+        SpectrumColumns columns = new SpectrumColumns(size);
+        for (int i = 0; i < size; i++) {
+            columns.add(in.readDouble(), in.readDouble(), in.readDouble());
+        }
+        return columns;
+    }
+
+    /**
+     * Method stores a spectrum. It is written to a temporary file which is
+     * then renamed, so a concurrent reader never sees a partial file.
+     */
+    private void writeFile(Key key, XraySpectrum spectrum) {
+        if (_directory == null) {
+            return;
+        }
+        Path file = getFile(key);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(_directory);
+            tempFile = Files.createTempFile(_directory, "spectrum", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeLong(key._snapshot.getContentHash());
+                out.writeUTF(key._settings.getBackend().name());
+                out.writeDouble(key._settings.getEnergyQuantum());
+                out.writeInt(key._settings.getCellBits());
+                out.writeDouble(key._settings.getTolerance());
+                byte[] values = key._snapshot.getCanonicalBytes();
+                out.writeInt(values.length);
+                out.write(values);
+                writeColumns(out, spectrum.getTubeLineColumns());
+                writeColumns(out, spectrum.getContinuumColumns());
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            _diskErrors.increment();
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static void writeColumns(DataOutputStream out, SpectrumColumns columns)
+            throws IOException {
+        out.writeInt(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            out.writeDouble(columns.getWavelength(i));
+            out.writeDouble(columns.getWindow(i));
+            out.writeDouble(columns.getIntensity(i));
+        }
+    }
+
+    /**
+     * Method removes all spectra kept in memory, stored files and
+     * statistics are kept.
+     */
+    public void clear() {
+        synchronized (_memory) {
+            _memory.clear();
+        }
+    }
+
+    /**
+     * Method resets the statistics.
+     */
+    public void resetStatistics() {
+        _hits.reset();
+        _diskHits.reset();
+        _misses.reset();
+        _sharedLoads.reset();
+        _evictions.reset();
+        _diskErrors.reset();
+    }
+
+    /**
+     * @return number of spectra kept in memory.
+     */
+    public int size() {
+        synchronized (_memory) {
+            return _memory.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return _maxEntries;
+    }
+
+    /**
+     * @return directory of stored spectra, null if not used.
+     */
+    public Path getDirectory() {
+        return _directory;
+    }
+
+    /**
+     * @return number of spectra found in memory.
+     */
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    /**
+     * @return number of spectra read from the directory.
+     */
+    public long getDiskHits() {
+        return _diskHits.sum();
+    }
+
+    /**
+     * @return number of spectra calculated.
+     */
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    /**
+     * @return number of requests that waited for the same spectrum being
+     * loaded by another thread.
+     */
+    public long getSharedLoads() {
+        return _sharedLoads.sum();
+    }
+
+    public long getEvictions() {
+        return _evictions.sum();
+    }
+
+    /**
+     * @return number of stored files that could not be read or written.
+     */
+    public long getDiskErrors() {
+        return _diskErrors.sum();
+    }
+
+    /**
+     * @return statistics as a text, for logging.
+     */
+    public String getStatistics() {
+        long hits = getHits() + getDiskHits() + getSharedLoads();
+        long requests = hits + getMisses();
+        return String.format("hits %d, disk hits %d, misses %d, shared loads %d, "
+                + "evictions %d, disk errors %d, entries %d, hit rate %.1f%%",
+                getHits(), getDiskHits(), getMisses(), getSharedLoads(),
+                getEvictions(), getDiskErrors(), size(),
+                requests == 0 ? 0.0d : 100.0d * hits / requests);
+    }
+
+    /**
+     * Key of a cached spectrum.
+     */
+    private static class Key {
+        private final ParameterSnapshot _snapshot;
+        private final Settings _settings;
+
+        Key(ParameterSnapshot snapshot, Settings settings) {
+            _snapshot = snapshot;
+            _settings = settings;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _settings.equals(other._settings)
+                    && _snapshot.equals(other._snapshot);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _snapshot.hashCode() + _settings.hashCode();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * File SpectrumChunk.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class holds one item of a published calculation, see
+ * SourceCalculation.publish. The continuum slices of the spectrum are
+ * published in axis order, each chunk with consecutive slices that are
+ * normalized and attenuated like those of calculate. The last chunk has no
+ * continuum slices, it holds the tube lines and the normalization factor.
+ * Continuum chunks followed by the tube lines of the last chunk make up the
+ * spectrum returned by calculate.
+ */
+public class SpectrumChunk {
+
+    private final Axis _axis;
+    private final int _firstSlice;
+    private final SpectrumColumns _continuum;
+    private final SpectrumColumns _tubeLines;   // Null if not the last chunk
+    private final double _normalization;
+    private final AdaptiveIntegration _integration;
+
+    /**
+     * Creates a chunk of continuum slices.
+     * @param axis axis of the spectrum.
+     * @param firstSlice index of the first slice in the spectrum.
+     * @param continuum the slices.
+     */
+    SpectrumChunk(Axis axis, int firstSlice, SpectrumColumns continuum) {
+        _axis = axis;
+        _firstSlice = firstSlice;
+        _continuum = continuum;
+        _tubeLines = null;
+        _normalization = Double.NaN;
+        _integration = null;
+    }
+
+    /**
+     * Creates the last chunk of a calculation.
+     * @param axis axis of the spectrum.
+     * @param sliceCount number of continuum slices of the spectrum.
+     * @param tubeLines normalized tube lines.
+     * @param normalization factor the intensities are multiplied by.
+     * @param integration adaptive integration of the continuum, null for
+     * the fixed slices.
+     */
+    SpectrumChunk(Axis axis, int sliceCount, SpectrumColumns tubeLines,
+            double normalization, AdaptiveIntegration integration) {
+        _axis = axis;
+        _firstSlice = sliceCount;
+        _continuum = new SpectrumColumns();
+        _tubeLines = tubeLines;
+        _normalization = normalization;
+        _integration = integration;
+    }
+
+    public Axis getAxis() {
+        return _axis;
+    }
+
+    /**
+     * @return index in the spectrum of the first slice of the chunk, the
+     * number of slices of the spectrum for the last chunk.
+     */
+    public int getFirstSlice() {
+        return _firstSlice;
+    }
+
+    /**
+     * @return the continuum slices, empty for the last chunk.
+     */
+    public SpectrumColumns getContinuumColumns() {
+        return _continuum;
+    }
+
+    /**
+     * @return the tube lines in axis order, null if not the last chunk.
+     */
+    public SpectrumColumns getTubeLineColumns() {
+        return _tubeLines;
+    }
+
+    /**
+     * @return the factor all intensities have been multiplied by, one over
+     * the max attenuated tube line intensity, NaN if not the last chunk.
+     */
+    public double getNormalization() {
+        return _normalization;
+    }
+
+    /**
+     * @return the adaptive integration of the continuum with its estimated
+     * error, null if the fixed slices were used or if not the last chunk.
+     */
+    public AdaptiveIntegration getIntegration() {
+        return _integration;
+    }
+
+    /**
+     * @return true for the last chunk, the one with the tube lines.
+     */
+    public boolean isLast() {
+        return _tubeLines != null;
+    }
+
+    @Override
+    public String toString() {
+        return isLast()
+                ? String.format("%d tube lines, normalization %.6g",
+                        _tubeLines.size(), _normalization)
+                : String.format("slices %d-%d", _firstSlice,
+                        _firstSlice + _continuum.size() - 1);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * SpectrumEngine.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import se.e2t.xrfsource.format.spi.SpectrumFormatSPI;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+
+/**
+ * Class is the headless entry point of the spectrum calculations. It selects
+ * the calculation class of an algorithm, verifies parameters, locates
+ * installed spectrum formatters and writes formatted spectra to file.
+ * The class has no GUI dependencies and is used both by the GUI and by the
+ * command line program.
+ *
+ * @author Kent Ericsson, e2t AB
+ */
+public class SpectrumEngine {
+
+    /**
+     * Names of the parameters checked by verifyParameters, index is error
+     * code - 1.
+     */
+    public static final String[] PAR_ERROR_TEXT = {
+        "Electron incident angle",
+        "Photon exiting angle",
+        "Tube window thickness",
+        "Tube filter",
+        "Tube filter thickness",
+        "Tube voltage",
+        "X-ray continuum interval size",
+        "X-ray continuum max wavelength",
+        "X-ray continuum integration tolerance",
+        "Fast math tolerance"
+    };
+
+    /**
+     * Error code returned by writeSpectrum if the formatter failed.
+     */
+    public static final int FORMATTER_ERROR = 10;
+
+    /**
+     * Error code returned by writeSpectrum if the spectrum is on the energy
+     * axis and the formatter is not axis aware.
+     */
+    public static final int AXIS_NOT_SUPPORTED = 11;
+
+    /**
+     * Method returns a new calculation object of an algorithm.
+     * @param calcModel the algorithm.
+     * @return calculation object.
+     */
+    public static SourceCalculation getCalculation(CalcModel calcModel) {
+        SourceCalculation calculation;
+        switch (calcModel) {
+            case EBEL:
+                calculation = new EbelCalculation();
+                break;
+            case FINPAV:
+                calculation = new FinPavCalculation();
+                break;
+            default:
+                calculation = new NistCalculation();
+        }
+        return calculation;
+    }
+
+    /**
+     * Method calculates a tube spectrum with the algorithm selected in the
+     * parameters.
+     * @param inParameters calculation parameters.
+     * @return calculated spectrum.
+     */
+    public static XraySpectrum calculate(Inparameters inParameters) {
+        return getCalculation(inParameters.getAlgorithm().getCalcModel())
+                .calculate(inParameters);
+    }
+
+    /**
+     * Method calculates a tube spectrum with the algorithm selected in the
+     * parameters and collects warnings and errors of the calculation.
+     * @param inParameters calculation parameters.
+     * @param diagnostics where warnings and errors are added.
+     * @return calculated spectrum.
+     */
+    public static XraySpectrum calculate(Inparameters inParameters,
+            Diagnostics diagnostics) {
+        SourceCalculation calculation = getCalculation(
+                inParameters.getAlgorithm().getCalcModel());
+        calculation.setDiagnostics(diagnostics);
+        return calculation.calculate(inParameters);
+    }
+
+    /**
+     * Method calculates a tube spectrum with the algorithm selected in a
+     * snapshot of the parameters. The method may be called from any thread.
+     * @param snapshot calculation parameters.
+     * @return calculated spectrum.
+     */
+    public static XraySpectrum calculate(ParameterSnapshot snapshot) {
+        return getCalculation(snapshot.getCalcModel()).calculate(snapshot);
+    }
+
+    /**
+     * Method calculates a tube spectrum with the algorithm selected in a
+     * snapshot of the parameters and collects warnings and errors of the
+     * calculation. The method may be called from any thread.
+     * @param snapshot calculation parameters.
+     * @param diagnostics where warnings and errors are added.
+     * @return calculated spectrum.
+     */
+    public static XraySpectrum calculate(ParameterSnapshot snapshot,
+            Diagnostics diagnostics) {
+        SourceCalculation calculation = getCalculation(snapshot.getCalcModel());
+        calculation.setDiagnostics(diagnostics);
+        return calculation.calculate(snapshot);
+    }
+
+    /**
+     * Method calculates a tube spectrum with the algorithm selected in a
+     * snapshot of the parameters, collects warnings and errors of the
+     * calculation and evaluates the continuum slices on a pool, see
+     * SourceCalculation.setSlicePool. The method may be called from any
+     * thread.
+     * @param snapshot calculation parameters.
+     * @param diagnostics where warnings and errors are added.
+     * @param slicePool pool evaluating the slices, null for the calling
+     * thread.
+     * @return calculated spectrum.
+     */
+    public static XraySpectrum calculate(ParameterSnapshot snapshot,
+            Diagnostics diagnostics, ForkJoinPool slicePool) {
+        SourceCalculation calculation = getCalculation(snapshot.getCalcModel());
+        calculation.setDiagnostics(diagnostics);
+        calculation.setSlicePool(slicePool);
+        return calculation.calculate(snapshot);
+    }
+
+    /**
+     * Method calculates tube spectra of a set of tube voltages with the
+     * algorithm selected in the parameters, see
+     * SourceCalculation.calculateVoltageScan.
+     * @param inParameters calculation parameters, the tube voltage is not used.
+     * @param voltages tube voltages in kV.
+     * @param diagnostics where warnings and errors are added.
+     * @return the spectrum of each voltage.
+     */
+    public static XraySpectrum[] calculateVoltageScan(Inparameters inParameters,
+            double[] voltages, Diagnostics diagnostics) {
+        SourceCalculation calculation = getCalculation(
+                inParameters.getAlgorithm().getCalcModel());
+        calculation.setDiagnostics(diagnostics);
+        return calculation.calculateVoltageScan(inParameters, voltages);
+    }
+
+    /**
+     * Method verifies parameters using the same limits as the GUI.
+     * @param inParameters parameters to verify.
+     * @return 0 if OK, error codes 1-10, see PAR_ERROR_TEXT.
+     */
+    public static int verifyParameters(Inparameters inParameters) {
+        if (!isWithin(inParameters.getInAngle(), 0.0d, 90.0d)) {
+            return 1;
+        }
+        if (!isWithin(inParameters.getOutAngle(), 0.0d, 90.0d)) {
+            return 2;
+        }
+        if (!isWithin(inParameters.getWindowThickness(), 0.0d, 500.0d)) {
+            return 3;
+        }
+        double cSum = inParameters.getFilterElements().stream()
+                .map(fElement -> fElement.getConc())
+                .reduce(0.0d, (a, b) -> a + b);
+        if (cSum != 0.0d && !String.format("%.1f", 100.0f * cSum).equals("100.0")) {
+            return 4;
+        }
+        if (!isWithin(inParameters.getFilterThickness(), 0.0d, 1000.0d)) {
+            return 5;
+        }
+        if (!isWithin(inParameters.getTubeVoltage(), 10.0d, 110.0d)) {
+            return 6;
+        }
+        if (!isWithin(inParameters.getContinuumIntervalSize(), 0.001d, 1.0d)) {
+            return 7;
+        }
+        if (!isWithin(inParameters.getMaxWavelength(), 1.0d, 20.0d)) {
+            return 8;
+        }
+        if (!isWithin(inParameters.getIntegrationTolerance(), 0.0d, 0.1d)) {
+            return 9;
+        }
+        if (inParameters.getMathMode() == MathMode.FAST
+                && !isWithin(inParameters.getMathTolerance(),
+                        MathFunctions.MIN_TOLERANCE, MathFunctions.MAX_TOLERANCE)) {
+            return 10;
+        }
+        return 0;
+    }
+
+    private static boolean isWithin(double value, double min, double max) {
+        return value >= min && value <= max;
+    }
+
+    /**
+     * Method returns the installed spectrum formatter providers.
+     * A new set of provider objects is returned by each call.
+     * @return list of formatters, may be empty.
+     */
+    public static List<SpectrumFormatSPI> getFormatters() {
+        List<SpectrumFormatSPI> formatters = new ArrayList<>();
+        ServiceLoader.load(SpectrumFormatSPI.class)
+                .forEach(service -> formatters.add(service));
+        return formatters;
+    }
+
+    /**
+     * Method locates a formatter by its description or its file extension.
+     * The extension may be given as "csv", ".csv" or "*.csv".
+     * @param format description or extension of the format.
+     * @return the formatter, may be empty.
+     */
+    public static Optional<SpectrumFormatSPI> getFormatter(String format) {
+        String extension = getFileExtension(format);
+        return getFormatters().stream()
+                .filter(service -> service.getDescription().equalsIgnoreCase(format)
+                || getFileExtension(service.getExtensions()).equalsIgnoreCase(extension))
+                .findFirst();
+    }
+
+    /**
+     * Method converts a format extension to a file extension,
+     * for example "*.csv" to ".csv".
+     * @param extension format extension.
+     * @return file extension including ".".
+     */
+    public static String getFileExtension(String extension) {
+        int index = extension.lastIndexOf('.');
+        if (index >= 0) {
+            return extension.substring(index);
+        }
+        return "." + extension;
+    }
+
+    /**
+     * Method checks that a formatter can format the axis of a spectrum.
+     * Formatters that are not axis aware read positions as wavelengths and
+     * are only given spectra on the wavelength axis.
+     * @param formatter formatter to use.
+     * @param spectrum calculated spectrum.
+     * @return true if the formatter can format the spectrum.
+     */
+    public static boolean isAxisSupported(SpectrumFormatSPI formatter,
+            XraySpectrum spectrum) {
+        return spectrum.getAxis() == XraySpectrum.Axis.WAVELENGTH
+                || formatter.isAxisAware();
+    }
+
+    /**
+     * Method formats a spectrum and writes it to a file.
+     * @param spectrum calculated spectrum.
+     * @param formatter formatter to use.
+     * @param file output file.
+     * @return 0 if OK, AXIS_NOT_SUPPORTED if the formatter can not format
+     * the axis of the spectrum, FORMATTER_ERROR if formatter failed or the
+     * error codes of SpectrumFileWriter.
+     */
+    public static int writeSpectrum(XraySpectrum spectrum,
+            SpectrumFormatSPI formatter, File file) {
+        if (!isAxisSupported(formatter, spectrum)) {
+            return AXIS_NOT_SUPPORTED;
+        }
+        byte[] formattedOutput = formatter.createByteArray(spectrum);
+        if (formattedOutput == null) {
+            return FORMATTER_ERROR;
+        }
+        return SpectrumFileWriter.writeToFile(formattedOutput, file);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * File SpectrumPublisher.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import se.e2t.abscoeffcalculate.Diagnostics;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Class publishes the chunks of a tube spectrum, see SourceCalculation.publish.
+ * Each subscriber gets its own calculation, started at the first request.
+ * A chunk is calculated on the executor only when the subscriber has
+ * requested it, one chunk at a time, so no more than one chunk is held by
+ * the publisher whatever the number of slices. After the last chunk, the one
+ * with the tube lines, onComplete is called. Errors of the calculation are
+ * passed to onError, warnings are collected in the Diagnostics of the
+ * calculation that created the publisher, and the slices are evaluated on
+ * its slice pool, if any.
+ */
+public final class SpectrumPublisher implements Flow.Publisher<SpectrumChunk> {
+
+    private final Supplier<ChunkSource> _sources;
+    private final Executor _executor;
+    private final Diagnostics _diagnostics;
+    private final ForkJoinPool _slicePool;
+
+    /**
+     * @param sources creates the chunk source of a subscriber.
+     * @param executor executor calculating the chunks.
+     * @param diagnostics collects the warnings of the calculations.
+     * @param slicePool pool evaluating the slices of a chunk, null to
+     * evaluate them in the executor thread.
+     */
+    SpectrumPublisher(Supplier<ChunkSource> sources, Executor executor,
+            Diagnostics diagnostics, ForkJoinPool slicePool) {
+        _sources = sources;
+        _executor = executor;
+        _diagnostics = diagnostics;
+        _slicePool = slicePool;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SpectrumChunk> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new ChunkSubscription(subscriber));
+    }
+
+    /**
+     * Calculates the chunks of one subscriber in order.
+     */
+    interface ChunkSource {
+
+        /**
+         * @return true until the last chunk has been returned.
+         */
+        boolean hasNext();
+
+        /**
+         * @return the next chunk.
+         */
+        SpectrumChunk next();
+    }
+
+    /**
+     * Subscription of one subscriber. Requests and cancellation may come
+     * from any thread, the chunks are calculated and delivered by one task
+     * at a time on the executor, the task runs until the demand is met.
+     */
+    private class ChunkSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super SpectrumChunk> _subscriber;
+        private final AtomicLong _demand = new AtomicLong();
+        private final AtomicInteger _signals = new AtomicInteger(); // Not yet drained
+        private volatile boolean _cancelled = false;
+        private volatile IllegalArgumentException _badRequest = null;
+        private ChunkSource _source = null;   // Used by the running task only
+        private boolean _done = false;
+
+        ChunkSubscription(Flow.Subscriber<? super SpectrumChunk> subscriber) {
+            _subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _badRequest = new IllegalArgumentException(
+                        "Non-positive request: " + n);
+            } else {
+                // Demand is saturated at Long.MAX_VALUE, i.e. unbounded
+                _demand.getAndUpdate(demand -> demand + n < 0
+                        ? Long.MAX_VALUE : demand + n);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (_signals.getAndIncrement() == 0) {
+                try {
+                    _executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    _done = true;
+                    _subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Diagnostics previous = Diagnostics.install(_diagnostics);
+            ForkJoinPool previousPool = SliceChunks.install(_slicePool);
+            try {
+                int signals = _signals.get();
+                do {
+                    drain();
+                    signals = _signals.addAndGet(-signals);
+                } while (signals != 0);
+            } finally {
+                SliceChunks.restore(previousPool);
+                Diagnostics.restore(previous);
+            }
+        }
+
+        /**
+         * Method delivers chunks until the demand is met, the last chunk is
+         * delivered or the subscription is cancelled.
+         */
+        private void drain() {
+            while (!_done) {
+                if (_cancelled) {
+                    finish();
+                    return;
+                }
+                if (_badRequest != null) {
+                    finish();
+                    _subscriber.onError(_badRequest);
+                    return;
+                }
+                if (_demand.get() == 0) {
+                    return;
+                }
+                SpectrumChunk chunk;
+                boolean last;
+                try {
+                    if (_source == null) {
+                        _source = _sources.get();
+                    }
+                    chunk = _source.next();
+                    last = !_source.hasNext();
+                } catch (RuntimeException e) {
+                    finish();
+                    _subscriber.onError(e);
+                    return;
+                }
+                if (_demand.get() != Long.MAX_VALUE) {
+                    _demand.decrementAndGet();
+                }
+                if (last) {
+                    finish();
+                }
+                try {
+                    _subscriber.onNext(chunk);
+                } catch (RuntimeException e) {
+                    // A failing subscriber is treated as cancelled
+                    finish();
+                    throw e;
+                }
+                if (last && !_cancelled) {
+                    _subscriber.onComplete();
+                }
+            }
+        }
+
+        private void finish() {
+            _done = true;
+            _source = null;
+        }
+    }
+}
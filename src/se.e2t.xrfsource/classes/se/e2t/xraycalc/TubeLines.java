@@ -23,6 +23,7 @@
  */
 package se.e2t.xraycalc;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -50,6 +51,7 @@ import static se.e2t.xraycalc.TubeLines.XrfLine.L_IOTA;
  * @author Kent Ericsson, e2t AB
  * 
  * Class stores data required for calculation of x-ray tube intensity lines.
+ * The data is read only after class initialization, see also AnodeModel.
  */
 public class TubeLines {
     
@@ -155,10 +157,10 @@ public class TubeLines {
     static {
 
         //Initialize major line data
-        initializeLineData(getMajorLineInfo());
+        initializeLineData(TUBE_LINE_INFO);
         
         // Initialize data of L lines
-        initializeLineData(getLlineInfo());
+        initializeLineData(TUBE_L_LINE_INFO);
         
         // Print data for verification purposes
 //        System.out.println("TUBE_LINE_INFO");
@@ -186,6 +188,8 @@ public class TubeLines {
                                                     AbsorptionEdges.getEdge(xrfLine).get()).get()))
                             );
                 });
+        // Data is shared by concurrent calculations, make it read only
+        lines.replaceAll((xrfLine, lineMap) -> Collections.unmodifiableMap(lineMap));
     }
     
     private static void printLineData(Map<XrfLine, Map<Integer, LineInfo>> lines) {
@@ -204,13 +208,13 @@ public class TubeLines {
     }
 
     /**
-     * Class has data of a characteristic x-ray line
+     * Class has data of a characteristic x-ray line, it is immutable.
      */
     public static class LineInfo {
 
-        private double _energy; //Energy in keV
-        private double _lineWidth; //Natural width in eV
-        private double _absorptionEdge; // Absorption edge in keV
+        private final double _energy; //Energy in keV
+        private final double _lineWidth; //Natural width in eV
+        private final double _absorptionEdge; // Absorption edge in keV
 
         public LineInfo(double energy, double lineWidth, double absorptionEdge) {
             _energy = energy;
@@ -218,18 +222,6 @@ public class TubeLines {
             _absorptionEdge = absorptionEdge;
         }
 
-        public void setEnergy(double _energy) {
-            this._energy = _energy;
-        }
-
-        public void setLineWidth(double _lineWidth) {
-            this._lineWidth = _lineWidth;
-        }
-
-        public void setAbsorptionEdge(double _absorptionEdge) {
-            this._absorptionEdge = _absorptionEdge;
-        }
-
         public double getEnergy() {
             return _energy;
         }
@@ -244,11 +236,11 @@ public class TubeLines {
     }
 
     public static Map<XrfLine, Map<Integer, LineInfo>> getMajorLineInfo() {
-        return TUBE_LINE_INFO;
+        return Collections.unmodifiableMap(TUBE_LINE_INFO);
     }
     
      public static Map<XrfLine, Map<Integer, LineInfo>> getLlineInfo() {
-        return TUBE_L_LINE_INFO;
+        return Collections.unmodifiableMap(TUBE_L_LINE_INFO);
     }
     
     public static LineInfo getLlineData(XrfLine line, int z) {
@@ -0,0 +1,567 @@
+/*
+ * File Clistart.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycli;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.Inparameters;
+import se.e2t.xraycalc.Inparameters.Algorithm;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import se.e2t.xraycalc.MathFunctions;
+import se.e2t.xraycalc.ParameterSnapshot;
+import se.e2t.xraycalc.ParameterSweep;
+import se.e2t.xraycalc.ParameterSweep.Design;
+import se.e2t.xraycalc.ParameterSweep.Dimension;
+import se.e2t.xraycalc.ParameterSweep.Parameter;
+import se.e2t.xraycalc.SpectrumCache;
+import se.e2t.xraycalc.SpectrumEngine;
+import se.e2t.xraymisc.ParameterFile;
+import se.e2t.xrfsource.format.spi.SpectrumFormatSPI;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+
+/**
+ * @author Kent Ericsson, e2t AB
+ *
+ * Command line program calculating tube spectra without the GUI.
+ * Each parameter file given on the command line (files saved by the GUI)
+ * is calculated and the spectrum is written to a file with the same name
+ * as the parameter file and the extension of the selected format.
+ * Files with equal parameters are calculated once. With the cache option
+ * spectra are also stored in a directory and reused by later runs.
+ * In sweep mode the parameters of each file are varied as given by the
+ * sweep options and the spectrum of each point is written to a file named
+ * name_0000, name_0001 and so on.
+ *
+ * Start the program with:
+ * java -m se.e2t.xrfsource/se.e2t.xraycli.Clistart [options] file...
+ */
+public class Clistart {
+
+    private static final String USAGE
+            = "Usage: Clistart [options] parameterfile...\n"
+            + "Options:\n"
+            + "  -f, --format <format>       output format, extension or description (default csv)\n"
+            + "  -o, --output <directory>    output directory (default parameter file directory)\n"
+            + "  -a, --algorithm <model>     override algorithm, NIST, EBEL or FINPAV\n"
+            + "  -c, --cache <directory>     store calculated spectra in directory\n"
+            + "  -e, --energy                output spectra on an energy axis in keV\n"
+            + "  -m, --math <mode>           exp, log and pow of the continuum, strict or\n"
+            + "                              fast[:<tolerance>] (default from parameter file)\n"
+            + "  -s, --sweep <par>=<values>  sweep a parameter, values min:max:steps or a,b,c\n"
+            + "                              par is tube_voltage, in_angle, out_angle,\n"
+            + "                              window_thickness, filter_thickness,\n"
+            + "                              continuum_interval_size, max_wavelength,\n"
+            + "                              integration_tolerance, anode, algorithm,\n"
+            + "                              split_at_abs_edge, slice_spacing, quadrature,\n"
+            + "                              math_mode or math_tolerance, anode to\n"
+            + "                              math_mode take a list a,b,c only\n"
+            + "  -d, --design <design>       sweep design, grid, lhs:<samples>[:<seed>]\n"
+            + "                              or sobol:<samples> (default grid)\n"
+            + "  -t, --threads <count>       sweep calculation threads (default all cores)\n"
+            + "  -p, --parallel-slices       calculate the slices of each spectrum in parallel\n"
+            + "  -v, --verbose               print calculation warnings\n"
+            + "  -l, --list-formats          list installed output formats\n"
+            + "  -h, --help                  print this text\n";
+
+    /**
+     * This is the start of the command line program.
+     * @param args program start parameters
+     */
+    public static void main(String[] args) {
+
+        // Select GB locales, same as the GUI
+        Locale.setDefault(new Locale("en", "GB"));
+
+        System.exit(run(args));
+    }
+
+    /**
+     * Method runs the command line program.
+     * @param args program start parameters
+     * @return 0 if OK, 1 if command line error, 2 if a calculation failed.
+     */
+    public static int run(String[] args) {
+        String format = "csv";
+        File outputDirectory = null;
+        Optional<Algorithm> algorithm = Optional.empty();
+        boolean verbose = false;
+        boolean energyAxis = false;
+        Optional<MathFunctions> math = Optional.empty();
+        Path cacheDirectory = null;
+        ForkJoinPool slicePool = null;
+        List<Dimension> sweepDimensions = new ArrayList<>();
+        String design = "grid";
+        int threads = 0;
+        List<File> parameterFiles = new ArrayList<>();
+
+        // Scan command line
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    System.out.print(USAGE);
+                    return 0;
+                case "-v":
+                case "--verbose":
+                    verbose = true;
+                    break;
+                case "-e":
+                case "--energy":
+                    energyAxis = true;
+                    break;
+                case "-p":
+                case "--parallel-slices":
+                    slicePool = ForkJoinPool.commonPool();
+                    break;
+                case "-l":
+                case "--list-formats":
+                    SpectrumEngine.getFormatters().forEach(service
+                            -> System.out.println(service.getExtensions()
+                                    + "  " + service.getDescription()));
+                    return 0;
+                case "-f":
+                case "--format":
+                case "-o":
+                case "--output":
+                case "-a":
+                case "--algorithm":
+                case "-c":
+                case "--cache":
+                case "-s":
+                case "--sweep":
+                case "-d":
+                case "--design":
+                case "-t":
+                case "--threads":
+                case "-m":
+                case "--math":
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing value of option " + arg);
+                        return 1;
+                    }
+                    String value = args[++i];
+                    if (arg.equals("-f") || arg.equals("--format")) {
+                        format = value;
+                    } else if (arg.equals("-o") || arg.equals("--output")) {
+                        outputDirectory = new File(value);
+                    } else if (arg.equals("-c") || arg.equals("--cache")) {
+                        cacheDirectory = Path.of(value);
+                    } else if (arg.equals("-s") || arg.equals("--sweep")) {
+                        try {
+                            sweepDimensions.add(getDimension(value));
+                        } catch (IllegalArgumentException ex) {
+                            System.err.println("Invalid sweep " + value + ", "
+                                    + ex.getMessage());
+                            return 1;
+                        }
+                    } else if (arg.equals("-m") || arg.equals("--math")) {
+                        math = getMath(value);
+                        if (math.isEmpty()) {
+                            System.err.println("Invalid math mode " + value);
+                            return 1;
+                        }
+                    } else if (arg.equals("-d") || arg.equals("--design")) {
+                        design = value;
+                    } else if (arg.equals("-t") || arg.equals("--threads")) {
+                        try {
+                            threads = Integer.parseInt(value);
+                        } catch (NumberFormatException ex) {
+                            threads = -1;
+                        }
+                        if (threads < 1) {
+                            System.err.println("Invalid thread count " + value);
+                            return 1;
+                        }
+                    } else {
+                        algorithm = getAlgorithm(value);
+                        if (algorithm.isEmpty()) {
+                            System.err.println("Unknown algorithm " + value);
+                            return 1;
+                        }
+                    }
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        System.err.println("Unknown option " + arg);
+                        System.err.print(USAGE);
+                        return 1;
+                    }
+                    parameterFiles.add(new File(arg));
+            }
+        }
+        if (parameterFiles.isEmpty()) {
+            System.err.print(USAGE);
+            return 1;
+        }
+
+        // Locate the formatter
+        Optional<SpectrumFormatSPI> formatter = SpectrumEngine.getFormatter(format);
+        if (formatter.isEmpty()) {
+            System.err.println("No spectrum data formatter was found for " + format);
+            return 1;
+        }
+        String extension = SpectrumEngine.getFileExtension(
+                formatter.get().getExtensions());
+
+        // Verify the sweep before reading the parameter files
+        ParameterSweep sweepDesign = null;
+        if (!sweepDimensions.isEmpty()) {
+            sweepDesign = getSweepDesign(sweepDimensions, design);
+            if (sweepDesign == null) {
+                return 1;
+            }
+        }
+
+        // Calculate and output a spectrum for each parameter file
+        int retval = 0;
+        SpectrumCache cache = new SpectrumCache(SpectrumCache.DEFAULT_MAX_ENTRIES,
+                cacheDirectory);
+        cache.setSlicePool(slicePool);
+        for (File parameterFile : parameterFiles) {
+            File spectrumFile = getSpectrumFile(parameterFile, outputDirectory, extension);
+            boolean ok;
+            if (sweepDesign == null) {
+                ok = calculateFile(parameterFile, spectrumFile, algorithm,
+                        energyAxis, math, format, verbose, cache);
+            } else {
+                ParameterSweep sweep = getSweep(parameterFile, algorithm,
+                        energyAxis, math, sweepDesign, threads);
+                ok = sweep != null;
+                if (ok) {
+                    sweep.setCache(cache);
+                    ok = sweepFile(parameterFile, spectrumFile, sweep, format, verbose);
+                }
+            }
+            if (!ok) {
+                retval = 2;
+            }
+        }
+        if (verbose) {
+            System.out.println("Spectrum cache: " + cache.getStatistics());
+        }
+        return retval;
+    }
+
+    /**
+     * Method calculates the spectrum of one parameter file.
+     * @return true if OK.
+     */
+    private static boolean calculateFile(File parameterFile, File spectrumFile,
+            Optional<Algorithm> algorithm, boolean energyAxis,
+            Optional<MathFunctions> math, String format, boolean verbose,
+            SpectrumCache cache) {
+
+        // Read and verify parameters
+        Inparameters inParameters = readParameters(parameterFile, algorithm,
+                energyAxis, math);
+        if (inParameters == null) {
+            return false;
+        }
+
+        // Calculate spectrum
+        XraySpectrum outputData;
+        Diagnostics diagnostics = verbose
+                ? new Diagnostics(Diagnostics.DEFAULT_MAX_DETAILS, 1, true)
+                : new Diagnostics(0, 1, false);
+        try {
+            outputData = cache.get(new ParameterSnapshot(inParameters), diagnostics);
+        } catch (RuntimeException ex) {
+            System.err.println(parameterFile + ": calculation failed, " + ex);
+            return false;
+        }
+        if (verbose && diagnostics.getTotalCount() > 0L) {
+            System.out.println(parameterFile + ": warnings " + diagnostics.getSummary());
+        }
+
+        return writeSpectrum(parameterFile, spectrumFile, outputData, format);
+    }
+
+    /**
+     * Method reads the parameters of a parameter file and verifies them.
+     * @return the parameters, null if not OK.
+     */
+    private static Inparameters readParameters(File parameterFile,
+            Optional<Algorithm> algorithm, boolean energyAxis,
+            Optional<MathFunctions> math) {
+        Inparameters inParameters = new Inparameters();
+        int retCode = ParameterFile.readParameters(inParameters, parameterFile);
+        if (retCode != 0) {
+            System.err.println(parameterFile + ": "
+                    + ParameterFile.getReadErrorText(retCode));
+            return null;
+        }
+        algorithm.ifPresent(alg -> inParameters.setAlgorithm(alg));
+        if (energyAxis) {
+            inParameters.setSpectrumAxis(Axis.ENERGY);
+        }
+        math.ifPresent(functions -> {
+            inParameters.setMathMode(functions.isFast() ? MathMode.FAST : MathMode.STRICT);
+            if (functions.isFast()) {
+                inParameters.setMathTolerance(functions.getTolerance());
+            }
+        });
+
+        // Verify parameters before doing the calculations
+        retCode = SpectrumEngine.verifyParameters(inParameters);
+        if (retCode != 0) {
+            System.err.println(parameterFile + ": please verify parameter "
+                    + SpectrumEngine.PAR_ERROR_TEXT[retCode - 1]);
+            return null;
+        }
+        return inParameters;
+    }
+
+    /**
+     * Method calculates the spectra of all points of a sweep of one
+     * parameter file.
+     * @return true if all points are OK.
+     */
+    private static boolean sweepFile(File parameterFile, File spectrumFile,
+            ParameterSweep sweep, String format, boolean verbose) {
+
+        // Verify all points before doing the calculations
+        List<ParameterSnapshot> points = sweep.getPoints();
+        for (ParameterSnapshot point : points) {
+            int retCode = SpectrumEngine.verifyParameters(point.toInparameters());
+            if (retCode != 0) {
+                System.err.println(parameterFile + ": please verify sweep of parameter "
+                        + SpectrumEngine.PAR_ERROR_TEXT[retCode - 1] + ", " + point);
+                return false;
+            }
+        }
+
+        // Results are written as they are calculated
+        String name = spectrumFile.getName();
+        int index = name.lastIndexOf('.');
+        String extension = name.substring(index);
+        String baseName = name.substring(0, index);
+        boolean[] ok = {true};
+        int failures = sweep.run(result -> {
+            File pointFile = new File(spectrumFile.getParentFile(),
+                    String.format("%s_%04d%s", baseName, result.getIndex(), extension));
+            if (!result.isOk()) {
+                System.err.println(pointFile + ": calculation failed, "
+                        + result.getError() + ", " + result.getParameters());
+                return;
+            }
+            if (verbose && result.getDiagnostics().getTotalCount() > 0L) {
+                System.out.println(pointFile + ": warnings "
+                        + result.getDiagnostics().getSummary());
+            }
+            if (!writeSpectrum(parameterFile, pointFile, result.getSpectrum(), format)) {
+                ok[0] = false;
+            } else if (verbose) {
+                System.out.println(pointFile + ": " + result.getParameters());
+            }
+        });
+        return failures == 0 && ok[0];
+    }
+
+    /**
+     * Method formats a spectrum and writes it to file.
+     * @return true if OK.
+     */
+    private static boolean writeSpectrum(File parameterFile, File spectrumFile,
+            XraySpectrum outputData, String format) {
+
+        // Format and write to file, a new formatter is used for each file
+        SpectrumFormatSPI formatter = SpectrumEngine.getFormatter(format).get();
+        int retCode = SpectrumEngine.writeSpectrum(outputData, formatter, spectrumFile);
+        if (retCode == SpectrumEngine.AXIS_NOT_SUPPORTED) {
+            System.err.println(parameterFile + ": formatter "
+                    + formatter.getDescription()
+                    + " can not format spectra on the energy axis");
+            return false;
+        } else if (retCode == SpectrumEngine.FORMATTER_ERROR) {
+            System.err.println(parameterFile + ": formatter reported an error, "
+                    + "error code = " + formatter.getErrorCode()
+                    + ", description = " + formatter.getErrorDescription());
+            return false;
+        } else if (retCode != 0) {
+            System.err.println(spectrumFile + ": spectrum write to file returned error code "
+                    + retCode);
+            return false;
+        }
+        System.out.println(spectrumFile + ": "
+                + (outputData.getTubeLines().size() + outputData.getContinuum().size())
+                + " intervals");
+        return true;
+    }
+
+    /**
+     * Method finds the spectrum file name of a parameter file. Parameter files
+     * saved by the GUI together with an xml spectrum are named name_par.xml,
+     * the spectrum is then written to name.xml.
+     */
+    private static File getSpectrumFile(File parameterFile, File outputDirectory,
+            String extension) {
+        String name = parameterFile.getName();
+        int index = name.lastIndexOf('.');
+        if (index > 0) {
+            name = name.substring(0, index);
+        }
+        if (name.endsWith("_par")) {
+            name = name.substring(0, name.length() - "_par".length());
+        }
+        File directory = outputDirectory != null ? outputDirectory
+                : parameterFile.getAbsoluteFile().getParentFile();
+        File spectrumFile = new File(directory, name + extension);
+        if (spectrumFile.getAbsoluteFile().equals(parameterFile.getAbsoluteFile())) {
+            spectrumFile = new File(directory, name + "_spectrum" + extension);
+        }
+        return spectrumFile;
+    }
+
+    /**
+     * Method creates the sweep of a parameter file with the dimensions and
+     * the design of a verified sweep.
+     * @return the sweep, null if the parameters are not OK.
+     */
+    private static ParameterSweep getSweep(File parameterFile,
+            Optional<Algorithm> algorithm, boolean energyAxis,
+            Optional<MathFunctions> math, ParameterSweep sweepDesign,
+            int threads) {
+        Inparameters inParameters = readParameters(parameterFile, algorithm,
+                energyAxis, math);
+        if (inParameters == null) {
+            return null;
+        }
+        ParameterSweep sweep = new ParameterSweep(inParameters);
+        sweepDesign.getDimensions().forEach(dimension -> sweep.addDimension(dimension));
+        sweep.setDesign(sweepDesign.getDesign(), sweepDesign.getSamples(),
+                sweepDesign.getSeed());
+        if (threads > 0) {
+            sweep.setParallelism(threads);
+        }
+        return sweep;
+    }
+
+    /**
+     * Method verifies the sweep options, the dimensions and the design, with
+     * default parameters.
+     * @return a sweep with the dimensions and the design, null if not OK.
+     */
+    private static ParameterSweep getSweepDesign(List<Dimension> dimensions,
+            String design) {
+        ParameterSweep sweep = new ParameterSweep(new Inparameters());
+        try {
+            dimensions.forEach(dimension -> sweep.addDimension(dimension));
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Invalid sweep, " + ex.getMessage());
+            return null;
+        }
+        String[] parts = design.split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "grid":
+                    sweep.setDesign(Design.GRID, 0, 0L);
+                    break;
+                case "lhs":
+                    sweep.setDesign(Design.LATIN_HYPERCUBE, Integer.parseInt(parts[1]),
+                            parts.length > 2 ? Long.parseLong(parts[2]) : 0L);
+                    break;
+                case "sobol":
+                    sweep.setDesign(Design.SOBOL, Integer.parseInt(parts[1]), 0L);
+                    break;
+                default:
+                    throw new IllegalArgumentException(design);
+            }
+            // Designs check the number of dimensions when the points are made
+            sweep.getPoints();
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            System.err.println("Invalid sweep design " + design);
+            return null;
+        }
+        return sweep;
+    }
+
+    /**
+     * Method converts a math option, strict, fast or fast:tolerance, to the
+     * math functions of the mode.
+     */
+    private static Optional<MathFunctions> getMath(String math) {
+        String[] parts = math.split(":");
+        try {
+            MathMode mode = MathMode.valueOf(parts[0].trim().toUpperCase());
+            if (parts.length > 2 || (parts.length == 2 && mode == MathMode.STRICT)) {
+                return Optional.empty();
+            }
+            double tolerance = parts.length == 2 ? Double.parseDouble(parts[1])
+                    : MathFunctions.DEFAULT_TOLERANCE;
+            return Optional.of(MathFunctions.getFunctions(mode, tolerance));
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Method converts a sweep option, e.g. tube_voltage=20:60:5 or
+     * anode=Rh,W, to a dimension. Discrete parameters only take lists.
+     * @throws IllegalArgumentException if the option is not valid.
+     */
+    private static Dimension getDimension(String sweep) {
+        int index = sweep.indexOf('=');
+        if (index <= 0) {
+            throw new IllegalArgumentException("expected <parameter>=<values>");
+        }
+        String name = sweep.substring(0, index).trim();
+        Parameter parameter;
+        try {
+            parameter = Parameter.valueOf(name.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("unknown parameter " + name);
+        }
+        String values = sweep.substring(index + 1);
+        if (values.contains(":")) {
+            String[] range = values.split(":");
+            if (range.length != 3) {
+                throw new IllegalArgumentException("expected min:max:steps");
+            }
+            return Dimension.getRange(parameter,
+                    parameter.parseValue(range[0].trim()),
+                    parameter.parseValue(range[1].trim()),
+                    Integer.parseInt(range[2].trim()));
+        }
+        String[] list = values.split(",");
+        double[] parsed = new double[list.length];
+        for (int i = 0; i < list.length; i++) {
+            parsed[i] = parameter.parseValue(list[i].trim());
+        }
+        return Dimension.getValues(parameter, parsed);
+    }
+
+    private static Optional<Algorithm> getAlgorithm(String model) {
+        return Inparameters.getAlgorithms().stream()
+                .filter(alg -> alg.getCalcModel().toString().equalsIgnoreCase(model))
+                .findFirst();
+    }
+}
@@ -60,14 +60,13 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import se.e2t.xraycalc.EbelCalculation;
-import se.e2t.xraycalc.FinPavCalculation;
 import se.e2t.xraycalc.Inparameters;
 import static se.e2t.xraycalc.Inparameters.getAlgorithms;
 import se.e2t.xraycalc.Inparameters.CalcModel;
 import static se.e2t.xraycalc.Inparameters.getAnodeElements;
 import static se.e2t.xraycalc.Inparameters.getWindowElements;
-import se.e2t.xraycalc.NistCalculation;
+import se.e2t.xraycalc.ParameterSnapshot;
+import se.e2t.xraycalc.SpectrumEngine;
 import se.e2t.xraycalc.SpectrumFileWriter;
 import static se.e2t.xraygui.Guistart.PROG_TITLE_STRING;
 import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
@@ -603,18 +602,8 @@ public class XraySourceGuiMainController implements Initializable {
         XraySpectrum outputData = null;
         int index = _algSelection.getSelectionModel().getSelectedIndex();
         CalcModel calcModel = getAlgorithms().get(index).getCalcModel();
-        switch (calcModel) {
-            case NIST: //NIST algorithm
-                outputData = new NistCalculation().calculate(_inParameters);     
-                break;
-            case EBEL:
-                outputData = new EbelCalculation().calculate(_inParameters);
-                break;
-            case FINPAV:
-                outputData = new FinPavCalculation().calculate(_inParameters);
-            default:
-                Toolkit.getDefaultToolkit().beep();
-        }
+        outputData = SpectrumEngine.getCalculation(calcModel)
+                .calculate(new ParameterSnapshot(_inParameters));
         
         // Count the number of spectrum intervals
          if (outputData == null) {
@@ -671,6 +660,15 @@ public class XraySourceGuiMainController implements Initializable {
             formattedOutput = null;
             for (SpectrumFormatSPI service : loader) {
                 if (service.getDescription().equals(SelDescription)) {
+                    if (!SpectrumEngine.isAxisSupported(service, outputData)) {
+                        Toolkit.getDefaultToolkit().beep();
+                        alert = new Alert(Alert.AlertType.ERROR,
+                                "Formatter " + SelDescription
+                                + " can not format spectra on the energy axis!");
+                        alert.setHeaderText(null);
+                        alert.showAndWait();
+                        return;
+                    }
                     formattedOutput = service.createByteArray(outputData);
                     // Extract service files extension
                     extension = getExtension(service.getExtensions()).get();
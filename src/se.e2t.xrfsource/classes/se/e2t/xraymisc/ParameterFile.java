@@ -0,0 +1,662 @@
+/*
+ * ParameterFile.java
+ * 
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.   
+ */
+package se.e2t.xraymisc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Optional;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Comment;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import se.e2t.xraycalc.FilterElement;
+import se.e2t.xraycalc.Inparameters;
+import se.e2t.xraycalc.Inparameters.Algorithm;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+import se.e2t.xraycalc.Inparameters.SliceSpacing;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+
+/**
+ * Class reads and writes xrfSource parameters from/to an XML file.
+ * The class has no GUI dependencies, errors are returned as error codes.
+ * It is used by the GUI via OpenSaveParameters and by the command line
+ * program.
+ *
+ * @author Kent Ericsson, e2t AB
+ */
+public class ParameterFile {
+
+    private static final String ROOT_TAG = "XraySourceParameters";
+    private static final String ATTR_VERS = "programVersion";
+    private static final String ATTR_INANGLE = "inAngle";
+    private static final String ATTR_OUTANGLE = "outAngle";
+    private static final String ATTR_WINDOW_THICKNESS = "windowThickness";
+    private static final String ATTR_FILTER_THICKNESS = "filterThickness";
+    private static final String ATTR_ANODE_VOLTAGE = "anodeVoltage";
+    private static final String ATTR_INTERVAL_SIZE = "intervalSize";
+    private static final String ATTR_SPLIT_INTERVAL_AT_EDGE = "splitAtEdge";
+    private static final String ATTR_MAX_WAVELENGTH = "maxWavelength";
+    private static final String ATTR_SLICE_SPACING = "sliceSpacing";
+    private static final String ATTR_INTEGRATION_TOLERANCE = "integrationTolerance";
+    private static final String ATTR_QUADRATURE = "quadrature";
+    private static final String ATTR_SPECTRUM_AXIS = "spectrumAxis";
+    private static final String ATTR_MATH_MODE = "mathMode";
+    private static final String ATTR_MATH_TOLERANCE = "mathTolerance";
+
+    private static final String ANODE_ELEMENT_TAG = "AnodeElement";
+    private static final String ATTR_SYMBOL = "symbol";
+    private static final String ATTR_ATOMIC_NUMBER = "atomicNumber";
+
+    private static final String WINDOW_ELEMENT_TAG = "WindowElement";
+
+    private static final String FILTER_ELEMENTS_TAG = "FilterElements";
+    private static final String FILTER_ELEMENT_TAG = "FilterElement";
+    private static final String ATTR_CONC = "conc";
+
+    private static final String ALGORITHM_ELEMENT_TAG = "Algorithm";
+    private static final String ATTR_CALCMODEL = "calcModel";
+    private static final String ATTR_DESCRIPTION = "description";
+
+    /**
+     * Method reads parameters from an xml parameter file into an InParameter
+     * object. Most of the code aws produced atomatically via a dcd file produced 
+     * by Netbeans from an xml file and then the dcd file was used to produce
+     * input scanner code.
+     * 
+     * @param parameters reference to parameter storage.
+     * @param file input file
+     * @return 0 if OK, error code 1-6 if error, se getErrorText. With error
+     * code 6 all other values have been read.
+     */
+    @SuppressWarnings("null")
+    public static int readParameters(Inparameters parameters, File file) {
+        DocumentBuilder builder;
+        Document document;
+
+        // Verify file root tag
+        XMLRoot fileRoot;
+        fileRoot = new XMLRoot();
+        if (fileRoot.readFile(file) != 0) {
+            return 1;
+        }
+        String rootName;
+        rootName = fileRoot.getRootTagName();
+        if (rootName.compareTo(ROOT_TAG) != 0) {
+            return 2;
+        }
+        // Verify version of program that created file
+        String pgmVersion;
+        pgmVersion = fileRoot.getAttributeValue(ATTR_VERS);
+        if (pgmVersion == null) {
+            return 3;
+        }
+        
+        // If file produced by version 1.0.0 then preset new version 2.0 parameter value
+        if (pgmVersion.equals("1.0.0")) {
+            parameters.setSplitAtAbsEdge(true);
+        }
+
+        // Read XML into DOM object
+        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+
+        try {
+            builder = builderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException ex) {
+            return 4;
+        }
+        try (FileInputStream is = new FileInputStream(file)) {
+            document = builder.parse(new InputSource(is));
+        } catch (SAXException | IOException ex) {
+            return 5;
+        }
+
+        // read DOM info into parameter object
+        return visitDocument(document, parameters);
+    }
+
+    /**
+     * Method returns a description of an error code returned by
+     * readParameters.
+     * @param errorCode error code
+     * @return error description.
+     */
+    public static String getReadErrorText(int errorCode) {
+        switch (errorCode) {
+            case 0:
+                return "No error";
+            case 1:
+                return "Could not verify file type, an error occured";
+            case 2:
+                return "Root tag is not correct for an xrfSource parameter file";
+            case 3:
+                return "Could not verify version of program that created file";
+            case 4:
+                return "Create document builder failed";
+            case 5:
+                return "XML parse failed";
+            case 6:
+                return "Unknown slice spacing, quadrature, spectrum axis or math mode";
+            default:
+                return "Unknown error " + errorCode;
+        }
+    }
+
+    private static int visitDocument(Document document, Inparameters parameters) {
+        int errorCode = 0;
+        org.w3c.dom.Element element = document.getDocumentElement();
+        if ((element != null) && element.getTagName().equals(ROOT_TAG)) {
+            errorCode = visitElement_XraySourceParameters(element, parameters);
+        }
+        if ((element != null) && element.getTagName().equals(ANODE_ELEMENT_TAG)) {
+            visitElement_AnodeElement(element, parameters);
+        }
+        if ((element != null) && element.getTagName().equals(WINDOW_ELEMENT_TAG)) {
+            visitElement_WindowElement(element, parameters);
+        }
+        if ((element != null) && element.getTagName().equals(FILTER_ELEMENTS_TAG)) {
+            visitElement_FilterElements(element, parameters);
+        }
+        if ((element != null) && element.getTagName().equals(FILTER_ELEMENT_TAG)) {
+            FilterElement fElement = new FilterElement();
+            visitElement_FilterElement(element, fElement);
+            parameters.getFilterElements().add(fElement);
+        }
+        if ((element != null) && element.getTagName().equals(ALGORITHM_ELEMENT_TAG)) {
+            visitElement_Algorithm(element, parameters);
+        }
+        return errorCode;
+    }
+
+    /**
+     * Scan through org.w3c.dom.Element named XraySourceParameters.
+     * @return 0 if OK, 6 if a slice spacing, quadrature, spectrum axis or
+     * math mode is unknown, it then keeps its default value.
+     */
+    private static int visitElement_XraySourceParameters(org.w3c.dom.Element element,
+            Inparameters parameters) {
+        int errorCode = 0;
+        // <XraySourceParameters>
+        // element.getValue();
+        org.w3c.dom.NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            org.w3c.dom.Attr attr = (org.w3c.dom.Attr) attrs.item(i);
+            if (attr.getName().equals(ATTR_VERS)) {
+                parameters.setProgramVersion(attr.getValue());
+            }
+            if (attr.getName().equals(ATTR_INANGLE)) {
+                parameters.setInAngle(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_OUTANGLE)) {
+                parameters.setOutAngle(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_WINDOW_THICKNESS)) {
+                parameters.setWindowThickness(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_FILTER_THICKNESS)) {
+                parameters.setFilterThickness(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_ANODE_VOLTAGE)) {
+                parameters.setTubeVoltage(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_INTERVAL_SIZE)) {
+                parameters.setContiniumIntervalSize(Double.valueOf(attr.getValue()));
+            }
+             if (attr.getName().equals(ATTR_SPLIT_INTERVAL_AT_EDGE)) {
+                parameters.setSplitAtAbsEdge(Boolean.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_MAX_WAVELENGTH)) {
+                parameters.setMaxWavelength(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_SLICE_SPACING)) {
+                SliceSpacing spacing = getConstant(SliceSpacing.values(), attr.getValue());
+                if (spacing == null) {
+                    errorCode = 6;
+                } else {
+                    parameters.setSliceSpacing(spacing);
+                }
+            }
+            if (attr.getName().equals(ATTR_INTEGRATION_TOLERANCE)) {
+                parameters.setIntegrationTolerance(Double.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_QUADRATURE)) {
+                Quadrature quadrature = getConstant(Quadrature.values(), attr.getValue());
+                if (quadrature == null) {
+                    errorCode = 6;
+                } else {
+                    parameters.setQuadrature(quadrature);
+                }
+            }
+            if (attr.getName().equals(ATTR_SPECTRUM_AXIS)) {
+                Axis axis = getConstant(Axis.values(), attr.getValue());
+                if (axis == null) {
+                    errorCode = 6;
+                } else {
+                    parameters.setSpectrumAxis(axis);
+                }
+            }
+            if (attr.getName().equals(ATTR_MATH_MODE)) {
+                MathMode mode = getConstant(MathMode.values(), attr.getValue());
+                if (mode == null) {
+                    errorCode = 6;
+                } else {
+                    parameters.setMathMode(mode);
+                }
+            }
+            if (attr.getName().equals(ATTR_MATH_TOLERANCE)) {
+                parameters.setMathTolerance(Double.valueOf(attr.getValue()));
+            }
+        }
+        org.w3c.dom.NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Node node = nodes.item(i);
+            switch (node.getNodeType()) {
+                case org.w3c.dom.Node.CDATA_SECTION_NODE:
+                    // ((org.w3c.dom.CDATASection)node).getData();
+                    break;
+                case org.w3c.dom.Node.ELEMENT_NODE:
+                    org.w3c.dom.Element nodeElement = (org.w3c.dom.Element) node;
+                    if (nodeElement.getTagName().equals(ANODE_ELEMENT_TAG)) {
+                        visitElement_AnodeElement(nodeElement, parameters);
+                    }
+                    if (nodeElement.getTagName().equals(WINDOW_ELEMENT_TAG)) {
+                        visitElement_WindowElement(nodeElement, parameters);
+                    }
+                    if (nodeElement.getTagName().equals(FILTER_ELEMENTS_TAG)) {
+                        visitElement_FilterElements(nodeElement, parameters);
+                    }
+                    if (nodeElement.getTagName().equals("Algorithm")) {
+                        visitElement_Algorithm(nodeElement, parameters);
+                    }
+                    break;
+                case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+                    // ((org.w3c.dom.ProcessingInstruction)node).getTarget();
+                    // ((org.w3c.dom.ProcessingInstruction)node).getData();
+                    break;
+            }
+        }
+        return errorCode;
+    }
+
+    /**
+     * Method finds the constant of an enum named by an attribute value, case
+     * and surrounding blanks are ignored.
+     * @param constants the constants of the enum.
+     * @param value the attribute value.
+     * @return the constant, null if no constant has the name.
+     */
+    private static <E extends Enum<E>> E getConstant(E[] constants, String value) {
+        return Arrays.stream(constants)
+                .filter(constant -> constant.name().equalsIgnoreCase(value.trim()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Scan through org.w3c.dom.Element named AnodeElement.
+     */
+    private static void visitElement_AnodeElement(org.w3c.dom.Element element,
+            Inparameters parameters) {
+        // <AnodeElement>
+        // element.getValue();
+        org.w3c.dom.NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            org.w3c.dom.Attr attr = (org.w3c.dom.Attr) attrs.item(i);
+            if (attr.getName().equals(ATTR_SYMBOL)) {
+                parameters.getAnodeElement().setSymbol(attr.getValue());
+            }
+            if (attr.getName().equals(ATTR_ATOMIC_NUMBER)) {
+                parameters.getAnodeElement().setAtomicNumber(Integer.valueOf(attr.getValue()));
+            }
+        }
+        org.w3c.dom.NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Node node = nodes.item(i);
+            switch (node.getNodeType()) {
+                case org.w3c.dom.Node.CDATA_SECTION_NODE:
+                    // ((org.w3c.dom.CDATASection)node).getData();
+                    break;
+                case org.w3c.dom.Node.ELEMENT_NODE:
+                    org.w3c.dom.Element nodeElement = (org.w3c.dom.Element) node;
+                    break;
+                case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+                    // ((org.w3c.dom.ProcessingInstruction)node).getTarget();
+                    // ((org.w3c.dom.ProcessingInstruction)node).getData();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Scan through org.w3c.dom.Element named WindowElement.
+     */
+    private static void visitElement_WindowElement(org.w3c.dom.Element element,
+            Inparameters parameters) {
+        // <WindowElement>
+        // element.getValue();
+        org.w3c.dom.NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            org.w3c.dom.Attr attr = (org.w3c.dom.Attr) attrs.item(i);
+            if (attr.getName().equals(ATTR_SYMBOL)) {
+                parameters.getWindowElement().setSymbol(attr.getValue());
+            }
+            if (attr.getName().equals(ATTR_ATOMIC_NUMBER)) {
+                parameters.getWindowElement().setAtomicNumber(Integer.valueOf(attr.getValue()));
+            }
+        }
+        org.w3c.dom.NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Node node = nodes.item(i);
+            switch (node.getNodeType()) {
+                case org.w3c.dom.Node.CDATA_SECTION_NODE:
+                    // ((org.w3c.dom.CDATASection)node).getData();
+                    break;
+                case org.w3c.dom.Node.ELEMENT_NODE:
+                    org.w3c.dom.Element nodeElement = (org.w3c.dom.Element) node;
+                    break;
+                case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+                    // ((org.w3c.dom.ProcessingInstruction)node).getTarget();
+                    // ((org.w3c.dom.ProcessingInstruction)node).getData();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Scan through org.w3c.dom.Element named FilterElements.
+     */
+    private static void visitElement_FilterElements(org.w3c.dom.Element element,
+            Inparameters parameters) {
+        // <FilterElements>
+        // element.getValue();
+        org.w3c.dom.NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Node node = nodes.item(i);
+            switch (node.getNodeType()) {
+                case org.w3c.dom.Node.CDATA_SECTION_NODE:
+                    // ((org.w3c.dom.CDATASection)node).getData();
+                    break;
+                case org.w3c.dom.Node.ELEMENT_NODE:
+                    org.w3c.dom.Element nodeElement = (org.w3c.dom.Element) node;
+                    if (nodeElement.getTagName().equals(FILTER_ELEMENT_TAG)) {
+                        FilterElement fElement = new FilterElement();
+                        visitElement_FilterElement(nodeElement, fElement);
+                        parameters.getFilterElements().add(fElement);
+                    }
+                    break;
+                case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+                    // ((org.w3c.dom.ProcessingInstruction)node).getTarget();
+                    // ((org.w3c.dom.ProcessingInstruction)node).getData();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Scan through org.w3c.dom.Element named FilterElement.
+     */
+    private static void visitElement_FilterElement(org.w3c.dom.Element element,
+            FilterElement fElement) {
+        // <FilterElement>
+        // element.getValue();
+        org.w3c.dom.NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            org.w3c.dom.Attr attr = (org.w3c.dom.Attr) attrs.item(i);
+            if (attr.getName().equals(ATTR_SYMBOL)) {
+                fElement.getSelectedElement().setSymbol(attr.getValue());
+            }
+            if (attr.getName().equals(ATTR_ATOMIC_NUMBER)) {
+                fElement.getSelectedElement().setAtomicNumber(Integer.valueOf(attr.getValue()));
+            }
+            if (attr.getName().equals(ATTR_CONC)) {
+                fElement.setConc(Double.valueOf(attr.getValue()));
+            }
+        }
+        org.w3c.dom.NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Node node = nodes.item(i);
+            switch (node.getNodeType()) {
+                case org.w3c.dom.Node.CDATA_SECTION_NODE:
+                    // ((org.w3c.dom.CDATASection)node).getData();
+                    break;
+                case org.w3c.dom.Node.ELEMENT_NODE:
+                    org.w3c.dom.Element nodeElement = (org.w3c.dom.Element) node;
+                    break;
+                case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+                    // ((org.w3c.dom.ProcessingInstruction)node).getTarget();
+                    // ((org.w3c.dom.ProcessingInstruction)node).getData();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Scan through org.w3c.dom.Element named Algorithm.
+     */
+    private static void visitElement_Algorithm(org.w3c.dom.Element element,
+            Inparameters parameters) {
+        // <Algorithm>
+        // element.getValue();
+        parameters.setAlgorithm(Inparameters.getAlgorithms().get(0)); // Compatibility with version 1.0
+        org.w3c.dom.NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            org.w3c.dom.Attr attr = (org.w3c.dom.Attr) attrs.item(i);
+            if (attr.getName().equals(ATTR_CALCMODEL)) {
+//                Algorithm alg = Inparameters.getAlgorithms().get(0);
+                Optional<Algorithm> alg = Inparameters.getAlgorithms().stream()
+                        .filter(algAlt -> algAlt.getCalcModel().toString().equals(attr.getValue()))
+                        .findFirst();
+                alg.ifPresent(algAlt -> parameters.setAlgorithm(algAlt));
+            }
+        }
+        org.w3c.dom.NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Node node = nodes.item(i);
+            switch (node.getNodeType()) {
+                case org.w3c.dom.Node.CDATA_SECTION_NODE:
+                    // ((org.w3c.dom.CDATASection)node).getData();
+                    break;
+                case org.w3c.dom.Node.ELEMENT_NODE:
+                    org.w3c.dom.Element nodeElement = (org.w3c.dom.Element) node;
+                    break;
+                case org.w3c.dom.Node.PROCESSING_INSTRUCTION_NODE:
+                    // ((org.w3c.dom.ProcessingInstruction)node).getTarget();
+                    // ((org.w3c.dom.ProcessingInstruction)node).getData();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Method stores xrfSource parameters in an xml file.
+     * @param parameters reference to parameters
+     * @param file output file
+     * @return = 0 if OK, error code 1-6 if error, se below.
+     */
+    @SuppressWarnings("null")
+    public static int writeParameters(Inparameters parameters, File file) {
+        FileWriter writer = null;
+        Transformer trans = null;
+        Document doc = null;
+        StringWriter sw = null;
+        String xmlString = null;
+        int retval = 0;
+        
+        // Get a DOM document
+        DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
+        DocumentBuilder docBuilder = null;
+        try {
+            docBuilder = dbfac.newDocumentBuilder();
+        } catch (ParserConfigurationException ex) {
+            retval = 1;
+            System.out.println("Create document builder failed" + ex);
+        }
+        if (retval == 0) {
+            doc = docBuilder.newDocument();
+            doc.setXmlStandalone(true); // To be able to control validation later
+
+            // Add a comment
+            Comment comm = doc.createComment("This parameter file "
+                    + "was created by program xrfSource " + new Date());
+            doc.appendChild(comm);
+
+            // Add the root element with its attributes
+            Element root = doc.createElement(ROOT_TAG);
+            root.setAttribute(ATTR_VERS, Inparameters.THIS_PROGRAM_VERSION);
+            root.setAttribute(ATTR_INANGLE, String.valueOf(parameters.getInAngle()));
+            root.setAttribute(ATTR_OUTANGLE, String.valueOf(parameters.getOutAngle()));
+            root.setAttribute(ATTR_WINDOW_THICKNESS, String.valueOf(parameters.getWindowThickness()));
+            root.setAttribute(ATTR_FILTER_THICKNESS, String.valueOf(parameters.getFilterThickness()));
+            root.setAttribute(ATTR_ANODE_VOLTAGE, String.valueOf(parameters.getTubeVoltage()));
+            root.setAttribute(ATTR_INTERVAL_SIZE, String.valueOf(parameters.getContinuumIntervalSize()));
+            root.setAttribute(ATTR_SPLIT_INTERVAL_AT_EDGE, String.valueOf(parameters.isSplitAtAbsEdge()));
+            root.setAttribute(ATTR_MAX_WAVELENGTH, String.valueOf(parameters.getMaxWavelength()));
+            root.setAttribute(ATTR_SLICE_SPACING, parameters.getSliceSpacing().name());
+            root.setAttribute(ATTR_INTEGRATION_TOLERANCE,
+                    String.valueOf(parameters.getIntegrationTolerance()));
+            root.setAttribute(ATTR_QUADRATURE, parameters.getQuadrature().name());
+            root.setAttribute(ATTR_SPECTRUM_AXIS, parameters.getSpectrumAxis().name());
+            root.setAttribute(ATTR_MATH_MODE, parameters.getMathMode().name());
+            root.setAttribute(ATTR_MATH_TOLERANCE,
+                    String.valueOf(parameters.getMathTolerance()));
+            doc.appendChild(root);
+
+            // Add anode element info
+            Element aElement = doc.createElement(ANODE_ELEMENT_TAG);
+            aElement.setAttribute(ATTR_SYMBOL, parameters.getAnodeElement().getSymbol());
+            aElement.setAttribute(ATTR_ATOMIC_NUMBER, String.valueOf(parameters.getAnodeElement().getAtomicNumber()));
+            root.appendChild(aElement);
+
+            // Add window element info
+            Element wElement = doc.createElement(WINDOW_ELEMENT_TAG);
+            wElement.setAttribute(ATTR_SYMBOL, parameters.getWindowElement().getSymbol());
+            wElement.setAttribute(ATTR_ATOMIC_NUMBER, String.valueOf(parameters.getWindowElement().getAtomicNumber()));
+            root.appendChild(wElement);
+
+            // Add Filter elements
+            Element fElements = doc.createElement(FILTER_ELEMENTS_TAG);
+            root.appendChild(fElements);
+
+            // Add a child element for each of the filter elements
+            for (FilterElement fElem : parameters.getFilterElements()) {
+                Element fElement = doc.createElement(FILTER_ELEMENT_TAG);
+                fElement.setAttribute(ATTR_SYMBOL, fElem.getSelectedElement().getSymbol());
+                fElement.setAttribute(ATTR_ATOMIC_NUMBER,
+                        String.valueOf(fElem.getSelectedElement().getAtomicNumber()));
+                fElement.setAttribute(ATTR_CONC, String.valueOf(fElem.getConc()));
+                fElements.appendChild(fElement);
+            }
+
+            // Add algorithm element info
+            Element algElement = doc.createElement(ALGORITHM_ELEMENT_TAG);
+            algElement.setAttribute(ATTR_CALCMODEL, parameters.getAlgorithm().getCalcModel().toString());
+            algElement.setAttribute(ATTR_DESCRIPTION,
+                    parameters.getAlgorithm().getDescription());
+            root.appendChild(algElement);
+
+            // Output the DOM object to a string and feed this string
+            // through a transformer to adjust output
+            TransformerFactory transfac = TransformerFactory.newInstance();
+            transfac.setAttribute("indent-number", 3);
+            try {
+                trans = transfac.newTransformer();
+            } catch (TransformerConfigurationException ex) {
+                retval = 2;
+                System.out.println("Create transformer failed" + ex);
+            }
+        }
+        if (retval == 0) {
+
+            // Adjust transformer parameters
+            trans.setOutputProperty(OutputKeys.INDENT, "yes");
+            trans.setOutputProperty(OutputKeys.ENCODING, "ISO-8859-1");
+            trans.setOutputProperty(OutputKeys.STANDALONE, "yes");
+            trans.setOutputProperty(OutputKeys.METHOD, "xml");
+
+            // Create streamWriter object from the DOM object after passing transformer
+            sw = new StringWriter();
+            StreamResult result = new StreamResult(sw);
+            DOMSource source = new DOMSource(doc);
+            try {
+                trans.transform(source, result);
+            } catch (TransformerException ex) {
+                retval = 3;
+                System.out.println("transform of DOM document failed" + ex);
+            }
+        }
+        if (retval == 0) {
+
+            // Convert transformer output to String
+            xmlString = sw.toString();
+            xmlString = xmlString.replace("><", ">\n<"); // To get comment on own line
+
+            // Create and open the FileWriter
+            try {
+                writer = new FileWriter(file);
+            } catch (IOException ex) {
+                retval = 4;
+                System.out.println("Creating a FileWriter failed" + ex);
+            }
+        }
+        if (retval == 0) {
+
+            // Output the XML to the file
+            try {
+                writer.append((CharSequence) xmlString);
+            } catch (IOException ex) {
+                retval = 5;
+                System.out.println("Append of XML to FileWriter failed" + ex);
+            }
+        }
+        if (retval == 0) {
+
+            //* Close file
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                retval = 6;
+                System.out.println("Close of the FileWriter failed" + ex);
+            }
+        }
+
+        //* Exit
+        return retval;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * File AbsCoefficientCacheTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.abscoeffcalculate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.AbsCoefficientCache.Eviction;
+import se.e2t.abscoeffcalculate.Mucal.ErrorCode;
+import se.e2t.abscoeffcalculate.Mucal.Quantity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the absorption coefficient cache. Cu has no absorption edge
+ * between 10 and 20 keV, so no lookup of the tests bypasses the cache.
+ */
+public class AbsCoefficientCacheTest {
+
+    private static final int THREADS = 8;
+    private static final int ENERGIES = 2000;
+
+    private Diagnostics _diagnostics;
+    private Diagnostics _previous;
+
+    private static double getEnergy(int index) {
+        return 10.0d + 0.005d * index;
+    }
+
+    private static double getDirect(AbsCoefficientCache cache, double energy) {
+        double quantum = cache.getEnergyQuantum();
+        return Mucal.getCrossSection(29, Math.rint(energy / quantum) * quantum,
+                Quantity.TOTAL);
+    }
+
+    /**
+     * Method looks up the energies from THREADS threads started together,
+     * each thread in its own order, and counts values differing from Mucal.
+     * @return number of differing values.
+     */
+    private static int lookupConcurrently(AbsCoefficientCache cache, int rounds)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger differing = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * ENERGIES / THREADS;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int round = 0; round < rounds; round++) {
+                    for (int i = 0; i < ENERGIES; i++) {
+                        double energy = getEnergy((offset + i) % ENERGIES);
+                        if (cache.get(29, energy, Quantity.TOTAL)
+                                != getDirect(cache, energy)) {
+                            differing.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return differing.get();
+    }
+
+    @Before
+    public void setUp() {
+        _diagnostics = new Diagnostics();
+        _previous = Diagnostics.install(_diagnostics);
+    }
+
+    @After
+    public void tearDown() {
+        Diagnostics.restore(_previous);
+    }
+
+    @Test
+    public void errorsReportedAtEachLookup() {
+        AbsCoefficientCache cache = new AbsCoefficientCache();
+        assertTrue(Double.isNaN(cache.get(84, 10.0d, Quantity.TOTAL)));
+        assertTrue(Double.isNaN(cache.get(84, 10.0d, Quantity.TOTAL)));
+        assertEquals(2, _diagnostics.getCount(ErrorCode.no_data));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+
+        double value = cache.get(26, 10.0d, Quantity.TOTAL);
+        assertEquals(value, cache.get(26, 10.0d, Quantity.TOTAL), 0.0d);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, _diagnostics.getTotalCount());
+    }
+
+    @Test
+    public void concurrentHitsAndMisses() throws InterruptedException {
+        AbsCoefficientCache cache = new AbsCoefficientCache();
+        assertEquals(0, lookupConcurrently(cache, 3));
+        long lookups = 3L * THREADS * ENERGIES;
+        assertEquals(lookups, cache.getHits() + cache.getMisses());
+        assertEquals(0, cache.getBypasses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(ENERGIES, cache.size());
+        // A value may be calculated by more than one thread missing it together
+        assertTrue(cache.getMisses() >= ENERGIES);
+        assertTrue(cache.getHits() >= lookups - (long) THREADS * ENERGIES);
+    }
+
+    @Test
+    public void concurrentEviction() throws InterruptedException {
+        for (Eviction eviction : Eviction.values()) {
+            AbsCoefficientCache cache = new AbsCoefficientCache(256, eviction,
+                    AbsCoefficientCache.DEFAULT_ENERGY_QUANTUM);
+            assertEquals(0, lookupConcurrently(cache, 2));
+            assertEquals(2L * THREADS * ENERGIES, cache.getHits() + cache.getMisses());
+            assertTrue(cache.size() <= cache.getMaxEntries());
+            assertTrue(cache.getEvictions() > 0);
+            assertTrue(cache.size() + cache.getEvictions() <= cache.getMisses());
+            cache.clear();
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void evictionOrder() {
+        // Lookups of the first energy between the others keep it in a LRU
+        // cache, all of them are hits. In a FIFO cache it is removed when
+        // its segment is full and calculated again at the next lookup.
+        for (Eviction eviction : Eviction.values()) {
+            AbsCoefficientCache cache = new AbsCoefficientCache(32, eviction,
+                    AbsCoefficientCache.DEFAULT_ENERGY_QUANTUM);
+            cache.get(29, getEnergy(0), Quantity.TOTAL);
+            for (int i = 1; i < ENERGIES; i++) {
+                cache.get(29, getEnergy(i), Quantity.TOTAL);
+                cache.get(29, getEnergy(0), Quantity.TOTAL);
+            }
+            if (eviction == Eviction.LRU) {
+                assertEquals(ENERGIES - 1, cache.getHits());
+            } else {
+                assertTrue(cache.getHits() < ENERGIES - 1);
+            }
+            assertEquals(cache.getMisses(), cache.size() + cache.getEvictions());
+        }
+    }
+}
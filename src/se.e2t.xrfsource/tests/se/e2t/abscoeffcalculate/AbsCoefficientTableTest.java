@@ -0,0 +1,88 @@
+/*
+ * File AbsCoefficientTableTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.abscoeffcalculate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.Mucal.Quantity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the accuracy of the absorption coefficient tables compared with
+ * Mucal, at energies other than the cell midpoints used when a table is
+ * built.
+ */
+public class AbsCoefficientTableTest {
+
+    private static final int SAMPLES = 10000;
+
+    private Diagnostics _previous;
+
+    @Before
+    public void setUp() {
+        // Sample energies close to edges report warnings
+        _previous = Diagnostics.install(new Diagnostics());
+    }
+
+    @After
+    public void tearDown() {
+        Diagnostics.restore(_previous);
+    }
+
+    @Test
+    public void defaultTablesWithinTolerance() {
+        AbsCoefficientTable table = new AbsCoefficientTable();
+        for (int z = 1; z <= 94; z++) {
+            if (!Mucal.hasData(z)) {
+                continue;
+            }
+            assertTrue(table.getMaxRelativeError(z) <= AbsCoefficientTable.DEFAULT_TOLERANCE);
+            assertTrue("Z " + z, table.checkAccuracy(z, SAMPLES)
+                    <= AbsCoefficientTable.DEFAULT_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void coarseTablesRefined() {
+        // 16 cells per octave do not meet the tolerance, the tables are refined
+        AbsCoefficientTable table = new AbsCoefficientTable(4,
+                AbsCoefficientTable.DEFAULT_TOLERANCE);
+        for (int z : new int[]{4, 26, 74}) {
+            assertTrue(table.getCellsPerOctave(z) > 16);
+            assertTrue(table.checkAccuracy(z, SAMPLES) <= AbsCoefficientTable.DEFAULT_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void elementWithoutDataCalculatedDirectly() {
+        AbsCoefficientTable table = new AbsCoefficientTable();
+        assertTrue(Double.isNaN(table.get(84, 10.0d, Quantity.TOTAL)));
+        assertEquals(0.0d, table.checkAccuracy(84, SAMPLES), 0.0d);
+    }
+}
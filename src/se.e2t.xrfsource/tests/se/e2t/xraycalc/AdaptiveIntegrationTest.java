@@ -0,0 +1,158 @@
+/*
+ * File AdaptiveIntegrationTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.Mucal;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the adaptive integration of the continuum, the estimated error
+ * against a tight reference and the slice limits at absorption edges.
+ */
+public class AdaptiveIntegrationTest {
+
+    private static Inparameters getParameters(CalcModel model, boolean filter) {
+        Inparameters parameters = new Inparameters();
+        for (Inparameters.Algorithm algorithm : Inparameters.getAlgorithms()) {
+            if (algorithm.getCalcModel() == model) {
+                parameters.setAlgorithm(algorithm);
+            }
+        }
+        parameters.getAnodeElement().setSymbol("W");
+        parameters.getAnodeElement().setAtomicNumber(74);
+        parameters.setTubeVoltage(12);
+        parameters.setContiniumIntervalSize(0.1d);
+        parameters.setMaxWavelength(12.0d);
+        if (filter) {
+            FilterElement copper = new FilterElement();
+            copper.getSelectedElement().setAtomicNumber(29);
+            copper.getSelectedElement().setSymbol("Cu");
+            copper.setConc(1.0d);
+            parameters.getFilterElements().add(copper);
+            parameters.setFilterThickness(5);
+        }
+        return parameters;
+    }
+
+    private static double getTotal(XraySpectrum spectrum) {
+        SpectrumColumns continuum = spectrum.getContinuumColumns();
+        double total = 0.0d;
+        for (int i = 0; i < continuum.size(); i++) {
+            total += continuum.getIntensity(i);
+        }
+        return total;
+    }
+
+    @Test
+    public void estimateAboveActualError() {
+        for (CalcModel model : CalcModel.values()) {
+            for (boolean filter : new boolean[]{false, true}) {
+                Inparameters parameters = getParameters(model, filter);
+                SourceCalculation calculation = SpectrumEngine.getCalculation(model);
+                parameters.setQuadrature(Quadrature.GAUSS_LEGENDRE_5);
+                parameters.setIntegrationTolerance(1.0e-9d);
+                double reference = getTotal(calculation.calculate(parameters));
+                for (Quadrature quadrature : new Quadrature[]{
+                    Quadrature.MIDPOINT, Quadrature.GAUSS_LEGENDRE_2}) {
+                    parameters.setQuadrature(quadrature);
+                    parameters.setIntegrationTolerance(1.0e-4d);
+                    SourceCalculation.Result result
+                            = calculation.calculateWithIntegration(parameters);
+                    AdaptiveIntegration integration = result.getIntegration();
+                    double actual = Math.abs(getTotal(result.getSpectrum())
+                            - reference) / reference;
+                    String message = model + " " + quadrature
+                            + (filter ? " Cu filter" : "");
+                    assertTrue(message, integration.getEstimatedError() >= actual);
+                    assertTrue(message, integration.getEstimatedError()
+                            <= integration.getTolerance());
+                    assertEquals(message, 0, integration.getUnresolvedCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void slicesSplitAtFilterEdges() {
+        Inparameters parameters = getParameters(CalcModel.EBEL, true);
+        parameters.setQuadrature(Quadrature.GAUSS_LEGENDRE_2);
+        parameters.setIntegrationTolerance(1.0e-3d);
+        AdaptiveIntegration integration = SpectrumEngine.getCalculation(CalcModel.EBEL)
+                .calculateWithIntegration(parameters).getIntegration();
+        double[] centers = integration.getCenters();
+        double[] widths = integration.getWidths();
+
+        // Slices cover the grid, gaps at the anode edges left
+        double width = 0.0d;
+        for (int i = 0; i < centers.length; i++) {
+            width += widths[i];
+            if (i > 0) {
+                assertTrue(centers[i - 1] + widths[i - 1] / 2.0d
+                        <= centers[i] - widths[i] / 2.0d + 1.0e-12d);
+            }
+        }
+        double gridWidth = 0.0d;
+        for (double gridSlice : SliceGrid.getGrid(parameters).getWidths()) {
+            gridWidth += gridSlice;
+        }
+        assertEquals(gridWidth, width, 1.0e-10d);
+
+        // Limits at the Cu K edge plus and minus the margin
+        double edge = Mucal.getEdgeEnergies(29)[0];
+        for (double energy : new double[]{edge - SliceGrid.EDGE_MARGIN,
+            edge + SliceGrid.EDGE_MARGIN}) {
+            double wavelength = Inparameters.CONV_KEV_ANGSTROM / energy;
+            boolean found = false;
+            for (int i = 0; i < centers.length; i++) {
+                found |= Math.abs(centers[i] - widths[i] / 2.0d - wavelength) < 1.0e-12d;
+            }
+            assertTrue("limit at " + energy + " keV", found);
+        }
+    }
+
+    @Test
+    public void fixedSlicesWithoutIntegration() {
+        Inparameters parameters = getParameters(CalcModel.NIST, false);
+        parameters.setIntegrationTolerance(0.0d);
+        for (Quadrature quadrature : new Quadrature[]{
+            Quadrature.MIDPOINT, Quadrature.SIMPSON}) {
+            parameters.setQuadrature(quadrature);
+            SourceCalculation.Result result = SpectrumEngine.getCalculation(CalcModel.NIST)
+                    .calculateWithIntegration(parameters);
+            assertNotNull(result.getSpectrum());
+            assertNull(quadrature.name(), result.getIntegration());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * File AttenuationChainTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.abscoeffcalculate.AbsCoefficient.Backend;
+import se.e2t.abscoeffcalculate.AbsCoefficientTable;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the transmission curve cache of the chain, keyed on the layers,
+ * the wavelengths and the absorption coefficient settings. The layers count
+ * their calculations, so a hit is seen as no new calculation.
+ */
+public class AttenuationChainTest {
+
+    private static final double[] WAVELENGTHS = {0.5d, 1.0d, 1.5d, 2.0d, 3.0d};
+
+    private final AtomicInteger _calculations = new AtomicInteger();
+    private Backend _backend;
+    private AbsCoefficientTable _table;
+
+    private class CountingLayer extends AttenuationLayer {
+
+        CountingLayer(int atomicNumber, double thickness) {
+            super("Counting", new int[]{atomicNumber}, new double[]{1.0d}, thickness);
+        }
+
+        @Override
+        public double[] getTransmission(double[] wavelengths) {
+            _calculations.incrementAndGet();
+            return super.getTransmission(wavelengths);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        _backend = AbsCoefficient.getBackend();
+        _table = AbsCoefficient.getTable();
+        AbsCoefficient.setBackend(Backend.DIRECT);
+        AttenuationChain.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        AbsCoefficient.setBackend(_backend);
+        AbsCoefficient.setTable(_table);
+        AttenuationChain.clearCache();
+    }
+
+    private AttenuationChain getChain() {
+        return new AttenuationChain(List.of(new CountingLayer(4, 125.0d),
+                new CountingLayer(29, 5.0d)));
+    }
+
+    @Test
+    public void equalChainsShareCurves() {
+        double[] curve = getChain().getTransmission(WAVELENGTHS);
+        assertEquals(2, _calculations.get());
+        assertArrayEquals(getChain().calculateCurve(WAVELENGTHS), curve, 0.0d);
+        assertEquals(4, _calculations.get());
+
+        // Hit of an equal chain, the returned curve is a copy
+        curve[0] = -1.0d;
+        assertArrayEquals(getChain().calculateCurve(WAVELENGTHS),
+                getChain().getTransmission(WAVELENGTHS), 0.0d);
+        assertEquals(6, _calculations.get());
+
+        // Other wavelengths or layers miss
+        getChain().getTransmission(new double[]{0.5d, 1.0d});
+        assertEquals(8, _calculations.get());
+        getChain().with(AttenuationLayer.getElementLayer("Gas", 18, 10.0d))
+                .getTransmission(WAVELENGTHS);
+        assertEquals(10, _calculations.get());
+    }
+
+    @Test
+    public void curvesKeyedOnSettings() {
+        AttenuationChain chain = getChain();
+        double[] direct = chain.getTransmission(WAVELENGTHS);
+        AbsCoefficient.setBackend(Backend.TABLE);
+        double[] table = chain.getTransmission(WAVELENGTHS);
+        assertEquals(4, _calculations.get());
+        assertArrayEquals(chain.calculateCurve(WAVELENGTHS), table, 0.0d);
+
+        // Other table tolerance, other settings
+        AbsCoefficient.setTable(new AbsCoefficientTable(_table.getCellBits(),
+                10.0d * _table.getTolerance()));
+        chain.getTransmission(WAVELENGTHS);
+        assertEquals(8, _calculations.get());
+
+        AbsCoefficient.setBackend(Backend.DIRECT);
+        assertArrayEquals(direct, chain.getTransmission(WAVELENGTHS), 0.0d);
+        assertEquals(8, _calculations.get());
+    }
+
+    @Test
+    public void clearCacheRemovesCurves() {
+        AttenuationChain chain = getChain();
+        double[] curve = chain.getTransmission(WAVELENGTHS);
+        AttenuationChain.clearCache();
+        assertArrayEquals(curve, chain.getTransmission(WAVELENGTHS), 0.0d);
+        assertEquals(4, _calculations.get());
+    }
+}
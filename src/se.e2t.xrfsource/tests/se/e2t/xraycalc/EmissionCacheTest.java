@@ -0,0 +1,223 @@
+/*
+ * File EmissionCacheTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the cached emission of SourceCalculation, spectra from the cache
+ * equal to spectra calculated without it and the warnings of the cached
+ * emission reported on every use. A Cr anode with long wavelengths has
+ * slices below the absorption data, which give warnings.
+ */
+public class EmissionCacheTest {
+
+    @Before
+    public void setUp() {
+        SourceCalculation.clearEmissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        SourceCalculation.clearEmissionCache();
+    }
+
+    /**
+     * Counts the slices and tube line sets calculated.
+     */
+    private static class CountingCalculation extends EbelCalculation {
+
+        private int _slices = 0;
+        private int _lines = 0;
+
+        @Override
+        protected void getContiniumIntensities(CalculationContext context,
+                double[] wavelengths, double[] wavelengthWidths, double[] intensities) {
+            _slices += wavelengths.length;
+            super.getContiniumIntensities(context, wavelengths, wavelengthWidths,
+                    intensities);
+        }
+
+        @Override
+        protected void calculateTubeLineIntensities(CalculationContext context,
+                XraySpectrum outputData) {
+            _lines++;
+            super.calculateTubeLineIntensities(context, outputData);
+        }
+    }
+
+    private static Inparameters getParameters(CalcModel model) {
+        Inparameters parameters = new Inparameters();
+        for (Inparameters.Algorithm algorithm : Inparameters.getAlgorithms()) {
+            if (algorithm.getCalcModel() == model) {
+                parameters.setAlgorithm(algorithm);
+            }
+        }
+        parameters.getAnodeElement().setSymbol("Cr");
+        parameters.getAnodeElement().setAtomicNumber(24);
+        parameters.setMaxWavelength(40.0d);
+        return parameters;
+    }
+
+    private static XraySpectrum calculate(Inparameters parameters, Diagnostics diagnostics) {
+        SourceCalculation calculation = SpectrumEngine.getCalculation(
+                parameters.getAlgorithm().getCalcModel());
+        calculation.setDiagnostics(diagnostics);
+        return calculation.calculate(parameters);
+    }
+
+    private static void assertColumnsEqual(SpectrumColumns expected, SpectrumColumns actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getWavelength(i), actual.getWavelength(i), 0.0d);
+            assertEquals(expected.getIntensity(i), actual.getIntensity(i), 0.0d);
+        }
+    }
+
+    private static void assertSpectrumEquals(XraySpectrum expected, XraySpectrum actual) {
+        assertColumnsEqual(expected.getTubeLineColumns(), actual.getTubeLineColumns());
+        assertColumnsEqual(expected.getContinuumColumns(), actual.getContinuumColumns());
+    }
+
+    @Test
+    public void cachedEqualsCold() {
+        Inparameters parameters = getParameters(CalcModel.EBEL);
+        calculate(parameters, new Diagnostics());
+
+        // Other filter, the emission is reused
+        parameters.getFilterElements().add(new FilterElement("Al", 13, 1.0d));
+        parameters.setFilterThickness(20);
+        XraySpectrum cached = calculate(parameters, new Diagnostics());
+        SourceCalculation.clearEmissionCache();
+        assertSpectrumEquals(calculate(parameters, new Diagnostics()), cached);
+
+        // Longer wavelengths, the cached slices are extended
+        parameters.setMaxWavelength(60.0d);
+        XraySpectrum extended = calculate(parameters, new Diagnostics());
+        SourceCalculation.clearEmissionCache();
+        assertSpectrumEquals(calculate(parameters, new Diagnostics()), extended);
+    }
+
+    @Test
+    public void lowerMaxWavelengthNotCalculated() {
+        Inparameters parameters = getParameters(CalcModel.EBEL);
+        parameters.setMaxWavelength(60.0d);
+        CountingCalculation calculation = new CountingCalculation();
+        calculation.calculate(parameters);
+        assertTrue(calculation._slices > 0);
+        assertEquals(1, calculation._lines);
+
+        // Max wavelength at a slice limit, all slices are cached
+        SliceGrid grid = SliceGrid.getGrid(parameters);
+        int index = grid.size() / 2;
+        double maxWavelength = grid.getCenter(index) + grid.getWidth(index) / 2.0d;
+        parameters.setMaxWavelength(maxWavelength);
+        calculation._slices = 0;
+        calculation._lines = 0;
+        Diagnostics truncated = new Diagnostics();
+        calculation.setDiagnostics(truncated);
+        XraySpectrum spectrum = calculation.calculate(parameters);
+        assertEquals(0, calculation._slices);
+        assertEquals(0, calculation._lines);
+
+        // Switching between the max wavelengths calculates nothing
+        calculation.setDiagnostics(new Diagnostics());
+        parameters.setMaxWavelength(60.0d);
+        calculation.calculate(parameters);
+        parameters.setMaxWavelength(maxWavelength);
+        calculation.calculate(parameters);
+        assertEquals(0, calculation._slices);
+        assertEquals(0, calculation._lines);
+
+        SourceCalculation.clearEmissionCache();
+        Diagnostics cold = new Diagnostics();
+        assertSpectrumEquals(calculate(parameters, cold), spectrum);
+        assertTrue(cold.getTotalCount() > 0);
+        assertEquals(cold.getTotalCount(), truncated.getTotalCount());
+    }
+
+    @Test
+    public void lowerMaxWavelengthOnEnergyAxis() {
+        // The slices of a lower max wavelength are the last in energy order
+        Inparameters parameters = getParameters(CalcModel.EBEL);
+        parameters.setSpectrumAxis(XraySpectrum.Axis.ENERGY);
+        parameters.setMaxWavelength(60.0d);
+        calculate(parameters, new Diagnostics());
+        SliceGrid grid = SliceGrid.getGrid(parameters);
+        int index = grid.size() / 2;
+        parameters.setMaxWavelength(grid.getCenter(index) + grid.getWidth(index) / 2.0d);
+        Diagnostics truncated = new Diagnostics();
+        XraySpectrum spectrum = calculate(parameters, truncated);
+        SourceCalculation.clearEmissionCache();
+        Diagnostics cold = new Diagnostics();
+        assertSpectrumEquals(calculate(parameters, cold), spectrum);
+        assertEquals(cold.getTotalCount(), truncated.getTotalCount());
+    }
+
+    @Test
+    public void lowerMaxWavelengthOfLimitedLines() {
+        // NIST lines depend on the max wavelength, W L lines at 1.1 - 1.7
+        Inparameters parameters = getParameters(CalcModel.NIST);
+        parameters.getAnodeElement().setSymbol("W");
+        parameters.getAnodeElement().setAtomicNumber(74);
+        parameters.setMaxWavelength(12.0d);
+        calculate(parameters, new Diagnostics());
+        parameters.setMaxWavelength(1.5d);
+        XraySpectrum cached = calculate(parameters, new Diagnostics());
+        SourceCalculation.clearEmissionCache();
+        assertSpectrumEquals(calculate(parameters, new Diagnostics()), cached);
+    }
+
+    @Test
+    public void warningsReportedOnEveryUse() {
+        Inparameters parameters = getParameters(CalcModel.EBEL);
+        Diagnostics cold = new Diagnostics();
+        calculate(parameters, cold);
+        assertTrue(cold.getTotalCount() > 0);
+        Diagnostics cached = new Diagnostics();
+        calculate(parameters, cached);
+        assertEquals(cold.getTotalCount(), cached.getTotalCount());
+        assertEquals(cold.getDetails().size(), cached.getDetails().size());
+
+        parameters.setMaxWavelength(60.0d);
+        Diagnostics extended = new Diagnostics();
+        calculate(parameters, extended);
+        SourceCalculation.clearEmissionCache();
+        Diagnostics extendedCold = new Diagnostics();
+        calculate(parameters, extendedCold);
+        assertTrue(extendedCold.getTotalCount() > cold.getTotalCount());
+        assertEquals(extendedCold.getTotalCount(), extended.getTotalCount());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * File EnergyKernelTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import org.junit.Test;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the continuum kernels of the algorithms, the slice loops against
+ * getContiniumIntensity and the energy slices against wavelength slices
+ * with the same limits. The slices are narrow and away from the absorption
+ * edges of the anode, so the two centers give the same intensity.
+ */
+public class EnergyKernelTest {
+
+    private static final double[] ENERGIES = {3.0d, 4.5d, 6.0d, 7.5d, 9.0d, 10.0d};
+    private static final double ENERGY_WIDTH = 0.001d;
+
+    private static Inparameters getParameters(CalcModel model) {
+        Inparameters parameters = new Inparameters();
+        for (Inparameters.Algorithm algorithm : Inparameters.getAlgorithms()) {
+            if (algorithm.getCalcModel() == model) {
+                parameters.setAlgorithm(algorithm);
+            }
+        }
+        parameters.getAnodeElement().setSymbol("W");
+        parameters.getAnodeElement().setAtomicNumber(74);
+        parameters.setTubeVoltage(12);
+        return parameters;
+    }
+
+    @Test
+    public void slicesEqualSingleSlice() {
+        for (CalcModel model : CalcModel.values()) {
+            SourceCalculation calculation = SpectrumEngine.getCalculation(model);
+            CalculationContext context = calculation.createContext(getParameters(model));
+            double[] wavelengths = new double[ENERGIES.length];
+            double[] widths = new double[ENERGIES.length];
+            for (int i = 0; i < ENERGIES.length; i++) {
+                wavelengths[i] = Inparameters.CONV_KEV_ANGSTROM / ENERGIES[i];
+                widths[i] = 0.01d;
+            }
+            double[] intensities = new double[ENERGIES.length];
+            calculation.getContiniumIntensities(context, wavelengths, widths, intensities);
+            for (int i = 0; i < ENERGIES.length; i++) {
+                double single = calculation.getContiniumIntensity(context,
+                        wavelengths[i], widths[i]);
+                assertTrue(model + " " + wavelengths[i], single > 0.0d);
+                assertEquals(model + " " + wavelengths[i], single, intensities[i],
+                        1.0e-12d * single);
+            }
+        }
+    }
+
+    @Test
+    public void energySlicesEqualWavelengthSlices() {
+        for (CalcModel model : CalcModel.values()) {
+            SourceCalculation calculation = SpectrumEngine.getCalculation(model);
+            CalculationContext context = calculation.createContext(getParameters(model));
+            int n = ENERGIES.length;
+            double[] energyWidths = new double[n];
+            double[] wavelengths = new double[n];
+            double[] wavelengthWidths = new double[n];
+            for (int i = 0; i < n; i++) {
+                energyWidths[i] = ENERGY_WIDTH;
+                double lower = Inparameters.CONV_KEV_ANGSTROM
+                        / (ENERGIES[i] + ENERGY_WIDTH / 2.0d);
+                double upper = Inparameters.CONV_KEV_ANGSTROM
+                        / (ENERGIES[i] - ENERGY_WIDTH / 2.0d);
+                wavelengths[i] = (lower + upper) / 2.0d;
+                wavelengthWidths[i] = upper - lower;
+            }
+            double[] energyIntensities = new double[n];
+            calculation.getContiniumEnergyIntensities(context, ENERGIES, energyWidths,
+                    calculation.getSliceCoefficientsAtEnergies(context, ENERGIES),
+                    energyIntensities);
+            double[] intensities = new double[n];
+            calculation.getContiniumIntensities(context, wavelengths,
+                    wavelengthWidths, intensities);
+            for (int i = 0; i < n; i++) {
+                assertTrue(model + " " + ENERGIES[i], energyIntensities[i] > 0.0d);
+                assertEquals(model + " " + ENERGIES[i], intensities[i],
+                        energyIntensities[i], 1.0e-6d * intensities[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * File FilterOptimizerTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.List;
+import org.junit.Test;
+import se.e2t.xraycalc.FilterOptimizer.Candidate;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the filter optimizer with a known single element optimum. The
+ * excitation of the Fe K edge of the default Rh tube is best with about
+ * 19 um Al, which removes the long wavelengths below the edge, on both
+ * spectrum axes.
+ */
+public class FilterOptimizerTest {
+
+    private static List<Candidate> optimize(Axis axis) {
+        Inparameters parameters = new Inparameters();
+        parameters.setSpectrumAxis(axis);
+        FilterOptimizer optimizer = new FilterOptimizer(parameters);
+        optimizer.setMaxComponents(1);
+        return optimizer.optimize(FilterOptimizer.getEdgeExcitation(26, 7.112d), 3);
+    }
+
+    @Test
+    public void feKEdgeOptimumOnBothAxes() {
+        List<Candidate> wavelength = optimize(Axis.WAVELENGTH);
+        List<Candidate> energy = optimize(Axis.ENERGY);
+        assertEquals(3, wavelength.size());
+        assertEquals(3, energy.size());
+        Candidate best = wavelength.get(0);
+        assertEquals(1, best.getFilterElements().size());
+        assertEquals(13, best.getFilterElements().get(0)
+                .getSelectedElement().getAtomicNumber());
+        assertEquals(18.74d, best.getThickness(), 0.005d);
+        assertTrue(best.getMerit() >= wavelength.get(1).getMerit());
+        assertTrue(best.getSignal() > 0.0d && best.getSignal() < 1.0d);
+        for (int i = 0; i < wavelength.size(); i++) {
+            assertEquals(wavelength.get(i).toString(), energy.get(i).toString());
+            assertEquals(wavelength.get(i).getMerit(), energy.get(i).getMerit(), 0.0d);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * File MathFunctionsTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import se.e2t.xraycalc.Inparameters.MathMode;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of MathFunctions: the STRICT functions are those of Math and the
+ * relative errors of the FAST functions are below the tolerance.
+ */
+public class MathFunctionsTest {
+
+    private static final double[] TOLERANCES = {
+        MathFunctions.MAX_TOLERANCE, MathFunctions.DEFAULT_TOLERANCE, 1.0e-10d,
+        MathFunctions.MIN_TOLERANCE
+    };
+    private static final int SAMPLES = 200000;
+
+    @Test
+    public void strictIsMath() {
+        MathFunctions math = MathFunctions.getFunctions(MathMode.STRICT, 0.0d);
+        Random random = new Random(1L);
+        for (int i = 0; i < 1000; i++) {
+            double x = 100.0d * random.nextDouble();
+            double y = 16.0d * random.nextDouble() - 8.0d;
+            assertEquals(Math.exp(-x), math.exp(-x), 0.0d);
+            assertEquals(Math.log(x), math.log(x), 0.0d);
+            assertEquals(Math.pow(x, y), math.pow(x, y), 0.0d);
+        }
+    }
+
+    @Test
+    public void fastExpWithinTolerance() {
+        for (double tolerance : TOLERANCES) {
+            MathFunctions math = MathFunctions.getFunctions(MathMode.FAST, tolerance);
+            Random random = new Random(2L);
+            double worst = 0.0d;
+            for (int i = 0; i < SAMPLES; i++) {
+                double x = 1400.0d * random.nextDouble() - 700.0d;
+                worst = Math.max(worst, relativeError(math.exp(x), Math.exp(x)));
+            }
+            assertTrue("exp error " + worst + " tolerance " + tolerance,
+                    worst < tolerance);
+        }
+    }
+
+    @Test
+    public void fastLogWithinTolerance() {
+        for (double tolerance : TOLERANCES) {
+            MathFunctions math = MathFunctions.getFunctions(MathMode.FAST, tolerance);
+            Random random = new Random(3L);
+            double worst = 0.0d;
+            for (int i = 0; i < SAMPLES; i++) {
+                // Wide range of magnitudes, and arguments close to 1 where
+                // the error must stay relative
+                double x = i % 2 == 0 ? Math.exp(1400.0d * random.nextDouble() - 700.0d)
+                        : 1.0d + 0.02d * (random.nextDouble() - 0.5d);
+                worst = Math.max(worst, relativeError(math.log(x), Math.log(x)));
+            }
+            assertTrue("log error " + worst + " tolerance " + tolerance,
+                    worst < tolerance);
+        }
+    }
+
+    @Test
+    public void fastPowWithinTolerance() {
+        for (double tolerance : TOLERANCES) {
+            MathFunctions math = MathFunctions.getFunctions(MathMode.FAST, tolerance);
+            Random random = new Random(4L);
+            double worst = 0.0d;
+            for (int i = 0; i < SAMPLES; i++) {
+                double x = Math.exp(40.0d * random.nextDouble() - 20.0d);
+                double y = 2.0d * MathFunctions.MAX_FAST_EXPONENT
+                        * (random.nextDouble() - 0.5d);
+                worst = Math.max(worst, relativeError(math.pow(x, y), Math.pow(x, y)));
+            }
+            assertTrue("pow error " + worst + " tolerance " + tolerance,
+                    worst < tolerance);
+        }
+    }
+
+    @Test
+    public void fastSpecialArgumentsAreMath() {
+        MathFunctions math = MathFunctions.getFunctions(MathMode.FAST,
+                MathFunctions.DEFAULT_TOLERANCE);
+        double[] arguments = {0.0d, -0.0d, -1.0d, Double.MIN_VALUE,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN};
+        for (double x : arguments) {
+            assertEquals(Math.log(x), math.log(x), 0.0d);
+            assertEquals(Math.pow(x, 2.5d), math.pow(x, 2.5d), 0.0d);
+        }
+        for (double x : new double[]{-800.0d, 800.0d, Double.NaN,
+            Double.NEGATIVE_INFINITY}) {
+            assertEquals(Math.exp(x), math.exp(x), 0.0d);
+        }
+        double y = MathFunctions.MAX_FAST_EXPONENT + 1.0d;
+        assertEquals(Math.pow(3.7d, y), math.pow(3.7d, y), 0.0d);
+    }
+
+    @Test
+    public void functionsAreShared() {
+        assertSame(MathFunctions.getFunctions(MathMode.STRICT, 0.0d),
+                MathFunctions.getFunctions(MathMode.STRICT, 1.0e-5d));
+        assertTrue(MathFunctions.getFunctions(MathMode.FAST, 1.0e-5d).isFast());
+        assertEquals(1.0e-5d, MathFunctions.getFunctions(MathMode.FAST, 1.0e-5d)
+                .getTolerance(), 0.0d);
+    }
+
+    private static double relativeError(double value, double exact) {
+        return Math.abs(value - exact) / Math.abs(exact);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * File NistCalculationTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the exponential integral of the Pella tube lines, the series
+ * with its term recurrence below the asymptotic limit and the asymptotic
+ * expansion from it. The reference values of Ei(x) less Euler's constant
+ * are sums of the series ln(x) + sum x^k / (k k!) with 80 digits.
+ */
+public class NistCalculationTest {
+
+    private static final double[][] EI = {
+        {0.5d, -1.22995760038359284e-01d},
+        {1.0d, 1.31790215145440381e+00d},
+        {2.5d, 6.49655022967706763e+00d},
+        {5.0d, 3.96080596909016478e+01d},
+        {10.0d, 2.49165176057697636e+03d},
+        {20.0d, 2.56156520868409239e+07d},
+        {39.5d, 3.71091887913397000e+15d},
+        {40.0d, 6.03971826361124100e+15d},
+        {50.0d, 1.05856368971316904e+20d},
+        {100.0d, 2.71555274485387984e+41d},
+        {300.0d, 6.49648250808866537e+127d}
+    };
+
+    @Test
+    public void seriesWithinTruncationError() {
+        for (double[] value : EI) {
+            if (value[0] < 40.0d) {
+                // The series stops at terms below 1e-6, plus rounding
+                assertEquals("Ei(" + value[0] + ")", value[1],
+                        NistCalculation.getPellaEi(value[0]),
+                        1.0e-6d + 1.0e-14d * Math.abs(value[1]));
+            }
+        }
+    }
+
+    @Test
+    public void asymptoticExpansionRelativeError() {
+        for (double[] value : EI) {
+            if (value[0] >= 40.0d) {
+                assertEquals("Ei(" + value[0] + ")", value[1],
+                        NistCalculation.getPellaEi(value[0]),
+                        1.0e-14d * Math.abs(value[1]));
+            }
+        }
+    }
+
+    @Test
+    public void continuousAtAsymptoticLimit() {
+        // Ei increases by e^x / x dx, both sides of the limit agree with it
+        double below = NistCalculation.getPellaEi(40.0d - 1.0e-9d);
+        double at = NistCalculation.getPellaEi(40.0d);
+        assertEquals(Math.exp(40.0d) / 40.0d * 1.0e-9d, at - below, 1.0e-4d * at * 1.0e-9d
+                + 1.0e-14d * at);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * File ParameterSnapshotTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.Arrays;
+import org.junit.Test;
+import se.e2t.xraycalc.Inparameters.MathMode;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the equality, content hash and canonical values of snapshots.
+ */
+public class ParameterSnapshotTest {
+
+    private static Inparameters getParameters() {
+        Inparameters parameters = new Inparameters();
+        parameters.getAnodeElement().setSymbol("W");
+        parameters.getAnodeElement().setAtomicNumber(74);
+        parameters.setTubeVoltage(30);
+        parameters.getFilterElements().add(new FilterElement("Cu", 29, 0.8d));
+        parameters.getFilterElements().add(new FilterElement("Al", 13, 0.2d));
+        parameters.setFilterThickness(10);
+        return parameters;
+    }
+
+    private static void assertSame(ParameterSnapshot expected, ParameterSnapshot actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.getContentHash(), actual.getContentHash());
+        assertArrayEquals(expected.getCanonicalBytes(), actual.getCanonicalBytes());
+    }
+
+    private static void assertOther(ParameterSnapshot expected, ParameterSnapshot actual) {
+        assertNotEquals(expected, actual);
+        assertNotEquals(expected.getContentHash(), actual.getContentHash());
+        assertNotEquals(Arrays.toString(expected.getCanonicalBytes()),
+                Arrays.toString(actual.getCanonicalBytes()));
+    }
+
+    @Test
+    public void equalParametersEqualSnapshots() {
+        ParameterSnapshot snapshot = new ParameterSnapshot(getParameters());
+        assertSame(snapshot, new ParameterSnapshot(getParameters()));
+        assertSame(snapshot, new ParameterSnapshot(snapshot.toInparameters()));
+    }
+
+    @Test
+    public void filterOrderNotSignificant() {
+        Inparameters parameters = getParameters();
+        ParameterSnapshot snapshot = new ParameterSnapshot(parameters);
+        FilterElement first = parameters.getFilterElements().remove(0);
+        parameters.getFilterElements().add(first);
+        assertSame(snapshot, new ParameterSnapshot(parameters));
+        assertArrayEquals(new int[]{13, 29}, snapshot.getFilterAtomicNumbers());
+    }
+
+    @Test
+    public void negativeZeroCanonical() {
+        Inparameters parameters = getParameters();
+        parameters.setWindowThickness(0.0d);
+        ParameterSnapshot snapshot = new ParameterSnapshot(parameters);
+        parameters.setWindowThickness(-0.0d);
+        assertSame(snapshot, new ParameterSnapshot(parameters));
+    }
+
+    @Test
+    public void mathToleranceOnlyOfFastMath() {
+        Inparameters parameters = getParameters();
+        parameters.setMathMode(MathMode.STRICT);
+        ParameterSnapshot snapshot = new ParameterSnapshot(parameters);
+        parameters.setMathTolerance(1.0e-6d);
+        assertSame(snapshot, new ParameterSnapshot(parameters));
+        parameters.setMathMode(MathMode.FAST);
+        ParameterSnapshot fast = new ParameterSnapshot(parameters);
+        assertOther(snapshot, fast);
+        parameters.setMathTolerance(1.0e-8d);
+        assertOther(fast, new ParameterSnapshot(parameters));
+    }
+
+    @Test
+    public void changedValuesOtherSnapshots() {
+        ParameterSnapshot snapshot = new ParameterSnapshot(getParameters());
+        Inparameters parameters = getParameters();
+        parameters.setTubeVoltage(31);
+        assertOther(snapshot, new ParameterSnapshot(parameters));
+        parameters = getParameters();
+        parameters.getFilterElements().get(0).setConc(0.7d);
+        assertOther(snapshot, new ParameterSnapshot(parameters));
+        parameters = getParameters();
+        parameters.setInAngle(parameters.getInAngle() + 1.0e-12d);
+        assertOther(snapshot, new ParameterSnapshot(parameters));
+        parameters = getParameters();
+        parameters.getAnodeElement().setSymbol("Rh");
+        parameters.getAnodeElement().setAtomicNumber(45);
+        assertOther(snapshot, new ParameterSnapshot(parameters));
+    }
+
+    @Test
+    public void snapshotNotChangedWithParameters() {
+        Inparameters parameters = getParameters();
+        ParameterSnapshot snapshot = new ParameterSnapshot(parameters);
+        long hash = snapshot.getContentHash();
+        parameters.setTubeVoltage(50);
+        parameters.getFilterElements().clear();
+        assertEquals(hash, snapshot.getContentHash());
+        assertEquals(30.0d, snapshot.getTubeVoltage(), 0.0d);
+        assertEquals(2, snapshot.getFilterAtomicNumbers().length);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * File ParameterSweepTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import se.e2t.xraycalc.ParameterSweep.Design;
+import se.e2t.xraycalc.ParameterSweep.Dimension;
+import se.e2t.xraycalc.ParameterSweep.Parameter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the points of the sweep designs. The ranges have power of two
+ * widths, so the strata of the design values are exact.
+ */
+public class ParameterSweepTest {
+
+    private static ParameterSweep getSweep() {
+        Inparameters parameters = new Inparameters();
+        parameters.getAnodeElement().setSymbol("W");
+        parameters.getAnodeElement().setAtomicNumber(74);
+        ParameterSweep sweep = new ParameterSweep(parameters);
+        sweep.addDimension(Dimension.getRange(Parameter.TUBE_VOLTAGE, 16.0d, 48.0d, 5));
+        sweep.addDimension(Dimension.getRange(Parameter.FILTER_THICKNESS, 0.0d, 64.0d, 5));
+        sweep.addDimension(Dimension.getRange(Parameter.OUT_ANGLE, 32.0d, 64.0d, 5));
+        return sweep;
+    }
+
+    // Design value of a point scaled to 0 - 1
+    private static double getUnit(ParameterSnapshot point, int dimension) {
+        switch (dimension) {
+            case 0:
+                return (point.getTubeVoltage() - 16.0d) / 32.0d;
+            case 1:
+                return point.getFilterThickness() / 64.0d;
+            default:
+                return (point.getOutAngle() - 32.0d) / 32.0d;
+        }
+    }
+
+    private static void assertStratified(List<ParameterSnapshot> points) {
+        int n = points.size();
+        for (int d = 0; d < 3; d++) {
+            boolean[] used = new boolean[n];
+            for (ParameterSnapshot point : points) {
+                double unit = getUnit(point, d);
+                assertTrue(unit >= 0.0d && unit < 1.0d);
+                int stratum = (int) (unit * n);
+                assertTrue("dimension " + d + " stratum " + stratum, !used[stratum]);
+                used[stratum] = true;
+            }
+        }
+    }
+
+    @Test
+    public void gridOrder() {
+        ParameterSweep sweep = getSweep();
+        List<ParameterSnapshot> points = sweep.getPoints();
+        assertEquals(125, points.size());
+        // Last dimension varies fastest
+        assertEquals(40.0d, points.get(1).getOutAngle(), 0.0d);
+        assertEquals(16.0d, points.get(1).getTubeVoltage(), 0.0d);
+        assertEquals(16.0d, points.get(5).getFilterThickness(), 0.0d);
+        assertEquals(24.0d, points.get(25).getTubeVoltage(), 0.0d);
+        ParameterSnapshot last = points.get(124);
+        assertEquals(48.0d, last.getTubeVoltage(), 0.0d);
+        assertEquals(64.0d, last.getFilterThickness(), 0.0d);
+        assertEquals(64.0d, last.getOutAngle(), 0.0d);
+    }
+
+    @Test
+    public void latinHypercubeStratified() {
+        ParameterSweep sweep = getSweep();
+        sweep.setDesign(Design.LATIN_HYPERCUBE, 20, 17L);
+        List<ParameterSnapshot> points = sweep.getPoints();
+        assertEquals(20, points.size());
+        assertStratified(points);
+
+        // Same seed same points, other seed other points
+        assertEquals(points, sweep.getPoints());
+        sweep.setDesign(Design.LATIN_HYPERCUBE, 20, 18L);
+        assertNotEquals(points, sweep.getPoints());
+    }
+
+    @Test
+    public void sobolSequence() {
+        ParameterSweep sweep = getSweep();
+        sweep.setDesign(Design.SOBOL, 16, 0L);
+        List<ParameterSnapshot> points = sweep.getPoints();
+        assertEquals(16, points.size());
+        double[] first = {0.0d, 0.5d, 0.75d, 0.25d};
+        double[] second = {0.0d, 0.5d, 0.25d, 0.75d};
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(first[i], getUnit(points.get(i), 0), 0.0d);
+            assertEquals(second[i], getUnit(points.get(i), 1), 0.0d);
+        }
+        // Each power of two is stratified in each dimension
+        for (int n = 2; n <= 16; n *= 2) {
+            assertStratified(points.subList(0, n));
+        }
+    }
+
+    @Test
+    public void listedValuesOfDiscreteDimension() {
+        ParameterSweep sweep = new ParameterSweep(new Inparameters());
+        sweep.addDimension(Dimension.getValues(Parameter.ANODE,
+                Parameter.ANODE.parseValue("Rh"), Parameter.ANODE.parseValue("W")));
+        sweep.setDesign(Design.SOBOL, 4, 0L);
+        List<String> symbols = new ArrayList<>();
+        for (ParameterSnapshot point : sweep.getPoints()) {
+            symbols.add(point.getAnodeSymbol());
+        }
+        assertEquals(List.of("Rh", "W", "W", "Rh"), symbols);
+    }
+
+    @Test
+    public void invalidDimensionsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Dimension.getRange(Parameter.ANODE, 42.0d, 74.0d, 3));
+        assertThrows(IllegalArgumentException.class,
+                () -> Dimension.getValues(Parameter.QUADRATURE,
+                        Inparameters.Quadrature.values().length));
+        assertThrows(IllegalArgumentException.class,
+                () -> Dimension.getValues(Parameter.ALGORITHM, 0.5d));
+        assertThrows(IllegalArgumentException.class,
+                () -> Dimension.getValues(Parameter.ANODE, 1.0d));
+        assertThrows(IllegalArgumentException.class,
+                () -> Dimension.getValues(Parameter.TUBE_VOLTAGE, Double.NaN));
+        assertThrows(IllegalArgumentException.class,
+                () -> Dimension.getRange(Parameter.TUBE_VOLTAGE, 20.0d, 40.0d, 0));
+        ParameterSweep sweep = getSweep();
+        assertThrows(IllegalArgumentException.class,
+                () -> sweep.addDimension(Dimension.getValues(Parameter.TUBE_VOLTAGE, 30.0d)));
+        assertThrows(IllegalArgumentException.class,
+                () -> sweep.setDesign(Design.SOBOL, 0, 0L));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * File SliceChunksTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.abscoeffcalculate.Mucal.ErrorCode;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the chunked evaluation of slices, spectra of more than
+ * CHUNK_SIZE slices calculated in chunks equal to those calculated in the
+ * calling thread and the warnings of the pool threads counted once.
+ */
+public class SliceChunksTest {
+
+    private ForkJoinPool _pool;
+
+    @Before
+    public void setUp() {
+        _pool = new ForkJoinPool(4);
+        SourceCalculation.clearEmissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        _pool.shutdown();
+        SourceCalculation.clearEmissionCache();
+    }
+
+    private static Inparameters getParameters() {
+        Inparameters parameters = new Inparameters();
+        for (Inparameters.Algorithm algorithm : Inparameters.getAlgorithms()) {
+            if (algorithm.getCalcModel() == CalcModel.EBEL) {
+                parameters.setAlgorithm(algorithm);
+            }
+        }
+        // Cr anode with long wavelengths, slices below the absorption data warn
+        parameters.getAnodeElement().setSymbol("Cr");
+        parameters.getAnodeElement().setAtomicNumber(24);
+        parameters.setMaxWavelength(40.0d);
+        parameters.setContiniumIntervalSize(0.005d);
+        return parameters;
+    }
+
+    private XraySpectrum calculate(Inparameters parameters, ForkJoinPool pool,
+            Diagnostics diagnostics) {
+        SourceCalculation.clearEmissionCache();
+        SourceCalculation calculation = SpectrumEngine.getCalculation(CalcModel.EBEL);
+        calculation.setSlicePool(pool);
+        calculation.setDiagnostics(diagnostics);
+        return calculation.calculate(parameters);
+    }
+
+    private static void assertColumnsEqual(SpectrumColumns expected, SpectrumColumns actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getPosition(i), actual.getPosition(i), 0.0d);
+            assertEquals(expected.getWindow(i), actual.getWindow(i), 0.0d);
+            assertEquals(expected.getIntensity(i), actual.getIntensity(i), 0.0d);
+        }
+    }
+
+    private void assertChunkedEqualsSequential(Inparameters parameters) {
+        Diagnostics sequential = new Diagnostics();
+        XraySpectrum expected = calculate(parameters, null, sequential);
+        Diagnostics chunked = new Diagnostics();
+        XraySpectrum actual = calculate(parameters, _pool, chunked);
+        assertTrue(expected.getContinuumColumns().size() > 2 * SliceChunks.CHUNK_SIZE);
+        assertColumnsEqual(expected.getTubeLineColumns(), actual.getTubeLineColumns());
+        assertColumnsEqual(expected.getContinuumColumns(), actual.getContinuumColumns());
+        assertTrue(sequential.getTotalCount() > 0);
+        for (ErrorCode code : ErrorCode.values()) {
+            assertEquals(sequential.getCount(code), chunked.getCount(code));
+        }
+    }
+
+    @Test
+    public void chunkedEqualsSequential() {
+        assertChunkedEqualsSequential(getParameters());
+    }
+
+    @Test
+    public void chunkedEqualsSequentialOnEnergyAxis() {
+        Inparameters parameters = getParameters();
+        parameters.setSpectrumAxis(XraySpectrum.Axis.ENERGY);
+        assertChunkedEqualsSequential(parameters);
+    }
+
+    @Test
+    public void poolWarningsCountedOnce() {
+        int slices = 5 * SliceChunks.CHUNK_SIZE + 17;
+        int[] evaluated = new int[slices];
+        Diagnostics diagnostics = new Diagnostics();
+        Diagnostics previousDiagnostics = Diagnostics.install(diagnostics);
+        ForkJoinPool previousPool = SliceChunks.install(_pool);
+        try {
+            SliceChunks.evaluate(0, slices, (from, to) -> {
+                assertTrue(to - from <= SliceChunks.CHUNK_SIZE);
+                for (int i = from; i < to; i++) {
+                    evaluated[i]++;
+                    Diagnostics.report(ErrorCode.m_edge_warn, 24, 0.1d,
+                            "SliceChunksTest");
+                }
+            });
+        } finally {
+            SliceChunks.restore(previousPool);
+            Diagnostics.restore(previousDiagnostics);
+        }
+        for (int i = 0; i < slices; i++) {
+            assertEquals(1, evaluated[i]);
+        }
+        assertEquals(slices, diagnostics.getCount(ErrorCode.m_edge_warn));
+        assertEquals(slices, diagnostics.getTotalCount());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * File SliceQuadratureTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import org.junit.Test;
+import se.e2t.xraycalc.Inparameters.Quadrature;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the slice rules, the nodes and weights and the degree of the
+ * polynomials each rule integrates exactly over a slice.
+ */
+public class SliceQuadratureTest {
+
+    private static final double TOLERANCE = 1.0e-14d;
+
+    @Test
+    public void weightsSumToOne() {
+        for (Quadrature quadrature : Quadrature.values()) {
+            SliceQuadrature rule = SliceQuadrature.getRule(quadrature);
+            double sum = 0.0d;
+            for (int i = 0; i < rule.size(); i++) {
+                assertTrue(quadrature.name(), rule.getWeight(i) > 0.0d);
+                sum += rule.getWeight(i);
+            }
+            assertEquals(quadrature.name(), 1.0d, sum, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void nodesSymmetricWithinSlice() {
+        for (Quadrature quadrature : Quadrature.values()) {
+            SliceQuadrature rule = SliceQuadrature.getRule(quadrature);
+            int n = rule.size();
+            for (int i = 0; i < n; i++) {
+                assertTrue(quadrature.name(), Math.abs(rule.getNode(i)) <= 0.5d);
+                if (i > 0) {
+                    assertTrue(quadrature.name(),
+                            rule.getNode(i) > rule.getNode(i - 1));
+                }
+                assertEquals(quadrature.name(), -rule.getNode(i),
+                        rule.getNode(n - 1 - i), TOLERANCE);
+                assertEquals(quadrature.name(), rule.getWeight(i),
+                        rule.getWeight(n - 1 - i), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void gaussLegendreNodes() {
+        SliceQuadrature rule = SliceQuadrature.getRule(Quadrature.GAUSS_LEGENDRE_2);
+        assertEquals(2, rule.size());
+        assertEquals(-0.5d / Math.sqrt(3.0d), rule.getNode(0), TOLERANCE);
+        assertEquals(0.5d, rule.getWeight(0), TOLERANCE);
+        rule = SliceQuadrature.getRule(Quadrature.GAUSS_LEGENDRE_3);
+        assertEquals(3, rule.size());
+        assertEquals(-0.5d * Math.sqrt(0.6d), rule.getNode(0), TOLERANCE);
+        assertEquals(0.0d, rule.getNode(1), TOLERANCE);
+        assertEquals(5.0d / 18.0d, rule.getWeight(0), TOLERANCE);
+        assertEquals(8.0d / 18.0d, rule.getWeight(1), TOLERANCE);
+    }
+
+    @Test
+    public void exactForDegreeBelowOrder() {
+        for (Quadrature quadrature : Quadrature.values()) {
+            SliceQuadrature rule = SliceQuadrature.getRule(quadrature);
+            int order = rule.getOrder();
+            // Exact up to degree order - 1, not for degree order
+            for (int degree = 0; degree <= order; degree++) {
+                double sum = 0.0d;
+                for (int i = 0; i < rule.size(); i++) {
+                    sum += rule.getWeight(i) * Math.pow(rule.getNode(i), degree);
+                }
+                double exact = degree % 2 == 0
+                        ? Math.pow(0.5d, degree) / (degree + 1) : 0.0d;
+                String message = quadrature.name() + " degree " + degree;
+                if (degree < order) {
+                    assertEquals(message, exact, sum, TOLERANCE);
+                } else {
+                    assertTrue(message, Math.abs(exact - sum) > 1.0e-6d);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rulesShared() {
+        for (Quadrature quadrature : Quadrature.values()) {
+            assertSame(SliceQuadrature.getRule(quadrature),
+                    SliceQuadrature.getRule(quadrature));
+        }
+        assertEquals(2, SliceQuadrature.getRule(Quadrature.MIDPOINT).getOrder());
+        assertEquals(4, SliceQuadrature.getRule(Quadrature.SIMPSON).getOrder());
+        assertEquals(10, SliceQuadrature.getRule(Quadrature.GAUSS_LEGENDRE_5).getOrder());
+    }
+}
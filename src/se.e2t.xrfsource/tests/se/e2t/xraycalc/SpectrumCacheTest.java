@@ -0,0 +1,224 @@
+/*
+ * File SpectrumCacheTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.AbsCoefficient;
+import se.e2t.abscoeffcalculate.AbsCoefficient.Backend;
+import se.e2t.abscoeffcalculate.AbsCoefficientTable;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the keying of the spectrum cache on the snapshot and the
+ * absorption coefficient settings, of the memory tier and of the disk tier.
+ */
+public class SpectrumCacheTest {
+
+    private Backend _backend;
+    private AbsCoefficientTable _table;
+    private Path _directory;
+
+    @Before
+    public void setUp() throws IOException {
+        _backend = AbsCoefficient.getBackend();
+        _table = AbsCoefficient.getTable();
+        AbsCoefficient.setBackend(Backend.DIRECT);
+        _directory = Files.createTempDirectory("spectrumcache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        AbsCoefficient.setBackend(_backend);
+        AbsCoefficient.setTable(_table);
+        try (Stream<Path> files = Files.walk(_directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static ParameterSnapshot getSnapshot(double tubeVoltage) {
+        Inparameters parameters = new Inparameters();
+        parameters.getAnodeElement().setSymbol("Rh");
+        parameters.getAnodeElement().setAtomicNumber(45);
+        parameters.setTubeVoltage(tubeVoltage);
+        parameters.setContiniumIntervalSize(0.2d);
+        return new ParameterSnapshot(parameters);
+    }
+
+    private static void assertColumnsEqual(SpectrumColumns expected, SpectrumColumns actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getWavelength(i), actual.getWavelength(i), 0.0d);
+            assertEquals(expected.getWindow(i), actual.getWindow(i), 0.0d);
+            assertEquals(expected.getIntensity(i), actual.getIntensity(i), 0.0d);
+        }
+    }
+
+    private static void assertSpectrumEquals(XraySpectrum expected, XraySpectrum actual) {
+        assertColumnsEqual(expected.getTubeLineColumns(), actual.getTubeLineColumns());
+        assertColumnsEqual(expected.getContinuumColumns(), actual.getContinuumColumns());
+    }
+
+    @Test
+    public void memoryHitsAndMisses() {
+        SpectrumCache cache = new SpectrumCache();
+        ParameterSnapshot snapshot = getSnapshot(20);
+        XraySpectrum first = cache.get(snapshot);
+        assertEquals(1, cache.getMisses());
+        assertSpectrumEquals(SpectrumEngine.calculate(snapshot), first);
+
+        // A hit is a copy of the cached spectrum
+        double intensity = first.getContinuumColumns().getIntensity(0);
+        first.getContinuumColumns().scaleIntensities(2.0d);
+        XraySpectrum second = cache.get(getSnapshot(20));
+        assertEquals(1, cache.getHits());
+        assertEquals(intensity, second.getContinuumColumns().getIntensity(0), 0.0d);
+
+        cache.get(getSnapshot(25));
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+        cache.clear();
+        cache.get(snapshot);
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void keyedOnSettings() {
+        SpectrumCache cache = new SpectrumCache();
+        ParameterSnapshot snapshot = getSnapshot(20);
+        cache.get(snapshot);
+        AbsCoefficient.setBackend(Backend.TABLE);
+        cache.get(snapshot);
+        AbsCoefficient.setTable(new AbsCoefficientTable(_table.getCellBits(),
+                10.0d * _table.getTolerance()));
+        cache.get(snapshot);
+        assertEquals(3, cache.getMisses());
+        AbsCoefficient.setBackend(Backend.DIRECT);
+        cache.get(snapshot);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        SpectrumCache cache = new SpectrumCache(2, null);
+        cache.get(getSnapshot(20));
+        cache.get(getSnapshot(25));
+        cache.get(getSnapshot(20));
+        cache.get(getSnapshot(30));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+        cache.get(getSnapshot(20));
+        assertEquals(2, cache.getHits());
+        cache.get(getSnapshot(25));
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void diskRoundTrip() {
+        ParameterSnapshot snapshot = getSnapshot(20);
+        XraySpectrum spectrum = new SpectrumCache(4, _directory).get(snapshot);
+        assertTrue(Files.isRegularFile(new SpectrumCache(4, _directory)
+                .getFile(snapshot, AbsCoefficient.getSettings())));
+        SpectrumCache cache = new SpectrumCache(4, _directory);
+        assertSpectrumEquals(spectrum, cache.get(snapshot));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void diskFileOfOtherSettingsMissed() {
+        AbsCoefficient.setBackend(Backend.TABLE);
+        ParameterSnapshot snapshot = getSnapshot(20);
+        new SpectrumCache(4, _directory).get(snapshot);
+        // Same file name, other tolerance in the file
+        AbsCoefficient.setTable(new AbsCoefficientTable(_table.getCellBits(),
+                10.0d * _table.getTolerance()));
+        SpectrumCache cache = new SpectrumCache(4, _directory);
+        cache.get(snapshot);
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getDiskErrors());
+    }
+
+    @Test
+    public void diskFileOfOtherValuesMissed() throws IOException {
+        ParameterSnapshot snapshot = getSnapshot(20);
+        new SpectrumCache(4, _directory).get(snapshot);
+
+        // Other canonical values with the same hash, as after a collision
+        Path file = new SpectrumCache(4, _directory).getFile(snapshot,
+                AbsCoefficient.getSettings());
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] values = snapshot.getCanonicalBytes();
+        int index = indexOf(bytes, values);
+        assertTrue(index > 0);
+        bytes[index + values.length - 1] ^= 1;
+        Files.write(file, bytes);
+        SpectrumCache cache = new SpectrumCache(4, _directory);
+        cache.get(snapshot);
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getDiskErrors());
+    }
+
+    @Test
+    public void damagedDiskFileCalculated() throws IOException {
+        ParameterSnapshot snapshot = getSnapshot(20);
+        XraySpectrum spectrum = new SpectrumCache(4, _directory).get(snapshot);
+        Path file = new SpectrumCache(4, _directory).getFile(snapshot,
+                AbsCoefficient.getSettings());
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        SpectrumCache cache = new SpectrumCache(4, _directory);
+        assertSpectrumEquals(spectrum, cache.get(snapshot));
+        assertEquals(1, cache.getDiskErrors());
+        assertEquals(1, cache.getMisses());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            boolean equal = true;
+            for (int j = 0; j < part.length && equal; j++) {
+                equal = bytes[i + j] == part[j];
+            }
+            if (equal) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * File SpectrumFormatTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.formatters.XrfSourceCsvFormatter;
+import se.e2t.formatters.XrfSourceXmlFormatter;
+import se.e2t.xrfsource.format.spi.SpectrumFormatSPI;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum.Axis;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the axis marking of formatted spectra and of the refusal of
+ * energy spectra for formatters that are not axis aware.
+ */
+public class SpectrumFormatTest {
+
+    private Path _directory;
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("spectrumformat");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = _directory.toFile().listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+        _directory.toFile().delete();
+    }
+
+    private static XraySpectrum getSpectrum(Axis axis) {
+        SpectrumColumns tubeLines = new SpectrumColumns();
+        tubeLines.add(8.048, 0.01, 5.0e3);
+        SpectrumColumns continuum = new SpectrumColumns();
+        continuum.add(10.0, 0.1, 2.0e2);
+        continuum.add(10.1, 0.1, 1.5e2);
+        return new XraySpectrum(tubeLines, continuum, axis);
+    }
+
+    @Test
+    public void csvMarksAxis() {
+        String[] rows = new String(new XrfSourceCsvFormatter()
+                .createByteArray(getSpectrum(Axis.ENERGY))).split("\n");
+        assertEquals(4, rows.length);
+        assertEquals("# axis = ENERGY, keV", rows[0]);
+        assertTrue(rows[1].startsWith("8.048, "));
+        assertTrue(rows[1].endsWith(", L"));
+        assertTrue(rows[3].startsWith("10.100, "));
+
+        rows = new String(new XrfSourceCsvFormatter()
+                .createByteArray(getSpectrum(Axis.WAVELENGTH))).split("\n");
+        assertEquals("# axis = WAVELENGTH, Angstrom", rows[0]);
+    }
+
+    @Test
+    public void xmlMarksAxis() {
+        String xml = new String(new XrfSourceXmlFormatter()
+                .createByteArray(getSpectrum(Axis.ENERGY)));
+        assertTrue(xml.contains("axis=\"ENERGY\""));
+        assertTrue(xml.contains("energy=\"8.048\""));
+        assertFalse(xml.contains("wavelength="));
+    }
+
+    @Test
+    public void energyAxisRefusedByUnawareFormatter() {
+        SpectrumFormatSPI unaware = new SpectrumFormatSPI() {
+            @Override
+            public String getDescription() {
+                return "wavelength only";
+            }
+
+            @Override
+            public String getExtensions() {
+                return "*.txt";
+            }
+
+            @Override
+            public byte[] createByteArray(XraySpectrum spectrum) {
+                return new byte[1];
+            }
+
+            @Override
+            public int getErrorCode() {
+                return 0;
+            }
+
+            @Override
+            public String getErrorDescription() {
+                return null;
+            }
+        };
+        File file = _directory.resolve("spectrum.txt").toFile();
+        assertEquals(SpectrumEngine.AXIS_NOT_SUPPORTED, SpectrumEngine.writeSpectrum(
+                getSpectrum(Axis.ENERGY), unaware, file));
+        assertFalse(file.exists());
+        assertEquals(0, SpectrumEngine.writeSpectrum(
+                getSpectrum(Axis.WAVELENGTH), unaware, file));
+        assertTrue(file.exists());
+        assertTrue(SpectrumEngine.isAxisSupported(new XrfSourceCsvFormatter(),
+                getSpectrum(Axis.ENERGY)));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * File SpectrumPublisherTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.SpectrumPublisher.ChunkSource;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the Flow contract of the publisher: chunks delivered within the
+ * requested demand, errors of bad requests and failing calculations given
+ * to onError, no signals after cancel, and the chunks making up the
+ * spectrum of calculate. Most tests run the subscription on the calling
+ * thread, so the signals are seen when request returns.
+ */
+public class SpectrumPublisherTest {
+
+    private static final Executor CALLER = Runnable::run;
+
+    private static class Recorder implements Flow.Subscriber<SpectrumChunk> {
+
+        private final long _initialRequest;
+        private final List<SpectrumChunk> _chunks = new ArrayList<>();
+        private final CountDownLatch _terminated = new CountDownLatch(1);
+        private Flow.Subscription _subscription;
+        private Throwable _error;
+        private int _completions = 0;
+        private boolean _cancelOnNext = false;
+
+        Recorder(long initialRequest) {
+            _initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            if (_initialRequest != 0) {
+                subscription.request(_initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(SpectrumChunk chunk) {
+            _chunks.add(chunk);
+            if (_cancelOnNext) {
+                _subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            _error = error;
+            _terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _completions++;
+            _terminated.countDown();
+        }
+    }
+
+    private static Inparameters getParameters() {
+        Inparameters parameters = new Inparameters();
+        parameters.getAnodeElement().setSymbol("Rh");
+        parameters.getAnodeElement().setAtomicNumber(45);
+        parameters.setTubeVoltage(30);
+        // Some thousand slices, several chunks
+        parameters.setContiniumIntervalSize(0.001d);
+        parameters.setMaxWavelength(8.0d);
+        return parameters;
+    }
+
+    private static SourceCalculation getCalculation(Inparameters parameters) {
+        return SpectrumEngine.getCalculation(parameters.getAlgorithm().getCalcModel());
+    }
+
+    private static void assertColumnsEqual(SpectrumColumns expected, SpectrumColumns actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getWavelength(i), actual.getWavelength(i), 0.0d);
+            assertEquals(expected.getIntensity(i), actual.getIntensity(i),
+                    1.0e-14d * Math.abs(expected.getIntensity(i)));
+        }
+    }
+
+    private static void assertChunksEqualCalculate(Inparameters parameters,
+            List<SpectrumChunk> chunks) {
+        XraySpectrum spectrum = getCalculation(parameters).calculate(parameters);
+        SpectrumColumns continuum = new SpectrumColumns();
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            SpectrumChunk chunk = chunks.get(i);
+            assertFalse(chunk.isLast());
+            assertEquals(continuum.size(), chunk.getFirstSlice());
+            continuum.addAll(chunk.getContinuumColumns());
+        }
+        SpectrumChunk last = chunks.get(chunks.size() - 1);
+        assertTrue(last.isLast());
+        assertEquals(continuum.size(), last.getFirstSlice());
+        assertEquals(0, last.getContinuumColumns().size());
+        assertTrue(last.getNormalization() > 0.0d);
+        assertColumnsEqual(spectrum.getContinuumColumns(), continuum);
+        assertColumnsEqual(spectrum.getTubeLineColumns(), last.getTubeLineColumns());
+    }
+
+    @Test
+    public void chunksMakeUpSpectrum() {
+        Inparameters parameters = getParameters();
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        getCalculation(parameters).publish(parameters, CALLER).subscribe(recorder);
+        assertNull(recorder._error);
+        assertEquals(1, recorder._completions);
+        assertTrue(recorder._chunks.size() > 2);
+        assertChunksEqualCalculate(parameters, recorder._chunks);
+        assertNull(recorder._chunks.get(recorder._chunks.size() - 1).getIntegration());
+    }
+
+    @Test
+    public void adaptiveChunksMakeUpSpectrum() throws InterruptedException {
+        Inparameters parameters = getParameters();
+        parameters.setContiniumIntervalSize(0.1d);
+        parameters.setIntegrationTolerance(1.0e-3d);
+        parameters.setQuadrature(Inparameters.Quadrature.GAUSS_LEGENDRE_2);
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        // On the common pool
+        getCalculation(parameters).publish(parameters).subscribe(recorder);
+        assertTrue(recorder._terminated.await(60, TimeUnit.SECONDS));
+        assertNull(recorder._error);
+        assertEquals(1, recorder._completions);
+        assertChunksEqualCalculate(parameters, recorder._chunks);
+        assertNotNull(recorder._chunks.get(recorder._chunks.size() - 1).getIntegration());
+    }
+
+    @Test
+    public void deliveryWithinDemand() {
+        Inparameters parameters = getParameters();
+        Recorder recorder = new Recorder(0);
+        getCalculation(parameters).publish(parameters, CALLER).subscribe(recorder);
+        assertEquals(0, recorder._chunks.size());
+        recorder._subscription.request(1);
+        assertEquals(1, recorder._chunks.size());
+        recorder._subscription.request(2);
+        assertEquals(3, recorder._chunks.size());
+        assertEquals(0, recorder._completions);
+        recorder._subscription.request(Long.MAX_VALUE);
+        recorder._subscription.request(Long.MAX_VALUE);
+        assertEquals(1, recorder._completions);
+        assertNull(recorder._error);
+        assertChunksEqualCalculate(parameters, recorder._chunks);
+    }
+
+    @Test
+    public void nonPositiveRequestIsError() {
+        Inparameters parameters = getParameters();
+        for (long n : new long[]{0L, -1L, Long.MIN_VALUE}) {
+            Recorder recorder = new Recorder(1);
+            getCalculation(parameters).publish(parameters, CALLER).subscribe(recorder);
+            recorder._subscription.request(n);
+            assertTrue(recorder._error instanceof IllegalArgumentException);
+            recorder._subscription.request(10);
+            assertEquals(1, recorder._chunks.size());
+            assertEquals(0, recorder._completions);
+        }
+    }
+
+    @Test
+    public void noSignalsAfterCancel() {
+        Inparameters parameters = getParameters();
+        Recorder recorder = new Recorder(1);
+        getCalculation(parameters).publish(parameters, CALLER).subscribe(recorder);
+        recorder._subscription.cancel();
+        recorder._subscription.request(10);
+        assertEquals(1, recorder._chunks.size());
+
+        // Cancel within onNext of an unbounded demand
+        recorder = new Recorder(0);
+        recorder._cancelOnNext = true;
+        getCalculation(parameters).publish(parameters, CALLER).subscribe(recorder);
+        recorder._subscription.request(Long.MAX_VALUE);
+        assertEquals(1, recorder._chunks.size());
+        assertEquals(0, recorder._completions);
+        assertNull(recorder._error);
+    }
+
+    @Test
+    public void failingCalculationIsError() {
+        RuntimeException failure = new IllegalStateException("No data");
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new SpectrumPublisher(() -> {
+            throw failure;
+        }, CALLER, new Diagnostics(), null).subscribe(recorder);
+        assertSame(failure, recorder._error);
+
+        // Failing after the first chunk
+        SpectrumChunk chunk = new SpectrumChunk(XraySpectrum.Axis.WAVELENGTH, 0,
+                new SpectrumColumns());
+        recorder = new Recorder(Long.MAX_VALUE);
+        new SpectrumPublisher(() -> new ChunkSource() {
+            private boolean _first = true;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public SpectrumChunk next() {
+                if (_first) {
+                    _first = false;
+                    return chunk;
+                }
+                throw failure;
+            }
+        }, CALLER, new Diagnostics(), null).subscribe(recorder);
+        assertEquals(1, recorder._chunks.size());
+        assertSame(failure, recorder._error);
+        assertEquals(0, recorder._completions);
+    }
+
+    @Test
+    public void rejectedExecutionIsError() {
+        Inparameters parameters = getParameters();
+        Recorder recorder = new Recorder(1);
+        getCalculation(parameters).publish(parameters, task -> {
+            throw new RejectedExecutionException();
+        }).subscribe(recorder);
+        assertTrue(recorder._error instanceof RejectedExecutionException);
+        assertEquals(0, recorder._chunks.size());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * File VoltageScanTest.java
+ *
+ * Copyright 2019 e2t AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.e2t.xraycalc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.e2t.abscoeffcalculate.Diagnostics;
+import se.e2t.xraycalc.Inparameters.CalcModel;
+import se.e2t.xrfsource.spectrumclasses.SpectrumColumns;
+import se.e2t.xrfsource.spectrumclasses.XraySpectrum;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Kent Ericsson, e2t AB
+ *
+ * Tests of the voltage scan compared with one calculation per voltage. The
+ * spectrum of the highest voltage is equal to that of calculate, the tube
+ * lines and the slices of lower voltages with the same center are equal,
+ * the slices of lower voltages start at the short wavelength limit.
+ */
+public class VoltageScanTest {
+
+    private static final double[] VOLTAGES = {20.0d, 35.0d, 50.0d, 60.0d};
+
+    @Before
+    public void setUp() {
+        SourceCalculation.clearEmissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        SourceCalculation.clearEmissionCache();
+    }
+
+    private static Inparameters getParameters(CalcModel model) {
+        Inparameters parameters = new Inparameters();
+        for (Inparameters.Algorithm algorithm : Inparameters.getAlgorithms()) {
+            if (algorithm.getCalcModel() == model) {
+                parameters.setAlgorithm(algorithm);
+            }
+        }
+        parameters.getFilterElements().add(new FilterElement("Al", 13, 1.0d));
+        parameters.setFilterThickness(50);
+        return parameters;
+    }
+
+    private static XraySpectrum calculate(Inparameters parameters, double voltage) {
+        parameters.setTubeVoltage(voltage);
+        SourceCalculation.clearEmissionCache();
+        SourceCalculation calculation = SpectrumEngine.getCalculation(
+                parameters.getAlgorithm().getCalcModel());
+        calculation.setDiagnostics(new Diagnostics());
+        return calculation.calculate(parameters);
+    }
+
+    private static XraySpectrum[] scan(Inparameters parameters) {
+        SourceCalculation calculation = SpectrumEngine.getCalculation(
+                parameters.getAlgorithm().getCalcModel());
+        calculation.setDiagnostics(new Diagnostics());
+        return calculation.calculateVoltageScan(parameters, VOLTAGES);
+    }
+
+    private static void assertColumnsEqual(SpectrumColumns expected, SpectrumColumns actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getPosition(i), actual.getPosition(i), 0.0d);
+            assertEquals(expected.getWindow(i), actual.getWindow(i), 0.0d);
+            assertEquals(expected.getIntensity(i), actual.getIntensity(i), 0.0d);
+        }
+    }
+
+    @Test
+    public void highestVoltageEqualsCalculate() {
+        for (CalcModel model : CalcModel.values()) {
+            Inparameters parameters = getParameters(model);
+            XraySpectrum[] spectra = scan(parameters);
+            XraySpectrum expected = calculate(parameters, VOLTAGES[VOLTAGES.length - 1]);
+            assertColumnsEqual(expected.getTubeLineColumns(),
+                    spectra[VOLTAGES.length - 1].getTubeLineColumns());
+            assertColumnsEqual(expected.getContinuumColumns(),
+                    spectra[VOLTAGES.length - 1].getContinuumColumns());
+        }
+    }
+
+    @Test
+    public void lowerVoltagesShareSlices() {
+        for (CalcModel model : CalcModel.values()) {
+            Inparameters parameters = getParameters(model);
+            XraySpectrum[] spectra = scan(parameters);
+            for (int k = 0; k < VOLTAGES.length - 1; k++) {
+                XraySpectrum expected = calculate(parameters, VOLTAGES[k]);
+                assertColumnsEqual(expected.getTubeLineColumns(),
+                        spectra[k].getTubeLineColumns());
+
+                // Slices with the same center are equal
+                SpectrumColumns scanned = spectra[k].getContinuumColumns();
+                SpectrumColumns single = expected.getContinuumColumns();
+                int equal = 0;
+                for (int i = 0, j = 0; i < scanned.size() && j < single.size();) {
+                    if (scanned.getPosition(i) == single.getPosition(j)) {
+                        assertEquals(single.getWindow(j), scanned.getWindow(i), 0.0d);
+                        assertEquals(single.getIntensity(j), scanned.getIntensity(i), 0.0d);
+                        equal++;
+                        i++;
+                        j++;
+                    } else if (scanned.getPosition(i) < single.getPosition(j)) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                assertTrue(equal > single.size() / 2);
+
+                // The first slice starts at the short wavelength limit
+                double limit = Inparameters.CONV_KEV_ANGSTROM / VOLTAGES[k];
+                assertEquals(limit, scanned.getPosition(0) - scanned.getWindow(0) / 2.0d,
+                        1.0e-12d);
+            }
+        }
+    }
+}